@@ -0,0 +1,21 @@
+package com.qmetric.feed.consumer;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks selected on the command line (standard JMH options) with the gc profiler enabled, so that
+ * allocation rate is reported alongside throughput.
+ */
+public class BenchmarkRunner
+{
+    public static void main(final String[] args) throws Exception
+    {
+        new Runner(new OptionsBuilder() //
+                           .parent(new CommandLineOptions(args)) //
+                           .addProfiler(GCProfiler.class) //
+                           .build()).run();
+    }
+}
@@ -0,0 +1,121 @@
+package com.qmetric.feed.consumer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Optional;
+import com.qmetric.feed.consumer.store.referenceimplementation.InMemoryFeedTracker;
+import com.qmetric.hal.reader.HalReader;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+/**
+ * Entries consumed per second by a poll spreading entries across a fixed pool of threads, compared with a poll consuming each entry
+ * on a thread of its own, for a consume action blocking on simulated I/O. Entries are fetched from an in-process http server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(ConsumptionModeBenchmark.ENTRIES)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConsumptionModeBenchmark
+{
+    static final int ENTRIES = 1000;
+
+    @Param({"pool", "threadPerEntry"})
+    public String mode;
+
+    @Param({"16", "256"})
+    public int concurrency;
+
+    @Param({"1", "10"})
+    public int blockingMillis;
+
+    private final HalReader halReader = new HalReader(new ObjectMapper());
+
+    private final DateTimeSource dateTimeSource = new DateTimeSource();
+
+    private FeedStubServer server;
+
+    private FeedEndpointFactory feedEndpointFactory;
+
+    private ExecutorService workers;
+
+    private FeedConsumerImpl feedConsumer;
+
+    @Setup public void startServer() throws IOException
+    {
+        server = new FeedStubServer();
+        server.serve(new SyntheticFeed(server.feedUrl(), ENTRIES, 50, 0));
+
+        final ConnectionPoolConfiguration pool = new ConnectionPoolConfiguration().withMaxTotal(concurrency).withMaxPerRoute(concurrency);
+        final PoolingHttpClientConnectionManager connectionManager = ClientBuilder.newConnectionManager(pool);
+        feedEndpointFactory = new FeedEndpointFactory(ClientBuilder.newHttpClient(connectionManager, pool, null));
+
+        workers = "pool".equals(mode)
+                  ? Executors.newFixedThreadPool(concurrency)
+                  : new ThreadPerTaskExecutorService(Executors.defaultThreadFactory(), concurrency);
+    }
+
+    @Setup(Level.Invocation) public void trackEntries()
+    {
+        final InMemoryFeedTracker feedTracker = new InMemoryFeedTracker(dateTimeSource);
+        for (long id = 1; id <= ENTRIES; id++)
+        {
+            feedTracker.track(new SeenEntry(EntryId.of(id), new DateTime(id)));
+        }
+
+        final EntryConsumerImpl entryConsumer = new EntryConsumerImpl(feedTracker, new ConsumeAction()
+        {
+            @Override public Result consume(final FeedEntry feedEntry)
+            {
+                try
+                {
+                    Thread.sleep(blockingMillis);
+                }
+                catch (final InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                return Result.successful();
+            }
+        }, new DefaultResourceResolver(server.feedUrl(), feedEndpointFactory, halReader), Collections.<EntryConsumerListener>emptyList(), Optional.<Integer>absent(),
+                                                                      new Interval(15, MINUTES), dateTimeSource);
+
+        feedConsumer = new FeedConsumerImpl(entryConsumer, feedTracker, Collections.<FeedPollingListener>emptyList(), workers);
+    }
+
+    @TearDown public void stop()
+    {
+        new ShutdownProcedure(workers).run();
+        server.stop();
+    }
+
+    @Benchmark public List<TrackedEntry> consume() throws Exception
+    {
+        return feedConsumer.consume();
+    }
+}
@@ -0,0 +1,119 @@
+package com.qmetric.feed.consumer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.commons.lang3.builder.EqualsBuilder.reflectionEquals;
+import static org.apache.commons.lang3.builder.HashCodeBuilder.reflectionHashCode;
+
+/**
+ * {@link EntryId} operations used when scanning pages and walking gaps, next to those of the previous string-only,
+ * reflection based implementation kept as {@link LegacyEntryId}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntryIdBenchmark
+{
+    private static final int IDS = 1000;
+
+    private final Set<EntryId> entryIds = new HashSet<EntryId>();
+
+    private final Set<LegacyEntryId> legacyEntryIds = new HashSet<LegacyEntryId>();
+
+    private long id = 1;
+
+    public EntryIdBenchmark()
+    {
+        for (int i = 1; i <= IDS; i++)
+        {
+            entryIds.add(EntryId.of(String.valueOf(i)));
+            legacyEntryIds.add(LegacyEntryId.of(String.valueOf(i)));
+        }
+    }
+
+    @Benchmark public boolean lookup()
+    {
+        return entryIds.contains(EntryId.of(String.valueOf(nextId())));
+    }
+
+    @Benchmark public boolean lookupLegacy()
+    {
+        return legacyEntryIds.contains(LegacyEntryId.of(String.valueOf(nextId())));
+    }
+
+    @Benchmark public EntryId walkGap()
+    {
+        EntryId current = EntryId.of(String.valueOf(nextId()));
+        for (int i = 0; i < 10; i++)
+        {
+            current = current.next();
+        }
+        return current;
+    }
+
+    @Benchmark public LegacyEntryId walkGapLegacy()
+    {
+        LegacyEntryId current = LegacyEntryId.of(String.valueOf(nextId()));
+        for (int i = 0; i < 10; i++)
+        {
+            current = current.next();
+        }
+        return current;
+    }
+
+    private long nextId()
+    {
+        id = id % (IDS * 2) + 1;
+        return id;
+    }
+
+    static class LegacyEntryId
+    {
+        private final String id;
+
+        private LegacyEntryId(final String id)
+        {
+            this.id = id;
+        }
+
+        static LegacyEntryId of(final String id)
+        {
+            return new LegacyEntryId(id);
+        }
+
+        LegacyEntryId next()
+        {
+            return new LegacyEntryId(String.valueOf(asNumeric() + 1));
+        }
+
+        long asNumeric()
+        {
+            return Long.valueOf(id);
+        }
+
+        @Override public boolean equals(final Object obj)
+        {
+            return reflectionEquals(this, obj);
+        }
+
+        @Override public int hashCode()
+        {
+            return reflectionHashCode(this);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.qmetric.feed.consumer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.qmetric.hal.reader.HalReader;
+import com.qmetric.hal.reader.HalResource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading a feed page over http, either materialising the response body before parsing it or parsing it as it streams in.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FeedEndpointBenchmark
+{
+    @Param({"10", "100", "1000"})
+    public int pageSize;
+
+    private final HalResourceReader halResourceReader = new HalResourceReader(new HalReader(new ObjectMapper()));
+
+    private FeedStubServer server;
+
+    private FeedEndpoint endpoint;
+
+    @Setup public void setUp() throws IOException
+    {
+        server = new FeedStubServer();
+        server.serve(new SyntheticFeed(server.feedUrl(), pageSize, pageSize, 0));
+        endpoint = new FeedEndpointFactory(ClientBuilder.newHttpClient(60000)).create(server.feedUrl());
+    }
+
+    @TearDown public void tearDown()
+    {
+        server.stop();
+    }
+
+    @Benchmark public HalResource materialised()
+    {
+        return halResourceReader.apply(endpoint.get().get());
+    }
+
+    @Benchmark public HalResource streamed()
+    {
+        return endpoint.get(halResourceReader).get();
+    }
+}
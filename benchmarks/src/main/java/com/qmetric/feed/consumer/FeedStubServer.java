@@ -0,0 +1,99 @@
+package com.qmetric.feed.consumer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * In-process http server serving the pages and entries of a {@link SyntheticFeed}, so benchmarks include real http
+ * and connection pool handling without depending on the network.
+ */
+class FeedStubServer
+{
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String FEED_PATH = "/feed";
+
+    private final HttpServer server;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    private SyntheticFeed feed;
+
+    FeedStubServer() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 64);
+        server.setExecutor(executor);
+        server.createContext(FEED_PATH, new HttpHandler()
+        {
+            @Override public void handle(final HttpExchange exchange) throws IOException
+            {
+                respond(exchange);
+            }
+        });
+        server.start();
+    }
+
+    String feedUrl()
+    {
+        return "http://localhost:" + server.getAddress().getPort() + FEED_PATH;
+    }
+
+    void serve(final SyntheticFeed feed)
+    {
+        this.feed = feed;
+    }
+
+    void stop()
+    {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void respond(final HttpExchange exchange) throws IOException
+    {
+        final String path = exchange.getRequestURI().getPath();
+        final String query = exchange.getRequestURI().getQuery();
+
+        if (path.equals(FEED_PATH))
+        {
+            send(exchange, 200, feed.page(query == null ? 0 : Integer.parseInt(query.substring("page=".length()))));
+        }
+        else
+        {
+            final long id = Long.parseLong(path.substring(FEED_PATH.length() + 1));
+            if (feed.contains(id))
+            {
+                send(exchange, 200, feed.entry(id));
+            }
+            else
+            {
+                send(exchange, 404, "Feed entry not found");
+            }
+        }
+    }
+
+    private static void send(final HttpExchange exchange, final int status, final String body) throws IOException
+    {
+        final byte[] bytes = body.getBytes(UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/hal+json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+
+        final OutputStream out = exchange.getResponseBody();
+        try
+        {
+            out.write(bytes);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.qmetric.feed.consumer;
+
+import com.qmetric.feed.consumer.store.AlreadyConsumingException;
+import com.qmetric.feed.consumer.store.BatchFeedTracker;
+import com.qmetric.feed.consumer.store.ConnectivityException;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Tracker that tracks nothing, isolating the cost of the code under benchmark from that of any store.
+ */
+class NoopFeedTracker implements BatchFeedTracker
+{
+    @Override public void checkConnectivity() throws ConnectivityException
+    {
+    }
+
+    @Override public boolean isTracked(final EntryId id)
+    {
+        return false;
+    }
+
+    @Override public Set<EntryId> isTracked(final Collection<EntryId> ids)
+    {
+        return Collections.emptySet();
+    }
+
+    @Override public void track(final SeenEntry entry)
+    {
+    }
+
+    @Override public void trackAll(final Collection<SeenEntry> entries)
+    {
+    }
+
+    @Override public Iterable<TrackedEntry> getEntriesToBeConsumed()
+    {
+        return Collections.emptyList();
+    }
+
+    @Override public void markAsConsuming(final EntryId id) throws AlreadyConsumingException
+    {
+    }
+
+    @Override public void markAsConsumed(final EntryId id)
+    {
+    }
+
+    @Override public void markAllAsConsumed(final Collection<EntryId> ids)
+    {
+    }
+
+    @Override public void fail(final TrackedEntry trackedEntry, final boolean scheduleRetry)
+    {
+    }
+}
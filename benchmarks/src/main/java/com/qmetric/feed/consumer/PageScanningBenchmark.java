@@ -0,0 +1,88 @@
+package com.qmetric.feed.consumer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Optional;
+import com.qmetric.hal.reader.HalReader;
+import com.qmetric.hal.reader.HalResource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning a feed page into seen entries: parsing the page, converting its entries and tracking the ids missing
+ * in between them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PageScanningBenchmark
+{
+    @Param({"10", "100", "1000"})
+    public int pageSize;
+
+    @Param({"0", "0.1", "0.5"})
+    public double gapDensity;
+
+    private final HalResourceReader halResourceReader = new HalResourceReader(new HalReader(new ObjectMapper()));
+
+    private String json;
+
+    private List<HalResource> entries;
+
+    private PageOfSeenEntriesFactory pageOfSeenEntriesFactory;
+
+    private NonContiguousEntryIdTracker nonContiguousEntryIdTracker;
+
+    private PageOfSeenEntries page;
+
+    @Setup public void setUp()
+    {
+        json = new SyntheticFeed("http://localhost/feed", pageSize, pageSize, gapDensity).page(0);
+        entries = parse().getResourcesByRel("entries");
+
+        final NoopFeedTracker feedTracker = new NoopFeedTracker();
+        pageOfSeenEntriesFactory = new PageOfSeenEntriesFactory(feedTracker, Optional.<EarliestEntryLimit>absent());
+        nonContiguousEntryIdTracker = new NonContiguousEntryIdTracker(feedTracker);
+        page = pageOfSeenEntriesFactory.create(entries).reverse();
+    }
+
+    @Benchmark public HalResource parse()
+    {
+        return halResourceReader.apply(new StringReader(json));
+    }
+
+    @Benchmark public PageOfSeenEntries createSeenEntries()
+    {
+        return pageOfSeenEntriesFactory.create(entries);
+    }
+
+    @Benchmark public PageOfSeenEntries parseAndCreateSeenEntries()
+    {
+        return pageOfSeenEntriesFactory.create(parse().getResourcesByRel("entries"));
+    }
+
+    @Benchmark public void trackMissingEntries()
+    {
+        Optional<SeenEntry> previousEntry = Optional.absent();
+        for (final SeenEntry entry : page.all())
+        {
+            nonContiguousEntryIdTracker.trackMissingEntriesWithIdBetweenPreviousAndCurrentEntry(entry, previousEntry);
+            previousEntry = Optional.of(entry);
+        }
+    }
+}
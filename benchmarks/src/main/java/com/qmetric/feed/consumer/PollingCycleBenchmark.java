@@ -0,0 +1,98 @@
+package com.qmetric.feed.consumer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Optional;
+import com.qmetric.feed.consumer.store.referenceimplementation.InMemoryFeedTracker;
+import com.qmetric.hal.reader.HalReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+/**
+ * A complete poll of a feed served by an in-process http server: tracking every entry of the feed into an empty tracker,
+ * then fetching and consuming each of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PollingCycleBenchmark
+{
+    @Param({"100", "1000"})
+    public int entries;
+
+    @Param({"10", "50"})
+    public int pageSize;
+
+    @Param({"0", "0.1"})
+    public double gapDensity;
+
+    private final HalReader halReader = new HalReader(new ObjectMapper());
+
+    private final DateTimeSource dateTimeSource = new DateTimeSource();
+
+    private FeedStubServer server;
+
+    private FeedEndpointFactory feedEndpointFactory;
+
+    private AvailableFeedEntriesTracker availableFeedEntriesTracker;
+
+    private FeedConsumerImpl feedConsumer;
+
+    @Setup public void startServer() throws IOException
+    {
+        server = new FeedStubServer();
+        server.serve(new SyntheticFeed(server.feedUrl(), entries, pageSize, gapDensity));
+        feedEndpointFactory = new FeedEndpointFactory(ClientBuilder.newHttpClient(60000));
+    }
+
+    @Setup(Level.Invocation) public void createConsumer()
+    {
+        final InMemoryFeedTracker feedTracker = new InMemoryFeedTracker(dateTimeSource);
+
+        availableFeedEntriesTracker = new AvailableFeedEntriesTracker(feedEndpointFactory.create(server.feedUrl()), feedEndpointFactory, feedTracker, halReader,
+                                                                      new NonContiguousEntryIdTracker(feedTracker),
+                                                                      new PageOfSeenEntriesFactory(feedTracker, Optional.<EarliestEntryLimit>absent()));
+
+        final EntryConsumerImpl entryConsumer = new EntryConsumerImpl(feedTracker, new ConsumeAction()
+        {
+            @Override public Result consume(final FeedEntry feedEntry)
+            {
+                return Result.successful();
+            }
+        }, new DefaultResourceResolver(server.feedUrl(), feedEndpointFactory, halReader), Collections.<EntryConsumerListener>emptyList(), Optional.<Integer>absent(),
+                                                                      new Interval(15, MINUTES), dateTimeSource);
+
+        feedConsumer = new FeedConsumerImpl(entryConsumer, feedTracker, Collections.<FeedPollingListener>emptyList());
+    }
+
+    @TearDown public void stopServer()
+    {
+        server.stop();
+    }
+
+    @Benchmark public List<TrackedEntry> poll() throws Exception
+    {
+        availableFeedEntriesTracker.trackNewEntries();
+        return feedConsumer.consume();
+    }
+}
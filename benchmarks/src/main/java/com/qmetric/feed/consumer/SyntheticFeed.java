@@ -0,0 +1,99 @@
+package com.qmetric.feed.consumer;
+
+import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * HAL+JSON feed of generated entries, laid out the way hal-feed-server pages it: the latest page holds the newest entries,
+ * newest first, and links to the page of older entries as "next".
+ */
+class SyntheticFeed
+{
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormat.forPattern("dd/MM/yyyy HH:mm:ss");
+
+    private static final DateTime FIRST_PUBLISHED = new DateTime(2013, 5, 1, 0, 0, 0, 0);
+
+    private final String feedUrl;
+
+    private final int pageSize;
+
+    private final List<Long> ids = new ArrayList<Long>();
+
+    /**
+     * @param gapDensity Probability of each id being left out of the feed, as when entries are published out of order.
+     */
+    SyntheticFeed(final String feedUrl, final int entries, final int pageSize, final double gapDensity)
+    {
+        this.feedUrl = feedUrl;
+        this.pageSize = pageSize;
+
+        final Random random = new Random(entries);
+        for (long id = 1; ids.size() < entries; id++)
+        {
+            if (random.nextDouble() >= gapDensity)
+            {
+                ids.add(id);
+            }
+        }
+    }
+
+    int pages()
+    {
+        return (ids.size() + pageSize - 1) / pageSize;
+    }
+
+    List<Long> ids()
+    {
+        return ids;
+    }
+
+    boolean contains(final long id)
+    {
+        return Collections.binarySearch(ids, id) >= 0;
+    }
+
+    /**
+     * @param page 0 for the latest page.
+     */
+    String page(final int page)
+    {
+        final int newest = ids.size() - 1 - page * pageSize;
+        final int oldest = Math.max(newest - pageSize + 1, 0);
+
+        final StringBuilder json = new StringBuilder(256 + pageSize * 160);
+        json.append("{\"_links\":{\"self\":{\"href\":\"").append(pageUrl(page)).append("\"}");
+        if (page + 1 < pages())
+        {
+            json.append(",\"next\":{\"href\":\"").append(pageUrl(page + 1)).append("\"}");
+        }
+        if (page > 0)
+        {
+            json.append(",\"previous\":{\"href\":\"").append(pageUrl(page - 1)).append("\"}");
+        }
+        json.append("},\"_embedded\":{\"entries\":[");
+        for (int i = newest; i >= oldest; i--)
+        {
+            json.append(entry(ids.get(i))).append(i > oldest ? "," : "");
+        }
+        json.append("]}}");
+
+        return json.toString();
+    }
+
+    String entry(final long id)
+    {
+        return "{\"_links\":{\"self\":{\"href\":\"" + feedUrl + "/" + id + "\"}},\"_id\":\"" + id + "\",\"_published\":\"" +
+               DATE_FORMATTER.print(FIRST_PUBLISHED.plusSeconds((int) id)) + "\",\"payload\":\"entry " + id + "\"}";
+    }
+
+    String pageUrl(final int page)
+    {
+        return page == 0 ? feedUrl : feedUrl + "?page=" + page;
+    }
+}
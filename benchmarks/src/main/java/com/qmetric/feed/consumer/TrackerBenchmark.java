@@ -0,0 +1,139 @@
+package com.qmetric.feed.consumer;
+
+import com.google.common.io.Files;
+import com.qmetric.feed.consumer.store.BatchFeedTracker;
+import com.qmetric.feed.consumer.store.referenceimplementation.FileFeedTracker;
+import com.qmetric.feed.consumer.store.referenceimplementation.InMemoryFeedTracker;
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracker operations against a store already holding a given number of entries, all consumed but for the most recent
+ * {@link #PENDING_ENTRIES}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class TrackerBenchmark
+{
+    private static final int PENDING_ENTRIES = 1000;
+
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public int entries;
+
+    @Param({"inMemory", "file"})
+    public String implementation;
+
+    private final DateTimeSource dateTimeSource = new DateTimeSource();
+
+    private final Random random = new Random(1);
+
+    private BatchFeedTracker feedTracker;
+
+    private File directory;
+
+    private long nextId;
+
+    @Setup public void setUp()
+    {
+        if ("file".equals(implementation))
+        {
+            directory = Files.createTempDir();
+            feedTracker = new FileFeedTracker(directory, dateTimeSource);
+        }
+        else
+        {
+            feedTracker = new InMemoryFeedTracker(dateTimeSource);
+        }
+
+        final DateTime published = dateTimeSource.now();
+        for (long first = 1; first <= entries; first += PAGE_SIZE)
+        {
+            final List<SeenEntry> page = new ArrayList<SeenEntry>(PAGE_SIZE);
+            final List<EntryId> ids = new ArrayList<EntryId>(PAGE_SIZE);
+            for (long id = first; id < first + PAGE_SIZE && id <= entries; id++)
+            {
+                page.add(new SeenEntry(EntryId.of(id), published));
+                if (id <= entries - PENDING_ENTRIES)
+                {
+                    ids.add(EntryId.of(id));
+                }
+            }
+            feedTracker.trackAll(page);
+            feedTracker.markAllAsConsumed(ids);
+        }
+        nextId = entries + 1;
+    }
+
+    @TearDown public void tearDown() throws IOException
+    {
+        if (directory != null)
+        {
+            ((FileFeedTracker) feedTracker).close();
+            for (final File file : directory.listFiles())
+            {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    @Benchmark public boolean isTrackedHit()
+    {
+        return feedTracker.isTracked(EntryId.of(1 + random.nextInt(entries)));
+    }
+
+    @Benchmark public boolean isTrackedMiss()
+    {
+        return feedTracker.isTracked(EntryId.of(entries + 1 + random.nextInt(entries)));
+    }
+
+    @Benchmark public Set<EntryId> isTrackedPage()
+    {
+        final long first = 1 + random.nextInt(entries);
+        final Collection<EntryId> ids = new ArrayList<EntryId>(PAGE_SIZE);
+        for (long id = first; id < first + PAGE_SIZE; id++)
+        {
+            ids.add(EntryId.of(id));
+        }
+        return feedTracker.isTracked(ids);
+    }
+
+    @Benchmark public void trackAndConsume() throws Exception
+    {
+        final EntryId id = EntryId.of(nextId++);
+        feedTracker.track(new SeenEntry(id, dateTimeSource.now()));
+        feedTracker.markAsConsuming(id);
+        feedTracker.markAsConsumed(id);
+    }
+
+    @Benchmark public Iterable<TrackedEntry> getEntriesToBeConsumed()
+    {
+        return feedTracker.getEntriesToBeConsumed();
+    }
+}
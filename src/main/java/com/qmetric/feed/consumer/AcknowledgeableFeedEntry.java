@@ -0,0 +1,74 @@
+package com.qmetric.feed.consumer;
+
+import com.qmetric.feed.consumer.store.FeedTracker;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Feed entry delivered by a {@link FeedEntryPublisher}, held as being consumed until acknowledged with the result of consuming it.
+ */
+public class AcknowledgeableFeedEntry
+{
+    public final FeedEntry entry;
+
+    final TrackedEntry trackedEntry;
+
+    private final FeedTracker feedTracker;
+
+    private final Collection<EntryConsumerListener> listeners;
+
+    private final AtomicBoolean acknowledged = new AtomicBoolean();
+
+    AcknowledgeableFeedEntry(final FeedEntry entry, final TrackedEntry trackedEntry, final FeedTracker feedTracker, final Collection<EntryConsumerListener> listeners)
+    {
+        this.entry = entry;
+        this.trackedEntry = trackedEntry;
+        this.feedTracker = feedTracker;
+        this.listeners = listeners;
+    }
+
+    public EntryId id()
+    {
+        return trackedEntry.id;
+    }
+
+    /**
+     * Marks the entry as consumed when successful, retrying while the feed tracker fails to as when consumed with a consume action.
+     * Otherwise fails the entry, scheduling it to be delivered again when the result asks for a retry.
+     *
+     * @throws IllegalStateException when the entry could not be marked as consumed, left marked as consuming.
+     */
+    public void acknowledge(final Result result)
+    {
+        checkState(acknowledged.compareAndSet(false, true), "Entry %s already acknowledged", trackedEntry.id);
+
+        if (result.failure())
+        {
+            feedTracker.fail(trackedEntry, result.state == Result.State.RETRY_UNSUCCESSFUL);
+        }
+        else
+        {
+            markAsConsumed();
+
+            for (final EntryConsumerListener listener : listeners)
+            {
+                listener.consumed(trackedEntry.id);
+            }
+        }
+    }
+
+    private void markAsConsumed()
+    {
+        try
+        {
+            EntryConsumerImpl.markAsConsumed(feedTracker, trackedEntry.id);
+        }
+        catch (final Exception e)
+        {
+            throw new IllegalStateException(String.format("Failed to mark entry %s as consumed", trackedEntry.id), e);
+        }
+    }
+}
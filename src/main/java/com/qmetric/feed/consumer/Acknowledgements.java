@@ -0,0 +1,278 @@
+package com.qmetric.feed.consumer;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.qmetric.feed.consumer.store.BatchFeedTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Queues entries consumed to be marked as consumed in the background, in batches, so that consumption carries on while the feed
+ * tracker is unavailable rather than waiting on it for each entry.
+ * <p/>
+ * A batch failing to be marked as consumed is tried again after a backoff doubling from the given initial backoff up to the given
+ * maximum, each delay randomised by up to half so that consumers recovering together do not all retry at once. Entries stay marked
+ * as consuming until acknowledged; those still queued when the consumer stops are left so.
+ * <p/>
+ * At most the given number of entries wait to be marked as consumed; consumers acknowledging further entries block until there is
+ * room, so that a feed tracker unavailable for long slows consumption down rather than exhausting memory.
+ * <p/>
+ * Leases of entries waiting can be held on to until the entries are marked as consumed, so that they are not consumed again meanwhile.
+ */
+class Acknowledgements
+{
+    private static final Logger LOG = LoggerFactory.getLogger(Acknowledgements.class);
+
+    private static final int MAX_BATCH_SIZE = 100;
+
+    private static final long FULL_QUEUE_WAIT_MILLIS = 100;
+
+    private final BatchFeedTracker feedTracker;
+
+    private final Interval initialBackoff;
+
+    private final Interval maxBackoff;
+
+    private final ScheduledExecutorService flushes;
+
+    private final DateTimeSource dateTimeSource;
+
+    private final Random random;
+
+    private final BlockingQueue<Acknowledgement> queue;
+
+    private final Set<EntryId> waiting = Collections.newSetFromMap(new ConcurrentHashMap<EntryId, Boolean>());
+
+    private final ConcurrentMap<EntryId, Future<?>> leaseRenewals = new ConcurrentHashMap<EntryId, Future<?>>();
+
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private final Meter retries = new Meter();
+
+    private int failuresInARow;
+
+    Acknowledgements(final BatchFeedTracker feedTracker, final int maxWaiting, final Interval initialBackoff, final Interval maxBackoff,
+                     final ScheduledExecutorService flushes, final DateTimeSource dateTimeSource)
+    {
+        this(feedTracker, maxWaiting, initialBackoff, maxBackoff, flushes, dateTimeSource, new Random());
+    }
+
+    Acknowledgements(final BatchFeedTracker feedTracker, final int maxWaiting, final Interval initialBackoff, final Interval maxBackoff,
+                     final ScheduledExecutorService flushes, final DateTimeSource dateTimeSource, final Random random)
+    {
+        this.feedTracker = feedTracker;
+        this.queue = new LinkedBlockingQueue<Acknowledgement>(maxWaiting);
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.flushes = flushes;
+        this.dateTimeSource = dateTimeSource;
+        this.random = random;
+    }
+
+    /**
+     * Queues the given entry to be marked as consumed, returning straight away unless the queue is full, in which case waits for room.
+     *
+     * @throws IllegalStateException when the queue is full and no longer flushed.
+     */
+    void acknowledge(final EntryId id) throws InterruptedException
+    {
+        final Acknowledgement acknowledgement = new Acknowledgement(id, dateTimeSource.now().getMillis());
+
+        waiting.add(id);
+        while (!queue.offer(acknowledgement, FULL_QUEUE_WAIT_MILLIS, MILLISECONDS))
+        {
+            if (flushes.isShutdown())
+            {
+                waiting.remove(id);
+                throw new IllegalStateException(String.format("Acknowledgements no longer flushed, entry %s left marked as consuming", id));
+            }
+        }
+
+        if (flushScheduled.compareAndSet(false, true))
+        {
+            scheduleFlush(0);
+        }
+    }
+
+    /**
+     * Keeps renewing the lease of the given entry, acknowledged already, until it is marked as consumed, cancelling the renewal
+     * straight away when it is already.
+     */
+    void renewUntilMarked(final EntryId id, final Future<?> leaseRenewal)
+    {
+        leaseRenewals.put(id, leaseRenewal);
+
+        if (!waiting.contains(id))
+        {
+            stopRenewing(id); // marked before the renewal was put, its flush may have missed it
+        }
+    }
+
+    private void stopRenewing(final EntryId id)
+    {
+        final Future<?> leaseRenewal = leaseRenewals.remove(id);
+        if (leaseRenewal != null)
+        {
+            leaseRenewal.cancel(false);
+        }
+    }
+
+    private void scheduleFlush(final long delay)
+    {
+        try
+        {
+            flushes.schedule(flushing(), delay, MILLISECONDS);
+        }
+        catch (RejectedExecutionException e)
+        {
+            LOG.warn("Acknowledgements no longer flushed, {} entries left marked as consuming", queue.size());
+        }
+    }
+
+    private Runnable flushing()
+    {
+        return new Runnable()
+        {
+            @Override public void run()
+            {
+                flush();
+            }
+        };
+    }
+
+    private void flush()
+    {
+        while (!queue.isEmpty())
+        {
+            final List<Acknowledgement> batch = oldest(MAX_BATCH_SIZE);
+            try
+            {
+                feedTracker.markAllAsConsumed(idsOf(batch));
+            }
+            catch (Throwable e) // an error escaping would leave the flush neither rescheduled nor done, acknowledgements piling up for good
+            {
+                final long backoff = backoffAfter(++failuresInARow);
+                LOG.warn("Failed to mark {} entries as consumed, trying again in {} ms", batch.size(), backoff, e);
+                retries.mark();
+                scheduleFlush(backoff);
+                return;
+            }
+
+            failuresInARow = 0;
+            for (final Acknowledgement acknowledgement : batch)
+            {
+                queue.remove(); // only flushes take from the queue, so the batch is still at its head
+                waiting.remove(acknowledgement.id);
+                stopRenewing(acknowledgement.id);
+            }
+        }
+
+        flushScheduled.set(false);
+
+        if (!queue.isEmpty() && flushScheduled.compareAndSet(false, true))
+        {
+            scheduleFlush(0);
+        }
+    }
+
+    private List<Acknowledgement> oldest(final int max)
+    {
+        final List<Acknowledgement> oldest = new ArrayList<Acknowledgement>(Math.min(queue.size(), max));
+        for (final Acknowledgement acknowledgement : queue)
+        {
+            if (oldest.size() == max)
+            {
+                break;
+            }
+            oldest.add(acknowledgement);
+        }
+        return oldest;
+    }
+
+    private static List<EntryId> idsOf(final List<Acknowledgement> acknowledgements)
+    {
+        final List<EntryId> ids = new ArrayList<EntryId>(acknowledgements.size());
+        for (final Acknowledgement acknowledgement : acknowledgements)
+        {
+            ids.add(acknowledgement.id);
+        }
+        return ids;
+    }
+
+    /**
+     * @return Initial backoff doubled for each failure after the first, up to the maximum backoff, less a random amount of up to half.
+     */
+    long backoffAfter(final int failures)
+    {
+        final long backoff = Math.min(initialBackoff.asMillis() << Math.min(failures - 1, 30), maxBackoff.asMillis());
+        final long jitter = (long) (random.nextDouble() * (backoff / 2));
+
+        return Math.max(backoff - jitter, 1);
+    }
+
+    /**
+     * @return Gauge of the number of entries waiting to be marked as consumed.
+     */
+    Gauge<Integer> depth()
+    {
+        return new Gauge<Integer>()
+        {
+            @Override public Integer getValue()
+            {
+                return queue.size();
+            }
+        };
+    }
+
+    /**
+     * @return Gauge of the time in milliseconds the oldest entry waiting to be marked as consumed has been waiting, 0 when none.
+     */
+    Gauge<Long> age()
+    {
+        return new Gauge<Long>()
+        {
+            @Override public Long getValue()
+            {
+                final Acknowledgement oldest = queue.peek();
+                return oldest == null ? 0 : Math.max(dateTimeSource.now().getMillis() - oldest.queuedAt, 0);
+            }
+        };
+    }
+
+    /**
+     * @return Meter of attempts to mark entries as consumed failed, to be tried again.
+     */
+    Meter retries()
+    {
+        return retries;
+    }
+
+    private static class Acknowledgement
+    {
+        final EntryId id;
+
+        final long queuedAt;
+
+        Acknowledgement(final EntryId id, final long queuedAt)
+        {
+            this.id = id;
+            this.queuedAt = queuedAt;
+        }
+    }
+}
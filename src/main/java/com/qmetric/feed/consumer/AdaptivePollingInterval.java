@@ -0,0 +1,90 @@
+package com.qmetric.feed.consumer;
+
+import com.codahale.metrics.Gauge;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Delay before the next poll, adapted to the outcome of the last one: polls again straight away while new entries keep turning up,
+ * after the minimum interval while entries are still being consumed, and backs off towards the maximum interval while polls find nothing.
+ * Only entries consumed successfully since the last poll count, so that entries failing over and over do not keep polling at the minimum interval.
+ */
+class AdaptivePollingInterval implements EntryConsumerListener
+{
+    private static final int BACK_OFF_FACTOR = 2;
+
+    private final long minMillis;
+
+    private final long maxMillis;
+
+    private final AtomicLong currentMillis;
+
+    private final AtomicInteger consumedSinceLastPoll = new AtomicInteger(0);
+
+    AdaptivePollingInterval(final Interval min, final Interval max)
+    {
+        checkArgument(min.asMillis() <= max.asMillis(), "Minimum polling interval must not be more than maximum");
+
+        this.minMillis = min.asMillis();
+        this.maxMillis = max.asMillis();
+        this.currentMillis = new AtomicLong(minMillis);
+    }
+
+    @Override public void consumed(final EntryId consumedEntry)
+    {
+        consumedSinceLastPoll.incrementAndGet();
+    }
+
+    /**
+     * @param newEntries Number of new entries tracked by the last poll.
+     * @return Delay in milliseconds before polling again, given the entries consumed successfully since the previous poll.
+     */
+    long next(final int newEntries)
+    {
+        return next(newEntries, consumedSinceLastPoll.getAndSet(0));
+    }
+
+    /**
+     * @param newEntries      Number of new entries tracked by the last poll.
+     * @param consumedEntries Number of entries consumed successfully since the previous poll.
+     * @return Delay in milliseconds before polling again.
+     */
+    long next(final int newEntries, final int consumedEntries)
+    {
+        final long next;
+
+        if (newEntries > 0)
+        {
+            next = 0;
+        }
+        else if (consumedEntries > 0)
+        {
+            next = minMillis;
+        }
+        else
+        {
+            next = Math.min(Math.max(currentMillis.get() * BACK_OFF_FACTOR, minMillis), maxMillis);
+        }
+
+        currentMillis.set(next);
+
+        return next;
+    }
+
+    /**
+     * @return Gauge of the current delay between polls, in milliseconds.
+     */
+    Gauge<Long> current()
+    {
+        return new Gauge<Long>()
+        {
+            @Override public Long getValue()
+            {
+                return currentMillis.get();
+            }
+        };
+    }
+}
@@ -1,18 +1,28 @@
 package com.qmetric.feed.consumer;
 
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
 import com.google.common.base.Optional;
+import com.qmetric.feed.consumer.store.BatchFeedTracker;
 import com.qmetric.feed.consumer.store.FeedTracker;
+import com.qmetric.feed.consumer.store.PageCursorStore;
 import com.qmetric.hal.reader.HalReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.qmetric.feed.consumer.store.BatchFeedTrackerAdapter.batching;
+import static com.qmetric.feed.consumer.store.InMemoryPageCursorStore.pageCursorStoreFor;
+
 class AvailableFeedEntriesTracker
 {
     private static final Logger LOG = LoggerFactory.getLogger(AvailableFeedEntriesTracker.class);
 
     private final FeedEndpoint endpoint;
 
-    private final FeedTracker feedTracker;
+    private final BatchFeedTracker feedTracker;
 
     private final HalReader halReader;
 
@@ -22,38 +32,118 @@ class AvailableFeedEntriesTracker
 
     private final PageOfSeenEntriesFactory pageOfSeenEntriesFactory;
 
+    private final ConditionalGet conditionalGet;
+
+    private final PageCursorStore pageCursorStore;
+
+    private final GapResolver gapResolver;
+
+    private final Histogram pagesFetched = new Histogram(new ExponentiallyDecayingReservoir());
+
     AvailableFeedEntriesTracker(final FeedEndpoint endpoint, final FeedEndpointFactory feedEndpointFactory, final FeedTracker feedTracker,
                                 final HalReader halReader, final NonContiguousEntryIdTracker nonContiguousEntryIdTracker, final PageOfSeenEntriesFactory pageOfSeenEntriesFactory)
+    {
+        this(endpoint, feedEndpointFactory, feedTracker, halReader, nonContiguousEntryIdTracker, pageOfSeenEntriesFactory, Optional.<ConditionalGet>absent(),
+             Optional.<PageCursorStore>absent(), Optional.<GapResolver>absent());
+    }
+
+    /**
+     * @param conditionalGet  Conditional requests for the latest page, a new one by default.
+     * @param pageCursorStore Keeps the page reached by each pass, which the next pass resumes from rather than walking back from the latest page.
+     *                        Defaults to the feed tracker if it stores page cursors, or to memory otherwise.
+     * @param gapResolver     Looks again, once the latest page is requested on each pass, for entries missing from the feed when gaps were recorded.
+     *                        Defaults to giving up on missing entries after the default timeout.
+     */
+    AvailableFeedEntriesTracker(final FeedEndpoint endpoint, final FeedEndpointFactory feedEndpointFactory, final FeedTracker feedTracker,
+                                final HalReader halReader, final NonContiguousEntryIdTracker nonContiguousEntryIdTracker, final PageOfSeenEntriesFactory pageOfSeenEntriesFactory,
+                                final Optional<ConditionalGet> conditionalGet, final Optional<PageCursorStore> pageCursorStore, final Optional<GapResolver> gapResolver)
     {
         this.endpoint = endpoint;
-        this.feedTracker = feedTracker;
+        this.feedTracker = batching(feedTracker);
         this.halReader = halReader;
         this.feedEndpointFactory = feedEndpointFactory;
         this.nonContiguousEntryIdTracker = nonContiguousEntryIdTracker;
         this.pageOfSeenEntriesFactory = pageOfSeenEntriesFactory;
+        this.conditionalGet = conditionalGet.or(new ConditionalGet());
+        this.pageCursorStore = pageCursorStore.isPresent() ? pageCursorStore.get() : pageCursorStoreFor(feedTracker);
+        this.gapResolver = gapResolver.isPresent() ? gapResolver.get()
+                                                   : new GapResolver(feedEndpointFactory, halReader, feedTracker, pageOfSeenEntriesFactory,
+                                                                     GapResolver.DEFAULT_MISSING_ENTRIES_TIMEOUT, new DateTimeSource());
     }
 
-    public void trackNewEntries()
+    /**
+     * @return Number of new entries tracked.
+     */
+    public int trackNewEntries()
     {
-        final UntrackedPageIterator pagesWithUntrackedEntries = new UntrackedPageIterator(halReader, endpoint, feedEndpointFactory, pageOfSeenEntriesFactory);
+        final UntrackedPageIterator pagesWithUntrackedEntries = new UntrackedPageIterator(halReader, endpoint, feedEndpointFactory, pageOfSeenEntriesFactory, conditionalGet,
+                                                                                         pageCursorStore.getPageCursor(), Optional.<Integer>absent());
+
+        gapResolver.resolveGaps(pagesWithUntrackedEntries.hasNext());
+        final int newEntries;
+        try
+        {
+            newEntries = trackEntriesFrom(pagesWithUntrackedEntries);
+        }
+        finally
+        {
+            pagesFetched.update(pagesWithUntrackedEntries.pagesFetched());
+        }
 
+        conditionalGet.confirm();
+
+        return newEntries;
+    }
+
+    /**
+     * @return Number of feed pages received by each tracking pass.
+     */
+    Histogram pagesFetched()
+    {
+        return pagesFetched;
+    }
+
+    private int trackEntriesFrom(final UntrackedPageIterator pagesWithUntrackedEntries)
+    {
         Optional<SeenEntry> previousEntry = Optional.absent();
+        int tracked = 0;
 
         while (pagesWithUntrackedEntries.hasNext())
         {
-            for (final SeenEntry entry : pagesWithUntrackedEntries.next().all())
+            final List<SeenEntry> newEntries = new ArrayList<SeenEntry>();
+            final List<SeenEntry> pageEntries = pagesWithUntrackedEntries.next().all();
+
+            for (final SeenEntry entry : pageEntries)
             {
-                nonContiguousEntryIdTracker.trackMissingEntriesWithIdBetweenPreviousAndCurrentEntry(entry, previousEntry);
+                nonContiguousEntryIdTracker.trackMissingEntriesWithIdBetweenPreviousAndCurrentEntry(entry, previousEntry, pagesWithUntrackedEntries.lastPageUrl());
 
                 if (entry.notAlreadyTracked())
                 {
                     LOG.info("found new entry {}", entry);
 
-                    feedTracker.track(entry);
+                    newEntries.add(entry);
                 }
 
                 previousEntry = Optional.of(entry);
             }
+
+            if (!newEntries.isEmpty())
+            {
+                feedTracker.trackAll(newEntries);
+                tracked += newEntries.size();
+            }
+
+            saveCursor(pagesWithUntrackedEntries.lastPageUrl(), pageEntries);
+        }
+
+        return tracked;
+    }
+
+    private void saveCursor(final Optional<String> pageUrl, final List<SeenEntry> pageEntries)
+    {
+        if (pageUrl.isPresent() && !pageEntries.isEmpty())
+        {
+            pageCursorStore.savePageCursor(new PageCursor(pageUrl.get(), pageEntries.get(pageEntries.size() - 1).id));
         }
     }
 }
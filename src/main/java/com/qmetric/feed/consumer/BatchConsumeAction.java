@@ -0,0 +1,14 @@
+package com.qmetric.feed.consumer;
+
+import java.util.List;
+
+/**
+ * Consumes feed entries several at a time, e.g. to write them to a store in bulk.
+ */
+public interface BatchConsumeAction
+{
+    /**
+     * @return The result of consuming each of the given entries, in the same order.
+     */
+    List<Result> consume(List<FeedEntry> feedEntries);
+}
@@ -1,28 +1,47 @@
 package com.qmetric.feed.consumer;
 
+import com.google.common.base.Optional;
+import org.apache.http.HttpResponse;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
 import org.apache.http.conn.socket.ConnectionSocketFactory;
 import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLContexts;
 import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.client.IdleConnectionEvictor;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
 
 public class ClientBuilder
 {
+    private static final int EXPIRED_EVICTION_PERIOD_SECONDS = 10;
+
     public static HttpClient newHttpClient(final int timeout)
     {
         return newHttpClient(timeout, null);
     }
 
     public static HttpClient newHttpClient(final int timeout, final FeedConsumerConfiguration.Credentials credentials)
+    {
+        final ConnectionPoolConfiguration pool = new ConnectionPoolConfiguration().withConnectTimeout(timeout, MILLISECONDS).withSocketTimeout(timeout, MILLISECONDS);
+
+        return newHttpClient(newConnectionManager(pool), pool, credentials);
+    }
+
+    public static PoolingHttpClientConnectionManager newConnectionManager(final ConnectionPoolConfiguration pool)
     {
         final PlainConnectionSocketFactory socketFactory = PlainConnectionSocketFactory.getSocketFactory();
         final SSLConnectionSocketFactory secureSocketFactory = new SSLConnectionSocketFactory(SSLContexts.createDefault());
@@ -32,17 +51,53 @@ public class ClientBuilder
         registryBuilder.register("https", secureSocketFactory);
 
         final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(registryBuilder.build());
-        connectionManager.setDefaultMaxPerRoute(10);
+        connectionManager.setMaxTotal(pool.getMaxTotal());
+        connectionManager.setDefaultMaxPerRoute(pool.getMaxPerRoute());
+
+        return connectionManager;
+    }
+
+    public static CloseableHttpClient newHttpClient(final PoolingHttpClientConnectionManager connectionManager, final ConnectionPoolConfiguration pool,
+                                                    final FeedConsumerConfiguration.Credentials credentials)
+    {
+        return newHttpClient(connectionManager, pool, credentials, false);
+    }
 
+    /**
+     * @param connectionManagerShared Whether the connection manager is shared with other clients, in which case closing the client leaves it open
+     *                                and idle or expired connections are not evicted on behalf of the client (see {@link #newIdleConnectionEvictor}).
+     */
+    public static CloseableHttpClient newHttpClient(final PoolingHttpClientConnectionManager connectionManager, final ConnectionPoolConfiguration pool,
+                                                    final FeedConsumerConfiguration.Credentials credentials, final boolean connectionManagerShared)
+    {
         final HttpClientBuilder clientBuilder = HttpClients.custom();
 
+        clientBuilder.setConnectionManager(connectionManager);
+        clientBuilder.setConnectionManagerShared(connectionManagerShared);
+
         RequestConfig requestConfig = RequestConfig.custom()
-                .setConnectTimeout(timeout)
-                .setSocketTimeout(timeout)
+                .setConnectTimeout((int) pool.getConnectTimeout().asMillis())
+                .setSocketTimeout((int) pool.getSocketTimeout().asMillis())
+                .setConnectionRequestTimeout((int) pool.getConnectionRequestTimeout().asMillis())
                 .build();
 
         clientBuilder.setDefaultRequestConfig(requestConfig);
 
+        if (pool.getKeepAlive().isPresent())
+        {
+            clientBuilder.setKeepAliveStrategy(keepAliveAtMost(pool.getKeepAlive().get()));
+        }
+
+        if (pool.getIdleEviction().isPresent() && !connectionManagerShared)
+        {
+            clientBuilder.evictIdleConnections(pool.getIdleEviction().get().time, pool.getIdleEviction().get().unit);
+        }
+
+        if (pool.isExpiredEviction() && !connectionManagerShared)
+        {
+            clientBuilder.evictExpiredConnections();
+        }
+
         if (credentials != null)
         {
             CredentialsProvider credsProvider = new BasicCredentialsProvider();
@@ -54,4 +109,38 @@ public class ClientBuilder
 
         return clientBuilder.build();
     }
+
+    /**
+     * Http clients only evict connections from a connection manager of their own. A shared connection manager needs an evictor of its own,
+     * to be started and shut down along with the connection manager.
+     */
+    public static Optional<IdleConnectionEvictor> newIdleConnectionEvictor(final PoolingHttpClientConnectionManager connectionManager, final ConnectionPoolConfiguration pool)
+    {
+        if (pool.getIdleEviction().isPresent())
+        {
+            final Interval idleEviction = pool.getIdleEviction().get();
+            return Optional.of(new IdleConnectionEvictor(connectionManager, idleEviction.time, idleEviction.unit, idleEviction.time, idleEviction.unit));
+        }
+        else if (pool.isExpiredEviction())
+        {
+            return Optional.of(new IdleConnectionEvictor(connectionManager, EXPIRED_EVICTION_PERIOD_SECONDS, SECONDS, 0, null));
+        }
+        else
+        {
+            return Optional.absent();
+        }
+    }
+
+    static ConnectionKeepAliveStrategy keepAliveAtMost(final Interval keepAlive)
+    {
+        return new ConnectionKeepAliveStrategy()
+        {
+            @Override public long getKeepAliveDuration(final HttpResponse response, final HttpContext context)
+            {
+                final long requestedByServer = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+
+                return requestedByServer > 0 ? Math.min(requestedByServer, keepAlive.asMillis()) : keepAlive.asMillis();
+            }
+        };
+    }
 }
@@ -0,0 +1,122 @@
+package com.qmetric.feed.consumer;
+
+import com.codahale.metrics.Meter;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.net.HttpURLConnection.HTTP_NOT_MODIFIED;
+import static java.net.HttpURLConnection.HTTP_OK;
+
+/**
+ * Remembers the validators (ETag / Last-Modified) of feed pages by url so they can be requested conditionally.
+ * Validators received during a tracking pass only take effect once the pass has been confirmed as complete,
+ * so a page is never skipped as not modified while entries from it may still be untracked.
+ */
+class ConditionalGet
+{
+    private static final String ETAG = "ETag";
+
+    private static final String LAST_MODIFIED = "Last-Modified";
+
+    private static final String IF_NONE_MATCH = "If-None-Match";
+
+    private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private final ConcurrentMap<String, Validators> confirmed = new ConcurrentHashMap<String, Validators>();
+
+    private final ConcurrentMap<String, Validators> pending = new ConcurrentHashMap<String, Validators>();
+
+    private final Meter requests = new Meter();
+
+    private final Meter notModified = new Meter();
+
+    void addConditionsTo(final HttpGet request)
+    {
+        final Validators validators = confirmed.get(urlOf(request));
+
+        if (validators != null)
+        {
+            if (validators.etag != null)
+            {
+                request.setHeader(IF_NONE_MATCH, validators.etag);
+            }
+            if (validators.lastModified != null)
+            {
+                request.setHeader(IF_MODIFIED_SINCE, validators.lastModified);
+            }
+        }
+    }
+
+    void received(final HttpGet request, final HttpResponse response)
+    {
+        final int statusCode = response.getStatusLine().getStatusCode();
+
+        requests.mark();
+
+        if (statusCode == HTTP_NOT_MODIFIED)
+        {
+            notModified.mark();
+        }
+        else if (statusCode == HTTP_OK)
+        {
+            final Validators validators = new Validators(valueOf(response.getFirstHeader(ETAG)), valueOf(response.getFirstHeader(LAST_MODIFIED)));
+
+            if (validators.isEmpty())
+            {
+                confirmed.remove(urlOf(request));
+            }
+            else
+            {
+                pending.put(urlOf(request), validators);
+            }
+        }
+    }
+
+    void confirm()
+    {
+        confirmed.putAll(pending);
+        pending.clear();
+    }
+
+    Meter requests()
+    {
+        return requests;
+    }
+
+    Meter notModified()
+    {
+        return notModified;
+    }
+
+    private static String urlOf(final HttpGet request)
+    {
+        return request.getURI().toString();
+    }
+
+    private static String valueOf(final Header header)
+    {
+        return header != null ? header.getValue() : null;
+    }
+
+    private static class Validators
+    {
+        private final String etag;
+
+        private final String lastModified;
+
+        private Validators(final String etag, final String lastModified)
+        {
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        private boolean isEmpty()
+        {
+            return etag == null && lastModified == null;
+        }
+    }
+}
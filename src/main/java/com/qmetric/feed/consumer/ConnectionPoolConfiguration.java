@@ -0,0 +1,137 @@
+package com.qmetric.feed.consumer;
+
+import com.google.common.base.Optional;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkState;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Settings of the pool of http connections used to read the feed and its entries.
+ */
+public class ConnectionPoolConfiguration
+{
+    private static final Interval DEFAULT_TIMEOUT = new Interval(60, SECONDS);
+
+    private int maxTotal = 20;
+
+    private int maxPerRoute = 10;
+
+    private Optional<Interval> keepAlive = Optional.absent();
+
+    private Optional<Interval> idleEviction = Optional.absent();
+
+    private boolean expiredEviction = false;
+
+    private Interval connectTimeout = DEFAULT_TIMEOUT;
+
+    private Interval socketTimeout = DEFAULT_TIMEOUT;
+
+    private Interval connectionRequestTimeout = DEFAULT_TIMEOUT;
+
+    public ConnectionPoolConfiguration withMaxTotal(final int maxTotal)
+    {
+        checkState(maxTotal > 0, "Max total must be more than 0");
+        this.maxTotal = maxTotal;
+
+        return this;
+    }
+
+    public ConnectionPoolConfiguration withMaxPerRoute(final int maxPerRoute)
+    {
+        checkState(maxPerRoute > 0, "Max per route must be more than 0");
+        this.maxPerRoute = maxPerRoute;
+
+        return this;
+    }
+
+    /**
+     * Keeps idle connections alive for at most the given time, or less when the server asks for it with a Keep-Alive header.
+     * Connections are otherwise kept alive for as long as the server allows.
+     */
+    public ConnectionPoolConfiguration keepAliveFor(final long time, final TimeUnit unit)
+    {
+        this.keepAlive = Optional.of(new Interval(time, unit));
+
+        return this;
+    }
+
+    public ConnectionPoolConfiguration evictIdleConnectionsAfter(final long time, final TimeUnit unit)
+    {
+        this.idleEviction = Optional.of(new Interval(time, unit));
+
+        return this;
+    }
+
+    public ConnectionPoolConfiguration evictExpiredConnections()
+    {
+        this.expiredEviction = true;
+
+        return this;
+    }
+
+    public ConnectionPoolConfiguration withConnectTimeout(final long time, final TimeUnit unit)
+    {
+        this.connectTimeout = new Interval(time, unit);
+
+        return this;
+    }
+
+    public ConnectionPoolConfiguration withSocketTimeout(final long time, final TimeUnit unit)
+    {
+        this.socketTimeout = new Interval(time, unit);
+
+        return this;
+    }
+
+    /**
+     * Time to wait for a connection to become available from the pool.
+     */
+    public ConnectionPoolConfiguration withConnectionRequestTimeout(final long time, final TimeUnit unit)
+    {
+        this.connectionRequestTimeout = new Interval(time, unit);
+
+        return this;
+    }
+
+    public int getMaxTotal()
+    {
+        return maxTotal;
+    }
+
+    public int getMaxPerRoute()
+    {
+        return maxPerRoute;
+    }
+
+    public Optional<Interval> getKeepAlive()
+    {
+        return keepAlive;
+    }
+
+    public Optional<Interval> getIdleEviction()
+    {
+        return idleEviction;
+    }
+
+    public boolean isExpiredEviction()
+    {
+        return expiredEviction;
+    }
+
+    public Interval getConnectTimeout()
+    {
+        return connectTimeout;
+    }
+
+    public Interval getSocketTimeout()
+    {
+        return socketTimeout;
+    }
+
+    public Interval getConnectionRequestTimeout()
+    {
+        return connectionRequestTimeout;
+    }
+}
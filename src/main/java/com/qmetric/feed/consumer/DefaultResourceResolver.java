@@ -4,8 +4,6 @@ import com.google.common.base.Optional;
 import com.qmetric.hal.reader.HalReader;
 import com.qmetric.hal.reader.HalResource;
 
-import java.io.Reader;
-
 import static java.lang.String.format;
 
 public class DefaultResourceResolver implements ResourceResolver
@@ -14,7 +12,7 @@ public class DefaultResourceResolver implements ResourceResolver
 
     private final String feedUrl;
 
-    private final HalReader halReader;
+    private final HalResourceReader halResourceReader;
 
     private final FeedEndpointFactory endpoint;
 
@@ -22,14 +20,12 @@ public class DefaultResourceResolver implements ResourceResolver
     {
         this.feedUrl = feedUrl;
         this.endpoint = endpoint;
-        this.halReader = halReader;
+        this.halResourceReader = new HalResourceReader(halReader);
     }
 
     @Override public Optional<HalResource> resolve(final EntryId id)
     {
-        final Optional<Reader> reader = endpoint.create(buildUrlToFeedEntry(id)).get();
-
-        return reader.isPresent() ? Optional.of(halReader.read(reader.get())) : Optional.<HalResource>absent();
+        return endpoint.create(buildUrlToFeedEntry(id)).get(halResourceReader);
     }
 
     private String buildUrlToFeedEntry(final EntryId id)
@@ -0,0 +1,50 @@
+package com.qmetric.feed.consumer;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.qmetric.hal.reader.HalResource;
+
+/**
+ * Holds entries embedded in feed pages so that they can be consumed without fetching each entry again.
+ * <p/>
+ * At most a fixed number of entries is held, least recently remembered entries being dropped first. An entry is handed out once only;
+ * retries of an entry fall back to fetching it from the feed.
+ */
+public class EmbeddedEntries
+{
+    static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private final Cache<EntryId, HalResource> entries;
+
+    private final Predicate<HalResource> completeRepresentation;
+
+    public EmbeddedEntries(final Predicate<HalResource> completeRepresentation)
+    {
+        this(completeRepresentation, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param completeRepresentation Whether an embedded entry holds the full entry, as opposed to a summary of it which has to be fetched.
+     * @param maxEntries             Maximum number of embedded entries held at any time.
+     */
+    public EmbeddedEntries(final Predicate<HalResource> completeRepresentation, final int maxEntries)
+    {
+        this.completeRepresentation = completeRepresentation;
+        this.entries = CacheBuilder.newBuilder().maximumSize(maxEntries).build();
+    }
+
+    public void remember(final EntryId id, final HalResource entry)
+    {
+        if (completeRepresentation.apply(entry))
+        {
+            entries.put(id, entry);
+        }
+    }
+
+    public Optional<HalResource> take(final EntryId id)
+    {
+        return Optional.fromNullable(entries.asMap().remove(id));
+    }
+}
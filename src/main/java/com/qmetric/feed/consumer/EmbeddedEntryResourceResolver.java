@@ -0,0 +1,27 @@
+package com.qmetric.feed.consumer;
+
+import com.google.common.base.Optional;
+import com.qmetric.hal.reader.HalResource;
+
+/**
+ * Resolves entries from the feed pages they were found on, falling back to another resolver for entries no longer held.
+ */
+public class EmbeddedEntryResourceResolver implements ResourceResolver
+{
+    private final EmbeddedEntries embeddedEntries;
+
+    private final ResourceResolver fallback;
+
+    public EmbeddedEntryResourceResolver(final EmbeddedEntries embeddedEntries, final ResourceResolver fallback)
+    {
+        this.embeddedEntries = embeddedEntries;
+        this.fallback = fallback;
+    }
+
+    @Override public Optional<HalResource> resolve(final EntryId id)
+    {
+        final Optional<HalResource> embedded = embeddedEntries.take(id);
+
+        return embedded.isPresent() ? embedded : fallback.resolve(id);
+    }
+}
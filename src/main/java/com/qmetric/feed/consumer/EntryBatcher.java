@@ -0,0 +1,250 @@
+package com.qmetric.feed.consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Gathers entries consumed by concurrent callers into batches for a {@link BatchConsumeAction}. A batch is consumed once it holds
+ * the maximum number of entries, or once the linger time has passed since its first entry joined, whichever comes first.
+ * Each caller waits for its batch to be consumed and gets the result for its own entry.
+ */
+class EntryBatcher
+{
+    private static final Logger LOG = LoggerFactory.getLogger(EntryBatcher.class);
+
+    private final BatchConsumeAction batchConsumeAction;
+
+    private final int maxBatchSize;
+
+    private final long lingerNanos;
+
+    private final SuccessfulEntries successfulEntries;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition batchConsumed = lock.newCondition();
+
+    private Batch filling;
+
+    /**
+     * @param successfulEntries Told of the entries of each batch consumed successfully, before their callers get their results.
+     */
+    EntryBatcher(final BatchConsumeAction batchConsumeAction, final int maxBatchSize, final Interval linger, final SuccessfulEntries successfulEntries)
+    {
+        checkArgument(maxBatchSize > 0, "Batch size must be more than 0");
+
+        this.batchConsumeAction = batchConsumeAction;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(linger.asMillis());
+        this.successfulEntries = successfulEntries;
+    }
+
+    /**
+     * @throws ExecutionException           When consuming the batch failed as a whole, with the cause of the failure.
+     * @throws NotMarkedAsConsumedException When the entry was consumed successfully, but telling of the successful entries of its batch failed.
+     */
+    Result consume(final TrackedEntry trackedEntry, final FeedEntry feedEntry) throws InterruptedException, ExecutionException, NotMarkedAsConsumedException
+    {
+        final Batch batch;
+        final int position;
+        Batch full = null;
+
+        lock.lock();
+        try
+        {
+            if (filling == null)
+            {
+                filling = new Batch(System.nanoTime() + lingerNanos);
+            }
+            batch = filling;
+            position = batch.add(trackedEntry, feedEntry);
+
+            if (batch.size() == maxBatchSize)
+            {
+                full = batch;
+                filling = null;
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        if (full != null)
+        {
+            consume(full);
+        }
+        else
+        {
+            awaitOrConsumeOnceLingered(batch);
+        }
+
+        return batch.resultAt(position);
+    }
+
+    private void awaitOrConsumeOnceLingered(final Batch batch) throws InterruptedException
+    {
+        Batch lingered = null;
+
+        lock.lock();
+        try
+        {
+            while (!batch.consumed && lingered == null)
+            {
+                final long remaining = batch.deadline - System.nanoTime();
+                if (remaining > 0)
+                {
+                    batchConsumed.awaitNanos(remaining);
+                }
+                else if (filling == batch)
+                {
+                    lingered = batch;
+                    filling = null;
+                }
+                else
+                {
+                    // taken by another caller, being consumed
+                    batchConsumed.await();
+                }
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        if (lingered != null)
+        {
+            consume(lingered);
+        }
+    }
+
+    private void consume(final Batch batch)
+    {
+        try
+        {
+            final List<Result> results = batchConsumeAction.consume(batch.feedEntries);
+            if (results == null || results.size() != batch.size())
+            {
+                throw new IllegalStateException(String.format("Batch consume action returned %s results for %s entries",
+                                                              results == null ? null : results.size(), batch.size()));
+            }
+            batch.results = results;
+        }
+        catch (final Throwable e)
+        {
+            LOG.warn("Failed consuming batch of {} entries", batch.size(), e);
+            batch.failure = e;
+        }
+
+        if (batch.results != null)
+        {
+            try
+            {
+                successfulEntries.consumed(batch.successful(batch.results));
+            }
+            catch (final Throwable e)
+            {
+                // entries were consumed, so are not failed, but left marked as consuming
+                LOG.warn("Failed marking entries of batch of {} entries consumed as consumed", batch.size(), e);
+                batch.notMarkedAsConsumed = e;
+            }
+        }
+
+        lock.lock();
+        try
+        {
+            batch.consumed = true;
+            batchConsumed.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    interface SuccessfulEntries
+    {
+        void consumed(List<TrackedEntry> trackedEntries) throws Exception;
+    }
+
+    /**
+     * Thrown for an entry consumed successfully whose batch could not be marked as consumed.
+     */
+    static class NotMarkedAsConsumedException extends Exception
+    {
+        NotMarkedAsConsumedException(final Throwable cause)
+        {
+            super(cause);
+        }
+    }
+
+    private static class Batch
+    {
+        final long deadline;
+
+        final List<TrackedEntry> trackedEntries = new ArrayList<TrackedEntry>();
+
+        final List<FeedEntry> feedEntries = new ArrayList<FeedEntry>();
+
+        boolean consumed;
+
+        List<Result> results;
+
+        Throwable failure;
+
+        Throwable notMarkedAsConsumed;
+
+        Batch(final long deadline)
+        {
+            this.deadline = deadline;
+        }
+
+        int add(final TrackedEntry trackedEntry, final FeedEntry feedEntry)
+        {
+            trackedEntries.add(trackedEntry);
+            feedEntries.add(feedEntry);
+            return trackedEntries.size() - 1;
+        }
+
+        int size()
+        {
+            return trackedEntries.size();
+        }
+
+        List<TrackedEntry> successful(final List<Result> results)
+        {
+            final List<TrackedEntry> successful = new ArrayList<TrackedEntry>();
+            for (int i = 0; i < results.size(); i++)
+            {
+                if (!results.get(i).failure())
+                {
+                    successful.add(trackedEntries.get(i));
+                }
+            }
+            return successful;
+        }
+
+        Result resultAt(final int position) throws ExecutionException, NotMarkedAsConsumedException
+        {
+            if (failure != null)
+            {
+                throw new ExecutionException(failure);
+            }
+            if (notMarkedAsConsumed != null && !results.get(position).failure())
+            {
+                throw new NotMarkedAsConsumedException(notMarkedAsConsumed);
+            }
+            return results.get(position);
+        }
+    }
+}
@@ -4,18 +4,25 @@ import com.github.rholder.retry.RetryException;
 import com.github.rholder.retry.RetryerBuilder;
 import com.google.common.base.Optional;
 import com.qmetric.feed.consumer.store.AlreadyConsumingException;
+import com.qmetric.feed.consumer.store.BatchFeedTracker;
 import com.qmetric.feed.consumer.store.FeedTracker;
 import com.qmetric.hal.reader.HalResource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import static com.github.rholder.retry.StopStrategies.stopAfterAttempt;
 import static com.github.rholder.retry.WaitStrategies.fixedWait;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
 import static com.qmetric.feed.consumer.Result.*;
+import static com.qmetric.feed.consumer.store.BatchFeedTrackerAdapter.batching;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
 public class EntryConsumerImpl implements EntryConsumer
@@ -29,7 +36,7 @@ public class EntryConsumerImpl implements EntryConsumer
 
     private final FeedTracker feedTracker;
 
-    private final ConsumeAction consumeAction;
+    private final Optional<ConsumeAction> consumeAction;
 
     private final ResourceResolver resourceResolver;
 
@@ -41,39 +48,128 @@ public class EntryConsumerImpl implements EntryConsumer
 
     private final DateTimeSource dateTimeSource;
 
+    private final Optional<EntryBatcher> batcher;
+
+    private final Optional<Leases> leases;
+
+    private final Optional<Acknowledgements> acknowledgements;
+
+    private final Optional<Delivery> delivery;
+
     public EntryConsumerImpl(final FeedTracker feedTracker, final ConsumeAction consumeAction, final ResourceResolver resourceResolver,
                              final Collection<EntryConsumerListener> listeners, final Optional<Integer> maxRetries, final Interval timeoutForMissingEntries,
                              final DateTimeSource dateTimeSource)
     {
-        this.feedTracker = feedTracker;
+        this(feedTracker, Optional.of(checkNotNull(consumeAction, "Missing consume action")), Optional.<EntryBatcher>absent(), Optional.<Leases>absent(),
+             Optional.<Acknowledgements>absent(), resourceResolver, listeners, maxRetries, timeoutForMissingEntries, dateTimeSource);
+    }
+
+    /**
+     * Consumes entries in batches, gathering entries consumed concurrently into batches of up to the given size, or whatever joined
+     * within the given linger time. Entries of a batch consumed successfully are marked as consumed together.
+     */
+    public EntryConsumerImpl(final FeedTracker feedTracker, final BatchConsumeAction batchConsumeAction, final int maxBatchSize, final Interval linger,
+                             final ResourceResolver resourceResolver, final Collection<EntryConsumerListener> listeners, final Optional<Integer> maxRetries,
+                             final Interval timeoutForMissingEntries, final DateTimeSource dateTimeSource)
+    {
+        this(feedTracker, Optional.<ConsumeAction>absent(), Optional.of(batcher(feedTracker, checkNotNull(batchConsumeAction, "Missing batch consume action"), maxBatchSize, linger)),
+             Optional.<Leases>absent(), Optional.<Acknowledgements>absent(), resourceResolver, listeners, maxRetries, timeoutForMissingEntries, dateTimeSource);
+    }
+
+    /**
+     * @param consumeAction    Action consuming each entry, unless consuming entries in batches with the given batcher.
+     * @param leases           Leases to mark entries as consuming under, renewed while each entry is being consumed.
+     * @param acknowledgements Queue to mark entries consumed as consumed in the background, rather than before returning.
+     */
+    EntryConsumerImpl(final FeedTracker feedTracker, final Optional<ConsumeAction> consumeAction, final Optional<EntryBatcher> batcher, final Optional<Leases> leases,
+                      final Optional<Acknowledgements> acknowledgements, final ResourceResolver resourceResolver, final Collection<EntryConsumerListener> listeners, final Optional<Integer> maxRetries,
+                      final Interval timeoutForMissingEntries, final DateTimeSource dateTimeSource)
+    {
+        this(feedTracker, consumeAction, batcher, leases, acknowledgements, Optional.<Delivery>absent(), resourceResolver, listeners, maxRetries, timeoutForMissingEntries,
+             dateTimeSource);
+    }
+
+    private EntryConsumerImpl(final FeedTracker feedTracker, final Optional<ConsumeAction> consumeAction, final Optional<EntryBatcher> batcher, final Optional<Leases> leases,
+                              final Optional<Acknowledgements> acknowledgements, final Optional<Delivery> delivery, final ResourceResolver resourceResolver,
+                              final Collection<EntryConsumerListener> listeners, final Optional<Integer> maxRetries, final Interval timeoutForMissingEntries,
+                              final DateTimeSource dateTimeSource)
+    {
+        checkArgument(consumeAction.isPresent() || batcher.isPresent() || delivery.isPresent(), "Missing consume action");
+
+        this.feedTracker = checkNotNull(feedTracker, "Missing feed tracker");
+        this.delivery = delivery;
         this.consumeAction = consumeAction;
-        this.resourceResolver = resourceResolver;
-        this.listeners = listeners;
+        this.batcher = batcher;
+        this.leases = leases;
+        this.acknowledgements = acknowledgements;
+        this.resourceResolver = checkNotNull(resourceResolver, "Missing resource resolver");
+        this.listeners = checkNotNull(listeners, "Missing entry consumer listeners");
         this.maxRetries = maxRetries;
         this.timeoutForMissingEntries = timeoutForMissingEntries;
         this.dateTimeSource = dateTimeSource;
     }
 
+    /**
+     * Entry consumer delivering each entry fetched to be consumed elsewhere rather than consuming it, the entry staying marked as
+     * consuming until the outcome is acknowledged.
+     */
+    static EntryConsumerImpl delivering(final FeedTracker feedTracker, final Delivery delivery, final ResourceResolver resourceResolver,
+                                        final Collection<EntryConsumerListener> listeners, final Optional<Integer> maxRetries, final Interval timeoutForMissingEntries,
+                                        final DateTimeSource dateTimeSource)
+    {
+        return new EntryConsumerImpl(feedTracker, Optional.<ConsumeAction>absent(), Optional.<EntryBatcher>absent(), Optional.<Leases>absent(), Optional.<Acknowledgements>absent(),
+                                     Optional.of(delivery), resourceResolver, listeners, maxRetries, timeoutForMissingEntries, dateTimeSource);
+    }
+
     @Override
     public boolean consume(final TrackedEntry trackedEntry) throws Exception
     {
         markAsConsuming(trackedEntry);
 
-        final boolean success = process(trackedEntry);
-
-        if (success)
+        final Optional<Future<?>> leaseRenewal = leases.isPresent() ? Optional.<Future<?>>of(leases.get().renewWhileConsuming(trackedEntry.id))
+                                                                    : Optional.<Future<?>>absent();
+        boolean renewingUntilMarked = false;
+        try
         {
-            markAsConsumed(trackedEntry);
+            final boolean success = process(trackedEntry);
 
-            notifyAllListeners(trackedEntry);
-        }
+            if (success && !delivery.isPresent())
+            {
+                if (!batcher.isPresent())
+                {
+                    markAsConsumed(trackedEntry);
+                }
+
+                if (leaseRenewal.isPresent() && acknowledgements.isPresent())
+                {
+                    acknowledgements.get().renewUntilMarked(trackedEntry.id, leaseRenewal.get());
+                    renewingUntilMarked = true;
+                }
+
+                notifyAllListeners(trackedEntry);
+            }
 
-        return success;
+            return success;
+        }
+        finally
+        {
+            if (leaseRenewal.isPresent() && !renewingUntilMarked)
+            {
+                leaseRenewal.get().cancel(false);
+            }
+        }
     }
 
     private void markAsConsuming(final TrackedEntry trackedEntry) throws AlreadyConsumingException
     {
-        feedTracker.markAsConsuming(trackedEntry.id);
+        if (leases.isPresent())
+        {
+            leases.get().claim(trackedEntry.id);
+        }
+        else
+        {
+            feedTracker.markAsConsuming(trackedEntry.id);
+        }
     }
 
     private boolean process(final TrackedEntry trackedEntry) throws Exception
@@ -82,9 +178,14 @@ public class EntryConsumerImpl implements EntryConsumer
         {
             final Optional<FeedEntry> feedEntry = fetchFeedEntry(trackedEntry);
 
-            if (feedEntry.isPresent())
+            if (feedEntry.isPresent() && delivery.isPresent())
             {
-                final Result result = consumeAction.consume(feedEntry.get());
+                delivery.get().deliver(trackedEntry, feedEntry.get());
+                return true;
+            }
+            else if (feedEntry.isPresent())
+            {
+                final Result result = batcher.isPresent() ? batcher.get().consume(trackedEntry, feedEntry.get()) : consumeAction.get().consume(feedEntry.get());
                 if (result.failure())
                 {
                     feedTracker.fail(trackedEntry, result.state == State.RETRY_UNSUCCESSFUL);
@@ -102,6 +203,10 @@ public class EntryConsumerImpl implements EntryConsumer
                 return false;
             }
         }
+        catch (final EntryBatcher.NotMarkedAsConsumedException e)
+        {
+            throw e; // consumed, so left marked as consuming rather than failed, as when marking a single entry as consumed fails
+        }
         catch (final Throwable e)
         {
             fail(trackedEntry);
@@ -127,18 +232,80 @@ public class EntryConsumerImpl implements EntryConsumer
         return resolved.isPresent() ? Optional.of(new FeedEntry(resolved.get(), trackedEntry.retries)) : Optional.<FeedEntry>absent();
     }
 
-    private void markAsConsumed(final TrackedEntry trackedEntry) throws ExecutionException, RetryException
+    private void markAsConsumed(final TrackedEntry trackedEntry) throws ExecutionException, RetryException, InterruptedException
+    {
+        if (acknowledgements.isPresent())
+        {
+            acknowledgements.get().acknowledge(trackedEntry.id);
+            return;
+        }
+
+        markAsConsumed(feedTracker, trackedEntry.id);
+    }
+
+    /**
+     * Marks the given entry as consumed, retrying while the feed tracker fails to.
+     */
+    static void markAsConsumed(final FeedTracker feedTracker, final EntryId id) throws ExecutionException, RetryException
     {
         RETRY_BUILDER.build().call(new Callable<Void>()
         {
             @Override public Void call() throws Exception
             {
-                feedTracker.markAsConsumed(trackedEntry.id);
+                feedTracker.markAsConsumed(id);
                 return null;
             }
         });
     }
 
+    static EntryBatcher batcher(final FeedTracker feedTracker, final BatchConsumeAction batchConsumeAction, final int maxBatchSize, final Interval linger)
+    {
+        return new EntryBatcher(batchConsumeAction, maxBatchSize, linger, markingAllAsConsumed(feedTracker));
+    }
+
+    /**
+     * Batcher acknowledging entries of each batch consumed successfully, to be marked as consumed in the background.
+     */
+    static EntryBatcher batcher(final Acknowledgements acknowledgements, final BatchConsumeAction batchConsumeAction, final int maxBatchSize, final Interval linger)
+    {
+        return new EntryBatcher(batchConsumeAction, maxBatchSize, linger, new EntryBatcher.SuccessfulEntries()
+        {
+            @Override public void consumed(final List<TrackedEntry> trackedEntries) throws InterruptedException
+            {
+                for (final TrackedEntry trackedEntry : trackedEntries)
+                {
+                    acknowledgements.acknowledge(trackedEntry.id);
+                }
+            }
+        });
+    }
+
+    private static EntryBatcher.SuccessfulEntries markingAllAsConsumed(final FeedTracker feedTracker)
+    {
+        final BatchFeedTracker batchFeedTracker = batching(feedTracker);
+
+        return new EntryBatcher.SuccessfulEntries()
+        {
+            @Override public void consumed(final List<TrackedEntry> trackedEntries) throws Exception
+            {
+                final List<EntryId> ids = new ArrayList<EntryId>(trackedEntries.size());
+                for (final TrackedEntry trackedEntry : trackedEntries)
+                {
+                    ids.add(trackedEntry.id);
+                }
+
+                RETRY_BUILDER.build().call(new Callable<Void>()
+                {
+                    @Override public Void call() throws Exception
+                    {
+                        batchFeedTracker.markAllAsConsumed(ids);
+                        return null;
+                    }
+                });
+            }
+        };
+    }
+
     private void notifyAllListeners(final TrackedEntry trackingEntry)
     {
         for (final EntryConsumerListener listener : listeners)
@@ -146,4 +313,12 @@ public class EntryConsumerImpl implements EntryConsumer
             listener.consumed(trackingEntry.id);
         }
     }
+
+    /**
+     * Hands entries over to be consumed elsewhere.
+     */
+    interface Delivery
+    {
+        void deliver(TrackedEntry trackedEntry, FeedEntry feedEntry);
+    }
 }
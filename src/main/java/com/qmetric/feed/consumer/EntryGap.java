@@ -0,0 +1,57 @@
+package com.qmetric.feed.consumer;
+
+import org.joda.time.DateTime;
+
+import static org.apache.commons.lang3.builder.EqualsBuilder.reflectionEquals;
+import static org.apache.commons.lang3.builder.HashCodeBuilder.reflectionHashCode;
+import static org.apache.commons.lang3.builder.ToStringBuilder.reflectionToString;
+
+/**
+ * Range of entry ids missing between two consecutive entries of the feed, which may still be published later on.
+ */
+public class EntryGap
+{
+    public final EntryId first;
+
+    public final EntryId last;
+
+    public final DateTime created;
+
+    /**
+     * Url of the page holding the entry following the gap, from where the gap is looked for again.
+     */
+    public final String pageUrl;
+
+    public EntryGap(final EntryId first, final EntryId last, final DateTime created, final String pageUrl)
+    {
+        this.first = first;
+        this.last = last;
+        this.created = created;
+        this.pageUrl = pageUrl;
+    }
+
+    public boolean contains(final EntryId id)
+    {
+        return first.asNumeric() <= id.asNumeric() && id.asNumeric() <= last.asNumeric();
+    }
+
+    public long size()
+    {
+        return last.asNumeric() - first.asNumeric() + 1;
+    }
+
+    @Override public boolean equals(final Object obj)
+    {
+        return reflectionEquals(this, obj);
+    }
+
+    @Override public int hashCode()
+    {
+        return reflectionHashCode(this);
+    }
+
+    @Override public String toString()
+    {
+        return reflectionToString(this);
+    }
+}
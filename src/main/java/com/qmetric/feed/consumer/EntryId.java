@@ -1,15 +1,26 @@
 package com.qmetric.feed.consumer;
 
-import static org.apache.commons.lang3.builder.EqualsBuilder.reflectionEquals;
-import static org.apache.commons.lang3.builder.HashCodeBuilder.reflectionHashCode;
-
 public class EntryId
 {
-    private final String id;
+    private static final int MAX_DIGITS = 19;
+
+    private String id;
+
+    private final long numericId;
+
+    private final boolean numeric;
 
     private EntryId(final String id)
     {
         this.id = id;
+        this.numeric = isCanonicalNumber(id);
+        this.numericId = numeric ? Long.parseLong(id) : 0;
+    }
+
+    private EntryId(final long numericId)
+    {
+        this.numericId = numericId;
+        this.numeric = true;
     }
 
     public static EntryId of(final String id)
@@ -17,33 +28,96 @@ public class EntryId
         return new EntryId(id);
     }
 
+    public static EntryId of(final long id)
+    {
+        return new EntryId(id);
+    }
+
     public EntryId next()
     {
-        return new EntryId(String.valueOf(asNumeric() + 1));
+        return new EntryId(asNumeric() + 1);
     }
 
     public EntryId previous()
     {
-        return new EntryId(String.valueOf(asNumeric() - 1));
+        return new EntryId(asNumeric() - 1);
     }
 
     public long asNumeric()
     {
-        return Long.valueOf(id);
+        return numeric ? numericId : Long.valueOf(id);
+    }
+
+    /**
+     * @return Whether the id is a number written the way {@link Long#toString(long)} writes it, in which case it is identified by its numeric value alone.
+     */
+    public boolean isNumeric()
+    {
+        return numeric;
     }
 
     @Override public boolean equals(final Object obj)
     {
-        return reflectionEquals(this, obj);
+        if (this == obj)
+        {
+            return true;
+        }
+        if (!(obj instanceof EntryId))
+        {
+            return false;
+        }
+
+        final EntryId that = (EntryId) obj;
+
+        if (numeric || that.numeric)
+        {
+            return numeric == that.numeric && numericId == that.numericId;
+        }
+
+        return id == null ? that.id == null : id.equals(that.id);
     }
 
     @Override public int hashCode()
     {
-        return reflectionHashCode(this);
+        if (numeric)
+        {
+            return (int) (numericId ^ (numericId >>> 32));
+        }
+
+        return id == null ? 0 : id.hashCode();
     }
 
     @Override public String toString()
     {
+        if (id == null && numeric)
+        {
+            id = Long.toString(numericId);
+        }
+
         return id;
     }
+
+    private static boolean isCanonicalNumber(final String id)
+    {
+        if (id == null || id.isEmpty())
+        {
+            return false;
+        }
+
+        final int firstDigit = id.charAt(0) == '-' ? 1 : 0;
+        if (id.length() - firstDigit > MAX_DIGITS || firstDigit == id.length() || (id.charAt(firstDigit) == '0' && id.length() > 1))
+        {
+            return false;
+        }
+
+        for (int i = firstDigit; i < id.length(); i++)
+        {
+            if (id.charAt(i) < '0' || id.charAt(i) > '9')
+            {
+                return false;
+            }
+        }
+
+        return id.length() - firstDigit < MAX_DIGITS || id.compareTo(String.valueOf(firstDigit == 1 ? Long.MIN_VALUE : Long.MAX_VALUE)) <= 0;
+    }
 }
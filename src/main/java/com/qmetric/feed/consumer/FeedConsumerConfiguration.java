@@ -4,32 +4,50 @@ import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.health.HealthCheck;
 import com.codahale.metrics.health.HealthCheckRegistry;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Function;
 import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.qmetric.feed.consumer.metrics.ConnectionPoolMetricSet;
 import com.qmetric.feed.consumer.metrics.EntryConsumerWithMetrics;
 import com.qmetric.feed.consumer.metrics.FeedConnectivityHealthCheck;
 import com.qmetric.feed.consumer.metrics.FeedConsumerWithMetrics;
 import com.qmetric.feed.consumer.metrics.FeedTrackerConnectivityHealthCheck;
+import com.qmetric.feed.consumer.metrics.MeterRatioGauge;
 import com.qmetric.feed.consumer.metrics.PollingActivityHealthCheck;
 import com.qmetric.feed.consumer.retry.AlwaysRetryingRetryStrategy;
 import com.qmetric.feed.consumer.retry.FibonacciDelayingRetryStrategy;
 import com.qmetric.feed.consumer.retry.RetryStrategy;
 import com.qmetric.feed.consumer.retry.RetryStrategyAwareEntryConsumer;
+import com.qmetric.feed.consumer.retry.SchedulingRetryStrategy;
 import com.qmetric.feed.consumer.store.FeedTracker;
+import com.qmetric.feed.consumer.store.LeasingFeedTracker;
+import com.qmetric.feed.consumer.store.MembershipFeedTracker;
+import com.qmetric.feed.consumer.store.PageCursorStore;
+import com.qmetric.feed.consumer.store.RetrySchedulingFeedTracker;
 import com.qmetric.hal.reader.HalReader;
+import com.qmetric.hal.reader.HalResource;
 import org.apache.http.client.HttpClient;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.joda.time.DateTime;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.util.concurrent.MoreExecutors.newDirectExecutorService;
+import static com.qmetric.feed.consumer.store.BatchFeedTrackerAdapter.batching;
 import static java.util.Arrays.asList;
-import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
 public class FeedConsumerConfiguration
@@ -54,45 +72,87 @@ public class FeedConsumerConfiguration
 
     private Interval pollingInterval;
 
-    private final Interval missingEntriesTimeout = new Interval(15, MINUTES);
+    private Optional<AdaptivePollingInterval> adaptivePollingInterval = Optional.absent();
+
+    private boolean pipelinedConsumption;
+
+    private final Interval missingEntriesTimeout = GapResolver.DEFAULT_MISSING_ENTRIES_TIMEOUT;
 
     private Optional<PollingActivityHealthCheck> pollingActivityHealthCheck = Optional.absent();
 
     private ConsumeAction consumeAction;
 
+    private Optional<BatchConsumeAction> batchConsumeAction = Optional.absent();
+
+    private int maxBatchSize;
+
+    private Interval batchLinger;
+
     private FeedTracker feedTracker;
 
     private Optional<EarliestEntryLimit> earliestEntryLimit = Optional.absent();
 
     private Optional<ResourceResolver> resourceResolver = Optional.absent();
 
+    private Optional<EmbeddedEntries> embeddedEntries = Optional.absent();
+
     private Optional<Integer> maxRetries = Optional.absent();
 
     private boolean registerShutdownHook = true;
 
     private ScheduledExecutorService scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
 
+    private boolean sharedScheduledExecutorService;
+
+    private Optional<PoolingHttpClientConnectionManager> sharedConnectionManager = Optional.absent();
+
+    private Optional<Integer> maxEntriesPerPoll = Optional.absent();
+
+    private Optional<ThreadFactory> entryThreadFactory = Optional.absent();
+
     private RetryStrategy retryStrategy = defaultRetryStrategy();
 
+    private int consumptionConcurrency = 1;
+
+    private Optional<Integer> prefetchReadAhead = Optional.absent();
+
+    private Optional<Function<FeedEntry, ?>> partitionKeyExtractor = Optional.absent();
+
+    private int lanes;
+
+    private Optional<String> nodeId = Optional.absent();
+
+    private Interval nodeTimeout;
+
+    private Optional<Interval> leaseDuration = Optional.absent();
+
+    private Optional<Interval> maxAcknowledgementBackoff = Optional.absent();
+
+    private int maxWaitingAcknowledgements;
+
+    private ConnectionPoolConfiguration connectionPool = new ConnectionPoolConfiguration();
+
+    private Optional<Credentials> credentials = Optional.absent();
+
     public FeedConsumerConfiguration(final String name)
     {
         this.name = name;
-        updateFeedClient(defaultFeedClient());
     }
 
-    private HttpClient defaultFeedClient()
+    private void createFeedClient()
     {
-        return ClientBuilder.newHttpClient(60 * 1000);
-    }
+        if (sharedConnectionManager.isPresent())
+        {
+            this.feedClient = ClientBuilder.newHttpClient(sharedConnectionManager.get(), connectionPool, credentials.orNull(), true);
+        }
+        else
+        {
+            final PoolingHttpClientConnectionManager connectionManager = ClientBuilder.newConnectionManager(connectionPool);
 
-    private HttpClient defaultFeedClientWithBasicAuth(final Credentials credentials)
-    {
-        return ClientBuilder.newHttpClient(60 * 1000, credentials);
-    }
+            metricRegistry.registerAll(new ConnectionPoolMetricSet(name, connectionManager));
 
-    private void updateFeedClient(HttpClient feedClient)
-    {
-        this.feedClient = feedClient;
+            this.feedClient = ClientBuilder.newHttpClient(connectionManager, connectionPool, credentials.orNull());
+        }
         this.feedEndpointFactory = new FeedEndpointFactory(feedClient);
     }
 
@@ -103,6 +163,21 @@ public class FeedConsumerConfiguration
         return this;
     }
 
+    /**
+     * Consume entries several at a time: entries consumed concurrently are gathered into batches of up to the given size,
+     * or whatever joined a batch within the given linger time. Entries are consumed by at least as many threads as the batch size.
+     */
+    public FeedConsumerConfiguration consumeEntriesInBatchesWith(final BatchConsumeAction batchConsumeAction, final int maxBatchSize, final long linger,
+                                                                  final TimeUnit lingerUnit)
+    {
+        checkState(maxBatchSize > 0, "Batch size must be more than 0");
+        this.batchConsumeAction = Optional.of(batchConsumeAction);
+        this.maxBatchSize = maxBatchSize;
+        this.batchLinger = new Interval(linger, lingerUnit);
+
+        return this;
+    }
+
     public FeedConsumerConfiguration consumeEachEntryWith(final ConsumeAction consumeAction)
     {
         this.consumeAction = consumeAction;
@@ -117,6 +192,28 @@ public class FeedConsumerConfiguration
         return this;
     }
 
+    /**
+     * Consume entries as embedded in the feed pages rather than fetching each entry separately.
+     * Entries no longer held (e.g. when retried) are fetched from the feed.
+     */
+    public FeedConsumerConfiguration consumeEmbeddedEntries()
+    {
+        return consumeEmbeddedEntries(Predicates.<HalResource>alwaysTrue());
+    }
+
+    /**
+     * Consume entries as embedded in the feed pages rather than fetching each entry separately.
+     * Entries no longer held (e.g. when retried), and entries embedded as a summary, are fetched from the feed.
+     *
+     * @param completeRepresentation Whether an embedded entry holds the full entry rather than a summary of it.
+     */
+    public FeedConsumerConfiguration consumeEmbeddedEntries(final Predicate<HalResource> completeRepresentation)
+    {
+        this.embeddedEntries = Optional.of(new EmbeddedEntries(completeRepresentation));
+
+        return this;
+    }
+
     public FeedConsumerConfiguration pollForNewEntriesEvery(final long interval, final TimeUnit intervalUnit)
     {
         pollingInterval = new Interval(interval, intervalUnit);
@@ -124,6 +221,29 @@ public class FeedConsumerConfiguration
         return this;
     }
 
+    /**
+     * Poll again straight away while polls keep finding new entries, after the minimum interval while entries are still being consumed
+     * successfully, and back off gradually up to the maximum interval while polls find nothing new and entries only fail.
+     */
+    public FeedConsumerConfiguration pollAdaptivelyBetween(final long minInterval, final long maxInterval, final TimeUnit intervalUnit)
+    {
+        adaptivePollingInterval = Optional.of(new AdaptivePollingInterval(new Interval(minInterval, intervalUnit), new Interval(maxInterval, intervalUnit)));
+
+        return this;
+    }
+
+    /**
+     * Consume entries on a thread of their own, so that discovering new entries carries on while a backlog is being consumed
+     * and consumption carries on while a long walk back through the feed is under way.
+     * Each poll hands a consumption pass over to that thread, at most one pass being left pending while another is under way.
+     */
+    public FeedConsumerConfiguration pipelineConsumption()
+    {
+        this.pipelinedConsumption = true;
+
+        return this;
+    }
+
     public FeedConsumerConfiguration withPollingActivityHealthCheck(final long minimumTimeBetweenActivity, final TimeUnit unit)
     {
         pollingActivityHealthCheck = Optional.of(new PollingActivityHealthCheck(new Interval(minimumTimeBetweenActivity, unit)));
@@ -154,7 +274,14 @@ public class FeedConsumerConfiguration
 
     public FeedConsumerConfiguration withAuthenticationCredentials(final Credentials credentials)
     {
-        updateFeedClient(defaultFeedClientWithBasicAuth(credentials));
+        this.credentials = Optional.of(credentials);
+        return this;
+    }
+
+    public FeedConsumerConfiguration withConnectionPool(final ConnectionPoolConfiguration connectionPool)
+    {
+        this.connectionPool = connectionPool;
+
         return this;
     }
 
@@ -207,6 +334,145 @@ public class FeedConsumerConfiguration
         return this;
     }
 
+    /**
+     * Consume up to the given number of entries at the same time. Each poll spreads the entries to be consumed across a pool of this many
+     * threads and completes once all of them have been processed. Defaults to 1, consuming entries one after another on the polling thread.
+     */
+    public FeedConsumerConfiguration withConsumptionConcurrency(final int consumptionConcurrency)
+    {
+        checkState(consumptionConcurrency > 0, "Consumption concurrency must be more than 0");
+        this.consumptionConcurrency = consumptionConcurrency;
+
+        return this;
+    }
+
+    /**
+     * Consume each entry (fetching, consuming and marking it consumed) on a new thread of its own, with up to the given number of entries
+     * in flight at once. Suits consume actions dominated by blocking I/O, where a pool sized for the concurrency wanted would hold on to
+     * as many idle threads between polls.
+     */
+    public FeedConsumerConfiguration consumeEachEntryOnOwnThread(final int maxEntriesInFlight)
+    {
+        return consumeEachEntryOnOwnThread(Executors.defaultThreadFactory(), maxEntriesInFlight);
+    }
+
+    /**
+     * As {@link #consumeEachEntryOnOwnThread(int)}, creating threads from the given factory, e.g. a factory of virtual threads on JVMs supporting them.
+     */
+    public FeedConsumerConfiguration consumeEachEntryOnOwnThread(final ThreadFactory threadFactory, final int maxEntriesInFlight)
+    {
+        checkState(maxEntriesInFlight > 0, "Entries in flight must be more than 0");
+        this.entryThreadFactory = Optional.of(threadFactory);
+        this.consumptionConcurrency = maxEntriesInFlight;
+
+        return this;
+    }
+
+    /**
+     * Consume entries sharing a key in the order they were published, while consuming entries of different keys in parallel. Keys are
+     * extracted from each entry (e.g. the id of the aggregate it is about) before it is consumed, and entries are spread across the
+     * given number of lanes by key, each lane consuming its entries one at a time. Once an entry fails or is skipped, further entries
+     * of its key are left for the next poll. Entries are fetched ahead in parallel to extract their key, as many at once as there are
+     * lanes unless {@link #prefetchEntries(int) prefetched} otherwise; once an entry cannot be fetched, it and further entries are left
+     * for the next poll. Cannot be combined with a feed tracker holding entries back until retried (see
+     * {@link RetrySchedulingFeedTracker}), which would let further entries of their key be consumed ahead of them, nor with
+     * {@link #partitionEntriesBetweenNodesAs partitioning entries between nodes}, which spreads entries of a key across nodes.
+     */
+    public FeedConsumerConfiguration partitionEntriesBy(final Function<FeedEntry, ?> keyExtractor, final int lanes)
+    {
+        checkState(lanes > 0, "Lanes must be more than 0");
+        this.partitionKeyExtractor = Optional.<Function<FeedEntry, ?>>of(keyExtractor);
+        this.lanes = lanes;
+
+        return this;
+    }
+
+    /**
+     * Partition the entries to be consumed between the nodes consuming the feed, this consumer being the node of the given id, so that
+     * consumers on different nodes do not compete for the same entries. Nodes are recorded in the feed tracker, which must implement
+     * {@link MembershipFeedTracker}, on every poll; a node not recorded within the given timeout (to be set well above the polling
+     * interval) is taken to be gone, and its share taken over by the others. A node with no entries of its own left takes over
+     * entries of other nodes. Entries are partitioned by id, so cannot be combined with {@link #partitionEntriesBy partitioning by key}.
+     */
+    public FeedConsumerConfiguration partitionEntriesBetweenNodesAs(final String nodeId, final long nodeTimeout, final TimeUnit nodeTimeoutUnit)
+    {
+        checkState(isNotBlank(nodeId), "Node id must not be blank");
+        this.nodeId = Optional.of(nodeId);
+        this.nodeTimeout = new Interval(nodeTimeout, nodeTimeoutUnit);
+
+        return this;
+    }
+
+    /**
+     * Mark entries as consuming under leases of the given duration, renewed for as long as each entry is being consumed (and, when
+     * {@link #acknowledgeEntriesInBackground acknowledging entries in background}, until marked as consumed), so that entries left
+     * consuming by a consumer that died are consumed again once their lease expires. The feed tracker must implement
+     * {@link LeasingFeedTracker}. Leases are owned by the node id given to {@link #partitionEntriesBetweenNodesAs}, if any.
+     */
+    public FeedConsumerConfiguration leaseEntriesFor(final long leaseDuration, final TimeUnit leaseDurationUnit)
+    {
+        checkState(leaseDuration > 0, "Lease duration must be more than 0");
+        this.leaseDuration = Optional.of(new Interval(leaseDuration, leaseDurationUnit));
+
+        return this;
+    }
+
+    /**
+     * Mark entries consumed as consumed in the background rather than before moving on to the next entry, so that consumption carries
+     * on while the feed tracker is unavailable. Entries failing to be marked as consumed are tried again after a backoff with jitter,
+     * doubling from 1 second up to the given maximum. Entries not yet marked as consumed stay marked as consuming, under leases renewed
+     * until marked when {@link #leaseEntriesFor leasing entries}. At most the given number of entries wait to be marked as consumed,
+     * consumption blocking once that many are waiting.
+     */
+    public FeedConsumerConfiguration acknowledgeEntriesInBackground(final int maxWaiting, final long maxBackoff, final TimeUnit maxBackoffUnit)
+    {
+        checkState(maxWaiting > 0, "Max waiting acknowledgements must be more than 0");
+        checkState(maxBackoff > 0, "Acknowledgement backoff must be more than 0");
+        this.maxWaitingAcknowledgements = maxWaiting;
+        this.maxAcknowledgementBackoff = Optional.of(new Interval(maxBackoff, maxBackoffUnit));
+
+        return this;
+    }
+
+    /**
+     * Consume at most the given number of entries per poll, leaving any further entries for the next poll.
+     */
+    public FeedConsumerConfiguration consumeAtMostPerPoll(final int maxEntriesPerPoll)
+    {
+        checkState(maxEntriesPerPoll > 0, "Entries consumed per poll must be more than 0");
+        this.maxEntriesPerPoll = Optional.of(maxEntriesPerPoll);
+
+        return this;
+    }
+
+    /**
+     * Poll on the given executor service and read the feed through the given connection manager, both shared with other consumers
+     * and left running when this consumer stops. Timeouts and keep-alive still apply as configured for this consumer, while pool sizes
+     * and eviction are those of the shared connection manager. Entries consumed per poll default to the given number, so that a busy
+     * feed takes turns with the others.
+     */
+    FeedConsumerConfiguration hostedOn(final ScheduledExecutorService scheduledExecutorService, final PoolingHttpClientConnectionManager connectionManager,
+                                       final int entriesPerTurn)
+    {
+        this.scheduledExecutorService = scheduledExecutorService;
+        this.sharedScheduledExecutorService = true;
+        this.sharedConnectionManager = Optional.of(connectionManager);
+        this.maxEntriesPerPoll = Optional.of(maxEntriesPerPoll.or(entriesPerTurn));
+
+        return this;
+    }
+
+    /**
+     * Fetch the given number of upcoming entries in the background while preceding entries are being consumed.
+     */
+    public FeedConsumerConfiguration prefetchEntries(final int readAhead)
+    {
+        checkState(readAhead > 0, "Prefetch read-ahead must be more than 0");
+        this.prefetchReadAhead = Optional.of(readAhead);
+
+        return this;
+    }
+
     public FeedConsumerConfiguration withCustomRetryStrategy(RetryStrategy retryStrategy)
     {
         this.retryStrategy = retryStrategy;
@@ -235,42 +501,278 @@ public class FeedConsumerConfiguration
     public FeedConsumerScheduler build()
     {
         validateConfiguration();
+        if (!batchConsumeAction.isPresent())
+        {
+            checkNotNull(consumeAction, "Missing entry consumer action");
+        }
+
+        createFeedClient();
 
         configureHealthChecks();
 
+        configurePollingInterval();
+
         return buildConsumerScheduler();
     }
 
+    /**
+     * Builds a publisher of the feed's entries, to be consumed by subscribing to it rather than with a consume action.
+     * Polling starts on subscribing. Entries are fetched as requested by the subscriber.
+     * Entries are published one at a time, as acknowledged by the subscriber, so batching, leasing, background acknowledgements and
+     * partitioning do not apply to a publisher and are rejected.
+     */
+    public FeedEntryPublisher buildPublisher()
+    {
+        validateConfiguration();
+        validatePublishingConfiguration();
+
+        createFeedClient();
+
+        configureHealthChecks();
+
+        configurePollingInterval();
+
+        final ResourceResolver entryResourceResolver = entryResourceResolver();
+        final ExecutorService deliveryExecutorService = Executors.newSingleThreadExecutor();
+        final PublishingFeedConsumer publishingFeedConsumer = new PublishingFeedConsumer(feedTracker, new Function<EntryConsumerImpl.Delivery, EntryConsumer>()
+        {
+            @Override public EntryConsumer apply(final EntryConsumerImpl.Delivery delivery)
+            {
+                return entryConsumer(EntryConsumerImpl.delivering(feedTracker, delivery, entryResourceResolver, entryConsumerListeners, maxRetries,
+                                                                  missingEntriesTimeout, new DateTimeSource()));
+            }
+        }, entryConsumerListeners, deliveryExecutorService);
+
+        metricRegistry.register(String.format("%s: entryPublishing.demand", name), publishingFeedConsumer.demand());
+
+        return new FeedEntryPublisher(publishingFeedConsumer, consumerScheduler(new FeedConsumerWithMetrics(name, metricRegistry, publishingFeedConsumer),
+                                                                                deliveryExecutorService));
+    }
+
     private FeedConsumerScheduler buildConsumerScheduler()
     {
-        return new FeedConsumerScheduler(feedConsumer(), feedEntriesTracker(), pollingInterval, scheduledExecutorService, registerShutdownHook, feedUrl);
+        final List<ExecutorService> workerExecutorServices = new ArrayList<ExecutorService>();
+        final List<UpcomingEntriesListener> upcomingEntriesListeners = new ArrayList<UpcomingEntriesListener>();
+        ResourceResolver entryResourceResolver = entryResourceResolver();
+
+        // shut down ahead of lease renewals, so that leases of entries waiting are held on to while the last acknowledgements are flushed
+        Optional<Acknowledgements> acknowledgements = Optional.absent();
+        if (maxAcknowledgementBackoff.isPresent())
+        {
+            final ScheduledExecutorService acknowledgementExecutorService = Executors.newSingleThreadScheduledExecutor();
+            acknowledgements = Optional.of(acknowledgements(acknowledgementExecutorService));
+            workerExecutorServices.add(acknowledgementExecutorService);
+        }
+
+        Optional<Leases> leases = Optional.absent();
+
+        if (leaseDuration.isPresent())
+        {
+            final ScheduledExecutorService leaseRenewalExecutorService = Executors.newSingleThreadScheduledExecutor();
+            leases = Optional.of(leases(leaseRenewalExecutorService));
+            workerExecutorServices.add(leaseRenewalExecutorService);
+        }
+
+        final Optional<Integer> readAhead = prefetchReadAhead.isPresent() || !partitionKeyExtractor.isPresent() ? prefetchReadAhead : Optional.of(lanes);
+        if (readAhead.isPresent())
+        {
+            final ExecutorService prefetchExecutorService = Executors.newFixedThreadPool(readAhead.get());
+            final PrefetchingResourceResolver prefetchingResourceResolver = new PrefetchingResourceResolver(entryResourceResolver, readAhead.get(), prefetchExecutorService);
+            feedPollingListeners.add(prefetchingResourceResolver);
+            upcomingEntriesListeners.add(prefetchingResourceResolver);
+            workerExecutorServices.add(prefetchExecutorService);
+            entryResourceResolver = prefetchingResourceResolver;
+        }
+
+        final FeedConsumer feedConsumer;
+        if (partitionKeyExtractor.isPresent())
+        {
+            final PartitioningResourceResolver partitioningResourceResolver = new PartitioningResourceResolver(entryResourceResolver, partitionKeyExtractor.get());
+            upcomingEntriesListeners.add(partitioningResourceResolver);
+            feedPollingListeners.add(partitioningResourceResolver);
+
+            final OrderedLanes orderedLanes = orderedLanes(partitioningResourceResolver);
+            workerExecutorServices.addAll(0, asList(orderedLanes.executors()));
+
+            feedConsumer = feedConsumer(new FeedConsumerImpl(entryConsumer(partitioningResourceResolver, leases, acknowledgements), feedTracker, feedPollingListeners, upcomingEntriesListeners,
+                                                             newDirectExecutorService(), Optional.of(orderedLanes), nodePartitioning(),
+                                                             maxEntriesPerPoll));
+        }
+        else
+        {
+            final ExecutorService consumptionExecutorService = consumptionExecutorService();
+            workerExecutorServices.add(0, consumptionExecutorService);
+
+            feedConsumer = feedConsumer(new FeedConsumerImpl(entryConsumer(entryResourceResolver, leases, acknowledgements), feedTracker, feedPollingListeners, upcomingEntriesListeners,
+                                                             consumptionExecutorService, Optional.<OrderedLanes>absent(), nodePartitioning(),
+                                                             maxEntriesPerPoll));
+        }
+
+        return consumerScheduler(feedConsumer, workerExecutorServices.toArray(new ExecutorService[workerExecutorServices.size()]));
+    }
+
+    private FeedConsumerScheduler consumerScheduler(final FeedConsumer feedConsumer, final ExecutorService... workerExecutorServices)
+    {
+        if (adaptivePollingInterval.isPresent())
+        {
+            metricRegistry.register(String.format("%s: feedPolling.interval", name), adaptivePollingInterval.get().current());
+        }
+
+        final Optional<ExecutorService> consumptionStage = pipelinedConsumption ? Optional.of(FeedConsumerScheduler.newConsumptionStage()) : Optional.<ExecutorService>absent();
+
+        return new FeedConsumerScheduler(feedConsumer, feedEntriesTracker(), pollingInterval, adaptivePollingInterval, consumptionStage, scheduledExecutorService,
+                                         !sharedScheduledExecutorService, registerShutdownHook, feedUrl, workerExecutorServices);
+    }
+
+    private ExecutorService consumptionExecutorService()
+    {
+        if (entryThreadFactory.isPresent())
+        {
+            final ThreadPerTaskExecutorService threadPerEntry = new ThreadPerTaskExecutorService(entryThreadFactory.get(), consumptionConcurrency());
+            metricRegistry.register(String.format("%s: entryConsumption.inFlight", name), threadPerEntry.inFlight());
+            return threadPerEntry;
+        }
+
+        return consumptionConcurrency() > 1 ? Executors.newFixedThreadPool(consumptionConcurrency()) : newDirectExecutorService();
+    }
+
+    private Leases leases(final ScheduledExecutorService leaseRenewalExecutorService)
+    {
+        final Leases leases = new Leases((LeasingFeedTracker) feedTracker, nodeId.or(UUID.randomUUID().toString()), leaseDuration.get(), leaseRenewalExecutorService);
+
+        metricRegistry.register(String.format("%s: entryConsumption.reclaimedLeases", name), leases.reclaimed());
+
+        return leases;
+    }
+
+    private Acknowledgements acknowledgements(final ScheduledExecutorService acknowledgementExecutorService)
+    {
+        final Acknowledgements acknowledgements = new Acknowledgements(batching(feedTracker), maxWaitingAcknowledgements, new Interval(1, SECONDS),
+                                                                       maxAcknowledgementBackoff.get(), acknowledgementExecutorService, new DateTimeSource());
+
+        metricRegistry.register(String.format("%s: entryConsumption.acknowledgements.depth", name), acknowledgements.depth());
+        metricRegistry.register(String.format("%s: entryConsumption.acknowledgements.age", name), acknowledgements.age());
+        metricRegistry.register(String.format("%s: entryConsumption.acknowledgements.retries", name), acknowledgements.retries());
+
+        return acknowledgements;
+    }
+
+    private Optional<EntryBatcher> batcher(final Optional<Acknowledgements> acknowledgements)
+    {
+        if (!batchConsumeAction.isPresent())
+        {
+            return Optional.absent();
+        }
+
+        return Optional.of(acknowledgements.isPresent() ? EntryConsumerImpl.batcher(acknowledgements.get(), batchConsumeAction.get(), maxBatchSize, batchLinger)
+                                                        : EntryConsumerImpl.batcher(feedTracker, batchConsumeAction.get(), maxBatchSize, batchLinger));
+    }
+
+    private Optional<NodePartitioning> nodePartitioning()
+    {
+        if (!nodeId.isPresent())
+        {
+            return Optional.absent();
+        }
+
+        final NodePartitioning nodePartitioning = new NodePartitioning((MembershipFeedTracker) feedTracker, nodeId.get(), nodeTimeout, new DateTimeSource(),
+                                                                      maxEntriesPerPoll.or(Integer.MAX_VALUE));
+
+        metricRegistry.register(String.format("%s: nodePartitioning.nodes", name), nodePartitioning.nodes());
+        metricRegistry.register(String.format("%s: nodePartitioning.takenOver", name), nodePartitioning.takenOver());
+
+        return Optional.of(nodePartitioning);
+    }
+
+    private OrderedLanes orderedLanes(final PartitioningResourceResolver partitioningResourceResolver)
+    {
+        final OrderedLanes orderedLanes = new OrderedLanes(partitioningResourceResolver, lanes);
+
+        for (int lane = 0; lane < orderedLanes.size(); lane++)
+        {
+            metricRegistry.register(String.format("%s: entryConsumption.lane.%d.depth", name, lane), orderedLanes.depth(lane));
+        }
+
+        return orderedLanes;
+    }
+
+    private int consumptionConcurrency()
+    {
+        return batchConsumeAction.isPresent() ? Math.max(consumptionConcurrency, maxBatchSize) : consumptionConcurrency;
     }
 
     private AvailableFeedEntriesTracker feedEntriesTracker()
     {
-        return new AvailableFeedEntriesTracker(feedEndpointFactory.create(feedUrl), feedEndpointFactory, feedTracker, halReader, new NonContiguousEntryIdTracker(feedTracker), new PageOfSeenEntriesFactory(feedTracker, earliestEntryLimit));
+        final PageOfSeenEntriesFactory pageOfSeenEntriesFactory = new PageOfSeenEntriesFactory(feedTracker, earliestEntryLimit, embeddedEntries);
+        final AvailableFeedEntriesTracker feedEntriesTracker = new AvailableFeedEntriesTracker(feedEndpointFactory.create(feedUrl), feedEndpointFactory, feedTracker, halReader,
+                                                                                               new NonContiguousEntryIdTracker(feedTracker), pageOfSeenEntriesFactory,
+                                                                                               Optional.of(conditionalGet()), Optional.<PageCursorStore>absent(),
+                                                                                               Optional.of(new GapResolver(feedEndpointFactory, halReader, feedTracker,
+                                                                                                                           pageOfSeenEntriesFactory, missingEntriesTimeout,
+                                                                                                                           new DateTimeSource())));
+
+        metricRegistry.register(String.format("%s: feedPolling.pagesFetched", name), feedEntriesTracker.pagesFetched());
+
+        return feedEntriesTracker;
+    }
+
+    private ConditionalGet conditionalGet()
+    {
+        final ConditionalGet conditionalGet = new ConditionalGet();
+
+        metricRegistry.register(String.format("%s: feedPolling.latestPageRequests", name), conditionalGet.requests());
+        metricRegistry.register(String.format("%s: feedPolling.notModified", name), conditionalGet.notModified());
+        metricRegistry.register(String.format("%s: feedPolling.notModifiedRatio", name), new MeterRatioGauge(conditionalGet.notModified(), conditionalGet.requests()));
+
+        return conditionalGet;
     }
 
-    private FeedConsumer feedConsumer()
+    private FeedConsumer feedConsumer(final FeedConsumer consumer)
     {
-        final FeedConsumer consumer = new FeedConsumerImpl(entryConsumer(), feedTracker, feedPollingListeners);
         return new FeedConsumerWithMetrics(name, metricRegistry, consumer);
     }
 
-    private EntryConsumer entryConsumer()
+    private EntryConsumer entryConsumer(final ResourceResolver entryResourceResolver, final Optional<Leases> leases, final Optional<Acknowledgements> acknowledgements)
+    {
+        return entryConsumer(new EntryConsumerImpl(feedTracker, Optional.fromNullable(consumeAction), batcher(acknowledgements), leases, acknowledgements, entryResourceResolver,
+                                                   entryConsumerListeners, maxRetries, missingEntriesTimeout, new DateTimeSource()));
+    }
+
+    private EntryConsumer entryConsumer(final EntryConsumerImpl entryConsumerImpl)
     {
-        DateTimeSource dateTimeSource = new DateTimeSource();
+        scheduleRetries();
         return new RetryStrategyAwareEntryConsumer(
-                new EntryConsumerWithMetrics(name, metricRegistry, new EntryConsumerImpl(feedTracker, consumeAction, resourceResolver(), entryConsumerListeners, maxRetries, missingEntriesTimeout, dateTimeSource)),
+                new EntryConsumerWithMetrics(name, metricRegistry, entryConsumerImpl),
                 retryStrategy,
-                dateTimeSource
+                new DateTimeSource()
         );
     }
 
+    /**
+     * Lets a tracker able to do so hold failed entries back until they can be retried, rather than offering them again every poll.
+     */
+    private void scheduleRetries()
+    {
+        if (schedulesRetries())
+        {
+            ((RetrySchedulingFeedTracker) feedTracker).scheduleRetriesWith((SchedulingRetryStrategy) retryStrategy);
+        }
+    }
+
+    private boolean schedulesRetries()
+    {
+        return feedTracker instanceof RetrySchedulingFeedTracker && retryStrategy instanceof SchedulingRetryStrategy;
+    }
+
     private RetryStrategy defaultRetryStrategy() {
         return new AlwaysRetryingRetryStrategy();
     }
 
+    private ResourceResolver entryResourceResolver()
+    {
+        return embeddedEntries.isPresent() ? new EmbeddedEntryResourceResolver(embeddedEntries.get(), resourceResolver()) : resourceResolver();
+    }
+
     private ResourceResolver resourceResolver()
     {
         return resourceResolver.or(new DefaultResourceResolver(feedUrl, feedEndpointFactory, halReader));
@@ -280,10 +782,23 @@ public class FeedConsumerConfiguration
     {
         checkArgument(isNotBlank(name), "Missing feed consumer name");
         checkNotNull(feedUrl, "Missing feed url");
-        checkNotNull(pollingInterval, "Missing polling interval");
-        checkNotNull(consumeAction, "Missing entry consumer action");
+        checkArgument(pollingInterval != null || adaptivePollingInterval.isPresent(), "Missing polling interval");
         checkNotNull(feedTracker, "Missing feed tracker");
         checkNotNull(resourceResolver(), "Missing resource resolver");
+        checkArgument(!leaseDuration.isPresent() || feedTracker instanceof LeasingFeedTracker, "Feed tracker does not lease entries, required to lease entries");
+        checkArgument(!nodeId.isPresent() || feedTracker instanceof MembershipFeedTracker, "Feed tracker does not record nodes, required to partition entries between nodes");
+        checkArgument(!partitionKeyExtractor.isPresent() || !nodeId.isPresent(),
+                      "Entries are partitioned between nodes by id, spreading entries of a key across nodes when partitioning entries by key");
+        checkArgument(!partitionKeyExtractor.isPresent() || !schedulesRetries(),
+                      "Feed tracker holds entries back until retried, letting further entries of their key be consumed ahead of them when partitioning entries by key");
+    }
+
+    private void validatePublishingConfiguration()
+    {
+        checkArgument(!batchConsumeAction.isPresent(), "Entries are published one at a time, not consumed in batches");
+        checkArgument(!leaseDuration.isPresent(), "Entries published stay marked as consuming until acknowledged, not leased");
+        checkArgument(!maxAcknowledgementBackoff.isPresent(), "Entries published are marked as consumed as acknowledged, not in the background");
+        checkArgument(!partitionKeyExtractor.isPresent() && !nodeId.isPresent(), "Entries are published in the order tracked, not partitioned");
     }
 
     private void configureHealthChecks()
@@ -300,6 +815,14 @@ public class FeedConsumerConfiguration
         }
     }
 
+    private void configurePollingInterval()
+    {
+        if (adaptivePollingInterval.isPresent())
+        {
+            entryConsumerListeners.add(adaptivePollingInterval.get());
+        }
+    }
+
     public static class Credentials
     {
         public final String username;
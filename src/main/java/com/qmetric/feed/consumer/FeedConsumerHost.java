@@ -0,0 +1,188 @@
+package com.qmetric.feed.consumer;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.health.HealthCheckRegistry;
+import com.google.common.base.Optional;
+import com.qmetric.feed.consumer.metrics.ConnectionPoolMetricSet;
+import org.apache.http.impl.client.IdleConnectionEvictor;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Runs the consumers of many feeds over a single pool of polling threads and a single pool of http connections.
+ * <p/>
+ * Polls of all feeds are run by the shared threads in the order they fall due. Each poll of a hosted feed consumes a limited number
+ * of entries (see {@link #withEntriesPerTurn(int)}), leaving any further entries for its next poll, so that a busy feed takes turns with
+ * the others rather than holding on to a thread until its backlog is drained.
+ * <p/>
+ * Metrics and health checks of each feed are registered under the name of the feed, in the registries of the host.
+ * Connection pool metrics are registered under the name of the host.
+ */
+public class FeedConsumerHost
+{
+    private static final Logger LOG = LoggerFactory.getLogger(FeedConsumerHost.class);
+
+    private static final int DEFAULT_THREADS = 4;
+
+    private static final int DEFAULT_ENTRIES_PER_TURN = 100;
+
+    private final String name;
+
+    private final List<FeedConsumerConfiguration> feedConsumerConfigurations = new ArrayList<FeedConsumerConfiguration>();
+
+    private final List<FeedConsumerScheduler> feedConsumers = new ArrayList<FeedConsumerScheduler>();
+
+    private int threads = DEFAULT_THREADS;
+
+    private int entriesPerTurn = DEFAULT_ENTRIES_PER_TURN;
+
+    private ConnectionPoolConfiguration connectionPool = new ConnectionPoolConfiguration();
+
+    private MetricRegistry metricRegistry = new MetricRegistry();
+
+    private HealthCheckRegistry healthCheckRegistry = new HealthCheckRegistry();
+
+    private ScheduledThreadPoolExecutor scheduledExecutorService;
+
+    private PoolingHttpClientConnectionManager connectionManager;
+
+    private Optional<IdleConnectionEvictor> connectionEvictor = Optional.absent();
+
+    private boolean started;
+
+    public FeedConsumerHost(final String name)
+    {
+        this.name = name;
+    }
+
+    /**
+     * Number of threads polling hosted feeds. Defaults to 4.
+     */
+    public FeedConsumerHost withThreads(final int threads)
+    {
+        checkState(threads > 0, "Threads must be more than 0");
+        this.threads = threads;
+
+        return this;
+    }
+
+    /**
+     * Number of entries consumed at most per poll of a hosted feed, unless set for the feed itself
+     * (see {@link FeedConsumerConfiguration#consumeAtMostPerPoll(int)}). Defaults to 100.
+     */
+    public FeedConsumerHost withEntriesPerTurn(final int entriesPerTurn)
+    {
+        checkState(entriesPerTurn > 0, "Entries per turn must be more than 0");
+        this.entriesPerTurn = entriesPerTurn;
+
+        return this;
+    }
+
+    /**
+     * Pool of http connections shared by all hosted feeds, including the eviction of idle and expired connections.
+     */
+    public FeedConsumerHost withConnectionPool(final ConnectionPoolConfiguration connectionPool)
+    {
+        this.connectionPool = connectionPool;
+
+        return this;
+    }
+
+    public FeedConsumerHost withMetricRegistry(final MetricRegistry metricRegistry)
+    {
+        this.metricRegistry = metricRegistry;
+
+        return this;
+    }
+
+    public FeedConsumerHost withHealthCheckRegistry(final HealthCheckRegistry healthCheckRegistry)
+    {
+        this.healthCheckRegistry = healthCheckRegistry;
+
+        return this;
+    }
+
+    /**
+     * Adds a feed to consume, its metrics and health checks being registered in the registries of the host.
+     */
+    public FeedConsumerHost host(final FeedConsumerConfiguration feedConsumerConfiguration)
+    {
+        checkState(!started, "Feed consumer host already started");
+        feedConsumerConfigurations.add(feedConsumerConfiguration);
+
+        return this;
+    }
+
+    public MetricRegistry getMetricRegistry()
+    {
+        return metricRegistry;
+    }
+
+    public HealthCheckRegistry getHealthCheckRegistry()
+    {
+        return healthCheckRegistry;
+    }
+
+    public void start()
+    {
+        checkState(!started, "Feed consumer host already started");
+        started = true;
+
+        scheduledExecutorService = new ScheduledThreadPoolExecutor(threads);
+        scheduledExecutorService.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        connectionManager = ClientBuilder.newConnectionManager(connectionPool);
+        metricRegistry.registerAll(new ConnectionPoolMetricSet(name, connectionManager));
+        connectionEvictor = ClientBuilder.newIdleConnectionEvictor(connectionManager, connectionPool);
+        if (connectionEvictor.isPresent())
+        {
+            connectionEvictor.get().start();
+        }
+
+        for (final FeedConsumerConfiguration feedConsumerConfiguration : feedConsumerConfigurations)
+        {
+            feedConsumers.add(feedConsumerConfiguration.hostedOn(scheduledExecutorService, connectionManager, entriesPerTurn)
+                                      .withMetricRegistry(metricRegistry)
+                                      .withHealthCheckRegistry(healthCheckRegistry)
+                                      .registerShutdownHook(false)
+                                      .build());
+        }
+
+        LOG.info("Starting {} feed consumers on {} threads", feedConsumers.size(), threads);
+        for (final FeedConsumerScheduler feedConsumer : feedConsumers)
+        {
+            feedConsumer.start();
+        }
+    }
+
+    /**
+     * Stops polling, waiting for polls under way to complete, then stops every hosted feed consumer and releases the connections they shared.
+     */
+    public void stop()
+    {
+        if (scheduledExecutorService != null)
+        {
+            new ShutdownProcedure(scheduledExecutorService).run();
+        }
+
+        for (final FeedConsumerScheduler feedConsumer : feedConsumers)
+        {
+            feedConsumer.stop();
+        }
+
+        if (connectionEvictor.isPresent())
+        {
+            connectionEvictor.get().shutdown();
+        }
+        if (connectionManager != null)
+        {
+            connectionManager.shutdown();
+        }
+    }
+}
@@ -1,14 +1,24 @@
 package com.qmetric.feed.consumer;
 
+import com.google.common.base.Optional;
 import com.qmetric.feed.consumer.store.AlreadyConsumingException;
 import com.qmetric.feed.consumer.store.FeedTracker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 import static com.google.common.collect.FluentIterable.from;
+import static com.google.common.util.concurrent.MoreExecutors.newDirectExecutorService;
 
 public class FeedConsumerImpl implements FeedConsumer
 {
@@ -20,11 +30,51 @@ public class FeedConsumerImpl implements FeedConsumer
 
     private final Collection<FeedPollingListener> listeners;
 
+    private final Collection<UpcomingEntriesListener> upcomingEntriesListeners;
+
+    private final ExecutorService workers;
+
+    private final int maxEntriesPerPoll;
+
+    private final Optional<OrderedLanes> lanes;
+
+    private final Optional<NodePartitioning> nodePartitioning;
+
     public FeedConsumerImpl(final EntryConsumer entryConsumer, final FeedTracker feedTracker, final Collection<FeedPollingListener> listeners)
+    {
+        this(entryConsumer, feedTracker, listeners, newDirectExecutorService());
+    }
+
+    /**
+     * @param workers Executor used to consume entries. Entries of a single poll are submitted all at once and the poll completes
+     *                only once every submitted entry has finished, so a pool of n threads consumes up to n entries concurrently.
+     */
+    public FeedConsumerImpl(final EntryConsumer entryConsumer, final FeedTracker feedTracker, final Collection<FeedPollingListener> listeners,
+                            final ExecutorService workers)
+    {
+        this(entryConsumer, feedTracker, listeners, Collections.<UpcomingEntriesListener>emptyList(), workers, Optional.<OrderedLanes>absent(),
+             Optional.<NodePartitioning>absent(), Optional.<Integer>absent());
+    }
+
+    /**
+     * @param lanes             Lanes to consume entries on by key, rather than the given workers, entries of a poll being submitted in publish
+     *                          order, and those beyond the maximum per poll being the latest published. Once an entry is not consumed successfully, further entries of its key are left for the next poll, so that
+     *                          they are not consumed ahead of it.
+     * @param nodePartitioning  Partitioning of entries between nodes, this consumer consuming the share of its own node only.
+     * @param maxEntriesPerPoll Number of entries consumed at most per poll, any further entries being left for the next poll.
+     */
+    FeedConsumerImpl(final EntryConsumer entryConsumer, final FeedTracker feedTracker, final Collection<FeedPollingListener> listeners,
+                     final Collection<UpcomingEntriesListener> upcomingEntriesListeners, final ExecutorService workers, final Optional<OrderedLanes> lanes,
+                     final Optional<NodePartitioning> nodePartitioning, final Optional<Integer> maxEntriesPerPoll)
     {
         this.entryConsumer = entryConsumer;
         this.feedTracker = feedTracker;
         this.listeners = listeners;
+        this.upcomingEntriesListeners = upcomingEntriesListeners;
+        this.workers = workers;
+        this.maxEntriesPerPoll = maxEntriesPerPoll.or(Integer.MAX_VALUE);
+        this.lanes = lanes;
+        this.nodePartitioning = nodePartitioning;
     }
 
     @Override
@@ -35,6 +85,8 @@ public class FeedConsumerImpl implements FeedConsumer
 
     private List<TrackedEntry> consume(final List<TrackedEntry> entries) throws Exception
     {
+        notifyUpcoming(entries);
+
         processEach(entries);
 
         notifyAllListeners(entries);
@@ -43,31 +95,147 @@ public class FeedConsumerImpl implements FeedConsumer
     }
 
     private void processEach(final List<TrackedEntry> entries) throws Exception
+    {
+        final List<Future<?>> inFlight = new ArrayList<Future<?>>(entries.size());
+        final Set<Object> heldBackKeys = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+
+        try
+        {
+            for (int i = 0; i < entries.size(); i++)
+            {
+                final TrackedEntry trackedEntry = entries.get(i);
+
+                if (lanes.isPresent())
+                {
+                    final Object key = lanes.get().keyOf(trackedEntry);
+                    if (key == null)
+                    {
+                        LOG.warn("Key of entry {} unknown, leaving it and {} further entries for the next poll", trackedEntry, entries.size() - i - 1);
+                        leaveForNextPoll(entries.subList(i, entries.size()));
+                        break;
+                    }
+                    inFlight.add(lanes.get().submit(key, processingInOrder(trackedEntry, key, heldBackKeys)));
+                }
+                else
+                {
+                    inFlight.add(workers.submit(processing(trackedEntry)));
+                }
+            }
+        }
+        catch (RejectedExecutionException e)
+        {
+            LOG.warn("Entry consumers no longer accepting entries, {} of {} entries submitted", inFlight.size(), entries.size(), e);
+        }
+
+        awaitCompletion(inFlight);
+    }
+
+    /**
+     * Leaves the given entries for the next poll, as any of them may share the key of the first, which cannot be worked out for now.
+     */
+    private void leaveForNextPoll(final List<TrackedEntry> entries)
     {
         for (final TrackedEntry trackedEntry : entries)
         {
-            try
+            notifyProcessed(trackedEntry);
+        }
+    }
+
+    private Runnable processing(final TrackedEntry trackedEntry)
+    {
+        return new Runnable()
+        {
+            @Override public void run()
             {
-                entryConsumer.consume(trackedEntry);
+                process(trackedEntry);
             }
-            catch (AlreadyConsumingException e)
+        };
+    }
+
+    private Runnable processingInOrder(final TrackedEntry trackedEntry, final Object key, final Set<Object> heldBackKeys)
+    {
+        return new Runnable()
+        {
+            @Override public void run()
             {
-                LOG.info("Entry {} already being consumed", trackedEntry, e);
+                if (heldBackKeys.contains(key))
+                {
+                    LOG.info("Entry {} held back until preceding entries of key {} are consumed", trackedEntry, key);
+                    notifyProcessed(trackedEntry);
+                }
+                else if (!process(trackedEntry))
+                {
+                    heldBackKeys.add(key);
+                }
             }
-            catch (Exception e)
+        };
+    }
+
+    private boolean process(final TrackedEntry trackedEntry)
+    {
+        try
+        {
+            return entryConsumer.consume(trackedEntry);
+        }
+        catch (AlreadyConsumingException e)
+        {
+            LOG.info("Entry {} already being consumed", trackedEntry, e);
+            return false;
+        }
+        catch (Exception e)
+        {
+            LOG.warn("Entry {} failed processing", trackedEntry, e);
+            return false;
+        }
+        catch (Throwable e)
+        {
+            LOG.error("Fatal error processing entry {}", trackedEntry, e);
+            return false;
+        }
+        finally
+        {
+            notifyProcessed(trackedEntry);
+        }
+    }
+
+    private void awaitCompletion(final List<Future<?>> inFlight) throws InterruptedException
+    {
+        for (final Future<?> entryProcessing : inFlight)
+        {
+            try
             {
-                LOG.warn("Entry {} failed processing", trackedEntry, e);
+                entryProcessing.get();
             }
-            catch (Throwable e)
+            catch (ExecutionException e)
             {
-                LOG.error("Fatal error processing entry {}", trackedEntry, e);
+                LOG.error("Fatal error processing entry", e.getCause());
             }
         }
     }
 
     private List<TrackedEntry> unconsumed()
     {
-        return from(feedTracker.getEntriesToBeConsumed()).toList();
+        final Iterable<TrackedEntry> entries = feedTracker.getEntriesToBeConsumed();
+        final Iterable<TrackedEntry> share = nodePartitioning.isPresent() ? nodePartitioning.get().shareOf(entries) : entries;
+
+        // ordered before limiting, so that entries left for the next poll all follow those consumed, none preceding an entry of its key
+        return from(lanes.isPresent() ? OrderedLanes.inPublishOrder(from(share).toList()) : share).limit(maxEntriesPerPoll).toList();
+    }
+
+    private void notifyUpcoming(final List<TrackedEntry> entries)
+    {
+        for (final UpcomingEntriesListener listener : upcomingEntriesListeners)
+        {
+            listener.upcoming(entries);
+        }
+    }
+
+    private void notifyProcessed(final TrackedEntry entry)
+    {
+        for (final UpcomingEntriesListener listener : upcomingEntriesListeners)
+        {
+            listener.processed(entry);
+        }
     }
 
     private void notifyAllListeners(final List<TrackedEntry> consumedEntries)
@@ -1,11 +1,20 @@
 package com.qmetric.feed.consumer;
 
+import com.google.common.base.Optional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import static com.google.common.collect.ObjectArrays.concat;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
 public class FeedConsumerScheduler
 {
     private static final Logger LOG = LoggerFactory.getLogger(FeedConsumerScheduler.class);
@@ -14,8 +23,20 @@ public class FeedConsumerScheduler
 
     private final Interval interval;
 
+    private final Optional<AdaptivePollingInterval> adaptiveInterval;
+
+    private final Optional<ExecutorService> consumptionStage;
+
     private final ScheduledExecutorService scheduledExecutorService;
 
+    private final boolean ownsScheduledExecutorService;
+
+    private final Object pollingLock = new Object();
+
+    private volatile boolean stopped;
+
+    private volatile Future<?> scheduledPolling;
+
     private final boolean registerShutdownHook;
 
     private final String feedUrl;
@@ -26,27 +47,88 @@ public class FeedConsumerScheduler
 
     private ShutdownProcedure shutdownProcedure;
 
-    FeedConsumerScheduler(final FeedConsumer consumer, AvailableFeedEntriesTracker feedEntriesTracker, final Interval interval, final ScheduledExecutorService scheduledExecutorService, final boolean registerShutdownHook, final String feedUrl)
+    /**
+     * @param workerExecutorServices Executor services running work on behalf of polls (e.g. entry consumption), shut down after the polling scheduler.
+     */
+    FeedConsumerScheduler(final FeedConsumer consumer, AvailableFeedEntriesTracker feedEntriesTracker, final Interval interval, final ScheduledExecutorService scheduledExecutorService,
+                          final boolean registerShutdownHook, final String feedUrl, final ExecutorService... workerExecutorServices)
+    {
+        this(consumer, feedEntriesTracker, interval, Optional.<AdaptivePollingInterval>absent(), Optional.<ExecutorService>absent(), scheduledExecutorService, true,
+             registerShutdownHook, feedUrl, workerExecutorServices);
+    }
+
+    /**
+     * @param interval         Fixed polling interval, ignored when polling adaptively.
+     * @param adaptiveInterval Interval adapted to the outcome of each poll, polls then being scheduled one after the other rather than
+     *                         at a fixed rate.
+     * @param consumptionStage Executor consuming entries apart from the polling scheduler, which then only discovers new entries and
+     *                         hands consumption passes over to it (see {@link #newConsumptionStage()}). When absent, each poll discovers
+     *                         then consumes entries in turn.
+     * @param ownsScheduledExecutorService Whether the scheduled executor service polls this feed alone, and is shut down when stopping.
+     *                                     Otherwise, stopping only cancels the polling of this feed.
+     */
+    FeedConsumerScheduler(final FeedConsumer consumer, AvailableFeedEntriesTracker feedEntriesTracker, final Interval interval,
+                          final Optional<AdaptivePollingInterval> adaptiveInterval, final Optional<ExecutorService> consumptionStage,
+                          final ScheduledExecutorService scheduledExecutorService, final boolean ownsScheduledExecutorService, final boolean registerShutdownHook,
+                          final String feedUrl, final ExecutorService... workerExecutorServices)
     {
         this.consumer = consumer;
         this.interval = interval;
+        this.adaptiveInterval = adaptiveInterval;
+        this.consumptionStage = consumptionStage;
         this.scheduledExecutorService = scheduledExecutorService;
+        this.ownsScheduledExecutorService = ownsScheduledExecutorService;
         this.registerShutdownHook = registerShutdownHook;
         this.feedUrl = feedUrl;
-        this.shutdownProcedure = new ShutdownProcedure(scheduledExecutorService);
+        final ExecutorService[] stages = consumptionStage.isPresent()
+                                         ? concat(consumptionStage.get(), workerExecutorServices)
+                                         : workerExecutorServices;
+        this.shutdownProcedure = new ShutdownProcedure(ownsScheduledExecutorService ? concat(scheduledExecutorService, stages) : stages);
         this.feedEntriesTracker = feedEntriesTracker;
     }
 
     public void start()
     {
-        scheduledExecutorService.scheduleAtFixedRate(new Runnable()
+        synchronized (pollingLock)
         {
-            @Override
-            public void run()
+            if (adaptiveInterval.isPresent())
             {
-                pollFeed();
+                scheduledPolling = scheduledExecutorService.schedule(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        final long delay = pollFeed();
+                        synchronized (pollingLock) // so that stopping cannot cancel the previous poll while the next one is being scheduled
+                        {
+                            try
+                            {
+                                if (!stopped)
+                                {
+                                    LOG.debug("Polling feed {} again in {} ms", feedUrl, delay);
+                                    scheduledPolling = scheduledExecutorService.schedule(this, delay, MILLISECONDS);
+                                }
+                            }
+                            catch (final RejectedExecutionException e)
+                            {
+                                LOG.info("Stopped polling feed {}", feedUrl);
+                            }
+                        }
+                    }
+                }, 0, MILLISECONDS);
             }
-        }, 0, interval.time, interval.unit);
+            else
+            {
+                scheduledPolling = scheduledExecutorService.scheduleAtFixedRate(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        pollFeed();
+                    }
+                }, 0, interval.time, interval.unit);
+            }
+        }
 
         if (registerShutdownHook)
         {
@@ -57,6 +139,15 @@ public class FeedConsumerScheduler
 
     public void stop()
     {
+        synchronized (pollingLock)
+        {
+            stopped = true;
+            if (scheduledPolling != null)
+            {
+                scheduledPolling.cancel(false);
+            }
+        }
+
         if (registerShutdownHook)
         {
             shutdownProcedure.runAndRemoveHook();
@@ -67,40 +158,78 @@ public class FeedConsumerScheduler
         }
     }
 
+    /**
+     * Single consumption thread with room for a single pending pass. As each pass consumes every entry tracked by then,
+     * hand-offs made while a pass is already pending are dropped, so discovery never waits on consumption nor queues up work.
+     */
+    static ExecutorService newConsumptionStage()
+    {
+        return new ThreadPoolExecutor(1, 1, 0, MILLISECONDS, new ArrayBlockingQueue<Runnable>(1), new ThreadPoolExecutor.DiscardPolicy());
+    }
+
     protected int getInvocationsCount()
     {
         return invocationCounter.get();
     }
 
-    private void pollFeed()
+    /**
+     * @return Delay in milliseconds before the next poll, when polling adaptively.
+     */
+    private long pollFeed()
     {
+        int newEntries = 0;
         try
         {
             LOG.info("Checking feed {} for new entries", feedUrl);
 
-            updateTracker();
-            consume();
-            invocationCounter.getAndIncrement();
+            newEntries = updateTracker();
+            if (consumptionStage.isPresent())
+            {
+                handOffConsumption();
+            }
+            else
+            {
+                consume();
+                invocationCounter.getAndIncrement();
+            }
         }
         catch (final Throwable e)
         {
             LOG.error("poll-feed exception", e);
         }
+
+        return adaptiveInterval.isPresent() ? adaptiveInterval.get().next(newEntries) : 0;
     }
 
-    private void updateTracker()
+    private void handOffConsumption()
+    {
+        consumptionStage.get().execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                consume();
+                invocationCounter.getAndIncrement();
+            }
+        });
+    }
+
+    private int updateTracker()
     {
         try
         {
             LOG.debug("Running entry-tracker");
 
-            feedEntriesTracker.trackNewEntries();
+            final int newEntries = feedEntriesTracker.trackNewEntries();
 
             LOG.debug("entry-tracker returned normally");
+
+            return newEntries;
         }
         catch (final Exception e)
         {
             LOG.error("entry-tracker exception", e);
+            return 0;
         }
     }
 
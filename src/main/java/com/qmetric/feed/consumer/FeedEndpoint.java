@@ -1,20 +1,24 @@
 package com.qmetric.feed.consumer;
 
+import com.google.common.base.Function;
 import com.google.common.base.Optional;
+import com.google.common.io.CharStreams;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.ContentType;
 import org.apache.http.util.EntityUtils;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringReader;
 import java.nio.charset.Charset;
 
 import static com.google.common.base.Preconditions.checkState;
 import static java.net.HttpURLConnection.HTTP_NOT_FOUND;
+import static java.net.HttpURLConnection.HTTP_NOT_MODIFIED;
 import static java.net.HttpURLConnection.HTTP_OK;
 import static org.apache.commons.lang3.StringUtils.containsIgnoreCase;
 
@@ -22,6 +26,23 @@ public class FeedEndpoint
 {
     private static final String EXPECTED_NOT_FOUND_BODY = "Feed entry not found";
 
+    private static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
+
+    private static final Function<Reader, Reader> MATERIALISE = new Function<Reader, Reader>()
+    {
+        @Override public Reader apply(final Reader input)
+        {
+            try
+            {
+                return new StringReader(CharStreams.toString(input));
+            }
+            catch (IOException e)
+            {
+                throw new RuntimeException("Error getting HAL feed: ", e);
+            }
+        }
+    };
+
     private final HttpClient client;
 
     private final String url;
@@ -32,13 +53,27 @@ public class FeedEndpoint
         this.url = url;
     }
 
+    /**
+     * Reads the whole response into memory. Prefer {@link #get(Function)}, which reads the response as it is received.
+     */
     public Optional<Reader> get()
+    {
+        return get(MATERIALISE);
+    }
+
+    /**
+     * Hands the response body to the given reader while it is being received, without holding the whole body in memory, and decoded
+     * through buffers reused by the responses read on each thread.
+     * The reader must be done with the body when returning, the connection being released straight after.
+     *
+     * @return Result of reading the body, or absent when the feed entry does not exist.
+     */
+    public <T> Optional<T> get(final Function<Reader, T> responseReader)
     {
         HttpResponse response = null;
         try
         {
-            final HttpGet httpGet = new HttpGet(url);
-            response = client.execute(httpGet);
+            response = client.execute(new HttpGet(url));
             final int statusCode = response.getStatusLine().getStatusCode();
 
             check(response.getStatusLine());
@@ -49,8 +84,7 @@ public class FeedEndpoint
                 return Optional.absent();
             }
 
-            String entity = EntityUtils.toString(response.getEntity(), Charset.forName("UTF-8"));
-            return Optional.<Reader>of(new StringReader(entity));
+            return Optional.of(read(response, responseReader));
         }
         catch (IOException e)
         {
@@ -58,11 +92,69 @@ public class FeedEndpoint
         }
         finally
         {
-            if (response != null)
-            {
-                EntityUtils.consumeQuietly(response.getEntity());
-            }
+            release(response);
+        }
+    }
+
+    /**
+     * Requests a feed page conditionally on the validators remembered for its url, streaming the response as {@link #get(Function)} does.
+     *
+     * @return Result of reading the body, or absent when the page has not been modified.
+     */
+    public <T> Optional<T> getIfModified(final Function<Reader, T> responseReader, final ConditionalGet conditionalGet)
+    {
+        HttpResponse response = null;
+        try
+        {
+            final HttpGet httpGet = new HttpGet(url);
+            conditionalGet.addConditionsTo(httpGet);
+            response = client.execute(httpGet);
+            final StatusLine status = response.getStatusLine();
+
+            checkState(status.getStatusCode() == HTTP_OK || status.getStatusCode() == HTTP_NOT_MODIFIED, "Endpoint returned [%s: %s]", status.getStatusCode(), status.getReasonPhrase());
+            conditionalGet.received(httpGet, response);
+
+            return status.getStatusCode() == HTTP_NOT_MODIFIED ? Optional.<T>absent() : Optional.of(read(response, responseReader));
         }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Error getting HAL feed: ", e);
+        }
+        finally
+        {
+            release(response);
+        }
+    }
+
+    private static <T> T read(final HttpResponse response, final Function<Reader, T> responseReader) throws IOException
+    {
+        final HttpEntity entity = response.getEntity();
+        checkState(entity != null, "Endpoint returned no content");
+
+        final Reader body = new ResponseBodyReader(entity.getContent(), charsetOf(entity));
+        try
+        {
+            return responseReader.apply(body);
+        }
+        finally
+        {
+            body.close();
+        }
+    }
+
+    private static void release(final HttpResponse response)
+    {
+        if (response != null)
+        {
+            EntityUtils.consumeQuietly(response.getEntity());
+        }
+    }
+
+    private static Charset charsetOf(final HttpEntity entity)
+    {
+        final ContentType contentType = ContentType.get(entity);
+
+        return contentType != null && contentType.getCharset() != null ? contentType.getCharset() : DEFAULT_CHARSET;
     }
 
     private void check(final StatusLine status)
@@ -0,0 +1,46 @@
+package com.qmetric.feed.consumer;
+
+import com.qmetric.feed.consumer.flow.Publisher;
+import com.qmetric.feed.consumer.flow.Subscriber;
+
+/**
+ * Publishes the entries of a feed to a single subscriber, with the subscriber's demand driving how many entries are fetched and held
+ * as being consumed. Each entry delivered has to be acknowledged with the result of consuming it (see {@link AcknowledgeableFeedEntry}).
+ * <p/>
+ * Polling the feed starts on subscribing, and stops once the subscription is cancelled. The stream of entries never completes.
+ */
+public class FeedEntryPublisher implements Publisher<AcknowledgeableFeedEntry>
+{
+    private final PublishingFeedConsumer publishingFeedConsumer;
+
+    private final FeedConsumerScheduler scheduler;
+
+    FeedEntryPublisher(final PublishingFeedConsumer publishingFeedConsumer, final FeedConsumerScheduler scheduler)
+    {
+        this.publishingFeedConsumer = publishingFeedConsumer;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * @throws IllegalStateException When already subscribed to.
+     */
+    @Override public void subscribe(final Subscriber<? super AcknowledgeableFeedEntry> subscriber)
+    {
+        publishingFeedConsumer.subscribe(subscriber, new Runnable()
+        {
+            @Override public void run()
+            {
+                // cancelling may well happen while an entry is being delivered, on a thread the scheduler waits for when stopping
+                new Thread(new Runnable()
+                {
+                    @Override public void run()
+                    {
+                        scheduler.stop();
+                    }
+                }, "feed-entry-publisher-stop").start();
+            }
+        });
+
+        scheduler.start();
+    }
+}
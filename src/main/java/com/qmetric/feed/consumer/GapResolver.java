@@ -0,0 +1,180 @@
+package com.qmetric.feed.consumer;
+
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.qmetric.feed.consumer.store.BatchFeedTracker;
+import com.qmetric.feed.consumer.store.FeedTracker;
+import com.qmetric.feed.consumer.store.GapFeedTracker;
+import com.qmetric.hal.reader.HalReader;
+import com.qmetric.hal.reader.HalResource;
+import com.theoryinpractise.halbuilder.api.Link;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.qmetric.feed.consumer.store.BatchFeedTrackerAdapter.batching;
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+/**
+ * Looks again for the entries of each gap recorded by a {@link GapFeedTracker}, by reading the page the gap was found on, and the
+ * pages before it until reaching the start of the gap. Entries turning up are tracked to be consumed as usual, the gap being dropped
+ * once all of its entries have. Gaps missing for longer than the given timeout are expired.
+ * <p/>
+ * The cost of a pass therefore depends on the number of gaps, whatever the number of ids they span. Passes made while the feed is not
+ * modified only expire gaps, as no entry can have turned up since the previous pass.
+ */
+class GapResolver
+{
+    private static final Logger LOG = LoggerFactory.getLogger(GapResolver.class);
+
+    private static final String NEXT_LINK_RELATION = "next";
+
+    private static final String ENTRIES = "entries";
+
+    private static final String ENTRY_ID = "_id";
+
+    /**
+     * Time after which entries missing from the feed are given up on, unless configured otherwise.
+     */
+    static final Interval DEFAULT_MISSING_ENTRIES_TIMEOUT = new Interval(15, MINUTES);
+
+    private final FeedEndpointFactory feedEndpointFactory;
+
+    private final HalResourceReader halResourceReader;
+
+    private final BatchFeedTracker feedTracker;
+
+    private final Optional<GapFeedTracker> gapFeedTracker;
+
+    private final PageOfSeenEntriesFactory pageOfSeenEntriesFactory;
+
+    private final Interval timeout;
+
+    private final DateTimeSource dateTimeSource;
+
+    GapResolver(final FeedEndpointFactory feedEndpointFactory, final HalReader halReader, final FeedTracker feedTracker,
+                final PageOfSeenEntriesFactory pageOfSeenEntriesFactory, final Interval timeout, final DateTimeSource dateTimeSource)
+    {
+        this.feedEndpointFactory = feedEndpointFactory;
+        this.halResourceReader = new HalResourceReader(halReader);
+        this.feedTracker = batching(feedTracker);
+        this.gapFeedTracker = feedTracker instanceof GapFeedTracker ? Optional.of((GapFeedTracker) feedTracker) : Optional.<GapFeedTracker>absent();
+        this.pageOfSeenEntriesFactory = pageOfSeenEntriesFactory;
+        this.timeout = timeout;
+        this.dateTimeSource = dateTimeSource;
+    }
+
+    /**
+     * @param feedModified Whether the latest page of the feed was modified since the previous pass, pages of gaps being read again only when it was.
+     */
+    void resolveGaps(final boolean feedModified)
+    {
+        if (gapFeedTracker.isPresent())
+        {
+            for (final EntryGap gap : gapFeedTracker.get().getGaps())
+            {
+                if (dateTimeSource.now().isBefore(gap.created.plus(timeout.asMillis())))
+                {
+                    if (feedModified)
+                    {
+                        resolve(gap);
+                    }
+                }
+                else
+                {
+                    LOG.info("{} entries still missing from feed after {} {} - giving up on {}", gap.size(), timeout.time, timeout.unit, gap);
+                    gapFeedTracker.get().expireGap(gap);
+                }
+            }
+        }
+    }
+
+    private void resolve(final EntryGap gap)
+    {
+        try
+        {
+            final Set<EntryId> entriesFound = new HashSet<EntryId>();
+            Optional<HalResource> page = feedEndpointFactory.create(gap.pageUrl).get(halResourceReader);
+
+            while (page.isPresent())
+            {
+                final List<HalResource> entries = page.get().getResourcesByRel(ENTRIES);
+
+                entriesFound.addAll(trackEntriesWithin(gap, entries));
+
+                page = reachesStartOf(gap, entries) ? Optional.<HalResource>absent() : loadNextPage(page.get());
+            }
+
+            if (entriesFound.size() == gap.size())
+            {
+                LOG.info("all entries previously missing from feed now tracked - dropping {}", gap);
+                gapFeedTracker.get().expireGap(gap);
+            }
+        }
+        catch (final RuntimeException e)
+        {
+            LOG.warn("Failed to look for entries missing from feed in {}", gap, e);
+        }
+    }
+
+    /**
+     * @return Ids of the given entries within the gap, all of them tracked by now.
+     */
+    private Set<EntryId> trackEntriesWithin(final EntryGap gap, final List<HalResource> entries)
+    {
+        final List<HalResource> entriesWithinGap = new ArrayList<HalResource>();
+        final Set<EntryId> idsWithinGap = new HashSet<EntryId>();
+        for (final HalResource entry : entries)
+        {
+            if (gap.contains(idOf(entry)))
+            {
+                entriesWithinGap.add(entry);
+                idsWithinGap.add(idOf(entry));
+            }
+        }
+
+        if (!entriesWithinGap.isEmpty())
+        {
+            final List<SeenEntry> untrackedEntries = pageOfSeenEntriesFactory.create(entriesWithinGap).reverse().untrackedEntries();
+            if (!untrackedEntries.isEmpty())
+            {
+                LOG.info("found {} entries previously missing from feed in {}", untrackedEntries.size(), gap);
+                feedTracker.trackAll(untrackedEntries);
+            }
+        }
+
+        return idsWithinGap;
+    }
+
+    private static boolean reachesStartOf(final EntryGap gap, final List<HalResource> entries)
+    {
+        for (final HalResource entry : entries)
+        {
+            if (idOf(entry).asNumeric() <= gap.first.asNumeric())
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Optional<HalResource> loadNextPage(final HalResource page)
+    {
+        return page.getLinkByRel(NEXT_LINK_RELATION).transform(new Function<Link, HalResource>()
+        {
+            @Override public HalResource apply(final Link link)
+            {
+                return feedEndpointFactory.create(link.getHref()).get(halResourceReader).get();
+            }
+        });
+    }
+
+    private static EntryId idOf(final HalResource entry)
+    {
+        return EntryId.of(entry.getValueAsString(ENTRY_ID).get());
+    }
+}
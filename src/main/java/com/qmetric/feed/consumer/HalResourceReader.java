@@ -0,0 +1,25 @@
+package com.qmetric.feed.consumer;
+
+import com.google.common.base.Function;
+import com.qmetric.hal.reader.HalReader;
+import com.qmetric.hal.reader.HalResource;
+
+import java.io.Reader;
+
+/**
+ * Parses a response body as it is streamed from a {@link FeedEndpoint}.
+ */
+class HalResourceReader implements Function<Reader, HalResource>
+{
+    private final HalReader halReader;
+
+    HalResourceReader(final HalReader halReader)
+    {
+        this.halReader = halReader;
+    }
+
+    @Override public HalResource apply(final Reader input)
+    {
+        return halReader.read(input);
+    }
+}
@@ -0,0 +1,100 @@
+package com.qmetric.feed.consumer;
+
+import com.codahale.metrics.Meter;
+import com.qmetric.feed.consumer.store.AlreadyConsumingException;
+import com.qmetric.feed.consumer.store.LeaseLostException;
+import com.qmetric.feed.consumer.store.LeasingFeedTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static com.google.common.util.concurrent.Futures.immediateFuture;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Marks entries as consuming under leases of the given duration, renewing the lease of each entry every third of that duration for as
+ * long as it is being consumed. Entries left consuming by a consumer that died are offered again once their lease has expired.
+ */
+class Leases
+{
+    private static final Logger LOG = LoggerFactory.getLogger(Leases.class);
+
+    private final LeasingFeedTracker feedTracker;
+
+    private final String owner;
+
+    private final Interval duration;
+
+    private final ScheduledExecutorService renewals;
+
+    private final Meter reclaimed = new Meter();
+
+    Leases(final LeasingFeedTracker feedTracker, final String owner, final Interval duration, final ScheduledExecutorService renewals)
+    {
+        this.feedTracker = feedTracker;
+        this.owner = owner;
+        this.duration = duration;
+        this.renewals = renewals;
+    }
+
+    void claim(final EntryId id) throws AlreadyConsumingException
+    {
+        if (feedTracker.markAsConsuming(id, owner, duration))
+        {
+            LOG.info("Reclaimed entry {} after its lease expired", id);
+            reclaimed.mark();
+        }
+    }
+
+    /**
+     * @return Renewal of the lease on the given entry, to be cancelled once the entry is consumed.
+     */
+    Future<?> renewWhileConsuming(final EntryId id)
+    {
+        final long period = Math.max(duration.asMillis() / 3, 1);
+
+        try
+        {
+            return renewals.scheduleWithFixedDelay(renewing(id), period, period, MILLISECONDS);
+        }
+        catch (RejectedExecutionException e)
+        {
+            LOG.warn("Lease renewals no longer accepted, lease on entry {} left to expire", id);
+            return immediateFuture(null);
+        }
+    }
+
+    private Runnable renewing(final EntryId id)
+    {
+        return new Runnable()
+        {
+            @Override public void run()
+            {
+                try
+                {
+                    feedTracker.renewLease(id, owner, duration);
+                }
+                catch (LeaseLostException e)
+                {
+                    LOG.warn("Lost lease on entry {} while consuming it, it may be consumed again", id, e);
+                    throw new IllegalStateException(e); // stops further renewals
+                }
+                catch (RuntimeException e)
+                {
+                    LOG.warn("Failed to renew lease on entry {}, trying again", id, e);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return Meter of entries reclaimed after the lease of another owner expired.
+     */
+    Meter reclaimed()
+    {
+        return reclaimed;
+    }
+}
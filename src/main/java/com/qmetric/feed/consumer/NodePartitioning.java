@@ -0,0 +1,209 @@
+package com.qmetric.feed.consumer;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.hash.HashFunction;
+import com.qmetric.feed.consumer.store.MembershipFeedTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.hash.Hashing.murmur3_32;
+
+/**
+ * Partitions entries to be consumed between the nodes consuming a feed, so that nodes do not compete for the same entries.
+ * <p/>
+ * Each entry belongs to one of the nodes recorded in the tracker within the given timeout, by consistent hashing of its id over
+ * those nodes: as nodes come and go, only the entries of the nodes coming or going move to others. A node gone for longer than
+ * the timeout therefore has its share taken over by the remaining nodes.
+ * <p/>
+ * A node left with no entries of its own takes over entries of other nodes instead, among those they leave to their next poll,
+ * so that it rarely competes with them for the same entry.
+ */
+class NodePartitioning
+{
+    private static final Logger LOG = LoggerFactory.getLogger(NodePartitioning.class);
+
+    private static final int POINTS_PER_NODE = 64;
+
+    private static final HashFunction HASH = murmur3_32();
+
+    private final MembershipFeedTracker feedTracker;
+
+    private final String nodeId;
+
+    private final Interval nodeTimeout;
+
+    private final DateTimeSource dateTimeSource;
+
+    private final int entriesPerPoll;
+
+    private final Meter takenOver = new Meter();
+
+    private volatile Set<String> nodes = Collections.emptySet();
+
+    private SortedMap<Integer, String> ring = new TreeMap<Integer, String>();
+
+    /**
+     * @param entriesPerPoll Number of entries consumed at most per poll by each node, entries of other nodes beyond that number being
+     *                       left to their next poll, and so free to be taken over.
+     */
+    NodePartitioning(final MembershipFeedTracker feedTracker, final String nodeId, final Interval nodeTimeout, final DateTimeSource dateTimeSource,
+                     final int entriesPerPoll)
+    {
+        this.feedTracker = feedTracker;
+        this.nodeId = nodeId;
+        this.nodeTimeout = nodeTimeout;
+        this.dateTimeSource = dateTimeSource;
+        this.entriesPerPoll = entriesPerPoll;
+    }
+
+    /**
+     * Records this node as consuming the feed, then picks out its share of the given entries, in the given order. When it has none,
+     * picks out the entries of other nodes instead, to be taken over.
+     */
+    List<TrackedEntry> shareOf(final Iterable<TrackedEntry> entries)
+    {
+        final SortedMap<Integer, String> ring = ringOfCurrentNodes();
+
+        final ListMultimap<String, TrackedEntry> entriesByNode = ArrayListMultimap.create();
+        for (final TrackedEntry entry : entries)
+        {
+            entriesByNode.put(ownerOf(entry.id, ring), entry);
+        }
+
+        final List<TrackedEntry> own = entriesByNode.get(nodeId);
+        if (own.isEmpty())
+        {
+            final List<TrackedEntry> others = takenOverFrom(entriesByNode);
+            if (!others.isEmpty())
+            {
+                LOG.debug("Node {} idle, taking over {} entries of other nodes", nodeId, others.size());
+                takenOver.mark(others.size());
+            }
+            return others;
+        }
+
+        return new ArrayList<TrackedEntry>(own);
+    }
+
+    /**
+     * Takes the latest half of the entries each other node is not about to consume in its current poll, in an order of this node's
+     * own so as to keep clear of other idle nodes.
+     */
+    private List<TrackedEntry> takenOverFrom(final ListMultimap<String, TrackedEntry> entriesByNode)
+    {
+        final List<String> otherNodes = new ArrayList<String>(entriesByNode.keySet());
+        Collections.sort(otherNodes, inOrderOf(nodeId));
+
+        final List<TrackedEntry> others = new ArrayList<TrackedEntry>();
+        for (final String otherNode : otherNodes)
+        {
+            final List<TrackedEntry> entriesOfNode = entriesByNode.get(otherNode);
+            final int leftToNextPoll = Math.max(entriesOfNode.size() - entriesPerPoll, 0);
+            final List<TrackedEntry> latestHalf = new ArrayList<TrackedEntry>(entriesOfNode.subList(entriesOfNode.size() - leftToNextPoll / 2, entriesOfNode.size()));
+            Collections.sort(latestHalf, byIdInOrderOf(nodeId));
+            others.addAll(latestHalf);
+        }
+        return others;
+    }
+
+    private synchronized SortedMap<Integer, String> ringOfCurrentNodes()
+    {
+        feedTracker.recordMember(nodeId);
+
+        final Set<String> currentNodes = ImmutableSortedSet.<String>naturalOrder()
+                .addAll(feedTracker.getMembersSince(dateTimeSource.now().minus(nodeTimeout.asMillis())))
+                .add(nodeId)
+                .build();
+
+        if (!currentNodes.equals(nodes))
+        {
+            LOG.info("Partitioning entries between nodes {}", currentNodes);
+            ring = ringOf(currentNodes);
+            nodes = currentNodes;
+        }
+
+        return ring;
+    }
+
+    static SortedMap<Integer, String> ringOf(final Set<String> nodes)
+    {
+        final SortedMap<Integer, String> ring = new TreeMap<Integer, String>();
+        for (final String node : nodes)
+        {
+            for (int point = 0; point < POINTS_PER_NODE; point++)
+            {
+                ring.put(HASH.hashString(node + "#" + point, UTF_8).asInt(), node);
+            }
+        }
+        return ring;
+    }
+
+    static String ownerOf(final EntryId id, final SortedMap<Integer, String> ring)
+    {
+        final SortedMap<Integer, String> following = ring.tailMap(HASH.hashString(id.toString(), UTF_8).asInt());
+
+        return following.isEmpty() ? ring.get(ring.firstKey()) : following.get(following.firstKey());
+    }
+
+    private static Comparator<String> inOrderOf(final String nodeId)
+    {
+        return new Comparator<String>()
+        {
+            @Override public int compare(final String a, final String b)
+            {
+                final int hashOfA = HASH.hashString(nodeId + a, UTF_8).asInt();
+                final int hashOfB = HASH.hashString(nodeId + b, UTF_8).asInt();
+                return hashOfA < hashOfB ? -1 : (hashOfA == hashOfB ? 0 : 1);
+            }
+        };
+    }
+
+    private static Comparator<TrackedEntry> byIdInOrderOf(final String nodeId)
+    {
+        final Comparator<String> inOrderOfNode = inOrderOf(nodeId);
+
+        return new Comparator<TrackedEntry>()
+        {
+            @Override public int compare(final TrackedEntry a, final TrackedEntry b)
+            {
+                return inOrderOfNode.compare(a.id.toString(), b.id.toString());
+            }
+        };
+    }
+
+    /**
+     * @return Gauge of the number of nodes entries are currently partitioned between.
+     */
+    Gauge<Integer> nodes()
+    {
+        return new Gauge<Integer>()
+        {
+            @Override public Integer getValue()
+            {
+                return nodes.size();
+            }
+        };
+    }
+
+    /**
+     * @return Meter of entries of other nodes picked out to be taken over.
+     */
+    Meter takenOver()
+    {
+        return takenOver;
+    }
+}
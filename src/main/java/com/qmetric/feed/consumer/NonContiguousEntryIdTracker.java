@@ -3,32 +3,61 @@ package com.qmetric.feed.consumer;
 import com.google.common.base.Optional;
 import com.google.common.collect.ContiguousSet;
 import com.google.common.collect.Range;
+import com.qmetric.feed.consumer.store.BatchFeedTracker;
 import com.qmetric.feed.consumer.store.FeedTracker;
+import com.qmetric.feed.consumer.store.GapFeedTracker;
+
+import java.util.ArrayList;
+import java.util.List;
 
 import static com.google.common.collect.ContiguousSet.create;
 import static com.google.common.collect.DiscreteDomain.longs;
+import static com.qmetric.feed.consumer.store.BatchFeedTrackerAdapter.batching;
 
 public class NonContiguousEntryIdTracker
 {
-    private final FeedTracker feedTracker;
+    private final BatchFeedTracker feedTracker;
+
+    private final Optional<GapFeedTracker> gapFeedTracker;
 
     public NonContiguousEntryIdTracker(final FeedTracker feedTracker)
     {
-        this.feedTracker = feedTracker;
+        this.feedTracker = batching(feedTracker);
+        this.gapFeedTracker = feedTracker instanceof GapFeedTracker ? Optional.of((GapFeedTracker) feedTracker) : Optional.<GapFeedTracker>absent();
     }
 
     public void trackMissingEntriesWithIdBetweenPreviousAndCurrentEntry(final SeenEntry currentEntry, final Optional<SeenEntry> previousEntry)
+    {
+        trackMissingEntriesWithIdBetweenPreviousAndCurrentEntry(currentEntry, previousEntry, Optional.<String>absent());
+    }
+
+    /**
+     * @param pageUrl Url of the page holding the current entry. When known, and the tracker supports it, missing entries are recorded
+     *                as a single gap; a gap between two entries already tracked has then been recorded before.
+     */
+    public void trackMissingEntriesWithIdBetweenPreviousAndCurrentEntry(final SeenEntry currentEntry, final Optional<SeenEntry> previousEntry,
+                                                                        final Optional<String> pageUrl)
     {
         final boolean gapExistsBetweenEntryIds = previousEntry.isPresent() && currentEntry.id.asNumeric() > nextExpectedId(previousEntry);
 
-        if (gapExistsBetweenEntryIds)
+        if (gapExistsBetweenEntryIds && gapFeedTracker.isPresent() && pageUrl.isPresent())
+        {
+            if (currentEntry.notAlreadyTracked() || previousEntry.get().notAlreadyTracked())
+            {
+                gapFeedTracker.get().trackGap(new EntryGap(previousEntry.get().id.next(), currentEntry.id.previous(), currentEntry.dateTime, pageUrl.get()));
+            }
+        }
+        else if (gapExistsBetweenEntryIds)
         {
             final ContiguousSet<Long> missingIds = create(Range.closedOpen(nextExpectedId(previousEntry), currentEntry.id.asNumeric()), longs());
+            final List<SeenEntry> missingEntries = new ArrayList<SeenEntry>(missingIds.size());
 
             for (final long nextMissingId : missingIds)
             {
-                feedTracker.track(new SeenEntry(EntryId.of(String.valueOf(nextMissingId)), currentEntry.dateTime));
+                missingEntries.add(new SeenEntry(EntryId.of(nextMissingId), currentEntry.dateTime));
             }
+
+            feedTracker.trackAll(missingEntries);
         }
     }
 
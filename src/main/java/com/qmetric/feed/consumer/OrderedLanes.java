@@ -0,0 +1,115 @@
+package com.qmetric.feed.consumer;
+
+import com.codahale.metrics.Gauge;
+import com.google.common.base.Function;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.hash.Hashing.consistentHash;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Spreads entries across the given number of lanes by key, each lane consuming its entries one at a time in the order submitted,
+ * so that entries sharing a key are consumed in order while entries of different keys are consumed in parallel.
+ */
+class OrderedLanes
+{
+    private static final Comparator<TrackedEntry> BY_PUBLISH_DATE = new Comparator<TrackedEntry>()
+    {
+        @Override public int compare(final TrackedEntry a, final TrackedEntry b)
+        {
+            if (a.created == null || b.created == null)
+            {
+                return a.created == null ? (b.created == null ? 0 : 1) : -1;
+            }
+            return a.created.compareTo(b.created);
+        }
+    };
+
+    private final Function<TrackedEntry, ?> keyOf;
+
+    private final List<ThreadPoolExecutor> lanes;
+
+    /**
+     * @param keyOf Key of an entry, entries with equal keys going to the same lane, or null when it cannot be worked out for now.
+     */
+    OrderedLanes(final Function<TrackedEntry, ?> keyOf, final int lanes)
+    {
+        checkArgument(lanes > 0, "Lanes must be more than 0");
+
+        this.keyOf = keyOf;
+        this.lanes = new ArrayList<ThreadPoolExecutor>(lanes);
+        for (int i = 0; i < lanes; i++)
+        {
+            this.lanes.add(new ThreadPoolExecutor(1, 1, 0, MILLISECONDS, new LinkedBlockingQueue<Runnable>()));
+        }
+    }
+
+    /**
+     * @return Given entries ordered by publish date, entries with no publish date last, otherwise keeping their order.
+     */
+    static List<TrackedEntry> inPublishOrder(final List<TrackedEntry> entries)
+    {
+        final List<TrackedEntry> ordered = new ArrayList<TrackedEntry>(entries);
+        Collections.sort(ordered, BY_PUBLISH_DATE);
+        return ordered;
+    }
+
+    /**
+     * @return Key of the given entry, or null when it cannot be worked out for now.
+     */
+    Object keyOf(final TrackedEntry entry)
+    {
+        return keyOf.apply(entry);
+    }
+
+    /**
+     * Queues the given task on the lane of the given key, behind tasks previously submitted with that key.
+     */
+    Future<?> submit(final Object key, final Runnable task)
+    {
+        return lanes.get(laneOf(key)).submit(task);
+    }
+
+    int laneOf(final Object key)
+    {
+        return consistentHash(key.hashCode(), lanes.size());
+    }
+
+    int size()
+    {
+        return lanes.size();
+    }
+
+    /**
+     * @return Gauge of the number of tasks queued on the given lane, behind the one being run.
+     */
+    Gauge<Integer> depth(final int lane)
+    {
+        final ThreadPoolExecutor executor = lanes.get(lane);
+
+        return new Gauge<Integer>()
+        {
+            @Override public Integer getValue()
+            {
+                return executor.getQueue().size();
+            }
+        };
+    }
+
+    /**
+     * @return Executors backing the lanes, to be shut down with the consumer.
+     */
+    ExecutorService[] executors()
+    {
+        return lanes.toArray(new ExecutorService[lanes.size()]);
+    }
+}
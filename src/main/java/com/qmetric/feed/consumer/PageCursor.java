@@ -0,0 +1,37 @@
+package com.qmetric.feed.consumer;
+
+import static org.apache.commons.lang3.builder.EqualsBuilder.reflectionEquals;
+import static org.apache.commons.lang3.builder.HashCodeBuilder.reflectionHashCode;
+import static org.apache.commons.lang3.builder.ToStringBuilder.reflectionToString;
+
+/**
+ * Position reached while tracking new entries: the url of a feed page whose entries have all been tracked, and the most recent
+ * entry tracked from that page.
+ */
+public class PageCursor
+{
+    public final String pageUrl;
+
+    public final EntryId lastTrackedId;
+
+    public PageCursor(final String pageUrl, final EntryId lastTrackedId)
+    {
+        this.pageUrl = pageUrl;
+        this.lastTrackedId = lastTrackedId;
+    }
+
+    @Override public boolean equals(final Object obj)
+    {
+        return reflectionEquals(this, obj);
+    }
+
+    @Override public int hashCode()
+    {
+        return reflectionHashCode(this);
+    }
+
+    @Override public String toString()
+    {
+        return reflectionToString(this);
+    }
+}
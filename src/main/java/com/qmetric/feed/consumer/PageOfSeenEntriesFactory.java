@@ -2,6 +2,7 @@ package com.qmetric.feed.consumer;
 
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
+import com.qmetric.feed.consumer.store.BatchFeedTracker;
 import com.qmetric.feed.consumer.store.FeedTracker;
 import com.qmetric.hal.reader.HalResource;
 import org.joda.time.DateTime;
@@ -9,8 +10,10 @@ import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 
 import java.util.List;
+import java.util.Set;
 
 import static com.google.common.collect.FluentIterable.from;
+import static com.qmetric.feed.consumer.store.BatchFeedTrackerAdapter.batching;
 
 public class PageOfSeenEntriesFactory
 {
@@ -20,18 +23,37 @@ public class PageOfSeenEntriesFactory
 
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormat.forPattern("dd/MM/yyyy HH:mm:ss");
 
-    private final FeedTracker feedTracker;
+    private final BatchFeedTracker feedTracker;
 
     private final Optional<EarliestEntryLimit> earliestEntryLimit;
 
+    private final Optional<EmbeddedEntries> embeddedEntries;
+
     public PageOfSeenEntriesFactory(final FeedTracker feedTracker, final Optional<EarliestEntryLimit> earliestEntryLimit)
     {
-        this.feedTracker = feedTracker;
+        this(feedTracker, earliestEntryLimit, Optional.<EmbeddedEntries>absent());
+    }
+
+    /**
+     * @param embeddedEntries When present, remembers the entries from each page not yet tracked so that they can be consumed from the page.
+     */
+    public PageOfSeenEntriesFactory(final FeedTracker feedTracker, final Optional<EarliestEntryLimit> earliestEntryLimit, final Optional<EmbeddedEntries> embeddedEntries)
+    {
+        this.feedTracker = batching(feedTracker);
         this.earliestEntryLimit = earliestEntryLimit;
+        this.embeddedEntries = embeddedEntries;
     }
 
     public PageOfSeenEntries create(final List<HalResource> entries)
     {
+        final Set<EntryId> tracked = feedTracker.isTracked(from(entries).transform(new Function<HalResource, EntryId>()
+        {
+            @Override public EntryId apply(final HalResource input)
+            {
+                return idOf(input);
+            }
+        }).toList());
+
         return new PageOfSeenEntries(from(entries).transform(new Function<HalResource, SeenEntry>()
         {
             @Override public SeenEntry apply(final HalResource input)
@@ -41,7 +63,7 @@ public class PageOfSeenEntriesFactory
 
             private boolean isNotTracked(final EntryId entryId)
             {
-                return !feedTracker.isTracked(entryId);
+                return !tracked.contains(entryId);
             }
 
             private boolean hasConsumablePublishedDate(final DateTime publishedDate)
@@ -51,12 +73,24 @@ public class PageOfSeenEntriesFactory
 
             private SeenEntry asSeenEntry(final HalResource entry)
             {
-                final EntryId id = EntryId.of(entry.getValueAsString(ENTRY_ID).get());
+                final EntryId id = idOf(entry);
 
                 final DateTime publishedDate = DATE_FORMATTER.parseDateTime(entry.getValueAsString(PUBLISHED).get());
 
-                return new SeenEntry(id, publishedDate, !(hasConsumablePublishedDate(publishedDate) && isNotTracked(id)));
+                final boolean alreadyTracked = !(hasConsumablePublishedDate(publishedDate) && isNotTracked(id));
+
+                if (!alreadyTracked && embeddedEntries.isPresent())
+                {
+                    embeddedEntries.get().remember(id, entry);
+                }
+
+                return new SeenEntry(id, publishedDate, alreadyTracked);
             }
         }).toList());
     }
+
+    private static EntryId idOf(final HalResource entry)
+    {
+        return EntryId.of(entry.getValueAsString(ENTRY_ID).get());
+    }
 }
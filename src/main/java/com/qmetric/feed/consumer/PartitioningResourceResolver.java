@@ -0,0 +1,96 @@
+package com.qmetric.feed.consumer;
+
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.qmetric.hal.reader.HalResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Works out the partition key of entries about to be consumed from their resources, keeping each resource fetched to do so until
+ * the entry is consumed, so that it is not fetched twice. Resources left over are dropped at the end of each poll, so that at most
+ * the resources of the entries of one poll are held.
+ * <p/>
+ * Entries whose resource could not be fetched have no key, and are to be left for the next poll. Entries not found in the feed are
+ * keyed by their id, as are entries whose key extractor failed or returned null.
+ */
+class PartitioningResourceResolver implements ResourceResolver, UpcomingEntriesListener, FeedPollingListener, Function<TrackedEntry, Object>
+{
+    private static final Logger LOG = LoggerFactory.getLogger(PartitioningResourceResolver.class);
+
+    private final ResourceResolver next;
+
+    private final Function<FeedEntry, ?> keyExtractor;
+
+    private final Map<EntryId, Optional<HalResource>> resolved = new ConcurrentHashMap<EntryId, Optional<HalResource>>();
+
+    PartitioningResourceResolver(final ResourceResolver next, final Function<FeedEntry, ?> keyExtractor)
+    {
+        this.next = next;
+        this.keyExtractor = keyExtractor;
+    }
+
+    /**
+     * @return Partition key of the given entry, or null when its resource could not be fetched.
+     */
+    @Override public Object apply(final TrackedEntry entry)
+    {
+        final Optional<HalResource> resource;
+        try
+        {
+            resource = next.resolve(entry.id);
+        }
+        catch (final RuntimeException e)
+        {
+            LOG.warn("Failed to fetch entry {} to find its partition key", entry, e);
+            return null;
+        }
+
+        resolved.put(entry.id, resource);
+
+        if (resource.isPresent())
+        {
+            try
+            {
+                final Object key = keyExtractor.apply(new FeedEntry(resource.get(), entry.retries));
+                if (key != null)
+                {
+                    return key;
+                }
+                LOG.warn("No partition key for entry {}, consuming it independently", entry);
+            }
+            catch (final RuntimeException e)
+            {
+                LOG.warn("Failed to extract partition key of entry {}, consuming it independently", entry, e);
+            }
+        }
+
+        return entry.id;
+    }
+
+    @Override public Optional<HalResource> resolve(final EntryId id)
+    {
+        final Optional<HalResource> resource = resolved.remove(id);
+
+        return resource != null ? resource : next.resolve(id);
+    }
+
+    @Override public void upcoming(final List<TrackedEntry> entries)
+    {
+        resolved.clear();
+    }
+
+    @Override public void processed(final TrackedEntry entry)
+    {
+        resolved.remove(entry.id);
+    }
+
+    @Override public void consumed(final List<TrackedEntry> consumedEntries)
+    {
+        resolved.clear();
+    }
+}
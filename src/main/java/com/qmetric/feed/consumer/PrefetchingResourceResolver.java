@@ -0,0 +1,162 @@
+package com.qmetric.feed.consumer;
+
+import com.google.common.base.Optional;
+import com.qmetric.hal.reader.HalResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Fetches the resources of entries about to be consumed in the background, while preceding entries are being consumed.
+ * <p/>
+ * At most {@code readAhead} resources are fetched or held at any time. Resources of entries processed without being resolved
+ * (e.g. claimed by another consumer) are dropped, as are all resources left over at the end of a poll.
+ */
+public class PrefetchingResourceResolver implements ResourceResolver, UpcomingEntriesListener, FeedPollingListener
+{
+    private static final Logger LOG = LoggerFactory.getLogger(PrefetchingResourceResolver.class);
+
+    private final ResourceResolver next;
+
+    private final int readAhead;
+
+    private final ExecutorService fetchers;
+
+    private final Map<EntryId, Future<Optional<HalResource>>> prefetched = new HashMap<EntryId, Future<Optional<HalResource>>>();
+
+    private final Set<EntryId> processed = new HashSet<EntryId>();
+
+    private Iterator<TrackedEntry> upcoming = Collections.<TrackedEntry>emptyList().iterator();
+
+    public PrefetchingResourceResolver(final ResourceResolver next, final int readAhead, final ExecutorService fetchers)
+    {
+        checkArgument(readAhead > 0, "Read-ahead must be more than 0");
+
+        this.next = next;
+        this.readAhead = readAhead;
+        this.fetchers = fetchers;
+    }
+
+    @Override public Optional<HalResource> resolve(final EntryId id)
+    {
+        final Optional<Future<Optional<HalResource>>> prefetch = takePrefetched(id);
+
+        if (prefetch.isPresent())
+        {
+            try
+            {
+                return prefetch.get().get();
+            }
+            catch (ExecutionException e)
+            {
+                LOG.warn("Failed to prefetch entry {}, fetching again", id, e.getCause());
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+
+        return next.resolve(id);
+    }
+
+    @Override public synchronized void upcoming(final List<TrackedEntry> entries)
+    {
+        reset();
+
+        upcoming = new ArrayList<TrackedEntry>(entries).iterator();
+
+        fillWindow();
+    }
+
+    @Override public synchronized void processed(final TrackedEntry entry)
+    {
+        processed.add(entry.id);
+
+        final Future<Optional<HalResource>> prefetch = prefetched.remove(entry.id);
+
+        if (prefetch != null)
+        {
+            LOG.debug("Dropping prefetched entry {}", entry);
+            prefetch.cancel(true);
+        }
+
+        fillWindow();
+    }
+
+    @Override public synchronized void consumed(final List<TrackedEntry> consumedEntries)
+    {
+        reset();
+    }
+
+    private synchronized Optional<Future<Optional<HalResource>>> takePrefetched(final EntryId id)
+    {
+        processed.add(id);
+
+        final Optional<Future<Optional<HalResource>>> prefetch = Optional.fromNullable(prefetched.remove(id));
+
+        fillWindow();
+
+        return prefetch;
+    }
+
+    private void fillWindow()
+    {
+        try
+        {
+            while (prefetched.size() < readAhead && upcoming.hasNext())
+            {
+                final EntryId id = upcoming.next().id;
+
+                if (!processed.contains(id) && !prefetched.containsKey(id))
+                {
+                    prefetched.put(id, fetchers.submit(fetching(id)));
+                }
+            }
+        }
+        catch (RejectedExecutionException e)
+        {
+            LOG.info("Prefetching no longer accepted, fetching remaining entries on demand");
+            upcoming = Collections.<TrackedEntry>emptyList().iterator();
+        }
+    }
+
+    private Callable<Optional<HalResource>> fetching(final EntryId id)
+    {
+        return new Callable<Optional<HalResource>>()
+        {
+            @Override public Optional<HalResource> call() throws Exception
+            {
+                return next.resolve(id);
+            }
+        };
+    }
+
+    private void reset()
+    {
+        for (final Future<Optional<HalResource>> prefetch : prefetched.values())
+        {
+            prefetch.cancel(true);
+        }
+
+        prefetched.clear();
+        processed.clear();
+        upcoming = Collections.<TrackedEntry>emptyList().iterator();
+    }
+}
@@ -0,0 +1,250 @@
+package com.qmetric.feed.consumer;
+
+import com.codahale.metrics.Gauge;
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.qmetric.feed.consumer.flow.Subscriber;
+import com.qmetric.feed.consumer.flow.Subscription;
+import com.qmetric.feed.consumer.store.AlreadyConsumingException;
+import com.qmetric.feed.consumer.store.FeedTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Delivers tracked entries to a single subscriber, as many as it has requested. An entry is only marked as consuming and fetched
+ * once requested, so a slow subscriber holds back the fetching of entries rather than piling them up.
+ * <p/>
+ * Entries are delivered on each poll and whenever the subscriber requests more, the latter on the given executor. Deliveries are
+ * never made concurrently. Entries delivered stay marked as consuming until the subscriber acknowledges them.
+ * <p/>
+ * Entries are claimed, fetched and delivered by an entry consumer {@link EntryConsumerImpl#delivering delivering} them, so that
+ * entries are held back, failed and retried as when consumed.
+ */
+class PublishingFeedConsumer implements FeedConsumer
+{
+    private static final Logger LOG = LoggerFactory.getLogger(PublishingFeedConsumer.class);
+
+    private final FeedTracker feedTracker;
+
+    private final EntryConsumer entryConsumer;
+
+    private final Collection<EntryConsumerListener> listeners;
+
+    private final Executor deliveryExecutor;
+
+    private final AtomicLong demand = new AtomicLong();
+
+    private final AtomicInteger pendingDeliveries = new AtomicInteger();
+
+    private volatile Optional<Subscriber<? super AcknowledgeableFeedEntry>> subscriber = Optional.absent();
+
+    private volatile boolean cancelled;
+
+    private Runnable onCancel;
+
+    /**
+     * @param entryConsumerDelivering Entry consumer delivering entries to the given delivery.
+     */
+    PublishingFeedConsumer(final FeedTracker feedTracker, final Function<EntryConsumerImpl.Delivery, EntryConsumer> entryConsumerDelivering,
+                           final Collection<EntryConsumerListener> listeners, final Executor deliveryExecutor)
+    {
+        this.feedTracker = feedTracker;
+        this.entryConsumer = entryConsumerDelivering.apply(delivery());
+        this.listeners = listeners;
+        this.deliveryExecutor = deliveryExecutor;
+    }
+
+    /**
+     * @param onCancel Run once the subscriber cancels its subscription.
+     */
+    synchronized void subscribe(final Subscriber<? super AcknowledgeableFeedEntry> subscriber, final Runnable onCancel)
+    {
+        checkState(!this.subscriber.isPresent(), "Feed entries already published to a subscriber");
+
+        this.onCancel = onCancel;
+        this.subscriber = Optional.<Subscriber<? super AcknowledgeableFeedEntry>>of(subscriber);
+
+        subscriber.onSubscribe(new Subscription()
+        {
+            @Override public void request(final long n)
+            {
+                if (n <= 0)
+                {
+                    cancel();
+                    subscriber.onError(new IllegalArgumentException("Number of entries requested must be more than 0, got " + n));
+                }
+                else
+                {
+                    addDemand(n);
+                    deliverLater();
+                }
+            }
+
+            @Override public void cancel()
+            {
+                PublishingFeedConsumer.this.cancel();
+            }
+        });
+    }
+
+    /**
+     * @return Entries delivered during this poll.
+     */
+    @Override public List<TrackedEntry> consume()
+    {
+        return deliver();
+    }
+
+    /**
+     * @return Gauge of the number of entries requested by the subscriber but not delivered yet.
+     */
+    Gauge<Long> demand()
+    {
+        return new Gauge<Long>()
+        {
+            @Override public Long getValue()
+            {
+                return demand.get();
+            }
+        };
+    }
+
+    private void addDemand(final long n)
+    {
+        long current;
+        do
+        {
+            current = demand.get();
+        }
+        while (!demand.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+    }
+
+    private void deliverLater()
+    {
+        try
+        {
+            deliveryExecutor.execute(new Runnable()
+            {
+                @Override public void run()
+                {
+                    deliver();
+                }
+            });
+        }
+        catch (final RejectedExecutionException e)
+        {
+            LOG.info("Publisher stopped, entries left for next poll");
+        }
+    }
+
+    /**
+     * Whoever finds no delivery under way delivers, on behalf of any other attempts made meanwhile, so that entries are delivered
+     * one at a time even when requested from within {@link Subscriber#onNext}.
+     */
+    private List<TrackedEntry> deliver()
+    {
+        final List<TrackedEntry> delivered = new ArrayList<TrackedEntry>();
+
+        if (pendingDeliveries.getAndIncrement() > 0)
+        {
+            return delivered;
+        }
+
+        int missed = 1;
+        do
+        {
+            try
+            {
+                deliverRequested(delivered);
+            }
+            catch (final RuntimeException e)
+            {
+                LOG.warn("Failed to deliver feed entries", e);
+            }
+            missed = pendingDeliveries.addAndGet(-missed);
+        }
+        while (missed != 0);
+
+        return delivered;
+    }
+
+    private void deliverRequested(final List<TrackedEntry> delivered)
+    {
+        if (!subscriber.isPresent() || cancelled || demand.get() == 0)
+        {
+            return;
+        }
+
+        for (final TrackedEntry trackedEntry : feedTracker.getEntriesToBeConsumed())
+        {
+            if (cancelled || demand.get() == 0)
+            {
+                return;
+            }
+
+            if (consume(trackedEntry))
+            {
+                delivered.add(trackedEntry);
+            }
+        }
+    }
+
+    private boolean consume(final TrackedEntry trackedEntry)
+    {
+        try
+        {
+            return entryConsumer.consume(trackedEntry);
+        }
+        catch (final AlreadyConsumingException e)
+        {
+            LOG.info("Entry {} already being consumed", trackedEntry, e);
+            return false;
+        }
+        catch (final Exception e)
+        {
+            LOG.warn("Entry {} failed delivery", trackedEntry, e);
+            return false;
+        }
+    }
+
+    private EntryConsumerImpl.Delivery delivery()
+    {
+        return new EntryConsumerImpl.Delivery()
+        {
+            @Override public void deliver(final TrackedEntry trackedEntry, final FeedEntry feedEntry)
+            {
+                demand.decrementAndGet();
+                try
+                {
+                    subscriber.get().onNext(new AcknowledgeableFeedEntry(feedEntry, trackedEntry, feedTracker, listeners));
+                }
+                catch (final RuntimeException e)
+                {
+                    LOG.error("Subscriber failed receiving entry {}, cancelling subscription", trackedEntry, e);
+                    cancel();
+                    throw e;
+                }
+            }
+        };
+    }
+
+    private synchronized void cancel()
+    {
+        if (!cancelled)
+        {
+            cancelled = true;
+            demand.set(0);
+            onCancel.run();
+        }
+    }
+}
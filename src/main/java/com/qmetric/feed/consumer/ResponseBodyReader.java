@@ -0,0 +1,141 @@
+package com.qmetric.feed.consumer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Decodes a response body into characters as it is read, like an {@link java.io.InputStreamReader}, but through buffers reused by
+ * the responses read on each thread rather than allocated for each response. Buffers are handed back on closing.
+ * <p/>
+ * A response read while another is being read on the same thread (e.g. a page requested while parsing another) gets buffers of its own.
+ */
+class ResponseBodyReader extends Reader
+{
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final ThreadLocal<Buffers> POOL = new ThreadLocal<Buffers>();
+
+    private final InputStream input;
+
+    private final CharsetDecoder decoder;
+
+    private Buffers buffers;
+
+    private boolean endOfInput;
+
+    private boolean flushed;
+
+    ResponseBodyReader(final InputStream input, final Charset charset)
+    {
+        this.input = input;
+        this.decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.buffers = borrow();
+    }
+
+    @Override public int read(final char[] chars, final int offset, final int length) throws IOException
+    {
+        if (buffers == null)
+        {
+            throw new IOException("Response body reader closed");
+        }
+        if (length == 0)
+        {
+            return 0;
+        }
+        if (!buffers.chars.hasRemaining() && !decodeMore())
+        {
+            return -1;
+        }
+
+        final int read = Math.min(length, buffers.chars.remaining());
+        buffers.chars.get(chars, offset, read);
+        return read;
+    }
+
+    @Override public void close() throws IOException
+    {
+        if (buffers != null)
+        {
+            POOL.set(buffers);
+            buffers = null;
+        }
+        input.close();
+    }
+
+    /**
+     * @return Whether any characters were decoded, reading more of the body only when those received so far decode to none.
+     */
+    private boolean decodeMore() throws IOException
+    {
+        final ByteBuffer bytes = buffers.bytes;
+        final CharBuffer chars = buffers.chars;
+
+        chars.clear();
+        while (chars.position() == 0 && !flushed)
+        {
+            if (endOfInput)
+            {
+                decoder.decode(bytes, chars, true);
+                decoder.flush(chars);
+                flushed = true;
+            }
+            else if (decoder.decode(bytes, chars, false).isUnderflow() && chars.position() == 0)
+            {
+                fill(bytes);
+            }
+        }
+        chars.flip();
+
+        return chars.hasRemaining();
+    }
+
+    private void fill(final ByteBuffer bytes) throws IOException
+    {
+        bytes.compact();
+        final int read = input.read(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+        if (read < 0)
+        {
+            endOfInput = true;
+        }
+        else
+        {
+            bytes.position(bytes.position() + read);
+        }
+        bytes.flip();
+    }
+
+    private static Buffers borrow()
+    {
+        final Buffers pooled = POOL.get();
+        POOL.remove();
+
+        return pooled != null ? pooled.emptied() : new Buffers();
+    }
+
+    private static class Buffers
+    {
+        private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+
+        private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+
+        private Buffers()
+        {
+            emptied();
+        }
+
+        private Buffers emptied()
+        {
+            bytes.clear();
+            bytes.flip();
+            chars.clear();
+            chars.flip();
+            return this;
+        }
+    }
+}
@@ -3,27 +3,45 @@ package com.qmetric.feed.consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 
 import static java.lang.Runtime.getRuntime;
 import static java.lang.String.format;
 import static java.lang.Thread.currentThread;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
 class ShutdownProcedure implements Runnable
 {
     private static final Logger LOG = LoggerFactory.getLogger(ShutdownProcedure.class);
 
-    private static final int TIMEOUT = 90;
+    private static final Interval TIMEOUT = new Interval(90, SECONDS);
 
-    private final ExecutorService executorService;
+    private final Interval timeout;
+
+    private final List<ExecutorService> executorServices;
 
     private final Thread shutdownThread;
 
-    public ShutdownProcedure(ExecutorService executorService)
+    /**
+     * @param executorServices Executor services to terminate, in the given order. Services feeding work to later ones (e.g. the polling scheduler
+     *                         handing entries to consumer threads) should come first so that in-flight work can drain.
+     */
+    public ShutdownProcedure(ExecutorService... executorServices)
+    {
+        this(TIMEOUT, executorServices);
+    }
+
+    /**
+     * @param timeout Time to wait for all the executor services to terminate, shared between them rather than allowed each in turn.
+     */
+    ShutdownProcedure(final Interval timeout, ExecutorService... executorServices)
     {
-        this.executorService = executorService;
-        shutdownThread = new Thread(this, format("shutdown-procedure:%s", executorService));
+        this.timeout = timeout;
+        this.executorServices = asList(executorServices);
+        shutdownThread = new Thread(this, format("shutdown-procedure:%s", executorServices.length > 0 ? executorServices[0] : "none"));
     }
 
     public void registerShutdownHook()
@@ -39,13 +57,17 @@ class ShutdownProcedure implements Runnable
     @Override public void run()
     {
         LOG.info("Shutdown started");
-        if (!executorService.isTerminated())
-        {
-            terminateExecutor();
-        }
-        else
+        final long deadline = System.nanoTime() + timeout.unit.toNanos(timeout.time);
+        for (final ExecutorService executorService : executorServices)
         {
-            LOG.info("executor-service is already terminated");
+            if (!executorService.isTerminated())
+            {
+                terminateExecutor(executorService, deadline);
+            }
+            else
+            {
+                LOG.info("executor-service is already terminated");
+            }
         }
         LOG.info("Shutdown completed");
     }
@@ -56,20 +78,20 @@ class ShutdownProcedure implements Runnable
         removeShutdownHook();
     }
 
-    private void terminateExecutor()
+    private void terminateExecutor(final ExecutorService executorService, final long deadline)
     {
         try
         {
-            stopAcceptingNewJobs();
-            waitRunningJobsToTerminate();
+            stopAcceptingNewJobs(executorService);
+            waitRunningJobsToTerminate(executorService, deadline);
         }
         catch (InterruptedException e)
         {
-            forceShutdown();
+            forceShutdown(executorService);
         }
     }
 
-    private void stopAcceptingNewJobs()
+    private void stopAcceptingNewJobs(final ExecutorService executorService)
     {
         LOG.info("No new jobs accepted");
         if (!executorService.isShutdown())
@@ -82,10 +104,11 @@ class ShutdownProcedure implements Runnable
         }
     }
 
-    private void waitRunningJobsToTerminate() throws InterruptedException
+    private void waitRunningJobsToTerminate(final ExecutorService executorService, final long deadline) throws InterruptedException
     {
-        LOG.info("Terminating all executor-service jobs. Timeout is {} {}", TIMEOUT, SECONDS);
-        if (executorService.awaitTermination(TIMEOUT, SECONDS))
+        final long remaining = Math.max(deadline - System.nanoTime(), 0);
+        LOG.info("Terminating all executor-service jobs. Timeout is {} ms", NANOSECONDS.toMillis(remaining));
+        if (executorService.awaitTermination(remaining, NANOSECONDS))
         {
             LOG.info("All jobs terminated normally");
         }
@@ -96,7 +119,7 @@ class ShutdownProcedure implements Runnable
         }
     }
 
-    private void forceShutdown()
+    private void forceShutdown(final ExecutorService executorService)
     {
         LOG.warn("Shutdown thread was interrupted. Forcing executor shutdown.");
         executorService.shutdownNow();
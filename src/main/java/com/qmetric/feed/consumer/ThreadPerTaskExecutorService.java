@@ -0,0 +1,214 @@
+package com.qmetric.feed.consumer;
+
+import com.codahale.metrics.Gauge;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Runs each task on a new thread of its own, from the given thread factory, with at most the given number of tasks running at once.
+ * Submitting a task while that many are running blocks until one of them completes.
+ * <p/>
+ * Unlike a pool, threads are not kept once their task completes, so the number of tasks in flight can be raised without holding
+ * on to as many idle threads. Threads are best made cheap to create, e.g. given a virtual thread factory on JVMs supporting them.
+ */
+class ThreadPerTaskExecutorService extends AbstractExecutorService
+{
+    private final ThreadFactory threadFactory;
+
+    private final int maxInFlight;
+
+    private final Semaphore inFlightPermits;
+
+    private final Set<Thread> running = new HashSet<Thread>();
+
+    private final Object lock = new Object();
+
+    private boolean shutdown;
+
+    ThreadPerTaskExecutorService(final ThreadFactory threadFactory, final int maxInFlight)
+    {
+        checkArgument(maxInFlight > 0, "Tasks in flight must be more than 0");
+
+        this.threadFactory = threadFactory;
+        this.maxInFlight = maxInFlight;
+        this.inFlightPermits = new Semaphore(maxInFlight);
+    }
+
+    @Override public void execute(final Runnable task)
+    {
+        rejectIfShutdown();
+
+        try
+        {
+            inFlightPermits.acquire();
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for a task in flight to complete", e);
+        }
+
+        final Thread thread;
+        synchronized (lock)
+        {
+            if (shutdown)
+            {
+                inFlightPermits.release();
+                throw new RejectedExecutionException("Executor service shut down");
+            }
+            thread = newThread(task);
+            running.add(thread);
+        }
+
+        try
+        {
+            thread.start();
+        }
+        catch (final RuntimeException e)
+        {
+            synchronized (lock)
+            {
+                running.remove(thread);
+                lock.notifyAll();
+            }
+            inFlightPermits.release();
+            throw e;
+        }
+    }
+
+    @Override public void shutdown()
+    {
+        synchronized (lock)
+        {
+            shutdown = true;
+            lock.notifyAll();
+        }
+    }
+
+    @Override public List<Runnable> shutdownNow()
+    {
+        synchronized (lock)
+        {
+            shutdown = true;
+            for (final Thread thread : running)
+            {
+                thread.interrupt();
+            }
+            lock.notifyAll();
+        }
+        return Collections.emptyList();
+    }
+
+    @Override public boolean isShutdown()
+    {
+        synchronized (lock)
+        {
+            return shutdown;
+        }
+    }
+
+    @Override public boolean isTerminated()
+    {
+        synchronized (lock)
+        {
+            return shutdown && running.isEmpty();
+        }
+    }
+
+    @Override public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException
+    {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (lock)
+        {
+            while (!(shutdown && running.isEmpty()))
+            {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0)
+                {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @return Gauge of the number of tasks currently in flight.
+     */
+    Gauge<Integer> inFlight()
+    {
+        return new Gauge<Integer>()
+        {
+            @Override public Integer getValue()
+            {
+                return maxInFlight - inFlightPermits.availablePermits();
+            }
+        };
+    }
+
+    /**
+     * @return New thread to run the given task on, the permit acquired for it released when the thread factory fails to create one.
+     */
+    private Thread newThread(final Runnable task)
+    {
+        final Thread thread;
+        try
+        {
+            thread = threadFactory.newThread(runningThenRelease(task));
+        }
+        catch (final RuntimeException e)
+        {
+            inFlightPermits.release();
+            throw e;
+        }
+
+        if (thread == null)
+        {
+            inFlightPermits.release();
+            throw new RejectedExecutionException("Thread factory did not create a thread");
+        }
+        return thread;
+    }
+
+    private void rejectIfShutdown()
+    {
+        if (isShutdown())
+        {
+            throw new RejectedExecutionException("Executor service shut down");
+        }
+    }
+
+    private Runnable runningThenRelease(final Runnable task)
+    {
+        return new Runnable()
+        {
+            @Override public void run()
+            {
+                try
+                {
+                    task.run();
+                }
+                finally
+                {
+                    synchronized (lock)
+                    {
+                        running.remove(Thread.currentThread());
+                        lock.notifyAll();
+                    }
+                    inFlightPermits.release();
+                }
+            }
+        };
+    }
+}
@@ -8,6 +8,8 @@ import com.theoryinpractise.halbuilder.api.Link;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 
@@ -21,21 +23,52 @@ class UntrackedPageIterator implements Iterator<PageOfSeenEntries>
 
     private static final String ENTRIES = "entries";
 
-    private final HalReader halReader;
+    private static final String ENTRY_ID = "_id";
+
+    private static final int DEFAULT_MAX_RETAINED_PAGES = 50;
+
+    private final HalResourceReader halResourceReader;
 
     private final PageOfSeenEntriesFactory seenEntriesFactory;
 
     private final FeedEndpointFactory feedEndpointFactory;
 
+    private final int maxRetainedPages;
+
+    private final Deque<HalResource> pagesToReplay = new ArrayDeque<HalResource>();
+
     private Optional<HalResource> currentPage;
 
+    private Optional<String> lastPageUrl = Optional.absent();
+
+    private int pagesFetched;
+
+    /**
+     * @param cursor           Page reached by the previous pass. When the latest page holds untracked entries, the walk back through the feed
+     *                         jumps straight to this page rather than following "next" links, provided it still holds the entry last tracked from it.
+     * @param maxRetainedPages Number of pages read while walking back through the feed that are kept to be returned again,
+     *                         newer pages beyond that number being fetched a second time by following "previous" links.
+     */
     UntrackedPageIterator(final HalReader halReader, final FeedEndpoint endpoint, final FeedEndpointFactory feedEndpointFactory,
-                          final PageOfSeenEntriesFactory seenEntriesFactory)
+                          final PageOfSeenEntriesFactory seenEntriesFactory, final ConditionalGet conditionalGet, final Optional<PageCursor> cursor,
+                          final Optional<Integer> maxRetainedPages)
     {
-        this.halReader = halReader;
+        this.halResourceReader = new HalResourceReader(halReader);
         this.seenEntriesFactory = seenEntriesFactory;
         this.feedEndpointFactory = feedEndpointFactory;
-        currentPage = Optional.of(navigateToEarliestPageToTrack(halReader.read(endpoint.get().get())));
+        this.maxRetainedPages = maxRetainedPages.or(DEFAULT_MAX_RETAINED_PAGES);
+
+        final Optional<HalResource> latestPage = endpoint.getIfModified(halResourceReader, conditionalGet);
+        if (latestPage.isPresent())
+        {
+            pagesFetched++;
+            currentPage = Optional.of(navigateToEarliestPageToTrack(latestPage.get(), cursor));
+        }
+        else
+        {
+            LOG.debug("Feed not modified since last poll");
+            currentPage = Optional.absent();
+        }
     }
 
     @Override public boolean hasNext()
@@ -58,15 +91,34 @@ class UntrackedPageIterator implements Iterator<PageOfSeenEntries>
 
         LOG.debug("Found {} untracked entries out of {}", untrackedEntries.size(), allEntriesFromPage.all().size());
 
+        lastPageUrl = urlOf(currentPage.get());
+
         flipToPreviousPage();
 
         return allEntriesFromPage;
     }
 
-    private HalResource navigateToEarliestPageToTrack(final HalResource latestPage)
+    /**
+     * @return Url of the page last returned by {@link #next()}, as advertised by its self link.
+     */
+    Optional<String> lastPageUrl()
+    {
+        return lastPageUrl;
+    }
+
+    /**
+     * @return Number of feed pages received so far.
+     */
+    int pagesFetched()
+    {
+        return pagesFetched;
+    }
+
+    private HalResource navigateToEarliestPageToTrack(final HalResource latestPage, final Optional<PageCursor> cursor)
     {
         Optional<HalResource> currentPage = Optional.of(latestPage);
         HalResource earliestPage = latestPage;
+        Optional<PageCursor> unusedCursor = cursor;
 
         while (currentPage.isPresent())
         {
@@ -76,7 +128,28 @@ class UntrackedPageIterator implements Iterator<PageOfSeenEntries>
             final List<SeenEntry> untrackedEntries = allEntriesFromPage.untrackedEntries();
 
             earliestPage = currentPage.get();
-            currentPage = untrackedEntries.isEmpty() ? Optional.<HalResource>absent() : loadAdjacentPage(currentPage.get(), NEXT_LINK_RELATION);
+            if (untrackedEntries.isEmpty())
+            {
+                currentPage = Optional.absent();
+            }
+            else
+            {
+                final Optional<HalResource> pageAtCursor = unusedCursor.isPresent() ? loadPageAt(unusedCursor.get(), currentPage.get()) : Optional.<HalResource>absent();
+                if (pageAtCursor.isPresent())
+                {
+                    currentPage = pageAtCursor;
+                }
+                else
+                {
+                    final Optional<HalResource> nextPage = loadAdjacentPage(currentPage.get(), NEXT_LINK_RELATION);
+                    if (nextPage.isPresent())
+                    {
+                        retainForReplay(currentPage.get());
+                    }
+                    currentPage = nextPage;
+                }
+                unusedCursor = Optional.absent();
+            }
         }
 
         LOG.debug("Found earliest page to track: {}", earliestPage);
@@ -84,6 +157,76 @@ class UntrackedPageIterator implements Iterator<PageOfSeenEntries>
         return earliestPage;
     }
 
+    /**
+     * Pages are retained newest last, so that when over the limit the newest are dropped, keeping those retained contiguous
+     * with the earliest page to track.
+     */
+    private void retainForReplay(final HalResource page)
+    {
+        pagesToReplay.addFirst(page);
+
+        if (pagesToReplay.size() > maxRetainedPages)
+        {
+            pagesToReplay.removeLast();
+        }
+    }
+
+    private Optional<HalResource> loadPageAt(final PageCursor cursor, final HalResource currentPage)
+    {
+        if (urlOf(currentPage).equals(Optional.of(cursor.pageUrl)))
+        {
+            return Optional.absent();
+        }
+
+        final Optional<HalResource> page;
+        try
+        {
+            LOG.info("Resuming from page: {}", cursor.pageUrl);
+            page = feedEndpointFactory.create(cursor.pageUrl).get(halResourceReader);
+        }
+        catch (final RuntimeException e)
+        {
+            LOG.warn("Failed to resume from page {}, walking back from latest page instead", cursor.pageUrl, e);
+            return Optional.absent();
+        }
+
+        if (page.isPresent())
+        {
+            pagesFetched++;
+        }
+
+        if (page.isPresent() && containsEntry(page.get(), cursor.lastTrackedId))
+        {
+            return page;
+        }
+
+        LOG.info("Page {} no longer holds entry {}, walking back from latest page instead", cursor.pageUrl, cursor.lastTrackedId);
+        return Optional.absent();
+    }
+
+    private boolean containsEntry(final HalResource page, final EntryId id)
+    {
+        for (final HalResource entry : currentPageEntries(page))
+        {
+            if (id.equals(EntryId.of(entry.getValueAsString(ENTRY_ID).get())))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Optional<String> urlOf(final HalResource page)
+    {
+        return page.getResourceLink().transform(new Function<Link, String>()
+        {
+            @Override public String apply(final Link link)
+            {
+                return link.getHref();
+            }
+        });
+    }
+
     private List<HalResource> currentPageEntries(final HalResource currentPage)
     {
         return currentPage.getResourcesByRel(ENTRIES);
@@ -91,7 +234,7 @@ class UntrackedPageIterator implements Iterator<PageOfSeenEntries>
 
     private void flipToPreviousPage()
     {
-        this.currentPage = loadAdjacentPage(currentPage.get(), PREVIOUS_LINK_RELATION);
+        this.currentPage = pagesToReplay.isEmpty() ? loadAdjacentPage(currentPage.get(), PREVIOUS_LINK_RELATION) : Optional.of(pagesToReplay.removeFirst());
 
         LOG.debug("Previous page: {}", currentPage);
     }
@@ -103,7 +246,9 @@ class UntrackedPageIterator implements Iterator<PageOfSeenEntries>
             @Override public HalResource apply(final Link link)
             {
                 LOG.info("Navigating to page: {}", link.getHref());
-                return halReader.read(feedEndpointFactory.create(link.getHref()).get().get());
+                final HalResource page = feedEndpointFactory.create(link.getHref()).get(halResourceReader).get();
+                pagesFetched++;
+                return page;
             }
         });
     }
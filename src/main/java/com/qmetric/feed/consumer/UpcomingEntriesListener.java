@@ -0,0 +1,16 @@
+package com.qmetric.feed.consumer;
+
+import java.util.List;
+
+public interface UpcomingEntriesListener
+{
+    /**
+     * Entries about to be consumed by the current poll, in the order they will be submitted for consumption.
+     */
+    void upcoming(final List<TrackedEntry> entries);
+
+    /**
+     * Entry no longer awaiting consumption by the current poll, whether consumed, failed, skipped or claimed by another consumer.
+     */
+    void processed(final TrackedEntry entry);
+}
@@ -0,0 +1,10 @@
+package com.qmetric.feed.consumer.flow;
+
+/**
+ * Source of items delivered to subscribers as they request them. Mirrors {@code java.util.concurrent.Flow.Publisher} and
+ * {@code org.reactivestreams.Publisher}, so that it can be adapted to either with a one-line bridge.
+ */
+public interface Publisher<T>
+{
+    void subscribe(Subscriber<? super T> subscriber);
+}
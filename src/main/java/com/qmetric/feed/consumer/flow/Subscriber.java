@@ -0,0 +1,15 @@
+package com.qmetric.feed.consumer.flow;
+
+/**
+ * Receiver of items from a {@link Publisher}, signalled one at a time. Mirrors {@code java.util.concurrent.Flow.Subscriber}.
+ */
+public interface Subscriber<T>
+{
+    void onSubscribe(Subscription subscription);
+
+    void onNext(T item);
+
+    void onError(Throwable throwable);
+
+    void onComplete();
+}
@@ -0,0 +1,14 @@
+package com.qmetric.feed.consumer.flow;
+
+/**
+ * Link between a {@link Publisher} and a {@link Subscriber}, through which the subscriber signals demand. Mirrors {@code java.util.concurrent.Flow.Subscription}.
+ */
+public interface Subscription
+{
+    /**
+     * Adds the given number of items to those the subscriber is ready to receive.
+     */
+    void request(long n);
+
+    void cancel();
+}
@@ -0,0 +1,59 @@
+package com.qmetric.feed.consumer.metrics;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.ConnPoolControl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class ConnectionPoolMetricSet implements MetricSet
+{
+    private final String baseMetricName;
+
+    private final ConnPoolControl<HttpRoute> connectionPool;
+
+    public ConnectionPoolMetricSet(final String baseMetricName, final ConnPoolControl<HttpRoute> connectionPool)
+    {
+        this.baseMetricName = baseMetricName;
+        this.connectionPool = connectionPool;
+    }
+
+    @Override public Map<String, Metric> getMetrics()
+    {
+        final Map<String, Metric> gauges = new HashMap<String, Metric>();
+
+        gauges.put(String.format("%s: connectionPool.leased", baseMetricName), new Gauge<Integer>()
+        {
+            @Override public Integer getValue()
+            {
+                return connectionPool.getTotalStats().getLeased();
+            }
+        });
+        gauges.put(String.format("%s: connectionPool.pending", baseMetricName), new Gauge<Integer>()
+        {
+            @Override public Integer getValue()
+            {
+                return connectionPool.getTotalStats().getPending();
+            }
+        });
+        gauges.put(String.format("%s: connectionPool.available", baseMetricName), new Gauge<Integer>()
+        {
+            @Override public Integer getValue()
+            {
+                return connectionPool.getTotalStats().getAvailable();
+            }
+        });
+        gauges.put(String.format("%s: connectionPool.max", baseMetricName), new Gauge<Integer>()
+        {
+            @Override public Integer getValue()
+            {
+                return connectionPool.getTotalStats().getMax();
+            }
+        });
+
+        return gauges;
+    }
+}
@@ -0,0 +1,25 @@
+package com.qmetric.feed.consumer.metrics;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.RatioGauge;
+
+/**
+ * Ratio of the one minute rates of two meters, e.g. the proportion of polls answered with 304 Not Modified.
+ */
+public class MeterRatioGauge extends RatioGauge
+{
+    private final Meter hits;
+
+    private final Meter total;
+
+    public MeterRatioGauge(final Meter hits, final Meter total)
+    {
+        this.hits = hits;
+        this.total = total;
+    }
+
+    @Override protected Ratio getRatio()
+    {
+        return Ratio.of(hits.getOneMinuteRate(), total.getOneMinuteRate());
+    }
+}
@@ -6,7 +6,7 @@ import java.util.List;
 import static java.util.Arrays.asList;
 import static java.util.Collections.unmodifiableList;
 
-public class FibonacciDelayingRetryStrategy implements RetryStrategy {
+public class FibonacciDelayingRetryStrategy implements SchedulingRetryStrategy {
 
     public final Interval baseInterval;
 
@@ -21,11 +21,15 @@ public class FibonacciDelayingRetryStrategy implements RetryStrategy {
         if (retriesSoFar <= 0) {
             return true;
         } else {
-            DateTime timeAfterWhichNextRetryCanTakePlace = calculateTimeAfterWhichNextRetryCanTakePlace(retriesSoFar, timeOfLastOperation);
-            return currentTime.isAfter(timeAfterWhichNextRetryCanTakePlace);
+            return currentTime.isAfter(retryAfter(retriesSoFar, timeOfLastOperation));
         }
     }
 
+    @Override
+    public DateTime retryAfter(final int retriesSoFar, final DateTime timeOfLastOperation) {
+        return calculateTimeAfterWhichNextRetryCanTakePlace(retriesSoFar, timeOfLastOperation);
+    }
+
     private DateTime calculateTimeAfterWhichNextRetryCanTakePlace(int retriesSoFar, DateTime timeOfLastOperation) {
         int delayFactor = calculateDelayFactor(retriesSoFar);
         return timeOfLastOperation.plus(baseInterval.times(delayFactor).asMillis());
@@ -0,0 +1,15 @@
+package com.qmetric.feed.consumer.retry;
+
+import org.joda.time.DateTime;
+
+/**
+ * Retry strategy able to tell when an entry can next be retried, so that trackers can hold failed entries back until then
+ * rather than offering them on every poll.
+ */
+public interface SchedulingRetryStrategy extends RetryStrategy {
+
+    /**
+     * @return Time after which an entry having failed the given number of times, last at the given time, can be retried.
+     */
+    DateTime retryAfter(int retriesSoFar, DateTime timeOfLastOperation);
+}
@@ -0,0 +1,27 @@
+package com.qmetric.feed.consumer.store;
+
+import com.qmetric.feed.consumer.EntryId;
+import com.qmetric.feed.consumer.SeenEntry;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Optional extension of {@link FeedTracker} for stores able to handle several entries in a single round trip.
+ * <p/>
+ * Trackers not implementing this interface are adapted by {@link BatchFeedTrackerAdapter}, which falls back to the single entry operations.
+ */
+public interface BatchFeedTracker extends FeedTracker
+{
+    /**
+     * @return The subset of the given ids already tracked.
+     */
+    Set<EntryId> isTracked(Collection<EntryId> ids);
+
+    /**
+     * Track all given entries, in the given order. Entries already tracked are left untouched.
+     */
+    void trackAll(Collection<SeenEntry> entries);
+
+    void markAllAsConsumed(Collection<EntryId> ids);
+}
@@ -0,0 +1,93 @@
+package com.qmetric.feed.consumer.store;
+
+import com.qmetric.feed.consumer.EntryId;
+import com.qmetric.feed.consumer.SeenEntry;
+import com.qmetric.feed.consumer.TrackedEntry;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Batch view of a {@link FeedTracker} only supporting single entry operations.
+ */
+public class BatchFeedTrackerAdapter implements BatchFeedTracker
+{
+    private final FeedTracker feedTracker;
+
+    private BatchFeedTrackerAdapter(final FeedTracker feedTracker)
+    {
+        this.feedTracker = feedTracker;
+    }
+
+    public static BatchFeedTracker batching(final FeedTracker feedTracker)
+    {
+        return feedTracker instanceof BatchFeedTracker ? (BatchFeedTracker) feedTracker : new BatchFeedTrackerAdapter(feedTracker);
+    }
+
+    @Override public Set<EntryId> isTracked(final Collection<EntryId> ids)
+    {
+        final Set<EntryId> tracked = new HashSet<EntryId>();
+
+        for (final EntryId id : ids)
+        {
+            if (feedTracker.isTracked(id))
+            {
+                tracked.add(id);
+            }
+        }
+
+        return tracked;
+    }
+
+    @Override public void trackAll(final Collection<SeenEntry> entries)
+    {
+        for (final SeenEntry entry : entries)
+        {
+            feedTracker.track(entry);
+        }
+    }
+
+    @Override public void markAllAsConsumed(final Collection<EntryId> ids)
+    {
+        for (final EntryId id : ids)
+        {
+            feedTracker.markAsConsumed(id);
+        }
+    }
+
+    @Override public void checkConnectivity() throws ConnectivityException
+    {
+        feedTracker.checkConnectivity();
+    }
+
+    @Override public boolean isTracked(final EntryId id)
+    {
+        return feedTracker.isTracked(id);
+    }
+
+    @Override public void track(final SeenEntry entry)
+    {
+        feedTracker.track(entry);
+    }
+
+    @Override public Iterable<TrackedEntry> getEntriesToBeConsumed()
+    {
+        return feedTracker.getEntriesToBeConsumed();
+    }
+
+    @Override public void markAsConsuming(final EntryId id) throws AlreadyConsumingException
+    {
+        feedTracker.markAsConsuming(id);
+    }
+
+    @Override public void markAsConsumed(final EntryId id)
+    {
+        feedTracker.markAsConsumed(id);
+    }
+
+    @Override public void fail(final TrackedEntry trackedEntry, final boolean scheduleRetry)
+    {
+        feedTracker.fail(trackedEntry, scheduleRetry);
+    }
+}
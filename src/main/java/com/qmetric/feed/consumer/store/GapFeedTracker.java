@@ -0,0 +1,25 @@
+package com.qmetric.feed.consumer.store;
+
+import com.qmetric.feed.consumer.EntryGap;
+
+/**
+ * Optional extension of {@link FeedTracker} for stores able to record ranges of entry ids missing from the feed as single gaps,
+ * rather than tracking each missing id as an entry to consume.
+ * <p/>
+ * Entries turning up within a gap are tracked as usual, and a gap is expired as a whole once all of its entries have turned up
+ * or once it has been missing for long enough.
+ */
+public interface GapFeedTracker extends FeedTracker
+{
+    /**
+     * Record the given gap, unless already recorded.
+     */
+    void trackGap(EntryGap gap);
+
+    /**
+     * @return Gaps recorded and not yet expired.
+     */
+    Iterable<EntryGap> getGaps();
+
+    void expireGap(EntryGap gap);
+}
@@ -0,0 +1,27 @@
+package com.qmetric.feed.consumer.store;
+
+import com.google.common.base.Optional;
+import com.qmetric.feed.consumer.PageCursor;
+
+/**
+ * Keeps the page cursor for the lifetime of the consumer only.
+ */
+public class InMemoryPageCursorStore implements PageCursorStore
+{
+    private volatile Optional<PageCursor> cursor = Optional.absent();
+
+    public static PageCursorStore pageCursorStoreFor(final FeedTracker feedTracker)
+    {
+        return feedTracker instanceof PageCursorStore ? (PageCursorStore) feedTracker : new InMemoryPageCursorStore();
+    }
+
+    @Override public Optional<PageCursor> getPageCursor()
+    {
+        return cursor;
+    }
+
+    @Override public void savePageCursor(final PageCursor cursor)
+    {
+        this.cursor = Optional.of(cursor);
+    }
+}
@@ -0,0 +1,9 @@
+package com.qmetric.feed.consumer.store;
+
+public class LeaseLostException extends Exception
+{
+    public LeaseLostException(final String msg)
+    {
+        super(msg);
+    }
+}
@@ -0,0 +1,28 @@
+package com.qmetric.feed.consumer.store;
+
+import com.qmetric.feed.consumer.EntryId;
+import com.qmetric.feed.consumer.Interval;
+
+/**
+ * Optional extension of {@link FeedTracker} for stores able to mark entries as consuming for a limited time only, so that entries
+ * left consuming by a consumer that died are offered again once their lease expires, rather than never consumed.
+ * <p/>
+ * Entries whose lease has expired are returned by {@link #getEntriesToBeConsumed()} and can be marked as consuming again.
+ */
+public interface LeasingFeedTracker extends FeedTracker
+{
+    /**
+     * Mark the given entry as consuming by the given owner, until the lease expires.
+     *
+     * @return Whether the lease of a previous owner had expired, the entry being reclaimed from it.
+     * @throws AlreadyConsumingException When the entry is consumed, or leased and its lease has not expired.
+     */
+    boolean markAsConsuming(EntryId id, String owner, Interval leaseDuration) throws AlreadyConsumingException;
+
+    /**
+     * Extend the lease of the given owner on the given entry, to expire after the given duration from now.
+     *
+     * @throws LeaseLostException When the entry is no longer leased by the given owner, e.g. reclaimed by another owner after the lease expired.
+     */
+    void renewLease(EntryId id, String owner, Interval leaseDuration) throws LeaseLostException;
+}
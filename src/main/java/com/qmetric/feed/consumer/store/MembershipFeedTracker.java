@@ -0,0 +1,24 @@
+package com.qmetric.feed.consumer.store;
+
+import org.joda.time.DateTime;
+
+import java.util.Set;
+
+/**
+ * Optional extension of {@link FeedTracker} for stores shared by consumers on several nodes, able to keep the list of nodes consuming
+ * the feed, so that the entries to be consumed can be partitioned between them.
+ * <p/>
+ * Nodes record themselves on every poll; a node not recorded for long enough is taken to be gone.
+ */
+public interface MembershipFeedTracker extends FeedTracker
+{
+    /**
+     * Record the given node as consuming the feed as of now.
+     */
+    void recordMember(String nodeId);
+
+    /**
+     * @return Ids of the nodes recorded since the given time.
+     */
+    Set<String> getMembersSince(DateTime since);
+}
@@ -0,0 +1,17 @@
+package com.qmetric.feed.consumer.store;
+
+import com.google.common.base.Optional;
+import com.qmetric.feed.consumer.PageCursor;
+
+/**
+ * Optional capability of a {@link FeedTracker} able to keep the position reached by the last tracking pass, so that the next pass
+ * resumes from that page instead of walking back through the feed from its latest page.
+ * <p/>
+ * For trackers not implementing this interface the position is kept in memory by {@link InMemoryPageCursorStore}.
+ */
+public interface PageCursorStore
+{
+    Optional<PageCursor> getPageCursor();
+
+    void savePageCursor(PageCursor cursor);
+}
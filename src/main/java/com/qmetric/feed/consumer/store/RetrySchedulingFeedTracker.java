@@ -0,0 +1,16 @@
+package com.qmetric.feed.consumer.store;
+
+import com.qmetric.feed.consumer.retry.SchedulingRetryStrategy;
+
+/**
+ * Optional extension of {@link FeedTracker} for stores able to index entries failed with a retry scheduled by the time they can be
+ * retried, so that {@link #getEntriesToBeConsumed()} only returns entries due, and entries waiting to be retried are not loaded on
+ * every poll.
+ */
+public interface RetrySchedulingFeedTracker extends FeedTracker
+{
+    /**
+     * Hold entries failed with a retry scheduled back until the given strategy allows retrying them.
+     */
+    void scheduleRetriesWith(SchedulingRetryStrategy retryStrategy);
+}
@@ -0,0 +1,398 @@
+package com.qmetric.feed.consumer.store.referenceimplementation;
+
+import com.google.common.base.Optional;
+import com.qmetric.feed.consumer.DateTimeSource;
+import com.qmetric.feed.consumer.EntryGap;
+import com.qmetric.feed.consumer.EntryId;
+import com.qmetric.feed.consumer.PageCursor;
+import com.qmetric.feed.consumer.SeenEntry;
+import com.qmetric.feed.consumer.TrackedEntry;
+import com.qmetric.feed.consumer.store.AlreadyConsumingException;
+import com.qmetric.feed.consumer.store.BatchFeedTracker;
+import com.qmetric.feed.consumer.store.ConnectivityException;
+import com.qmetric.feed.consumer.store.EntryNotTrackedException;
+import com.qmetric.feed.consumer.store.GapFeedTracker;
+import com.qmetric.feed.consumer.store.PageCursorStore;
+import com.qmetric.feed.consumer.store.referenceimplementation.LogRecord.Status;
+import org.joda.time.DateTime;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Feed tracker persisted to a local directory, for a single consumer process.
+ * <p>
+ * Each status transition is appended to a log, and the ids of all tracked entries are kept in a memory-mapped index.
+ * Only entries still to be consumed are held in memory, those waiting kept in the order they are offered in; once the log has grown by the compaction threshold it is rewritten
+ * with just those entries, consumed and aborted entries then being remembered by the index alone.
+ * <p>
+ * Appended transitions are handed to the operating system before each call returns, so they survive the process crashing;
+ * they are synced to disk on compaction and on close. Entries left being consumed by a crashed process are seen again on restart.
+ * <p>
+ * Gaps in the feed, and the page reached by the last tracking pass, are kept in small files alongside, each rewritten as a whole on change.
+ */
+public class FileFeedTracker implements BatchFeedTracker, GapFeedTracker, PageCursorStore, Closeable {
+
+    private static final String LOG_FILE = "transitions.log";
+    private static final String INDEX_FILE = "entries.index";
+    private static final String CURSOR_FILE = "page.cursor";
+    private static final String GAPS_FILE = "entry.gaps";
+    private static final int INITIAL_INDEX_CAPACITY = 1 << 16;
+    private static final int DEFAULT_COMPACTION_THRESHOLD = 100000;
+    private static final Comparator<LogRecord> RECORD_BY_UPDATE_TIME_ASC = new RecordComparatorByTimeAsc();
+    private static final Comparator<LogRecord> RECORD_BY_SEQUENCE_ASC = new RecordComparatorBySequenceAsc();
+
+    private final DateTimeSource dateTimeSource;
+    private final int compactionThreshold;
+    private final TransitionLog log;
+    private final MappedEntryIdIndex index;
+    private final Map<EntryId, LogRecord> unfinished = new HashMap<EntryId, LogRecord>();
+    private final NavigableSet<LogRecord> toBeConsumed = new TreeSet<LogRecord>(RECORD_BY_UPDATE_TIME_ASC);
+    private final File cursorFile;
+    private final File gapsFile;
+    private Optional<PageCursor> cursor;
+    private List<EntryGap> gaps;
+    private long sequence;
+
+    public FileFeedTracker(File directory, DateTimeSource dateTimeSource) {
+        this(directory, dateTimeSource, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * @param compactionThreshold Number of transitions appended to the log, over the entries still to be consumed, before the log is compacted.
+     */
+    public FileFeedTracker(File directory, DateTimeSource dateTimeSource, int compactionThreshold) {
+        checkArgument(directory.isDirectory() || directory.mkdirs(), "Cannot create feed tracker directory %s", directory);
+        checkArgument(compactionThreshold > 0, "Compaction threshold must be more than 0");
+
+        this.dateTimeSource = dateTimeSource;
+        this.compactionThreshold = compactionThreshold;
+        this.log = new TransitionLog(new File(directory, LOG_FILE));
+        this.cursorFile = new File(directory, CURSOR_FILE);
+        this.gapsFile = new File(directory, GAPS_FILE);
+        this.cursor = readCursor();
+
+        try {
+            this.index = new MappedEntryIdIndex(new File(directory, INDEX_FILE), INITIAL_INDEX_CAPACITY);
+            recover();
+            this.gaps = readGaps();
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot open feed tracker in " + directory, e);
+        }
+    }
+
+    @Override
+    public synchronized void checkConnectivity() throws ConnectivityException {
+        try {
+            log.flush();
+        } catch (IOException e) {
+            throw new ConnectivityException(e);
+        }
+    }
+
+    @Override
+    public synchronized boolean isTracked(EntryId id) {
+        return index.contains(id);
+    }
+
+    @Override
+    public synchronized Set<EntryId> isTracked(Collection<EntryId> ids) {
+        Set<EntryId> tracked = new HashSet<EntryId>();
+        for (EntryId id : ids) { if (index.contains(id)) { tracked.add(id); } }
+
+        return tracked;
+    }
+
+    @Override
+    public synchronized void track(SeenEntry entry) {
+        trackAll(Collections.singletonList(entry));
+    }
+
+    @Override
+    public synchronized void trackAll(Collection<SeenEntry> entries) {
+        List<SeenEntry> untracked = new ArrayList<SeenEntry>(entries.size());
+        for (SeenEntry entry : entries) { if (!index.contains(entry.id)) { untracked.add(entry); } }
+        if (!index.hasRoomFor(untracked.size())) {
+            throw new IllegalStateException("Cannot track " + untracked.size() + " more entries, feed tracker already tracks " + index.size()
+                                            + " entries out of at most " + MappedEntryIdIndex.MAX_ENTRIES);
+        }
+
+        try {
+            for (SeenEntry entry : untracked) {
+                if (!index.contains(entry.id)) {
+                    DateTime now = dateTimeSource.now();
+                    record(new LogRecord(entry.id, Status.SEEN, entry.dateTime, now, 0, now));
+                }
+            }
+            written();
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot track entries", e);
+        }
+    }
+
+    @Override
+    public synchronized Iterable<TrackedEntry> getEntriesToBeConsumed() {
+        List<TrackedEntry> result = new ArrayList<TrackedEntry>(toBeConsumed.size());
+        for (LogRecord record : toBeConsumed) { result.add(record.toTrackedEntry()); }
+
+        return result;
+    }
+
+    @Override
+    public synchronized void markAsConsuming(EntryId id) throws AlreadyConsumingException {
+        if (!index.contains(id)) {
+            throw new EntryNotTrackedException("Entry of id=" + id + " is not tracked");
+        }
+        LogRecord record = unfinished.get(id);
+        if (record == null || record.status == Status.CONSUMING) {
+            throw new AlreadyConsumingException();
+        }
+
+        try {
+            record(record.to(Status.CONSUMING, dateTimeSource.now()));
+            written();
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot mark entry " + id + " as consuming", e);
+        }
+    }
+
+    @Override
+    public synchronized void markAsConsumed(EntryId id) {
+        markAllAsConsumed(Collections.singletonList(id));
+    }
+
+    @Override
+    public synchronized void markAllAsConsumed(Collection<EntryId> ids) {
+        for (EntryId id : ids) {
+            if (!index.contains(id)) {
+                throw new EntryNotTrackedException("Entry of id=" + id + " is not tracked");
+            }
+        }
+
+        try {
+            for (EntryId id : ids) {
+                LogRecord record = unfinished.get(id);
+                if (record != null) { record(record.to(Status.CONSUMED, dateTimeSource.now())); }
+            }
+            written();
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot mark entries as consumed", e);
+        }
+    }
+
+    @Override
+    public synchronized void fail(TrackedEntry trackedEntry, boolean scheduleRetry) {
+        Status nextStatus = scheduleRetry ? Status.SEEN : Status.ABORTED;
+        DateTime now = dateTimeSource.now();
+
+        try {
+            record(new LogRecord(trackedEntry.id, nextStatus, trackedEntry.created, now, trackedEntry.retries + 1, now));
+            written();
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot fail entry " + trackedEntry.id, e);
+        }
+    }
+
+    @Override
+    public synchronized Optional<PageCursor> getPageCursor() {
+        return cursor;
+    }
+
+    @Override
+    public synchronized void savePageCursor(final PageCursor cursor) {
+        try {
+            replace(cursorFile, new Content() {
+                @Override
+                public void writeTo(DataOutputStream out) throws IOException {
+                    out.writeUTF(cursor.pageUrl);
+                    out.writeUTF(cursor.lastTrackedId.toString());
+                }
+            });
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot save page cursor", e);
+        }
+        this.cursor = Optional.of(cursor);
+    }
+
+    @Override
+    public synchronized void trackGap(EntryGap gap) {
+        if (!Gaps.isRecorded(gap, gaps)) {
+            List<EntryGap> updated = new ArrayList<EntryGap>(gaps);
+            updated.add(gap);
+            saveGaps(updated);
+        }
+    }
+
+    @Override
+    public synchronized Iterable<EntryGap> getGaps() {
+        return new ArrayList<EntryGap>(gaps);
+    }
+
+    @Override
+    public synchronized void expireGap(EntryGap gap) {
+        List<EntryGap> updated = new ArrayList<EntryGap>(gaps);
+        if (updated.remove(gap)) {
+            saveGaps(updated);
+        }
+    }
+
+    /**
+     * Rewrites the log with just the entries still to be consumed, in the order they were logged.
+     */
+    public synchronized void compact() {
+        List<LogRecord> records = new ArrayList<LogRecord>(unfinished.values());
+        Collections.sort(records, RECORD_BY_SEQUENCE_ASC);
+
+        try {
+            index.force();
+            log.rewrite(records);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot compact feed tracker log", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        log.close();
+        index.close();
+    }
+
+    /**
+     * The cursor only saves walking through the feed, so one that cannot be read, as when lost to a crash, is ignored.
+     */
+    private Optional<PageCursor> readCursor() {
+        if (!cursorFile.exists()) {
+            return Optional.absent();
+        }
+
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cursorFile)));
+            try {
+                return Optional.of(new PageCursor(in.readUTF(), EntryId.of(in.readUTF())));
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return Optional.absent();
+        }
+    }
+
+    private List<EntryGap> readGaps() throws IOException {
+        List<EntryGap> gaps = new ArrayList<EntryGap>();
+        if (gapsFile.exists()) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(gapsFile)));
+            try {
+                for (int count = in.readInt(); count > 0; count--) {
+                    gaps.add(new EntryGap(EntryId.of(in.readUTF()), EntryId.of(in.readUTF()), new DateTime(in.readLong()), in.readUTF()));
+                }
+            } finally {
+                in.close();
+            }
+        }
+        return gaps;
+    }
+
+    private void saveGaps(final List<EntryGap> updated) {
+        try {
+            replace(gapsFile, new Content() {
+                @Override
+                public void writeTo(DataOutputStream out) throws IOException {
+                    out.writeInt(updated.size());
+                    for (EntryGap gap : updated) {
+                        out.writeUTF(gap.first.toString());
+                        out.writeUTF(gap.last.toString());
+                        out.writeLong(gap.created.getMillis());
+                        out.writeUTF(gap.pageUrl);
+                    }
+                }
+            });
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot save gaps", e);
+        }
+        gaps = updated;
+    }
+
+    /**
+     * Writes the file aside, synced to disk before taking the place of the current one.
+     */
+    private static void replace(File file, Content content) throws IOException {
+        File written = new File(file.getPath() + ".saving");
+        FileOutputStream fileOut = new FileOutputStream(written);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+        try {
+            content.writeTo(out);
+            out.flush();
+            fileOut.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!written.renameTo(file)) {
+            throw new IOException("Cannot replace " + file + " with " + written);
+        }
+    }
+
+    private void recover() throws IOException {
+        for (LogRecord record : log.replay()) {
+            index.add(record.id);
+            apply((record.status == Status.CONSUMING ? record.to(Status.SEEN, record.updated) : record).sequenced(sequence++));
+        }
+        compact();
+    }
+
+    private void record(LogRecord record) throws IOException {
+        log.append(record);
+        index.add(record.id);
+        apply(record.sequenced(sequence++));
+    }
+
+    private void apply(LogRecord record) {
+        LogRecord previous = record.isFinished() ? unfinished.remove(record.id) : unfinished.put(record.id, record);
+        if (previous != null) {
+            toBeConsumed.remove(previous);
+        }
+        if (record.status == Status.SEEN) {
+            toBeConsumed.add(record);
+        }
+    }
+
+    private void written() throws IOException {
+        log.flush();
+
+        if (log.appendedSinceRewrite() - unfinished.size() >= compactionThreshold) {
+            compact();
+        }
+    }
+
+    private interface Content {
+
+        void writeTo(DataOutputStream out) throws IOException;
+    }
+
+    private static class RecordComparatorByTimeAsc implements Comparator<LogRecord> {
+
+        @Override
+        public int compare(LogRecord a, LogRecord b) {
+            int byTime = a.updated.compareTo(b.updated);
+
+            return byTime != 0 ? byTime : RECORD_BY_SEQUENCE_ASC.compare(a, b);
+        }
+    }
+
+    private static class RecordComparatorBySequenceAsc implements Comparator<LogRecord> {
+
+        @Override
+        public int compare(LogRecord a, LogRecord b) {
+            return a.sequence < b.sequence ? -1 : a.sequence == b.sequence ? 0 : 1;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.qmetric.feed.consumer.store.referenceimplementation;
+
+import com.qmetric.feed.consumer.EntryGap;
+
+import java.util.Collection;
+
+final class Gaps {
+
+    private Gaps() {}
+
+    /**
+     * A gap found again, as when a tracking pass is repeated after failing, is recorded already even if seen from another page.
+     */
+    static boolean isRecorded(EntryGap gap, Collection<EntryGap> recorded) {
+        for (EntryGap other : recorded) {
+            if (other.first.equals(gap.first) && other.last.equals(gap.last)) { return true; }
+        }
+        return false;
+    }
+}
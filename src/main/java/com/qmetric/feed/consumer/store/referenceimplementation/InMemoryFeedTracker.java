@@ -1,22 +1,59 @@
 package com.qmetric.feed.consumer.store.referenceimplementation;
 
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.DiscreteDomain;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+import com.google.common.collect.TreeRangeSet;
 import com.qmetric.feed.consumer.DateTimeSource;
+import com.qmetric.feed.consumer.EntryGap;
 import com.qmetric.feed.consumer.EntryId;
+import com.qmetric.feed.consumer.Interval;
 import com.qmetric.feed.consumer.SeenEntry;
 import com.qmetric.feed.consumer.TrackedEntry;
+import com.qmetric.feed.consumer.retry.SchedulingRetryStrategy;
 import com.qmetric.feed.consumer.store.AlreadyConsumingException;
+import com.qmetric.feed.consumer.store.BatchFeedTracker;
 import com.qmetric.feed.consumer.store.ConnectivityException;
 import com.qmetric.feed.consumer.store.EntryNotTrackedException;
-import com.qmetric.feed.consumer.store.FeedTracker;
+import com.qmetric.feed.consumer.store.GapFeedTracker;
+import com.qmetric.feed.consumer.store.LeaseLostException;
+import com.qmetric.feed.consumer.store.LeasingFeedTracker;
+import com.qmetric.feed.consumer.store.MembershipFeedTracker;
+import com.qmetric.feed.consumer.store.RetrySchedulingFeedTracker;
 import org.joda.time.DateTime;
 
 import java.util.*;
 
-public class InMemoryFeedTracker implements FeedTracker {
+/**
+ * Keeps entries still to be consumed in memory, with the ones seen ordered by update time. Consumed and aborted entries
+ * are evicted: only their ids are remembered, numeric ids compacted into ranges. Entries with numeric ids are held in a
+ * map keyed by primitive longs. Gaps in the feed are kept as ranges. Members are kept with the time they were last recorded.
+ * Leased entries are also ordered by lease expiry, entries whose lease expired being offered again ahead of those seen.
+ * Entries failed with a retry scheduled are ordered by the time they can be retried, and only join those seen once due.
+ * Entries to be consumed are walked lazily, so that taking the first k of n entries costs O(k log n) rather than O(n).
+ * <p/>
+ * Ids of finished entries are remembered for as long as the tracker lives, so that they are not tracked again: numeric ids take
+ * little room once compacted into ranges, while non-numeric ids are each kept in a set growing with every entry consumed.
+ */
+public class InMemoryFeedTracker implements BatchFeedTracker, GapFeedTracker, MembershipFeedTracker, LeasingFeedTracker, RetrySchedulingFeedTracker {
 
     private final DateTimeSource dateTimeSource;
-    private final Map<EntryId, Item> items = new HashMap<EntryId, Item>();
+    private final LongKeyedMap<Item> itemsByNumericId = new LongKeyedMap<Item>();
+    private final Map<EntryId, Item> itemsByTextId = new HashMap<EntryId, Item>();
+    private final NavigableSet<Item> seenItems = new TreeSet<Item>(ITEM_BY_UPDATE_TIME_ASC);
+    private final NavigableSet<Item> leasedItems = new TreeSet<Item>(ITEM_BY_LEASE_EXPIRY_ASC);
+    private final NavigableSet<Item> retryItems = new TreeSet<Item>(ITEM_BY_RETRY_TIME_ASC);
+    private final RangeSet<Long> finishedNumericIds = TreeRangeSet.create();
+    private final Set<EntryId> finishedIds = new HashSet<EntryId>();
+    private final List<EntryGap> gaps = new ArrayList<EntryGap>();
+    private final Map<String, DateTime> members = new HashMap<String, DateTime>();
+    private SchedulingRetryStrategy retryStrategy;
+    private long sequence;
     private static final Comparator<Item> ITEM_BY_UPDATE_TIME_ASC = new ItemComparatorByTimeAsc();
+    private static final Comparator<Item> ITEM_BY_LEASE_EXPIRY_ASC = new ItemComparatorByLeaseExpiryAsc();
+    private static final Comparator<Item> ITEM_BY_RETRY_TIME_ASC = new ItemComparatorByRetryTimeAsc();
 
 
     public InMemoryFeedTracker(DateTimeSource dateTimeSource) {
@@ -27,60 +64,232 @@ public class InMemoryFeedTracker implements FeedTracker {
     public void checkConnectivity() throws ConnectivityException {}
 
     @Override
-    public boolean isTracked(EntryId id) {
-        return items.containsKey(id);
+    public synchronized boolean isTracked(EntryId id) {
+        return itemOf(id) != null || isFinished(id);
     }
 
     @Override
-    public void track(SeenEntry entry) {
+    public synchronized Set<EntryId> isTracked(Collection<EntryId> ids) {
+        Set<EntryId> tracked = new HashSet<EntryId>();
+        for (EntryId id : ids) { if (isTracked(id)) { tracked.add(id); } }
+
+        return tracked;
+    }
+
+    @Override
+    public synchronized void track(SeenEntry entry) {
         if(!isTracked(entry.id)) {
-            Item item = new Item(toTrackedEntry(entry), Status.SEEN, dateTimeSource.now());
-            items.put(item.getEntryId(), item);
+            update(item(toTrackedEntry(entry), Status.SEEN, dateTimeSource.now()));
         }
     }
 
     @Override
-    public Iterable<TrackedEntry> getEntriesToBeConsumed() {
-        List<Item> toBeConsumed = new ArrayList<Item>();
-        for (Item item : items.values()) { if (item.status == Status.SEEN) { toBeConsumed.add(item); } }
-        Collections.sort(toBeConsumed, ITEM_BY_UPDATE_TIME_ASC);
+    public synchronized void trackAll(Collection<SeenEntry> entries) {
+        for (SeenEntry entry : entries) { track(entry); }
+    }
 
-        List < TrackedEntry > result = new ArrayList<TrackedEntry>(toBeConsumed.size());
-        for (Item item : toBeConsumed) { result.add(item.trackedEntry); }
+    @Override
+    public synchronized Iterable<TrackedEntry> getEntriesToBeConsumed() {
+        DateTime now = leasedItems.isEmpty() && retryItems.isEmpty() ? null : dateTimeSource.now();
+        while (!retryItems.isEmpty() && retryItems.first().retryAt.isBefore(now)) {
+            Item due = retryItems.first();
+            update(new Item(due.trackedEntry, Status.SEEN, due.updated, due.sequence));
+        }
+        final List<TrackedEntry> leaseExpired = new ArrayList<TrackedEntry>();
+        for (Item item : leasedItems) {
+            if (!item.isLeaseExpired(now)) { break; }
+            leaseExpired.add(item.trackedEntry);
+        }
+        final long seenBefore = sequence;
 
-        return result;
+        return new Iterable<TrackedEntry>() {
+            @Override
+            public Iterator<TrackedEntry> iterator() {
+                return Iterators.concat(leaseExpired.iterator(), new SeenEntries(seenBefore));
+            }
+        };
+    }
+
+    @Override
+    public synchronized void markAsConsuming(EntryId id) throws AlreadyConsumingException {
+        Item item = claimableItemOf(id);
+        update(item(item.trackedEntry, Status.CONSUMING, dateTimeSource.now()));
+    }
+
+    @Override
+    public synchronized boolean markAsConsuming(EntryId id, String owner, Interval leaseDuration) throws AlreadyConsumingException {
+        Item item = claimableItemOf(id);
+        DateTime now = dateTimeSource.now();
+        update(new Item(item.trackedEntry, Status.CONSUMING, now, sequence++, owner, now.plus(leaseDuration.asMillis())));
+
+        return item.status == Status.CONSUMING;
+    }
+
+    @Override
+    public synchronized void renewLease(EntryId id, String owner, Interval leaseDuration) throws LeaseLostException {
+        Item item = itemOf(id);
+        if (item == null || item.status != Status.CONSUMING || !owner.equals(item.owner)) {
+            throw new LeaseLostException("Entry of id="+id+" is no longer leased by "+owner);
+        }
+        update(new Item(item.trackedEntry, Status.CONSUMING, item.updated, sequence++, owner, dateTimeSource.now().plus(leaseDuration.asMillis())));
     }
 
     @Override
-    public void markAsConsuming(EntryId id) throws AlreadyConsumingException {
+    public synchronized void markAsConsumed(EntryId id) {
         if (!isTracked(id)) {
             throw new EntryNotTrackedException("Entry of id="+id+" is not tracked");
         }
-        if (items.get(id).status == Status.CONSUMING) {
-            throw new AlreadyConsumingException();
-        } else {
-            items.put(id, items.get(id).toConsuming(dateTimeSource.now()));
+        Item item = itemOf(id);
+        if (item != null) {
+            update(item(item.trackedEntry, Status.CONSUMED, dateTimeSource.now()));
         }
     }
 
     @Override
-    public void markAsConsumed(EntryId id) {
-        items.put(id, items.get(id).toConsumed(dateTimeSource.now()));
+    public synchronized void markAllAsConsumed(Collection<EntryId> ids) {
+        for (EntryId id : ids) { markAsConsumed(id); }
     }
 
     @Override
-    public void fail(TrackedEntry trackedEntry, boolean scheduleRetry) {
+    public synchronized void fail(TrackedEntry trackedEntry, boolean scheduleRetry) {
         Status nextStatus = scheduleRetry ? Status.SEEN : Status.ABORTED;
         TrackedEntry updatedEntry = new TrackedEntry(trackedEntry.id, trackedEntry.created, dateTimeSource.now(), trackedEntry.retries + 1);
-        items.put(trackedEntry.id, new Item(updatedEntry, nextStatus, dateTimeSource.now()));
+        DateTime now = dateTimeSource.now();
+        DateTime retryAt = scheduleRetry && retryStrategy != null ? retryStrategy.retryAfter(updatedEntry.retries, now) : null;
+        if (retryAt != null && !retryAt.isBefore(now)) {
+            update(new Item(updatedEntry, Status.RETRY_SCHEDULED, now, sequence++, null, null, retryAt));
+        } else {
+            update(item(updatedEntry, nextStatus, now));
+        }
+    }
+
+    @Override
+    public synchronized void scheduleRetriesWith(SchedulingRetryStrategy retryStrategy) {
+        this.retryStrategy = retryStrategy;
+    }
+
+    @Override
+    public synchronized void trackGap(EntryGap gap) {
+        if (!Gaps.isRecorded(gap, gaps)) {
+            gaps.add(gap);
+        }
+    }
+
+    @Override
+    public synchronized Iterable<EntryGap> getGaps() {
+        return new ArrayList<EntryGap>(gaps);
+    }
+
+    @Override
+    public synchronized void expireGap(EntryGap gap) {
+        gaps.remove(gap);
+    }
+
+    @Override
+    public synchronized void recordMember(String nodeId) {
+        members.put(nodeId, dateTimeSource.now());
+    }
+
+    @Override
+    public synchronized Set<String> getMembersSince(DateTime since) {
+        Set<String> result = new HashSet<String>();
+        for (Map.Entry<String, DateTime> member : members.entrySet()) {
+            if (!member.getValue().isBefore(since)) { result.add(member.getKey()); }
+        }
+
+        return result;
+    }
+
+    private void update(Item item) {
+        EntryId id = item.getEntryId();
+        Item previous = id.isNumeric() ? itemsByNumericId.remove(id.asNumeric()) : itemsByTextId.remove(id);
+        if (previous != null && previous.status == Status.SEEN) {
+            seenItems.remove(previous);
+        }
+        if (previous != null && previous.leaseExpiry != null) {
+            leasedItems.remove(previous);
+        }
+        if (previous != null && previous.status == Status.RETRY_SCHEDULED) {
+            retryItems.remove(previous);
+        }
+
+        if (item.isFinished()) {
+            finish(id);
+        } else {
+            if (id.isNumeric()) {
+                itemsByNumericId.put(id.asNumeric(), item);
+            } else {
+                itemsByTextId.put(id, item);
+            }
+            if (item.status == Status.SEEN) { seenItems.add(item); }
+            if (item.leaseExpiry != null) { leasedItems.add(item); }
+            if (item.status == Status.RETRY_SCHEDULED) { retryItems.add(item); }
+        }
+    }
+
+    private Item claimableItemOf(EntryId id) throws AlreadyConsumingException {
+        if (!isTracked(id)) {
+            throw new EntryNotTrackedException("Entry of id="+id+" is not tracked");
+        }
+        Item item = itemOf(id);
+        if (item == null || (item.status == Status.CONSUMING && !item.isLeaseExpired(dateTimeSource.now()))) {
+            throw new AlreadyConsumingException();
+        }
+        return item;
+    }
+
+    private Item itemOf(EntryId id) {
+        return id.isNumeric() ? itemsByNumericId.get(id.asNumeric()) : itemsByTextId.get(id);
+    }
+
+    private void finish(EntryId id) {
+        if (id.isNumeric()) {
+            finishedNumericIds.add(Range.singleton(id.asNumeric()).canonical(DiscreteDomain.longs()));
+        } else {
+            finishedIds.add(id);
+        }
+    }
+
+    private boolean isFinished(EntryId id) {
+        return id.isNumeric() ? finishedNumericIds.contains(id.asNumeric()) : finishedIds.contains(id);
+    }
+
+    private Item item(TrackedEntry trackedEntry, Status status, DateTime updated) {
+        return new Item(trackedEntry, status, updated, sequence++);
     }
 
     private TrackedEntry toTrackedEntry(SeenEntry entry) {
         return new TrackedEntry(entry.id, entry.dateTime, dateTimeSource.now(), 0);
     }
 
+    /**
+     * Walks entries seen, in update order, from where it left off on each step, so that only entries taken are visited and entries
+     * can be updated meanwhile. Entries updated after the walk started are skipped, as they were not to be consumed when it did.
+     */
+    private class SeenEntries extends AbstractIterator<TrackedEntry> {
+
+        private final long seenBefore;
+        private Item last;
+
+        SeenEntries(long seenBefore) {
+            this.seenBefore = seenBefore;
+        }
+
+        @Override
+        protected TrackedEntry computeNext() {
+            synchronized (InMemoryFeedTracker.this) {
+                for (Item item : last == null ? seenItems : seenItems.tailSet(last, false)) {
+                    last = item;
+                    if (item.sequence < seenBefore) { return item.trackedEntry; }
+                }
+            }
+            return endOfData();
+        }
+    }
+
     private enum Status {
         SEEN,
+        RETRY_SCHEDULED,
         CONSUMING,
         CONSUMED,
         ABORTED
@@ -90,33 +299,70 @@ public class InMemoryFeedTracker implements FeedTracker {
 
         @Override
         public int compare(Item a, Item b) {
-            return a.updated.isAfter(b.updated) ? 1 : a.updated.isEqual(b.updated) ? 0 : -1;
+            int byTime = a.updated.isAfter(b.updated) ? 1 : a.updated.isEqual(b.updated) ? 0 : -1;
+
+            return byTime != 0 ? byTime : a.sequence < b.sequence ? -1 : a.sequence == b.sequence ? 0 : 1;
+        }
+    }
+
+    private static class ItemComparatorByLeaseExpiryAsc implements Comparator<Item> {
+
+        @Override
+        public int compare(Item a, Item b) {
+            int byExpiry = a.leaseExpiry.compareTo(b.leaseExpiry);
+
+            return byExpiry != 0 ? byExpiry : a.sequence < b.sequence ? -1 : a.sequence == b.sequence ? 0 : 1;
+        }
+    }
+
+    private static class ItemComparatorByRetryTimeAsc implements Comparator<Item> {
+
+        @Override
+        public int compare(Item a, Item b) {
+            int byRetryTime = a.retryAt.compareTo(b.retryAt);
+
+            return byRetryTime != 0 ? byRetryTime : a.sequence < b.sequence ? -1 : a.sequence == b.sequence ? 0 : 1;
         }
     }
 
     private static class Item {
-        public TrackedEntry trackedEntry;
-        public Status status;
-        public DateTime updated;
+        public final TrackedEntry trackedEntry;
+        public final Status status;
+        public final DateTime updated;
+        public final long sequence;
+        public final String owner;
+        public final DateTime leaseExpiry;
+        public final DateTime retryAt;
+
+
+        Item(TrackedEntry trackedEntry, Status status, DateTime updated, long sequence) {
+            this(trackedEntry, status, updated, sequence, null, null, null);
+        }
 
+        Item(TrackedEntry trackedEntry, Status status, DateTime updated, long sequence, String owner, DateTime leaseExpiry) {
+            this(trackedEntry, status, updated, sequence, owner, leaseExpiry, null);
+        }
 
-        Item(TrackedEntry trackedEntry, Status status, DateTime updated) {
+        Item(TrackedEntry trackedEntry, Status status, DateTime updated, long sequence, String owner, DateTime leaseExpiry, DateTime retryAt) {
             this.trackedEntry = trackedEntry;
             this.status = status;
             this.updated = updated;
+            this.sequence = sequence;
+            this.owner = owner;
+            this.leaseExpiry = leaseExpiry;
+            this.retryAt = retryAt;
         }
 
-        public EntryId getEntryId() {
-            return trackedEntry.id;
+        public boolean isLeaseExpired(DateTime now) {
+            return leaseExpiry != null && !leaseExpiry.isAfter(now);
         }
 
-        public Item toConsuming(DateTime timeOfUpdate) {
-            return new Item(trackedEntry, Status.CONSUMING, timeOfUpdate);
+        public EntryId getEntryId() {
+            return trackedEntry.id;
         }
 
-        public Item toConsumed(DateTime timeOfUpdate) {
-            return new Item(trackedEntry, Status.CONSUMED, timeOfUpdate);
+        public boolean isFinished() {
+            return status == Status.CONSUMED || status == Status.ABORTED;
         }
-
     }
 }
@@ -0,0 +1,85 @@
+package com.qmetric.feed.consumer.store.referenceimplementation;
+
+import com.qmetric.feed.consumer.EntryId;
+import com.qmetric.feed.consumer.TrackedEntry;
+import org.joda.time.DateTime;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * State of an entry after a status transition, as written to the {@link TransitionLog}. The sequence number of the transition,
+ * its position among those logged since the log was opened, is kept in memory only.
+ */
+class LogRecord {
+
+    enum Status {
+        SEEN,
+        CONSUMING,
+        CONSUMED,
+        ABORTED
+    }
+
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    final EntryId id;
+    final Status status;
+    final DateTime created;
+    final DateTime seenAt;
+    final int retries;
+    final DateTime updated;
+    final long sequence;
+
+    LogRecord(EntryId id, Status status, DateTime created, DateTime seenAt, int retries, DateTime updated) {
+        this(id, status, created, seenAt, retries, updated, 0);
+    }
+
+    private LogRecord(EntryId id, Status status, DateTime created, DateTime seenAt, int retries, DateTime updated, long sequence) {
+        this.id = id;
+        this.status = status;
+        this.created = created;
+        this.seenAt = seenAt;
+        this.retries = retries;
+        this.updated = updated;
+        this.sequence = sequence;
+    }
+
+    LogRecord to(Status status, DateTime timeOfUpdate) {
+        return new LogRecord(id, status, created, seenAt, retries, timeOfUpdate);
+    }
+
+    LogRecord sequenced(long sequence) {
+        return new LogRecord(id, status, created, seenAt, retries, updated, sequence);
+    }
+
+    boolean isFinished() {
+        return status == Status.CONSUMED || status == Status.ABORTED;
+    }
+
+    TrackedEntry toTrackedEntry() {
+        return new TrackedEntry(id, created, seenAt, retries);
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeByte(status.ordinal());
+        out.writeUTF(id.toString());
+        out.writeLong(created != null ? created.getMillis() : NO_TIME);
+        out.writeLong(seenAt != null ? seenAt.getMillis() : NO_TIME);
+        out.writeInt(retries);
+        out.writeLong(updated.getMillis());
+    }
+
+    static LogRecord readFrom(DataInput in) throws IOException {
+        int status = in.readUnsignedByte();
+        if (status >= Status.values().length) {
+            throw new IOException("Unknown entry status " + status);
+        }
+
+        return new LogRecord(EntryId.of(in.readUTF()), Status.values()[status], timeOf(in.readLong()), timeOf(in.readLong()), in.readInt(), new DateTime(in.readLong()));
+    }
+
+    private static DateTime timeOf(long millis) {
+        return millis == NO_TIME ? null : new DateTime(millis);
+    }
+}
@@ -0,0 +1,127 @@
+package com.qmetric.feed.consumer.store.referenceimplementation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Map keyed by primitive longs, avoiding a boxed key and a map entry per mapping. Open addressing with linear probing;
+ * removals shift following entries back so no tombstones are left. Null values are not allowed. Not thread-safe.
+ */
+class LongKeyedMap<V> {
+
+    private static final int MIN_CAPACITY = 16;
+    private static final long PHI = 0x9E3779B97F4A7C15L;
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int shift;
+    private int size;
+
+    LongKeyedMap() {
+        allocate(MIN_CAPACITY);
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        return (V) values[find(key)];
+    }
+
+    boolean containsKey(long key) {
+        return values[find(key)] != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    V put(long key, V value) {
+        checkNotNull(value);
+
+        int slot = find(key);
+        V previous = (V) values[slot];
+        if (previous == null) {
+            if ((size + 1) * 3 > values.length * 2) {
+                resize(values.length * 2);
+                slot = find(key);
+            }
+            size++;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+
+        return previous;
+    }
+
+    @SuppressWarnings("unchecked")
+    V remove(long key) {
+        int hole = find(key);
+        V removed = (V) values[hole];
+        if (removed == null) {
+            return null;
+        }
+
+        for (int next = (hole + 1) & mask; values[next] != null; next = (next + 1) & mask) {
+            int ideal = slotOf(keys[next]);
+            if (((next - ideal) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+        }
+        values[hole] = null;
+        size--;
+
+        return removed;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    Collection<V> values() {
+        List<V> result = new ArrayList<V>(size);
+        for (Object value : values) { if (value != null) { result.add((V) value); } }
+
+        return result;
+    }
+
+    private int find(long key) {
+        int slot = slotOf(key);
+        while (values[slot] != null && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    private int slotOf(long key) {
+        return (int) ((key * PHI) >>> shift);
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+    }
+}
@@ -0,0 +1,176 @@
+package com.qmetric.feed.consumer.store.referenceimplementation;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.qmetric.feed.consumer.EntryId;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.Charset;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+
+/**
+ * Set of entry ids kept in a memory-mapped, open-addressing hash table. Each id takes a 16 byte slot holding its 128 bit hash,
+ * so lookups cost a hash and, almost always, a single slot read. The table doubles (into a new file, swapped in once complete)
+ * when half full.
+ * <p>
+ * The table grows up to 2^26 slots (a 1 GB file), so holds at most {@link #MAX_ENTRIES} (about 33.5 million) ids; there is no fallback
+ * beyond that, callers checking {@link #hasRoomFor} before adding ids.
+ */
+class MappedEntryIdIndex implements Closeable {
+
+    private static final int MAGIC = 0x46544958;
+    private static final int HEADER_SIZE = 16;
+    private static final int SLOT_SIZE = 16;
+    private static final int MAX_CAPACITY = 1 << 26;
+    static final int MAX_ENTRIES = MAX_CAPACITY / 2;
+    private static final HashFunction HASH = Hashing.murmur3_128();
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private RandomAccessFile mappedFile;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int size;
+
+    MappedEntryIdIndex(File file, int initialCapacity) throws IOException {
+        checkArgument(Integer.bitCount(initialCapacity) == 1 && initialCapacity <= MAX_CAPACITY, "Capacity must be a power of 2 up to %s", MAX_CAPACITY);
+        this.file = file;
+
+        if (!file.exists() || file.length() == 0) {
+            create(file, initialCapacity);
+        }
+        map();
+    }
+
+    boolean contains(EntryId id) {
+        long[] key = keyOf(id);
+
+        return !isEmpty(find(key[0], key[1]));
+    }
+
+    void add(EntryId id) throws IOException {
+        long[] key = keyOf(id);
+        int slot = find(key[0], key[1]);
+
+        if (isEmpty(slot)) {
+            if ((size + 1) * 2 > capacity) {
+                grow();
+            }
+            insert(key[0], key[1]);
+        }
+    }
+
+    /**
+     * @return Whether the given number of ids not yet held can be added.
+     */
+    boolean hasRoomFor(int ids) {
+        return (long) size + ids <= MAX_ENTRIES;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Writes changes through to disk.
+     */
+    void force() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        mappedFile.close();
+    }
+
+    private void grow() throws IOException {
+        checkState(capacity < MAX_CAPACITY, "Entry index %s is full, holding at most %s ids", file, MAX_ENTRIES);
+
+        File grown = new File(file.getPath() + ".resizing");
+        if (grown.exists() && !grown.delete()) {
+            throw new IOException("Cannot delete " + grown);
+        }
+
+        MappedEntryIdIndex larger = new MappedEntryIdIndex(grown, capacity * 2);
+        for (int slot = 0; slot < capacity; slot++) {
+            if (!isEmpty(slot)) { larger.insert(buffer.getLong(offsetOf(slot)), buffer.getLong(offsetOf(slot) + 8)); }
+        }
+        larger.close();
+
+        close();
+        if (!grown.renameTo(file)) {
+            throw new IOException("Cannot replace " + file + " with " + grown);
+        }
+        map();
+    }
+
+    private void insert(long high, long low) {
+        write(find(high, low), high, low);
+        buffer.putInt(8, ++size);
+    }
+
+    private int find(long high, long low) {
+        int slot = (int) (high ^ (high >>> 32)) & (capacity - 1);
+
+        while (!isEmpty(slot) && !(buffer.getLong(offsetOf(slot)) == high && buffer.getLong(offsetOf(slot) + 8) == low)) {
+            slot = (slot + 1) & (capacity - 1);
+        }
+
+        return slot;
+    }
+
+    private boolean isEmpty(int slot) {
+        return buffer.getLong(offsetOf(slot)) == 0 && buffer.getLong(offsetOf(slot) + 8) == 0;
+    }
+
+    private void write(int slot, long high, long low) {
+        buffer.putLong(offsetOf(slot), high);
+        buffer.putLong(offsetOf(slot) + 8, low);
+    }
+
+    private void map() throws IOException {
+        mappedFile = new RandomAccessFile(file, "rw");
+        buffer = mappedFile.getChannel().map(READ_WRITE, 0, mappedFile.length());
+
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not an entry index");
+        }
+        capacity = buffer.getInt(4);
+        size = buffer.getInt(8);
+    }
+
+    private static void create(File file, int capacity) throws IOException {
+        RandomAccessFile created = new RandomAccessFile(file, "rw");
+        try {
+            created.setLength(0);
+            created.setLength(HEADER_SIZE + capacity * SLOT_SIZE);
+            created.writeInt(MAGIC);
+            created.writeInt(capacity);
+            created.writeInt(0);
+            created.getFD().sync();
+        } finally {
+            created.close();
+        }
+    }
+
+    private static int offsetOf(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private static long[] keyOf(EntryId id) {
+        ByteBuffer hash = ByteBuffer.wrap(HASH.hashString(id.toString(), UTF_8).asBytes());
+        long high = hash.getLong();
+        long low = hash.getLong();
+
+        return high == 0 && low == 0 ? new long[] {0, 1} : new long[] {high, low};
+    }
+}
@@ -0,0 +1,132 @@
+package com.qmetric.feed.consumer.store.referenceimplementation;
+
+import com.google.common.io.CountingInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Append-only log of entry status transitions. Replaying the log gives back the latest state of each entry written to it.
+ * A record left incomplete by a crash is dropped when the log is replayed.
+ */
+class TransitionLog implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TransitionLog.class);
+
+    private final File file;
+    private FileOutputStream fileOut;
+    private DataOutputStream out;
+    private int appendedSinceRewrite;
+
+    TransitionLog(File file) {
+        this.file = file;
+    }
+
+    List<LogRecord> replay() throws IOException {
+        List<LogRecord> records = new ArrayList<LogRecord>();
+
+        if (file.exists()) {
+            long validLength = 0;
+            CountingInputStream counting = new CountingInputStream(new BufferedInputStream(new FileInputStream(file)));
+            DataInputStream in = new DataInputStream(counting);
+            try {
+                while (true) {
+                    records.add(LogRecord.readFrom(in));
+                    validLength = counting.getCount();
+                }
+            } catch (EOFException e) {
+                // end of log, possibly in the middle of an incomplete record
+            } catch (IOException e) {
+                LOG.warn("Ignoring unreadable end of transition log {} from position {}", file, validLength, e);
+            } finally {
+                in.close();
+            }
+
+            truncate(validLength);
+        }
+
+        openForAppend();
+        appendedSinceRewrite = records.size();
+
+        return records;
+    }
+
+    void append(LogRecord record) throws IOException {
+        record.writeTo(out);
+        appendedSinceRewrite++;
+    }
+
+    /**
+     * Hands appended records over to the operating system, so they survive the process crashing.
+     */
+    void flush() throws IOException {
+        out.flush();
+    }
+
+    int appendedSinceRewrite() {
+        return appendedSinceRewrite;
+    }
+
+    /**
+     * Replaces the whole log with the given records, synced to disk before taking the place of the current log.
+     */
+    void rewrite(Collection<LogRecord> records) throws IOException {
+        File rewritten = new File(file.getPath() + ".compacting");
+        FileOutputStream rewrittenFileOut = new FileOutputStream(rewritten);
+        DataOutputStream rewrittenOut = new DataOutputStream(new BufferedOutputStream(rewrittenFileOut));
+        try {
+            for (LogRecord record : records) { record.writeTo(rewrittenOut); }
+            rewrittenOut.flush();
+            rewrittenFileOut.getFD().sync();
+        } finally {
+            rewrittenOut.close();
+        }
+
+        close();
+        if (!rewritten.renameTo(file)) {
+            throw new IOException("Cannot replace " + file + " with " + rewritten);
+        }
+        openForAppend();
+        appendedSinceRewrite = records.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (out != null) {
+            out.flush();
+            fileOut.getFD().sync();
+            out.close();
+            out = null;
+        }
+    }
+
+    private void openForAppend() throws IOException {
+        fileOut = new FileOutputStream(file, true);
+        out = new DataOutputStream(new BufferedOutputStream(fileOut));
+    }
+
+    private void truncate(long length) throws IOException {
+        if (file.length() > length) {
+            RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+            try {
+                truncated.setLength(length);
+            } finally {
+                truncated.close();
+            }
+        }
+    }
+}
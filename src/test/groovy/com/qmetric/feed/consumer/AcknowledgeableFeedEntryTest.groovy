@@ -0,0 +1,67 @@
+package com.qmetric.feed.consumer
+
+import com.qmetric.feed.consumer.store.FeedTracker
+import com.qmetric.hal.reader.HalResource
+import org.joda.time.DateTime
+import spock.lang.Specification
+
+class AcknowledgeableFeedEntryTest extends Specification {
+
+    final trackedEntry = new TrackedEntry(EntryId.of("1"), DateTime.now(), 0)
+
+    final feedTracker = Mock(FeedTracker)
+
+    final listener = Mock(EntryConsumerListener)
+
+    final entry = new AcknowledgeableFeedEntry(new FeedEntry(Mock(HalResource), 0), trackedEntry, feedTracker, [listener])
+
+    def "should mark entry as consumed when acknowledged as successful"()
+    {
+        when:
+        entry.acknowledge(Result.successful())
+
+        then:
+        1 * feedTracker.markAsConsumed(trackedEntry.id)
+        1 * listener.consumed(trackedEntry.id)
+    }
+
+    def "should retry marking entry as consumed while feed tracker fails to"()
+    {
+        when:
+        entry.acknowledge(Result.successful())
+
+        then:
+        1 * feedTracker.markAsConsumed(trackedEntry.id) >> { throw new RuntimeException() }
+
+        then:
+        1 * feedTracker.markAsConsumed(trackedEntry.id)
+        1 * listener.consumed(trackedEntry.id)
+    }
+
+    def "should fail entry when acknowledged as unsuccessful"()
+    {
+        when:
+        entry.acknowledge(result)
+
+        then:
+        1 * feedTracker.fail(trackedEntry, scheduleRetry)
+        0 * listener.consumed(_)
+
+        where:
+        result                      | scheduleRetry
+        Result.retryUnsuccessful()  | true
+        Result.abortUnsuccessful()  | false
+    }
+
+    def "should not be acknowledged twice"()
+    {
+        given:
+        entry.acknowledge(Result.successful())
+
+        when:
+        entry.acknowledge(Result.successful())
+
+        then:
+        thrown(IllegalStateException)
+    }
+}
@@ -0,0 +1,230 @@
+package com.qmetric.feed.consumer
+
+import com.qmetric.feed.consumer.store.BatchFeedTracker
+import org.joda.time.DateTime
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.FutureTask
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS
+import static java.util.concurrent.TimeUnit.SECONDS
+
+class AcknowledgementsTest extends Specification {
+
+    final feedTracker = Mock(BatchFeedTracker)
+
+    final flushes = Executors.newSingleThreadScheduledExecutor()
+
+    final dateTimeSource = Stub(DateTimeSource)
+
+    final acknowledgements = new Acknowledgements(feedTracker, 2, new Interval(10, MILLISECONDS), new Interval(1, SECONDS), flushes, dateTimeSource)
+
+    DateTime now = new DateTime(2016, 1, 1, 0, 0, 0, 0)
+
+    def setup()
+    {
+        dateTimeSource.now() >> { now }
+    }
+
+    def cleanup()
+    {
+        flushes.shutdownNow()
+    }
+
+    def "should mark entries acknowledged as consumed in background"()
+    {
+        given:
+        final marked = new CountDownLatch(2)
+        feedTracker.markAllAsConsumed(_) >> { List<Collection<EntryId>> args -> args[0].each { marked.countDown() } }
+
+        when:
+        acknowledgements.acknowledge(EntryId.of("1"))
+        acknowledgements.acknowledge(EntryId.of("2"))
+
+        then:
+        marked.await(5, SECONDS)
+    }
+
+    def "should retry with same entries until marked as consumed"()
+    {
+        given:
+        final marked = new CountDownLatch(1)
+        final attempts = [].asSynchronized()
+        feedTracker.markAllAsConsumed(_) >> { List<Collection<EntryId>> args ->
+            attempts << new ArrayList(args[0])
+            if (attempts.size() < 3) { throw new RuntimeException() }
+            marked.countDown()
+        }
+
+        when:
+        acknowledgements.acknowledge(EntryId.of("1"))
+
+        then:
+        marked.await(5, SECONDS)
+        attempts.every { it == [EntryId.of("1")] }
+        acknowledgements.retries().count == 2
+    }
+
+    def "should retry after error marking entries as consumed"()
+    {
+        given:
+        final marked = new CountDownLatch(1)
+        final attempts = [].asSynchronized()
+        feedTracker.markAllAsConsumed(_) >> {
+            attempts << it
+            if (attempts.size() < 2) { throw new AssertionError() }
+            marked.countDown()
+        }
+
+        when:
+        acknowledgements.acknowledge(EntryId.of("1"))
+
+        then:
+        marked.await(5, SECONDS)
+        acknowledgements.retries().count == 1
+    }
+
+    def "should report number and age of entries waiting to be marked as consumed"()
+    {
+        given:
+        feedTracker.markAllAsConsumed(_) >> { throw new RuntimeException() }
+
+        when:
+        acknowledgements.acknowledge(EntryId.of("1"))
+        acknowledgements.acknowledge(EntryId.of("2"))
+        now = now.plusSeconds(5)
+
+        then:
+        acknowledgements.depth().value == 2
+        acknowledgements.age().value == 5000
+    }
+
+    def "should report no age when no entries waiting"()
+    {
+        expect:
+        acknowledgements.depth().value == 0
+        acknowledgements.age().value == 0
+    }
+
+    @Unroll
+    def "should back off exponentially with jitter after #failures failures"()
+    {
+        given:
+        final acknowledgements = new Acknowledgements(feedTracker, 2, new Interval(100, MILLISECONDS), new Interval(1, SECONDS), flushes, dateTimeSource, new Random(42))
+
+        when:
+        final backoff = acknowledgements.backoffAfter(failures)
+
+        then:
+        backoff > maxBackoff / 2
+        backoff <= maxBackoff
+
+        where:
+        failures || maxBackoff
+        1        || 100
+        2        || 200
+        3        || 400
+        4        || 800
+        5        || 1000
+        100      || 1000
+    }
+
+    def "should leave entries waiting when no longer flushing"()
+    {
+        given:
+        flushes.shutdown()
+
+        when:
+        acknowledgements.acknowledge(EntryId.of("1"))
+
+        then:
+        acknowledgements.depth().value == 1
+        0 * feedTracker.markAllAsConsumed(_)
+    }
+
+    def "should wait for room to acknowledge entry while as many entries as allowed are waiting"()
+    {
+        given:
+        final unavailable = new CountDownLatch(1)
+        final acknowledgements = new Acknowledgements({ unavailable.await() } as BatchFeedTracker, 2, new Interval(10, MILLISECONDS), new Interval(1, SECONDS),
+                                                      flushes, new DateTimeSource())
+        acknowledgements.acknowledge(EntryId.of("1"))
+        acknowledgements.acknowledge(EntryId.of("2"))
+
+        when:
+        final acknowledged = new CountDownLatch(1)
+        Thread.start {
+            acknowledgements.acknowledge(EntryId.of("3"))
+            acknowledged.countDown()
+        }
+
+        then:
+        !acknowledged.await(300, MILLISECONDS)
+
+        when:
+        unavailable.countDown()
+
+        then:
+        acknowledged.await(5, SECONDS)
+    }
+
+    def "should fail to acknowledge entry while as many entries as allowed are waiting and no longer flushing"()
+    {
+        given:
+        flushes.shutdown()
+        acknowledgements.acknowledge(EntryId.of("1"))
+        acknowledgements.acknowledge(EntryId.of("2"))
+
+        when:
+        acknowledgements.acknowledge(EntryId.of("3"))
+
+        then:
+        thrown(IllegalStateException)
+        acknowledgements.depth().value == 2
+    }
+
+    def "should stop renewing lease of entry once marked as consumed"()
+    {
+        given:
+        final unavailable = new CountDownLatch(1)
+        final marked = new CountDownLatch(1)
+        final acknowledgements = new Acknowledgements({ unavailable.await(); marked.countDown() } as BatchFeedTracker, 2, new Interval(10, MILLISECONDS),
+                                                      new Interval(1, SECONDS), flushes, new DateTimeSource())
+        final leaseRenewal = new FutureTask({} as Runnable, null)
+        acknowledgements.acknowledge(EntryId.of("1"))
+
+        when:
+        acknowledgements.renewUntilMarked(EntryId.of("1"), leaseRenewal)
+
+        then:
+        !leaseRenewal.cancelled
+
+        when:
+        unavailable.countDown()
+        marked.await(5, SECONDS)
+        Thread.sleep(50)
+
+        then:
+        leaseRenewal.cancelled
+    }
+
+    def "should stop renewing lease of entry marked as consumed already"()
+    {
+        given:
+        final marked = new CountDownLatch(1)
+        feedTracker.markAllAsConsumed(_) >> { marked.countDown() }
+        final leaseRenewal = new FutureTask({} as Runnable, null)
+        acknowledgements.acknowledge(EntryId.of("1"))
+        marked.await(5, SECONDS)
+        Thread.sleep(50)
+
+        when:
+        acknowledgements.renewUntilMarked(EntryId.of("1"), leaseRenewal)
+
+        then:
+        leaseRenewal.cancelled
+    }
+}
@@ -0,0 +1,79 @@
+package com.qmetric.feed.consumer
+
+import spock.lang.Specification
+
+import static java.util.concurrent.TimeUnit.SECONDS
+
+class AdaptivePollingIntervalTest extends Specification {
+
+    final interval = new AdaptivePollingInterval(new Interval(1, SECONDS), new Interval(5, SECONDS))
+
+    def "should poll again straight away when new entries were found"()
+    {
+        expect:
+        interval.next(3, 3) == 0
+        interval.current().value == 0
+    }
+
+    def "should poll again after minimum interval when entries were consumed but none were new"()
+    {
+        expect:
+        interval.next(0, 2) == 1000
+    }
+
+    def "should back off up to maximum interval while polls find nothing"()
+    {
+        expect:
+        interval.next(0, 0) == 2000
+        interval.next(0, 0) == 4000
+        interval.next(0, 0) == 5000
+        interval.next(0, 0) == 5000
+        interval.current().value == 5000
+    }
+
+    def "should back off from minimum interval after polling straight away"()
+    {
+        given:
+        interval.next(1, 1)
+
+        expect:
+        interval.next(0, 0) == 1000
+    }
+
+    def "should reset to minimum interval once entries are consumed again"()
+    {
+        given:
+        interval.next(0, 0)
+        interval.next(0, 0)
+
+        expect:
+        interval.next(0, 1) == 1000
+    }
+
+    def "should poll again after minimum interval when entries were consumed successfully since last poll"()
+    {
+        given:
+        interval.consumed(EntryId.of("1"))
+
+        expect:
+        interval.next(0) == 1000
+        interval.next(0) == 2000
+    }
+
+    def "should back off up to maximum interval while entries only fail"()
+    {
+        expect:
+        interval.next(0) == 2000
+        interval.next(0) == 4000
+        interval.next(0) == 5000
+    }
+
+    def "should reject minimum interval greater than maximum"()
+    {
+        when:
+        new AdaptivePollingInterval(new Interval(2, SECONDS), new Interval(1, SECONDS))
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+}
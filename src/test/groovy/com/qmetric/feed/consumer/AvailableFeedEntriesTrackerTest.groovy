@@ -1,9 +1,13 @@
 package com.qmetric.feed.consumer
 
 import com.fasterxml.jackson.databind.ObjectMapper
+import com.google.common.base.Function
 import com.google.common.base.Optional
 import com.google.common.io.Resources
+import com.qmetric.feed.consumer.store.BatchFeedTracker
 import com.qmetric.feed.consumer.store.FeedTracker
+import com.qmetric.feed.consumer.store.GapFeedTracker
+import com.qmetric.feed.consumer.store.PageCursorStore
 import com.qmetric.hal.reader.HalReader
 import org.joda.time.DateTime
 import spock.lang.Specification
@@ -35,7 +39,7 @@ class AvailableFeedEntriesTrackerTest extends Specification {
     def "should add all untracked entries"()
     {
         given:
-        feedEndpoint.get() >> reader('/feedWithEntries_2_1.json')
+        feedEndpoint.getIfModified(_, _) >> { Function responseReader, ConditionalGet conditionalGet -> page('/feedWithEntries_2_1.json', responseReader) }
         givenTracking(["2": UNTRACKED, "1" : UNTRACKED])
 
         when:
@@ -50,7 +54,7 @@ class AvailableFeedEntriesTrackerTest extends Specification {
     {
         given:
         def storeWithRestrictionOnEarliestDate = new AvailableFeedEntriesTracker(feedEndpoint, feedEndpointFactory, tracker, halReader, nonContiguousEntryTracker, new PageOfSeenEntriesFactory(tracker, earliestEntryDate()))
-        feedEndpoint.get() >> reader('/feedWithEntries_2_1.json')
+        feedEndpoint.getIfModified(_, _) >> { Function responseReader, ConditionalGet conditionalGet -> page('/feedWithEntries_2_1.json', responseReader) }
         givenTracking(["2": UNTRACKED, "1" : UNTRACKED])
 
         when:
@@ -63,7 +67,7 @@ class AvailableFeedEntriesTrackerTest extends Specification {
     def "should return only untracked entries provided feed contains both tracked and untracked"()
     {
         given:
-        feedEndpoint.get() >> reader('/feedWithEntries_4_3_2_1.json')
+        feedEndpoint.getIfModified(_, _) >> { Function responseReader, ConditionalGet conditionalGet -> page('/feedWithEntries_4_3_2_1.json', responseReader) }
         givenTracking(["4": UNTRACKED, "3" : UNTRACKED, "2" : UNTRACKED, "1" : TRACKED])
 
         when:
@@ -76,9 +80,10 @@ class AvailableFeedEntriesTrackerTest extends Specification {
     def "should walk to next feed page if all entries in the current page are untracked"()
     {
         given:
-        feedEndpoint.get() >>> [reader('/feedWithNextLinkAndEntries_8_7.json'), reader('/feedWithNextLinkAndEntries_8_7.json')]
-        secondPageEndpoint.get() >>> [reader('/feedWithPrevNextLinkAndEntries_6_5.json'), reader('/feedWithPrevNextLinkAndEntries_6_5.json')]
-        thirdPageEndpoint.get() >> reader('/feedWithPrevLinkAndEntries_4_3_2_1.json')
+        feedEndpoint.getIfModified(_, _) >> { Function responseReader, ConditionalGet conditionalGet -> page('/feedWithNextLinkAndEntries_8_7.json', responseReader) }
+        feedEndpoint.get(_) >> { Function responseReader -> page('/feedWithNextLinkAndEntries_8_7.json', responseReader) }
+        secondPageEndpoint.get(_) >> { Function responseReader -> page('/feedWithPrevNextLinkAndEntries_6_5.json', responseReader) }
+        thirdPageEndpoint.get(_) >> { Function responseReader -> page('/feedWithPrevLinkAndEntries_4_3_2_1.json', responseReader) }
         feedEndpointFactory.create(_ as String) >>> [secondPageEndpoint, thirdPageEndpoint, secondPageEndpoint, feedEndpoint]
         givenTracking(["8": UNTRACKED, "7": UNTRACKED, "6": UNTRACKED, "5": UNTRACKED, "4": UNTRACKED, "3" : UNTRACKED, "2" : TRACKED, "1" : TRACKED])
 
@@ -95,10 +100,57 @@ class AvailableFeedEntriesTrackerTest extends Specification {
         0 * tracker.track(_ as SeenEntry)
     }
 
+    def "should fetch each page only once while catching up"()
+    {
+        given:
+        feedEndpoint.getIfModified(_, _) >> { Function responseReader, ConditionalGet conditionalGet -> page('/feedWithNextLinkAndEntries_8_7.json', responseReader) }
+        secondPageEndpoint.get(_) >> { Function responseReader -> page('/feedWithPrevNextLinkAndEntries_6_5.json', responseReader) }
+        thirdPageEndpoint.get(_) >> { Function responseReader -> page('/feedWithPrevLinkAndEntries_4_3_2_1.json', responseReader) }
+        givenTracking(["8": UNTRACKED, "7": UNTRACKED, "6": UNTRACKED, "5": UNTRACKED, "4": UNTRACKED, "3" : UNTRACKED, "2" : TRACKED, "1" : TRACKED])
+
+        when:
+        availableEntriesTracker.trackNewEntries()
+
+        then:
+        2 * feedEndpointFactory.create(_ as String) >>> [secondPageEndpoint, thirdPageEndpoint]
+        6 * tracker.track(_ as SeenEntry)
+        availableEntriesTracker.pagesFetched().count == 1
+        availableEntriesTracker.pagesFetched().snapshot.max == 3
+    }
+
+    def "should count no pages fetched when feed has not been modified since last poll"()
+    {
+        given:
+        feedEndpoint.getIfModified(_, _) >> absent()
+
+        when:
+        availableEntriesTracker.trackNewEntries()
+
+        then:
+        availableEntriesTracker.pagesFetched().snapshot.max == 0
+    }
+
+    def "should not look again for entries missing from feed when feed has not been modified since last poll"()
+    {
+        given:
+        final gapTracker = Mock(GapFeedTracker)
+        final gapsTracker = new AvailableFeedEntriesTracker(feedEndpoint, feedEndpointFactory, gapTracker, halReader, nonContiguousEntryTracker,
+                                                            new PageOfSeenEntriesFactory(gapTracker, absent()))
+        gapTracker.getGaps() >> [new EntryGap(EntryId.of("3"), EntryId.of("5"), DateTime.now(), "http://feed")]
+        feedEndpoint.getIfModified(_, _) >> absent()
+
+        when:
+        gapsTracker.trackNewEntries()
+
+        then:
+        0 * feedEndpointFactory._
+        0 * gapTracker.expireGap(_)
+    }
+
     def "should return none when tracker already contains all entries"()
     {
         given:
-        feedEndpoint.get() >> reader('/feedWithEntries_2_1.json')
+        feedEndpoint.getIfModified(_, _) >> { Function responseReader, ConditionalGet conditionalGet -> page('/feedWithEntries_2_1.json', responseReader) }
         givenTracking(["2" : TRACKED, "1" : TRACKED])
 
         when:
@@ -108,14 +160,165 @@ class AvailableFeedEntriesTrackerTest extends Specification {
         0 * tracker.track(_ as SeenEntry)
     }
 
+    def "should look up and track entries a page at a time when tracker supports batch operations"()
+    {
+        given:
+        final batchTracker = Mock(BatchFeedTracker)
+        final batchingEntriesTracker = new AvailableFeedEntriesTracker(feedEndpoint, feedEndpointFactory, batchTracker, halReader, nonContiguousEntryTracker, new PageOfSeenEntriesFactory(batchTracker, absent()))
+        feedEndpoint.getIfModified(_, _) >> { Function responseReader, ConditionalGet conditionalGet -> page('/feedWithEntries_4_3_2_1.json', responseReader) }
+
+        when:
+        batchingEntriesTracker.trackNewEntries()
+
+        then:
+        2 * batchTracker.isTracked([EntryId.of("4"), EntryId.of("3"), EntryId.of("2"), EntryId.of("1")]) >> ([EntryId.of("1")] as Set)
+        1 * batchTracker.trackAll([seenEntry('2', new DateTime(2013, 5, 22, 0, 0, 0, 0)), seenEntry('3', new DateTime(2013, 5, 23, 0, 0, 0, 0)), seenEntry('4', new DateTime(2013, 5, 24, 0, 0, 0, 0))])
+        0 * batchTracker.isTracked(_ as EntryId)
+        0 * batchTracker.track(_)
+    }
+
+    def "should remember untracked entries embedded in feed page"()
+    {
+        given:
+        final embeddedEntries = Mock(EmbeddedEntries)
+        final rememberingEntriesTracker = new AvailableFeedEntriesTracker(feedEndpoint, feedEndpointFactory, tracker, halReader, nonContiguousEntryTracker, new PageOfSeenEntriesFactory(tracker, absent(), Optional.of(embeddedEntries)))
+        feedEndpoint.getIfModified(_, _) >> { Function responseReader, ConditionalGet conditionalGet -> page('/feedWithEntries_2_1.json', responseReader) }
+        givenTracking(["2": UNTRACKED, "1" : TRACKED])
+
+        when:
+        rememberingEntriesTracker.trackNewEntries()
+
+        then:
+        (1.._) * embeddedEntries.remember(EntryId.of("2"), { it.getValueAsString("_id").get() == "2" })
+        0 * embeddedEntries.remember(EntryId.of("1"), _)
+    }
+
+    def "should not track anything when feed has not been modified since last poll"()
+    {
+        given:
+        feedEndpoint.getIfModified(_, _) >> absent()
+
+        when:
+        availableEntriesTracker.trackNewEntries()
+
+        then:
+        0 * tracker._
+        0 * nonContiguousEntryTracker._
+        0 * feedEndpointFactory._
+    }
+
+    def "should confirm page validators once all new entries tracked"()
+    {
+        given:
+        final conditionalGet = Mock(ConditionalGet)
+        final conditionalTracker = new AvailableFeedEntriesTracker(feedEndpoint, feedEndpointFactory, tracker, halReader, nonContiguousEntryTracker, new PageOfSeenEntriesFactory(tracker, absent()), Optional.of(conditionalGet), absent(), absent())
+        feedEndpoint.getIfModified(_, conditionalGet) >> { Function responseReader, ConditionalGet validators -> page('/feedWithEntries_2_1.json', responseReader) }
+        givenTracking(["2": UNTRACKED, "1" : UNTRACKED])
+
+        when:
+        conditionalTracker.trackNewEntries()
+
+        then:
+        1 * tracker.track(seenEntry('1', new DateTime(2013, 5, 23, 0, 0, 0, 0)))
+
+        then:
+        1 * conditionalGet.confirm()
+    }
+
+    def "should not confirm page validators when tracking fails"()
+    {
+        given:
+        final conditionalGet = Mock(ConditionalGet)
+        final conditionalTracker = new AvailableFeedEntriesTracker(feedEndpoint, feedEndpointFactory, tracker, halReader, nonContiguousEntryTracker, new PageOfSeenEntriesFactory(tracker, absent()), Optional.of(conditionalGet), absent(), absent())
+        feedEndpoint.getIfModified(_, conditionalGet) >> { Function responseReader, ConditionalGet validators -> page('/feedWithEntries_2_1.json', responseReader) }
+        givenTracking(["2": UNTRACKED, "1" : UNTRACKED])
+        tracker.track(_) >> { throw new RuntimeException() }
+
+        when:
+        conditionalTracker.trackNewEntries()
+
+        then:
+        thrown(RuntimeException)
+        0 * conditionalGet.confirm()
+    }
+
+    def "should resume from page cursor instead of walking back through the feed"()
+    {
+        given:
+        final pageCursorStore = Mock(PageCursorStore)
+        final resumingTracker = new AvailableFeedEntriesTracker(feedEndpoint, feedEndpointFactory, tracker, halReader, nonContiguousEntryTracker, new PageOfSeenEntriesFactory(tracker, absent()), absent(), Optional.of(pageCursorStore), absent())
+        pageCursorStore.getPageCursor() >> Optional.of(new PageCursor("http://feed?earlierThan=7", EntryId.of("6")))
+        feedEndpoint.getIfModified(_, _) >> { Function responseReader, ConditionalGet conditionalGet -> page('/feedWithNextLinkAndEntries_8_7.json', responseReader) }
+        feedEndpoint.get(_) >> { Function responseReader -> page('/feedWithNextLinkAndEntries_8_7.json', responseReader) }
+        secondPageEndpoint.get(_) >> { Function responseReader -> page('/feedWithPrevNextLinkAndEntries_6_5.json', responseReader) }
+        givenTracking(["8": UNTRACKED, "7": UNTRACKED, "6": TRACKED, "5": TRACKED])
+
+        when:
+        resumingTracker.trackNewEntries()
+
+        then:
+        1 * feedEndpointFactory.create("http://feed?earlierThan=7") >> secondPageEndpoint
+        1 * feedEndpointFactory.create("http://feed/nextEntries") >> feedEndpoint
+        0 * feedEndpointFactory.create(_)
+        1 * tracker.track(seenEntry('7', new DateTime(2013, 5, 26, 0, 0, 0)))
+        1 * tracker.track(seenEntry('8', new DateTime(2013, 5, 26, 13, 0, 0)))
+        0 * tracker.track(_ as SeenEntry)
+    }
+
+    def "should walk back from latest page when page at cursor no longer holds the entry last tracked from it"()
+    {
+        given:
+        final pageCursorStore = Mock(PageCursorStore)
+        final resumingTracker = new AvailableFeedEntriesTracker(feedEndpoint, feedEndpointFactory, tracker, halReader, nonContiguousEntryTracker, new PageOfSeenEntriesFactory(tracker, absent()), absent(), Optional.of(pageCursorStore), absent())
+        pageCursorStore.getPageCursor() >> Optional.of(new PageCursor("http://feed?page=3", EntryId.of("2")))
+        feedEndpoint.getIfModified(_, _) >> { Function responseReader, ConditionalGet conditionalGet -> page('/feedWithNextLinkAndEntries_8_7.json', responseReader) }
+        feedEndpoint.get(_) >> { Function responseReader -> page('/feedWithNextLinkAndEntries_8_7.json', responseReader) }
+        secondPageEndpoint.get(_) >> { Function responseReader -> page('/feedWithPrevNextLinkAndEntries_6_5.json', responseReader) }
+        feedEndpointFactory.create("http://feed?page=3") >> secondPageEndpoint
+        feedEndpointFactory.create("http://feed/nextEntries") >>> [secondPageEndpoint, feedEndpoint]
+        givenTracking(["8": UNTRACKED, "7": UNTRACKED, "6": TRACKED, "5": TRACKED])
+
+        when:
+        resumingTracker.trackNewEntries()
+
+        then:
+        1 * tracker.track(seenEntry('7', new DateTime(2013, 5, 26, 0, 0, 0)))
+        1 * tracker.track(seenEntry('8', new DateTime(2013, 5, 26, 13, 0, 0)))
+    }
+
+    def "should save page cursor once entries of each page tracked"()
+    {
+        given:
+        final pageCursorStore = Mock(PageCursorStore)
+        final resumingTracker = new AvailableFeedEntriesTracker(feedEndpoint, feedEndpointFactory, tracker, halReader, nonContiguousEntryTracker, new PageOfSeenEntriesFactory(tracker, absent()), absent(), Optional.of(pageCursorStore), absent())
+        pageCursorStore.getPageCursor() >> absent()
+        feedEndpoint.getIfModified(_, _) >> { Function responseReader, ConditionalGet conditionalGet -> page('/feedWithNextLinkAndEntries_8_7.json', responseReader) }
+        feedEndpoint.get(_) >> { Function responseReader -> page('/feedWithNextLinkAndEntries_8_7.json', responseReader) }
+        secondPageEndpoint.get(_) >> { Function responseReader -> page('/feedWithPrevNextLinkAndEntries_6_5.json', responseReader) }
+        feedEndpointFactory.create(_ as String) >>> [secondPageEndpoint, feedEndpoint]
+        givenTracking(["8": UNTRACKED, "7": UNTRACKED, "6": TRACKED, "5": TRACKED])
+
+        when:
+        resumingTracker.trackNewEntries()
+
+        then:
+        1 * pageCursorStore.savePageCursor(new PageCursor("http://feed", EntryId.of("6")))
+
+        then:
+        1 * tracker.track(seenEntry('8', new DateTime(2013, 5, 26, 13, 0, 0)))
+
+        then:
+        1 * pageCursorStore.savePageCursor(new PageCursor("http://feed", EntryId.of("8")))
+    }
+
     private static seenEntry(final String id, final DateTime dateTime)
     {
         return new SeenEntry(EntryId.of(id), dateTime)
     }
 
-    private static reader(String resourcePath)
+    private static page(String resourcePath, Function responseReader)
     {
-        return Optional.of(new InputStreamReader(Resources.getResourceAsStream(resourcePath)))
+        return Optional.of(responseReader.apply(new InputStreamReader(Resources.getResourceAsStream(resourcePath))))
     }
 
     private static Optional<EarliestEntryLimit> earliestEntryDate()
@@ -0,0 +1,80 @@
+package com.qmetric.feed.consumer
+
+import org.apache.http.HttpHost
+import org.apache.http.HttpResponse
+import org.apache.http.ProtocolVersion
+import org.apache.http.conn.routing.HttpRoute
+import org.apache.http.message.BasicHttpResponse
+import org.apache.http.protocol.BasicHttpContext
+import spock.lang.Specification
+
+import static java.util.concurrent.TimeUnit.SECONDS
+
+class ClientBuilderTest extends Specification
+{
+    def "should size connection pool from configuration"()
+    {
+        when:
+        final connectionManager = ClientBuilder.newConnectionManager(new ConnectionPoolConfiguration().withMaxTotal(40).withMaxPerRoute(15))
+
+        then:
+        connectionManager.maxTotal == 40
+        connectionManager.defaultMaxPerRoute == 15
+    }
+
+    def "should keep connections alive no longer than configured"()
+    {
+        given:
+        final keepAlive = ClientBuilder.keepAliveAtMost(new Interval(30, SECONDS))
+
+        expect:
+        keepAlive.getKeepAliveDuration(response(keepAliveHeader), new BasicHttpContext()) == expectedDuration
+
+        where:
+        keepAliveHeader | expectedDuration
+        null            | 30000
+        "timeout=5"     | 5000
+        "timeout=120"   | 30000
+    }
+
+    def "should evict connections of shared connection manager only when configured to"()
+    {
+        given:
+        final connectionManager = ClientBuilder.newConnectionManager(new ConnectionPoolConfiguration())
+
+        expect:
+        ClientBuilder.newIdleConnectionEvictor(connectionManager, pool).isPresent() == expected
+
+        where:
+        pool                                                                      | expected
+        new ConnectionPoolConfiguration()                                         | false
+        new ConnectionPoolConfiguration().evictIdleConnectionsAfter(1, SECONDS) | true
+        new ConnectionPoolConfiguration().evictExpiredConnections()               | true
+    }
+
+    def "should leave shared connection manager open when closing client"()
+    {
+        given:
+        final pool = new ConnectionPoolConfiguration()
+        final connectionManager = ClientBuilder.newConnectionManager(pool)
+
+        when:
+        ClientBuilder.newHttpClient(connectionManager, pool, null, true).close()
+
+        and:
+        connectionManager.requestConnection(new HttpRoute(new HttpHost("localhost")), null).cancel()
+
+        then:
+        notThrown(IllegalStateException)
+    }
+
+    private static HttpResponse response(final String keepAliveHeader)
+    {
+        final response = new BasicHttpResponse(new ProtocolVersion("HTTP", 1, 1), 200, "OK")
+        if (keepAliveHeader != null)
+        {
+            response.addHeader("Keep-Alive", keepAliveHeader)
+        }
+        return response
+    }
+}
@@ -0,0 +1,103 @@
+package com.qmetric.feed.consumer
+
+import org.apache.http.HttpResponse
+import org.apache.http.ProtocolVersion
+import org.apache.http.client.methods.HttpGet
+import org.apache.http.message.BasicHttpResponse
+import spock.lang.Specification
+
+class ConditionalGetTest extends Specification
+{
+    final url = "http://host/feed"
+
+    final conditionalGet = new ConditionalGet()
+
+    def "should not add conditions for page without known validators"()
+    {
+        given:
+        final request = new HttpGet(url)
+
+        when:
+        conditionalGet.addConditionsTo(request)
+
+        then:
+        request.allHeaders.length == 0
+    }
+
+    def "should add conditions once validators confirmed"()
+    {
+        given:
+        conditionalGet.received(new HttpGet(url), response(200, ["ETag": '"v1"', "Last-Modified": "Wed, 22 May 2013 00:00:00 GMT"]))
+        conditionalGet.confirm()
+        final request = new HttpGet(url)
+
+        when:
+        conditionalGet.addConditionsTo(request)
+
+        then:
+        request.getFirstHeader("If-None-Match").value == '"v1"'
+        request.getFirstHeader("If-Modified-Since").value == "Wed, 22 May 2013 00:00:00 GMT"
+    }
+
+    def "should not add conditions from validators received but not yet confirmed"()
+    {
+        given:
+        conditionalGet.received(new HttpGet(url), response(200, ["ETag": '"v1"']))
+        final request = new HttpGet(url)
+
+        when:
+        conditionalGet.addConditionsTo(request)
+
+        then:
+        request.getFirstHeader("If-None-Match") == null
+    }
+
+    def "should remember validators per page url"()
+    {
+        given:
+        conditionalGet.received(new HttpGet(url), response(200, ["ETag": '"v1"']))
+        conditionalGet.received(new HttpGet("http://host/feed?page=2"), response(200, ["ETag": '"v2"']))
+        conditionalGet.confirm()
+        final request = new HttpGet("http://host/feed?page=2")
+
+        when:
+        conditionalGet.addConditionsTo(request)
+
+        then:
+        request.getFirstHeader("If-None-Match").value == '"v2"'
+    }
+
+    def "should forget validators when page no longer provides any"()
+    {
+        given:
+        conditionalGet.received(new HttpGet(url), response(200, ["ETag": '"v1"']))
+        conditionalGet.confirm()
+        conditionalGet.received(new HttpGet(url), response(200, [:]))
+        final request = new HttpGet(url)
+
+        when:
+        conditionalGet.addConditionsTo(request)
+
+        then:
+        request.allHeaders.length == 0
+    }
+
+    def "should measure not modified responses"()
+    {
+        when:
+        conditionalGet.received(new HttpGet(url), response(200, ["ETag": '"v1"']))
+        conditionalGet.received(new HttpGet(url), response(304, [:]))
+        conditionalGet.received(new HttpGet(url), response(304, [:]))
+
+        then:
+        conditionalGet.requests().count == 3
+        conditionalGet.notModified().count == 2
+    }
+
+    private static HttpResponse response(final int statusCode, final Map<String, String> headers)
+    {
+        final response = new BasicHttpResponse(new ProtocolVersion("HTTP", 1, 1), statusCode, "")
+        headers.each { response.addHeader(it.key, it.value) }
+        return response
+    }
+}
@@ -0,0 +1,63 @@
+package com.qmetric.feed.consumer
+
+import com.google.common.base.Optional
+import spock.lang.Specification
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS
+import static java.util.concurrent.TimeUnit.MINUTES
+import static java.util.concurrent.TimeUnit.SECONDS
+
+class ConnectionPoolConfigurationTest extends Specification
+{
+    final connectionPool = new ConnectionPoolConfiguration()
+
+    def "should default to previous client settings"()
+    {
+        expect:
+        connectionPool.maxPerRoute == 10
+        connectionPool.maxTotal == 20
+        connectionPool.connectTimeout == new Interval(60, SECONDS)
+        connectionPool.socketTimeout == new Interval(60, SECONDS)
+        !connectionPool.keepAlive.isPresent()
+        !connectionPool.idleEviction.isPresent()
+        !connectionPool.expiredEviction
+    }
+
+    def "should accept pool settings"()
+    {
+        when:
+        connectionPool.withMaxTotal(50)
+                .withMaxPerRoute(25)
+                .keepAliveFor(30, SECONDS)
+                .evictIdleConnectionsAfter(1, MINUTES)
+                .evictExpiredConnections()
+                .withConnectTimeout(500, MILLISECONDS)
+                .withSocketTimeout(10, SECONDS)
+                .withConnectionRequestTimeout(2, SECONDS)
+
+        then:
+        connectionPool.maxTotal == 50
+        connectionPool.maxPerRoute == 25
+        connectionPool.keepAlive == Optional.of(new Interval(30, SECONDS))
+        connectionPool.idleEviction == Optional.of(new Interval(1, MINUTES))
+        connectionPool.expiredEviction
+        connectionPool.connectTimeout == new Interval(500, MILLISECONDS)
+        connectionPool.socketTimeout == new Interval(10, SECONDS)
+        connectionPool.connectionRequestTimeout == new Interval(2, SECONDS)
+    }
+
+    def "should reject pool sizes lower than 1"()
+    {
+        when:
+        connectionPool.withMaxTotal(0)
+
+        then:
+        thrown(IllegalStateException)
+
+        when:
+        connectionPool.withMaxPerRoute(0)
+
+        then:
+        thrown(IllegalStateException)
+    }
+}
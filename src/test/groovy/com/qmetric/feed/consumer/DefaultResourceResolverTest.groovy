@@ -1,5 +1,6 @@
 package com.qmetric.feed.consumer
 
+import com.google.common.base.Function
 import com.qmetric.hal.reader.HalReader
 import com.qmetric.hal.reader.HalResource
 import spock.lang.Specification
@@ -23,7 +24,7 @@ class DefaultResourceResolverTest extends Specification {
         when:
         def result = resolver.resolve(EntryId.of("1"))
         then:
-        1 * endpointFactory.create(_ as String) >> Mock(FeedEndpoint) { it.get() >> Optional.of(reader) }
+        1 * endpointFactory.create(_ as String) >> Mock(FeedEndpoint) { it.get(_ as Function) >> { Function responseReader -> Optional.of(responseReader.apply(reader)) } }
         1 * halReader.read(reader) >> resource
         result == Optional.of(resource)
     }
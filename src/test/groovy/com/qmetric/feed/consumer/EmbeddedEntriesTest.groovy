@@ -0,0 +1,77 @@
+package com.qmetric.feed.consumer
+
+import com.google.common.base.Optional
+import com.google.common.base.Predicate
+import com.google.common.base.Predicates
+import com.qmetric.hal.reader.HalResource
+import spock.lang.Specification
+
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+
+import static com.google.common.base.Optional.absent
+
+class EmbeddedEntriesTest extends Specification {
+
+    final entry = Mock(HalResource)
+
+    final embeddedEntries = new EmbeddedEntries(Predicates.<HalResource> alwaysTrue())
+
+    def "should hand out remembered entry once only"()
+    {
+        given:
+        embeddedEntries.remember(EntryId.of("1"), entry)
+
+        expect:
+        embeddedEntries.take(EntryId.of("1")) == Optional.of(entry)
+        embeddedEntries.take(EntryId.of("1")) == absent()
+    }
+
+    def "should hand out remembered entry to one of concurrent takers only"()
+    {
+        given:
+        final ids = (1..1000).collect { EntryId.of(it) }
+        ids.each { embeddedEntries.remember(it, entry) }
+        final executor = Executors.newFixedThreadPool(4)
+        final start = new CountDownLatch(1)
+
+        when:
+        final takers = (1..4).collect {
+            executor.submit({ start.await(); ids.count { embeddedEntries.take(it).isPresent() } } as Callable<Integer>)
+        }
+        start.countDown()
+
+        then:
+        takers.sum { it.get() } == ids.size()
+
+        cleanup:
+        executor.shutdownNow()
+    }
+
+    def "should not hold entries embedded as a summary"()
+    {
+        given:
+        final summariesOnly = new EmbeddedEntries({ false } as Predicate<HalResource>)
+
+        when:
+        summariesOnly.remember(EntryId.of("1"), entry)
+
+        then:
+        summariesOnly.take(EntryId.of("1")) == absent()
+    }
+
+    def "should drop oldest entries when holding more than maximum number of entries"()
+    {
+        given:
+        final boundedEntries = new EmbeddedEntries(Predicates.<HalResource> alwaysTrue(), 1)
+
+        when:
+        boundedEntries.remember(EntryId.of("1"), entry)
+        boundedEntries.remember(EntryId.of("2"), entry)
+
+        then:
+        boundedEntries.take(EntryId.of("1")) == absent()
+        boundedEntries.take(EntryId.of("2")) == Optional.of(entry)
+    }
+}
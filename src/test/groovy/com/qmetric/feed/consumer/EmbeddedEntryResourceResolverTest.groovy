@@ -0,0 +1,38 @@
+package com.qmetric.feed.consumer
+
+import com.google.common.base.Optional
+import com.qmetric.hal.reader.HalResource
+import spock.lang.Specification
+
+class EmbeddedEntryResourceResolverTest extends Specification {
+
+    final embeddedEntries = Mock(EmbeddedEntries)
+
+    final fallback = Mock(ResourceResolver)
+
+    final resolver = new EmbeddedEntryResourceResolver(embeddedEntries, fallback)
+
+    final resource = Mock(HalResource)
+
+    def "should resolve entry embedded in feed page without fetching it"()
+    {
+        when:
+        final resolved = resolver.resolve(EntryId.of("1"))
+
+        then:
+        1 * embeddedEntries.take(EntryId.of("1")) >> Optional.of(resource)
+        0 * fallback._
+        resolved == Optional.of(resource)
+    }
+
+    def "should fetch entry no longer held"()
+    {
+        when:
+        final resolved = resolver.resolve(EntryId.of("1"))
+
+        then:
+        1 * embeddedEntries.take(EntryId.of("1")) >> Optional.absent()
+        1 * fallback.resolve(EntryId.of("1")) >> Optional.of(resource)
+        resolved == Optional.of(resource)
+    }
+}
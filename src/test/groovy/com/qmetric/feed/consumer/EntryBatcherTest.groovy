@@ -0,0 +1,124 @@
+package com.qmetric.feed.consumer
+
+import com.qmetric.hal.reader.HalResource
+import spock.lang.Specification
+
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS
+import static java.util.concurrent.TimeUnit.MINUTES
+import static java.util.concurrent.TimeUnit.SECONDS
+
+class EntryBatcherTest extends Specification {
+
+    final executor = Executors.newCachedThreadPool()
+
+    final batches = Collections.synchronizedList([])
+
+    final successful = Collections.synchronizedList([])
+
+    final BatchConsumeAction succeeding = new BatchConsumeAction() {
+        @Override List<Result> consume(final List<FeedEntry> feedEntries)
+        {
+            batches << feedEntries.collect { it.retries }
+            feedEntries.collect { it.retries % 2 == 0 ? Result.successful() : Result.retryUnsuccessful() }
+        }
+    }
+
+    final EntryBatcher.SuccessfulEntries recordingSuccessful = new EntryBatcher.SuccessfulEntries() {
+        @Override void consumed(final List<TrackedEntry> trackedEntries) { successful.addAll(trackedEntries*.retries) }
+    }
+
+    def cleanup()
+    {
+        executor.shutdownNow()
+    }
+
+    def "should consume batch as soon as it is full, giving each entry its own result"()
+    {
+        given:
+        final batcher = new EntryBatcher(succeeding, 4, new Interval(1, MINUTES), recordingSuccessful)
+
+        when:
+        final results = (0..<4).collect { n -> executor.submit({ batcher.consume(tracked(n), entry(n)) } as Callable) }.collect { it.get(5, SECONDS) }
+
+        then:
+        results*.state == [Result.State.SUCCESSFUL, Result.State.RETRY_UNSUCCESSFUL, Result.State.SUCCESSFUL, Result.State.RETRY_UNSUCCESSFUL]
+        batches.size() == 1
+        batches[0].sort() == [0, 1, 2, 3]
+        successful.sort() == [0, 2]
+    }
+
+    def "should consume partial batch once linger time has passed"()
+    {
+        given:
+        final batcher = new EntryBatcher(succeeding, 10, new Interval(50, MILLISECONDS), recordingSuccessful)
+
+        when:
+        final results = (0..<3).collect { n -> executor.submit({ batcher.consume(tracked(n), entry(n)) } as Callable) }.collect { it.get(5, SECONDS) }
+
+        then:
+        results.size() == 3
+        batches*.size().sum() == 3
+    }
+
+    def "should start a new batch once one is full"()
+    {
+        given:
+        final batcher = new EntryBatcher(succeeding, 2, new Interval(50, MILLISECONDS), recordingSuccessful)
+
+        when:
+        (0..<5).collect { n -> executor.submit({ batcher.consume(tracked(n), entry(n)) } as Callable) }.each { it.get(5, SECONDS) }
+
+        then:
+        batches.every { it.size() <= 2 }
+        batches.flatten().sort() == [0, 1, 2, 3, 4]
+    }
+
+    def "should fail every entry of a batch when consuming it fails as a whole"()
+    {
+        given:
+        final batcher = new EntryBatcher(failing, 1, new Interval(1, MINUTES), recordingSuccessful)
+
+        when:
+        batcher.consume(tracked(0), entry(0))
+
+        then:
+        thrown(ExecutionException)
+        successful.isEmpty()
+
+        where:
+        failing << [
+                { throw new RuntimeException() } as BatchConsumeAction,
+                { [] } as BatchConsumeAction,
+        ]
+    }
+
+    def "should keep results of batch consumed when telling of successful entries fails, without failing them"()
+    {
+        given:
+        final batcher = new EntryBatcher(succeeding, 2, new Interval(1, MINUTES), { throw new RuntimeException() } as EntryBatcher.SuccessfulEntries)
+
+        when:
+        final results = (0..<2).collect { n ->
+            executor.submit({ try { batcher.consume(tracked(n), entry(n)) } catch (EntryBatcher.NotMarkedAsConsumedException e) { e } } as Callable)
+        }.collect { it.get(5, SECONDS) }
+
+        then:
+        batches.size() == 1
+        results.find { it instanceof EntryBatcher.NotMarkedAsConsumedException }
+        results.find { it instanceof Result }.state == Result.State.RETRY_UNSUCCESSFUL
+    }
+
+    private static TrackedEntry tracked(final int n)
+    {
+        new TrackedEntry(EntryId.of(n as long), null, n)
+    }
+
+    private FeedEntry entry(final int n)
+    {
+        new FeedEntry(Mock(HalResource), n)
+    }
+}
@@ -2,14 +2,22 @@ package com.qmetric.feed.consumer
 
 import com.google.common.base.Optional
 import com.qmetric.feed.consumer.store.AlreadyConsumingException
+import com.qmetric.feed.consumer.store.BatchFeedTracker
 import com.qmetric.feed.consumer.store.FeedTracker
+import com.qmetric.feed.consumer.store.LeasingFeedTracker
 import com.qmetric.hal.reader.HalResource
 import org.joda.time.DateTime
 import spock.lang.Specification
 import spock.lang.Unroll
 
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
 import static com.google.common.base.Optional.absent
+import static java.util.concurrent.TimeUnit.MILLISECONDS
 import static java.util.concurrent.TimeUnit.MINUTES
+import static java.util.concurrent.TimeUnit.SECONDS
 
 class EntryConsumerImplTest extends Specification {
 
@@ -51,6 +59,180 @@ class EntryConsumerImplTest extends Specification {
         1 * feedTracker.markAsConsumed(entry.id)
     }
 
+    def "should mark entry as consuming under lease and renew lease while consuming entry"()
+    {
+        given:
+        final leasingFeedTracker = Mock(LeasingFeedTracker)
+        final renewals = Executors.newSingleThreadScheduledExecutor()
+        final leaseDuration = new Interval(30, MILLISECONDS)
+        final slowConsumeAction = { FeedEntry feedEntry -> Thread.sleep(100); Result.successful() } as ConsumeAction
+        final leasingConsumer = new EntryConsumerImpl(leasingFeedTracker, Optional.of(slowConsumeAction), absent(),
+                                                      Optional.of(new Leases(leasingFeedTracker, "node-1", leaseDuration, renewals)), absent(), resourceResolver, [listener],
+                                                      Optional.of(MAX_RETRIES), MISSING_ENTRY_TIMEOUT, dateTimeSource)
+        final renewed = new AtomicInteger()
+        resourceResolver.resolve(_ as EntryId) >> Optional.of(resource)
+        leasingFeedTracker.renewLease(entry.id, "node-1", leaseDuration) >> { renewed.incrementAndGet() }
+
+        when:
+        leasingConsumer.consume(entry)
+        final renewedWhileConsuming = renewed.get()
+        Thread.sleep(100)
+
+        then:
+        1 * leasingFeedTracker.markAsConsuming(entry.id, "node-1", leaseDuration) >> false
+        0 * leasingFeedTracker.markAsConsuming(entry.id)
+        1 * leasingFeedTracker.markAsConsumed(entry.id)
+        renewedWhileConsuming > 0
+        renewed.get() == renewedWhileConsuming
+
+        cleanup:
+        renewals.shutdownNow()
+    }
+
+    def "should acknowledge entry consumed rather than mark it as consumed when acknowledging in background"()
+    {
+        given:
+        final flushes = Executors.newSingleThreadScheduledExecutor()
+        flushes.shutdown()
+        final acknowledgements = new Acknowledgements(Mock(BatchFeedTracker), 100, new Interval(1, SECONDS), new Interval(1, MINUTES), flushes, dateTimeSource)
+        dateTimeSource.now() >> dateTime
+        final acknowledgingConsumer = new EntryConsumerImpl(feedTracker, Optional.of(consumeAction), absent(), absent(), Optional.of(acknowledgements), resourceResolver, [listener],
+                                                            Optional.of(MAX_RETRIES), MISSING_ENTRY_TIMEOUT, dateTimeSource)
+        resourceResolver.resolve(_ as EntryId) >> Optional.of(resource)
+        consumeAction.consume(_) >> Result.successful()
+
+        when:
+        final success = acknowledgingConsumer.consume(entry)
+
+        then:
+        success
+        acknowledgements.depth().value == 1
+        0 * feedTracker.markAsConsumed(_)
+        1 * listener.consumed(entry.id)
+    }
+
+    def "should keep renewing lease of entry acknowledged in background until marked as consumed"()
+    {
+        given:
+        final leasingFeedTracker = Mock(LeasingFeedTracker)
+        final renewals = Executors.newSingleThreadScheduledExecutor()
+        final flushes = Executors.newSingleThreadScheduledExecutor()
+        final leaseDuration = new Interval(30, MILLISECONDS)
+        final unavailable = new CountDownLatch(1)
+        final marked = new CountDownLatch(1)
+        final acknowledgements = new Acknowledgements({ unavailable.await(); marked.countDown() } as BatchFeedTracker, 100, new Interval(1, SECONDS),
+                                                      new Interval(1, MINUTES), flushes, new DateTimeSource())
+        final leasingConsumer = new EntryConsumerImpl(leasingFeedTracker, Optional.of(consumeAction), absent(), Optional.of(new Leases(leasingFeedTracker, "node-1", leaseDuration, renewals)),
+                                                      Optional.of(acknowledgements), resourceResolver, [listener], Optional.of(MAX_RETRIES), MISSING_ENTRY_TIMEOUT,
+                                                      dateTimeSource)
+        final renewed = new AtomicInteger()
+        resourceResolver.resolve(_ as EntryId) >> Optional.of(resource)
+        consumeAction.consume(_) >> Result.successful()
+        leasingFeedTracker.renewLease(entry.id, "node-1", leaseDuration) >> { renewed.incrementAndGet() }
+
+        when:
+        leasingConsumer.consume(entry)
+        final renewedWhenConsumed = renewed.get()
+        Thread.sleep(100)
+
+        then:
+        renewed.get() > renewedWhenConsumed
+
+        when:
+        unavailable.countDown()
+        marked.await(5, SECONDS)
+        Thread.sleep(50)
+        final renewedWhenMarked = renewed.get()
+        Thread.sleep(100)
+
+        then:
+        renewed.get() == renewedWhenMarked
+
+        cleanup:
+        renewals.shutdownNow()
+        flushes.shutdownNow()
+    }
+
+    def "should mark entries consumed in batches as consumed together"()
+    {
+        given:
+        final batchConsumeAction = Mock(BatchConsumeAction)
+        final batchFeedTracker = Mock(BatchFeedTracker)
+        final batchConsumer = new EntryConsumerImpl(batchFeedTracker, batchConsumeAction, 1, new Interval(1, MINUTES), resourceResolver, [listener],
+                                                    Optional.of(MAX_RETRIES), MISSING_ENTRY_TIMEOUT, dateTimeSource)
+        resourceResolver.resolve(_ as EntryId) >> Optional.of(resource)
+
+        when:
+        final success = batchConsumer.consume(entry)
+
+        then:
+        1 * batchFeedTracker.markAsConsuming(entry.id)
+        1 * batchConsumeAction.consume([new FeedEntry(resource, RETRIES)]) >> [Result.successful()]
+        1 * batchFeedTracker.markAllAsConsumed([entry.id])
+        0 * batchFeedTracker.markAsConsumed(_)
+        1 * listener.consumed(entry.id)
+        success
+    }
+
+    def "should use failure result of entry consumed in batch to determine whether to retry"()
+    {
+        given:
+        final batchConsumeAction = Mock(BatchConsumeAction)
+        final batchConsumer = new EntryConsumerImpl(feedTracker, batchConsumeAction, 1, new Interval(1, MINUTES), resourceResolver, [listener],
+                                                    Optional.of(MAX_RETRIES), MISSING_ENTRY_TIMEOUT, dateTimeSource)
+        resourceResolver.resolve(_ as EntryId) >> Optional.of(resource)
+        batchConsumeAction.consume(_) >> [result]
+
+        when:
+        batchConsumer.consume(entry)
+
+        then:
+        1 * feedTracker.fail(entry, shouldRetry)
+        0 * feedTracker.markAsConsumed(_)
+        0 * listener.consumed(_)
+
+        where:
+        result                     | shouldRetry
+        Result.retryUnsuccessful() | true
+        Result.abortUnsuccessful() | false
+    }
+
+    def "should fail entry when its batch fails as a whole"()
+    {
+        given:
+        final batchConsumeAction = Mock(BatchConsumeAction)
+        final batchConsumer = new EntryConsumerImpl(feedTracker, batchConsumeAction, 1, new Interval(1, MINUTES), resourceResolver, [listener],
+                                                    Optional.of(MAX_RETRIES), MISSING_ENTRY_TIMEOUT, dateTimeSource)
+        resourceResolver.resolve(_ as EntryId) >> Optional.of(resource)
+        batchConsumeAction.consume(_) >> { throw new RuntimeException() }
+
+        when:
+        batchConsumer.consume(entry)
+
+        then:
+        thrown(Exception)
+        1 * feedTracker.fail(entry, true)
+    }
+
+    def "should leave entry consuming rather than fail it when its batch was consumed but could not be marked as consumed"()
+    {
+        given:
+        final batchConsumeAction = Mock(BatchConsumeAction)
+        final notMarking = { List<TrackedEntry> entries -> throw new RuntimeException() } as EntryBatcher.SuccessfulEntries
+        final batchConsumer = new EntryConsumerImpl(feedTracker, absent(), Optional.of(new EntryBatcher(batchConsumeAction, 1, new Interval(1, MINUTES), notMarking)),
+                                                    absent(), absent(), resourceResolver, [listener], Optional.of(MAX_RETRIES), MISSING_ENTRY_TIMEOUT, dateTimeSource)
+        resourceResolver.resolve(_ as EntryId) >> Optional.of(resource)
+
+        when:
+        batchConsumer.consume(entry)
+
+        then:
+        1 * batchConsumeAction.consume(_) >> [Result.successful()]
+        thrown(EntryBatcher.NotMarkedAsConsumedException)
+        0 * feedTracker.fail(_, _)
+        0 * listener.consumed(_)
+    }
+
     def "should use failure result from consumption to determine whether to retry"()
     {
         given:
@@ -160,4 +342,23 @@ class EntryConsumerImplTest extends Specification {
         new DateTime(2015, 5, 1, 12, 30, 0, 1)    | new DateTime(2015, 5, 1, 12, 15, 0, 0) | false
         new DateTime(2015, 5, 1, 12, 30, 0, 0)    | null                                   | false
     }
-}
\ No newline at end of file
+
+    def "should reject missing consume action"()
+    {
+        when:
+        new EntryConsumerImpl(feedTracker, (ConsumeAction) null, resourceResolver, [listener], Optional.of(MAX_RETRIES), MISSING_ENTRY_TIMEOUT, dateTimeSource)
+
+        then:
+        thrown(NullPointerException)
+    }
+
+    def "should reject missing batch consume action"()
+    {
+        when:
+        new EntryConsumerImpl(feedTracker, (BatchConsumeAction) null, 1, new Interval(1, MINUTES), resourceResolver, [listener], Optional.of(MAX_RETRIES),
+                              MISSING_ENTRY_TIMEOUT, dateTimeSource)
+
+        then:
+        thrown(NullPointerException)
+    }
+}
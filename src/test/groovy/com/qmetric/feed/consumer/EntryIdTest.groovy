@@ -0,0 +1,75 @@
+package com.qmetric.feed.consumer
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class EntryIdTest extends Specification
+{
+    @Unroll
+    def "should consider #id numeric: #numeric"()
+    {
+        expect:
+        EntryId.of(id).isNumeric() == numeric
+
+        where:
+        id                      | numeric
+        "1"                     | true
+        "0"                     | true
+        "-5"                    | true
+        "9223372036854775807"   | true
+        "9223372036854775808"   | false
+        "-9223372036854775808"  | true
+        "-9223372036854775809"  | false
+        "-10000000000000000000" | false
+        "007"                   | false
+        "-0"                    | false
+        "+1"                    | false
+        ""                      | false
+        "-"                     | false
+        "seenEntry-1"           | false
+    }
+
+    def "should equal entry id of the same number however created"()
+    {
+        expect:
+        EntryId.of("12") == EntryId.of(12)
+        EntryId.of("12").hashCode() == EntryId.of(12).hashCode()
+        EntryId.of("11").next() == EntryId.of("12")
+        EntryId.of("13").previous() == EntryId.of("12")
+        EntryId.of("-9223372036854775808") == EntryId.of(Long.MIN_VALUE)
+        EntryId.of("-9223372036854775808").hashCode() == EntryId.of(Long.MIN_VALUE).hashCode()
+    }
+
+    def "should not equal differently written number"()
+    {
+        expect:
+        EntryId.of("007") != EntryId.of("7")
+        EntryId.of("7") != EntryId.of("007")
+        EntryId.of("007") == EntryId.of("007")
+        EntryId.of("007").asNumeric() == 7
+    }
+
+    def "should equal same text id"()
+    {
+        expect:
+        EntryId.of("seenEntry-1") == EntryId.of("seenEntry-1")
+        EntryId.of("seenEntry-1").hashCode() == EntryId.of("seenEntry-1").hashCode()
+        EntryId.of("seenEntry-1") != EntryId.of("seenEntry-2")
+    }
+
+    def "should write numeric id as text"()
+    {
+        expect:
+        EntryId.of(42).toString() == "42"
+        EntryId.of("41").next().toString() == "42"
+    }
+
+    def "should fail to read text id as a number"()
+    {
+        when:
+        EntryId.of("seenEntry-1").asNumeric()
+
+        then:
+        thrown(NumberFormatException)
+    }
+}
@@ -3,19 +3,25 @@ package com.qmetric.feed.consumer
 import com.codahale.metrics.MetricRegistry
 import com.codahale.metrics.health.HealthCheck
 import com.codahale.metrics.health.HealthCheckRegistry
+import com.google.common.base.Function
 import com.google.common.base.Optional
 import com.qmetric.feed.consumer.retry.AlwaysRetryingRetryStrategy
 import com.qmetric.feed.consumer.retry.FibonacciDelayingRetryStrategy
 import com.qmetric.feed.consumer.retry.RetryStrategy
 import com.qmetric.feed.consumer.store.FeedTracker
+import com.qmetric.feed.consumer.store.RetrySchedulingFeedTracker
+import com.qmetric.feed.consumer.store.referenceimplementation.InMemoryFeedTracker
 import com.qmetric.hal.reader.HalReader
 import org.joda.time.DateTime
 import spock.lang.Specification
+import spock.lang.Unroll
 
 import java.util.concurrent.ScheduledExecutorService
 import java.util.concurrent.TimeUnit
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS
 import static java.util.concurrent.TimeUnit.MINUTES
+import static java.util.concurrent.TimeUnit.SECONDS
 
 @SuppressWarnings("GroovyAccessibility")
 class FeedConsumerConfigurationTest extends Specification {
@@ -52,6 +58,71 @@ class FeedConsumerConfigurationTest extends Specification {
         feedConsumerConfiguration.pollingInterval == new Interval(1, MINUTES)
     }
 
+    def "should accept adaptive polling interval"()
+    {
+        when:
+        feedConsumerConfiguration.pollAdaptivelyBetween(1, 60, SECONDS)
+
+        then:
+        feedConsumerConfiguration.adaptivePollingInterval.isPresent()
+    }
+
+    def "should reject adaptive polling interval with minimum greater than maximum"()
+    {
+        when:
+        feedConsumerConfiguration.pollAdaptivelyBetween(2, 1, SECONDS)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "should accept pipelined consumption"()
+    {
+        when:
+        feedConsumerConfiguration.pipelineConsumption()
+
+        then:
+        feedConsumerConfiguration.pipelinedConsumption
+    }
+
+    def "should accept maximum number of entries consumed per poll"()
+    {
+        when:
+        feedConsumerConfiguration.consumeAtMostPerPoll(50)
+
+        then:
+        feedConsumerConfiguration.maxEntriesPerPoll == Optional.of(50)
+    }
+
+    def "should accept batch consume action"()
+    {
+        given:
+        final batchConsumeAction = Mock(BatchConsumeAction)
+
+        when:
+        feedConsumerConfiguration.consumeEntriesInBatchesWith(batchConsumeAction, 50, 100, TimeUnit.MILLISECONDS)
+
+        then:
+        feedConsumerConfiguration.batchConsumeAction == Optional.of(batchConsumeAction)
+        feedConsumerConfiguration.maxBatchSize == 50
+        feedConsumerConfiguration.batchLinger == new Interval(100, TimeUnit.MILLISECONDS)
+    }
+
+    def "should build consumer consuming entries in batches without consume action"()
+    {
+        given:
+        feedConsumerConfiguration.fromUrl("http://host/feed")
+                .consumeEntriesInBatchesWith(Mock(BatchConsumeAction), 50, 100, TimeUnit.MILLISECONDS)
+                .pollForNewEntriesEvery(1, MINUTES)
+                .withFeedTracker(Mock(FeedTracker))
+
+        when:
+        feedConsumerConfiguration.build()
+
+        then:
+        notThrown(Exception)
+    }
+
     def "should accept feed tracker"()
     {
         given:
@@ -216,4 +287,383 @@ class FeedConsumerConfigurationTest extends Specification {
         feedConsumerConfiguration.retryStrategy instanceof FibonacciDelayingRetryStrategy
         ((FibonacciDelayingRetryStrategy) feedConsumerConfiguration.retryStrategy).baseInterval == new Interval(2, MINUTES)
     }
+
+    def "should accept consumption concurrency"()
+    {
+        when:
+        feedConsumerConfiguration.withConsumptionConcurrency(4)
+
+        then:
+        feedConsumerConfiguration.consumptionConcurrency == 4
+    }
+
+    def "should reject consumption concurrency lower than 1"()
+    {
+        when:
+        feedConsumerConfiguration.withConsumptionConcurrency(0)
+
+        then:
+        thrown(IllegalStateException)
+    }
+
+    def "should accept consumption of entries embedded in feed pages"()
+    {
+        when:
+        feedConsumerConfiguration.consumeEmbeddedEntries()
+
+        then:
+        feedConsumerConfiguration.embeddedEntries.isPresent()
+    }
+
+    def "should accept prefetch read-ahead"()
+    {
+        when:
+        feedConsumerConfiguration.prefetchEntries(5)
+
+        then:
+        feedConsumerConfiguration.prefetchReadAhead == Optional.of(5)
+    }
+
+    def "should register not modified ratio of feed polling on build"()
+    {
+        given:
+        final registry = new MetricRegistry()
+        feedConsumerConfiguration.fromUrl("http://host/feed")
+                .consumeEachEntryWith(Mock(ConsumeAction))
+                .pollForNewEntriesEvery(1, MINUTES)
+                .withFeedTracker(Mock(FeedTracker))
+                .withMetricRegistry(registry)
+
+        when:
+        feedConsumerConfiguration.build()
+
+        then:
+        registry.gauges.containsKey("name: feedPolling.notModifiedRatio")
+        registry.meters.containsKey("name: feedPolling.notModified")
+    }
+
+    def "should register pages fetched per tracking pass on build"()
+    {
+        given:
+        final registry = new MetricRegistry()
+        feedConsumerConfiguration.fromUrl("http://host/feed")
+                .consumeEachEntryWith(Mock(ConsumeAction))
+                .pollForNewEntriesEvery(1, MINUTES)
+                .withFeedTracker(Mock(FeedTracker))
+                .withMetricRegistry(registry)
+
+        when:
+        feedConsumerConfiguration.build()
+
+        then:
+        registry.histograms.containsKey("name: feedPolling.pagesFetched")
+    }
+
+    def "should register current polling interval on build when polling adaptively"()
+    {
+        given:
+        final registry = new MetricRegistry()
+        feedConsumerConfiguration.fromUrl("http://host/feed")
+                .consumeEachEntryWith(Mock(ConsumeAction))
+                .pollAdaptivelyBetween(1, 60, SECONDS)
+                .withFeedTracker(Mock(FeedTracker))
+                .withMetricRegistry(registry)
+
+        when:
+        feedConsumerConfiguration.build()
+
+        then:
+        registry.gauges["name: feedPolling.interval"].value == 1000
+    }
+
+    def "should register entries in flight on build when consuming each entry on own thread"()
+    {
+        given:
+        final registry = new MetricRegistry()
+        feedConsumerConfiguration.fromUrl("http://host/feed")
+                .consumeEachEntryWith(Mock(ConsumeAction))
+                .pollForNewEntriesEvery(1, MINUTES)
+                .consumeEachEntryOnOwnThread(64)
+                .withFeedTracker(Mock(FeedTracker))
+                .withMetricRegistry(registry)
+
+        when:
+        feedConsumerConfiguration.build()
+
+        then:
+        registry.gauges["name: entryConsumption.inFlight"].value == 0
+    }
+
+    def "should register depth of each lane on build when partitioning entries by key"()
+    {
+        given:
+        final registry = new MetricRegistry()
+        feedConsumerConfiguration.fromUrl("http://host/feed")
+                .consumeEachEntryWith(Mock(ConsumeAction))
+                .pollForNewEntriesEvery(1, MINUTES)
+                .partitionEntriesBy({ FeedEntry entry -> entry.content.getValueAsString("policyId").get() } as Function, 3)
+                .withFeedTracker(Mock(FeedTracker))
+                .withMetricRegistry(registry)
+
+        when:
+        feedConsumerConfiguration.build()
+
+        then:
+        (0..2).every { registry.gauges["name: entryConsumption.lane.${it}.depth".toString()].value == 0 }
+        registry.gauges["name: entryConsumption.lane.3.depth"] == null
+    }
+
+    def "should reject partitioning entries across fewer than one lane"()
+    {
+        when:
+        feedConsumerConfiguration.partitionEntriesBy({ it } as Function, 0)
+
+        then:
+        thrown(IllegalStateException)
+    }
+
+    def "should reject partitioning entries by key together with partitioning entries between nodes"()
+    {
+        given:
+        feedConsumerConfiguration.fromUrl("http://host/feed")
+                .consumeEachEntryWith(Mock(ConsumeAction))
+                .pollForNewEntriesEvery(1, MINUTES)
+                .partitionEntriesBy({ it } as Function, 3)
+                .partitionEntriesBetweenNodesAs("node-1", 5, MINUTES)
+                .withFeedTracker(new InMemoryFeedTracker(new DateTimeSource()))
+
+        when:
+        feedConsumerConfiguration.build()
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "should reject partitioning entries by key with feed tracker holding entries back until retried"()
+    {
+        given:
+        feedConsumerConfiguration.fromUrl("http://host/feed")
+                .consumeEachEntryWith(Mock(ConsumeAction))
+                .pollForNewEntriesEvery(1, MINUTES)
+                .partitionEntriesBy({ it } as Function, 3)
+                .withIncrementallyDelayingRetryStrategy(1, MINUTES)
+                .withFeedTracker(Mock(RetrySchedulingFeedTracker))
+
+        when:
+        feedConsumerConfiguration.build()
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "should register node metrics on build when partitioning entries between nodes"()
+    {
+        given:
+        final registry = new MetricRegistry()
+        feedConsumerConfiguration.fromUrl("http://host/feed")
+                .consumeEachEntryWith(Mock(ConsumeAction))
+                .pollForNewEntriesEvery(1, MINUTES)
+                .partitionEntriesBetweenNodesAs("node-1", 5, MINUTES)
+                .withFeedTracker(new InMemoryFeedTracker(new DateTimeSource()))
+                .withMetricRegistry(registry)
+
+        when:
+        feedConsumerConfiguration.build()
+
+        then:
+        registry.gauges["name: nodePartitioning.nodes"].value == 0
+        registry.meters["name: nodePartitioning.takenOver"].count == 0
+    }
+
+    def "should reject partitioning entries between nodes with feed tracker not recording nodes"()
+    {
+        given:
+        feedConsumerConfiguration.fromUrl("http://host/feed")
+                .consumeEachEntryWith(Mock(ConsumeAction))
+                .pollForNewEntriesEvery(1, MINUTES)
+                .partitionEntriesBetweenNodesAs("node-1", 5, MINUTES)
+                .withFeedTracker(Mock(FeedTracker))
+
+        when:
+        feedConsumerConfiguration.build()
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "should register acknowledgement metrics on build when acknowledging entries in background"()
+    {
+        given:
+        final registry = new MetricRegistry()
+        feedConsumerConfiguration.fromUrl("http://host/feed")
+                .consumeEachEntryWith(Mock(ConsumeAction))
+                .pollForNewEntriesEvery(1, MINUTES)
+                .acknowledgeEntriesInBackground(100, 1, MINUTES)
+                .withFeedTracker(Mock(FeedTracker))
+                .withMetricRegistry(registry)
+
+        when:
+        feedConsumerConfiguration.build()
+
+        then:
+        registry.gauges["name: entryConsumption.acknowledgements.depth"].value == 0
+        registry.gauges["name: entryConsumption.acknowledgements.age"].value == 0
+        registry.meters["name: entryConsumption.acknowledgements.retries"].count == 0
+    }
+
+    def "should reject acknowledging entries in background with no backoff"()
+    {
+        when:
+        feedConsumerConfiguration.acknowledgeEntriesInBackground(100, 0, SECONDS)
+
+        then:
+        thrown(IllegalStateException)
+    }
+
+    def "should reject acknowledging entries in background with no room for entries waiting"()
+    {
+        when:
+        feedConsumerConfiguration.acknowledgeEntriesInBackground(0, 1, SECONDS)
+
+        then:
+        thrown(IllegalStateException)
+    }
+
+    def "should register reclaimed leases on build when leasing entries"()
+    {
+        given:
+        final registry = new MetricRegistry()
+        feedConsumerConfiguration.fromUrl("http://host/feed")
+                .consumeEachEntryWith(Mock(ConsumeAction))
+                .pollForNewEntriesEvery(1, MINUTES)
+                .leaseEntriesFor(10, MINUTES)
+                .withFeedTracker(new InMemoryFeedTracker(new DateTimeSource()))
+                .withMetricRegistry(registry)
+
+        when:
+        feedConsumerConfiguration.build()
+
+        then:
+        registry.meters["name: entryConsumption.reclaimedLeases"].count == 0
+    }
+
+    def "should reject leasing entries with feed tracker not leasing entries"()
+    {
+        given:
+        feedConsumerConfiguration.fromUrl("http://host/feed")
+                .consumeEachEntryWith(Mock(ConsumeAction))
+                .pollForNewEntriesEvery(1, MINUTES)
+                .leaseEntriesFor(10, MINUTES)
+                .withFeedTracker(Mock(FeedTracker))
+
+        when:
+        feedConsumerConfiguration.build()
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "should let feed tracker scheduling retries hold failed entries back on build when delaying retries"()
+    {
+        given:
+        final feedTracker = Mock(RetrySchedulingFeedTracker)
+        feedConsumerConfiguration.fromUrl("http://host/feed")
+                .consumeEachEntryWith(Mock(ConsumeAction))
+                .pollForNewEntriesEvery(1, MINUTES)
+                .withIncrementallyDelayingRetryStrategy(1, MINUTES)
+                .withFeedTracker(feedTracker)
+
+        when:
+        feedConsumerConfiguration.build()
+
+        then:
+        1 * feedTracker.scheduleRetriesWith(_ as FibonacciDelayingRetryStrategy)
+    }
+
+    def "should build publisher of entries without consume action"()
+    {
+        given:
+        final registry = new MetricRegistry()
+        feedConsumerConfiguration.fromUrl("http://host/feed")
+                .pollForNewEntriesEvery(1, MINUTES)
+                .withFeedTracker(Mock(FeedTracker))
+                .withMetricRegistry(registry)
+
+        when:
+        final publisher = feedConsumerConfiguration.buildPublisher()
+
+        then:
+        publisher != null
+        registry.gauges["name: entryPublishing.demand"].value == 0
+        registry.timers["name: entryConsumption.timeTaken"].count == 0
+    }
+
+    @Unroll
+    def "should reject publisher of entries #unsupported"()
+    {
+        given:
+        feedConsumerConfiguration.fromUrl("http://host/feed")
+                .pollForNewEntriesEvery(1, MINUTES)
+                .withFeedTracker(new InMemoryFeedTracker())
+        configure.call(feedConsumerConfiguration)
+
+        when:
+        feedConsumerConfiguration.buildPublisher()
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        unsupported                        | configure
+        "consumed in batches"              | { it.consumeEntriesInBatchesWith({ [] } as BatchConsumeAction, 10, 100, MILLISECONDS) }
+        "leased"                           | { it.leaseEntriesFor(1, MINUTES) }
+        "acknowledged in background"       | { it.acknowledgeEntriesInBackground(100, 1, MINUTES) }
+        "partitioned by key"               | { it.partitionEntriesBy({ it } as Function, 3) }
+        "partitioned between nodes"        | { it.partitionEntriesBetweenNodesAs("node", 1, MINUTES) }
+    }
+
+    def "should let feed tracker scheduling retries hold failed entries back on build of publisher when delaying retries"()
+    {
+        given:
+        final feedTracker = Mock(RetrySchedulingFeedTracker)
+        feedConsumerConfiguration.fromUrl("http://host/feed")
+                .pollForNewEntriesEvery(1, MINUTES)
+                .withIncrementallyDelayingRetryStrategy(1, MINUTES)
+                .withFeedTracker(feedTracker)
+
+        when:
+        feedConsumerConfiguration.buildPublisher()
+
+        then:
+        1 * feedTracker.scheduleRetriesWith(_ as FibonacciDelayingRetryStrategy)
+    }
+
+    def "should accept connection pool configuration"()
+    {
+        given:
+        final connectionPool = new ConnectionPoolConfiguration()
+
+        when:
+        feedConsumerConfiguration.withConnectionPool(connectionPool)
+
+        then:
+        feedConsumerConfiguration.connectionPool == connectionPool
+    }
+
+    def "should register connection pool gauges on build"()
+    {
+        given:
+        final registry = new MetricRegistry()
+        feedConsumerConfiguration.fromUrl("http://host/feed")
+                .consumeEachEntryWith(Mock(ConsumeAction))
+                .pollForNewEntriesEvery(1, MINUTES)
+                .withFeedTracker(Mock(FeedTracker))
+                .withMetricRegistry(registry)
+
+        when:
+        feedConsumerConfiguration.build()
+
+        then:
+        registry.gauges.keySet().containsAll(["name: connectionPool.leased", "name: connectionPool.pending", "name: connectionPool.available"])
+    }
 }
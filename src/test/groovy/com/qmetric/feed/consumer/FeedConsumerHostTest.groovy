@@ -0,0 +1,106 @@
+package com.qmetric.feed.consumer
+
+import com.codahale.metrics.MetricRegistry
+import com.codahale.metrics.health.HealthCheckRegistry
+import com.google.common.base.Optional
+import com.qmetric.feed.consumer.store.FeedTracker
+import spock.lang.Specification
+
+import static java.util.concurrent.TimeUnit.MINUTES
+
+class FeedConsumerHostTest extends Specification {
+
+    final metricRegistry = new MetricRegistry()
+
+    final healthCheckRegistry = new HealthCheckRegistry()
+
+    final host = new FeedConsumerHost("host").withMetricRegistry(metricRegistry).withHealthCheckRegistry(healthCheckRegistry).withThreads(2)
+
+    def cleanup()
+    {
+        host.stop()
+    }
+
+    def "should register metrics and health checks of each hosted feed under its own name"()
+    {
+        given:
+        host.host(feed("feed-1")).host(feed("feed-2"))
+
+        when:
+        host.start()
+
+        then:
+        metricRegistry.timers.containsKey("feed-1: feedPolling.timeTaken")
+        metricRegistry.timers.containsKey("feed-2: feedPolling.timeTaken")
+        healthCheckRegistry.names.containsAll(["feed-1: Feed connectivity", "feed-2: Feed connectivity"])
+    }
+
+    def "should register metrics of shared connection pool under name of host"()
+    {
+        given:
+        host.host(feed("feed-1")).host(feed("feed-2"))
+
+        when:
+        host.start()
+
+        then:
+        metricRegistry.gauges.containsKey("host: connectionPool.leased")
+        !metricRegistry.gauges.containsKey("feed-1: connectionPool.leased")
+    }
+
+    def "should limit entries consumed per poll of hosted feeds"()
+    {
+        given:
+        final feed = feed("feed-1")
+        host.withEntriesPerTurn(10).host(feed)
+
+        when:
+        host.start()
+
+        then:
+        feed.maxEntriesPerPoll == Optional.of(10)
+    }
+
+    def "should keep entries consumed per poll set for hosted feed itself"()
+    {
+        given:
+        final feed = feed("feed-1").consumeAtMostPerPoll(5)
+        host.host(feed)
+
+        when:
+        host.start()
+
+        then:
+        feed.maxEntriesPerPoll == Optional.of(5)
+    }
+
+    def "should not host feeds once started"()
+    {
+        given:
+        host.start()
+
+        when:
+        host.host(feed("feed-1"))
+
+        then:
+        thrown(IllegalStateException)
+    }
+
+    def "should stop without having been started"()
+    {
+        when:
+        host.stop()
+
+        then:
+        notThrown(Exception)
+    }
+
+    private FeedConsumerConfiguration feed(final String name)
+    {
+        new FeedConsumerConfiguration(name)
+                .fromUrl("http://localhost:1/${name}")
+                .consumeEachEntryWith(Mock(ConsumeAction))
+                .pollForNewEntriesEvery(1, MINUTES)
+                .withFeedTracker(Mock(FeedTracker))
+    }
+}
@@ -1,10 +1,21 @@
 package com.qmetric.feed.consumer
 
+import com.google.common.base.Function
+import com.google.common.base.Optional
 import com.qmetric.feed.consumer.store.AlreadyConsumingException
 import com.qmetric.feed.consumer.store.FeedTracker
+import com.qmetric.feed.consumer.store.referenceimplementation.InMemoryFeedTracker
 import org.joda.time.DateTime
 import spock.lang.Specification
 
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+import static com.google.common.base.Optional.absent
+import static com.google.common.util.concurrent.MoreExecutors.newDirectExecutorService
+import static java.util.concurrent.TimeUnit.SECONDS
+
 class FeedConsumerImplTest extends Specification {
 
     static final dateTime = DateTime.now()
@@ -39,6 +50,25 @@ class FeedConsumerImplTest extends Specification {
         1 * listener.consumed(entries)
     }
 
+    def "should consume at most given number of entries per poll"()
+    {
+        given:
+        consumer = new FeedConsumerImpl(entryConsumer, feedTracker, [listener], [], newDirectExecutorService(), absent(), absent(), Optional.of(2))
+        TrackedEntry entry1 = anyEntry()
+        TrackedEntry entry2 = anyEntry()
+        TrackedEntry entry3 = anyEntry()
+
+        when:
+        final consumed = consumer.consume()
+
+        then:
+        1 * feedTracker.getEntriesToBeConsumed() >> [entry1, entry2, entry3]
+        1 * entryConsumer.consume(entry1)
+        1 * entryConsumer.consume(entry2)
+        0 * entryConsumer.consume(entry3)
+        consumed == [entry1, entry2]
+    }
+
     def "should notify listeners even if we have an empty list"()
     {
         when:
@@ -72,6 +102,198 @@ class FeedConsumerImplTest extends Specification {
         1 * entryConsumer.consume(_)
     }
 
+    def "should consume entries concurrently when given a pool of workers and notify listeners once all have finished"()
+    {
+        given:
+        final workers = Executors.newFixedThreadPool(3)
+        final allStarted = new CountDownLatch(3)
+        final consumedConcurrently = new AtomicInteger()
+        final concurrentEntryConsumer = { TrackedEntry entry ->
+            allStarted.countDown()
+            if (allStarted.await(5, SECONDS)) { consumedConcurrently.incrementAndGet() }
+            true
+        } as EntryConsumer
+        final entries = [anyEntry(), anyEntry(), anyEntry()]
+        final concurrentConsumer = new FeedConsumerImpl(concurrentEntryConsumer, feedTracker, [listener], workers)
+        feedTracker.getEntriesToBeConsumed() >> entries
+
+        when:
+        final consumed = concurrentConsumer.consume()
+
+        then:
+        1 * listener.consumed(entries) >> { assert consumedConcurrently.get() == 3 }
+        consumed == entries
+
+        cleanup:
+        workers.shutdownNow()
+    }
+
+    def "should still wait for submitted entries and notify listeners when workers stop accepting entries"()
+    {
+        given:
+        final workers = Executors.newSingleThreadExecutor()
+        workers.shutdown()
+        final concurrentConsumer = new FeedConsumerImpl(entryConsumer, feedTracker, [listener], workers)
+        final entries = [anyEntry()]
+        feedTracker.getEntriesToBeConsumed() >> entries
+
+        when:
+        concurrentConsumer.consume()
+
+        then:
+        0 * entryConsumer.consume(_)
+        1 * listener.consumed(entries)
+    }
+
+    def "should notify upcoming entries listeners before and after processing each entry"()
+    {
+        given:
+        final upcomingEntriesListener = Mock(UpcomingEntriesListener)
+        final notifyingConsumer = new FeedConsumerImpl(entryConsumer, feedTracker, [listener], [upcomingEntriesListener], newDirectExecutorService(), absent(), absent(), absent())
+        final entries = [anyEntry(), anyEntry()]
+        feedTracker.getEntriesToBeConsumed() >> entries
+
+        when:
+        notifyingConsumer.consume()
+
+        then:
+        1 * upcomingEntriesListener.upcoming(entries)
+
+        then:
+        1 * entryConsumer.consume(entries[0]) >> { throw new AlreadyConsumingException() }
+        1 * upcomingEntriesListener.processed(entries[0])
+
+        then:
+        1 * entryConsumer.consume(entries[1])
+        1 * upcomingEntriesListener.processed(entries[1])
+
+        then:
+        1 * listener.consumed(entries)
+    }
+
+    def "should consume entries of each key in publish order on lanes, leaving further entries of a key once one is not consumed"()
+    {
+        given:
+        final lanes = new OrderedLanes({ TrackedEntry entry -> entry.id.toString()[0] } as Function, 2)
+        final consumedByKey = [a: [], b: []].asSynchronized()
+        final orderedEntryConsumer = { TrackedEntry entry ->
+            final id = entry.id.toString()
+            consumedByKey[id[0]] << id
+            id != "a2"
+        } as EntryConsumer
+        final a1 = entry("a1", 1), a2 = entry("a2", 2), a3 = entry("a3", 3), b1 = entry("b1", 1), b2 = entry("b2", 2)
+        final orderedConsumer = new FeedConsumerImpl(orderedEntryConsumer, feedTracker, [listener], [], newDirectExecutorService(), Optional.of(lanes), absent(), absent())
+        feedTracker.getEntriesToBeConsumed() >> [a3, b2, a2, a1, b1]
+
+        when:
+        orderedConsumer.consume()
+
+        then:
+        consumedByKey == [a: ["a1", "a2"], b: ["b1", "b2"]]
+        1 * listener.consumed([a1, b1, b2, a2, a3])
+
+        cleanup:
+        lanes.executors()*.shutdownNow()
+    }
+
+    def "should leave entry whose key is unknown and further entries for next poll"()
+    {
+        given:
+        final lanes = new OrderedLanes({ TrackedEntry entry -> entry.id == EntryId.of("b1") ? null : entry.id.toString()[0] } as Function, 2)
+        final upcomingEntriesListener = Mock(UpcomingEntriesListener)
+        final a1 = entry("a1", 1), b1 = entry("b1", 2), a2 = entry("a2", 3)
+        final orderedConsumer = new FeedConsumerImpl(entryConsumer, feedTracker, [listener], [upcomingEntriesListener], newDirectExecutorService(), Optional.of(lanes),
+                                                     absent(), absent())
+        feedTracker.getEntriesToBeConsumed() >> [a1, b1, a2]
+
+        when:
+        orderedConsumer.consume()
+
+        then:
+        1 * entryConsumer.consume(a1) >> true
+        0 * entryConsumer.consume(b1)
+        0 * entryConsumer.consume(a2)
+        1 * upcomingEntriesListener.processed(b1)
+        1 * upcomingEntriesListener.processed(a2)
+
+        cleanup:
+        lanes.executors()*.shutdownNow()
+    }
+
+    def "should consume entries of a key in publish order across polls once entry failed is retried"()
+    {
+        given:
+        final lanes = new OrderedLanes({ TrackedEntry entry -> entry.id.toString()[0] } as Function, 2)
+        final inMemoryFeedTracker = new InMemoryFeedTracker(new DateTimeSource())
+        final consumed = [].asSynchronized()
+        final failedOnce = new AtomicInteger()
+        final orderedEntryConsumer = { TrackedEntry entry ->
+            inMemoryFeedTracker.markAsConsuming(entry.id)
+            consumed << entry.id.toString()
+            if (entry.id == EntryId.of("a1") && failedOnce.getAndIncrement() == 0)
+            {
+                inMemoryFeedTracker.fail(entry, true)
+                return false
+            }
+            inMemoryFeedTracker.markAsConsumed(entry.id)
+            true
+        } as EntryConsumer
+        final orderedConsumer = new FeedConsumerImpl(orderedEntryConsumer, inMemoryFeedTracker, [listener], [], newDirectExecutorService(), Optional.of(lanes), absent(),
+                                                     absent())
+        inMemoryFeedTracker.trackAll([new SeenEntry(EntryId.of("a1"), dateTime.plusMinutes(1)), new SeenEntry(EntryId.of("a2"), dateTime.plusMinutes(2))])
+
+        when:
+        orderedConsumer.consume()
+
+        then:
+        consumed == ["a1"]
+
+        when:
+        orderedConsumer.consume()
+
+        then:
+        consumed == ["a1", "a1", "a2"]
+        !inMemoryFeedTracker.getEntriesToBeConsumed().iterator().hasNext()
+
+        cleanup:
+        lanes.executors()*.shutdownNow()
+    }
+
+    def "should consume entry failed ahead of later entry of its key when limiting entries per poll"()
+    {
+        given:
+        final lanes = new OrderedLanes({ TrackedEntry entry -> entry.id.toString()[0] } as Function, 2)
+        final inMemoryFeedTracker = new InMemoryFeedTracker(new DateTimeSource())
+        final consumed = [].asSynchronized()
+        final orderedEntryConsumer = { TrackedEntry entry ->
+            inMemoryFeedTracker.markAsConsuming(entry.id)
+            consumed << entry.id.toString()
+            inMemoryFeedTracker.markAsConsumed(entry.id)
+            true
+        } as EntryConsumer
+        final limitedConsumer = new FeedConsumerImpl(orderedEntryConsumer, inMemoryFeedTracker, [listener], [], newDirectExecutorService(), Optional.of(lanes), absent(),
+                                                     Optional.of(1))
+        inMemoryFeedTracker.trackAll([new SeenEntry(EntryId.of("a1"), dateTime.plusMinutes(1)), new SeenEntry(EntryId.of("a2"), dateTime.plusMinutes(2))])
+        final a1 = inMemoryFeedTracker.getEntriesToBeConsumed().find { it.id == EntryId.of("a1") }
+        inMemoryFeedTracker.markAsConsuming(a1.id)
+        inMemoryFeedTracker.fail(a1, true)
+        assert inMemoryFeedTracker.getEntriesToBeConsumed()*.id == [EntryId.of("a2"), EntryId.of("a1")]
+
+        when:
+        limitedConsumer.consume()
+
+        then:
+        consumed == ["a1"]
+
+        cleanup:
+        lanes.executors()*.shutdownNow()
+    }
+
+    private static TrackedEntry entry(final String id, final int minutesAfterFirst)
+    {
+        new TrackedEntry(EntryId.of(id), dateTime.plusMinutes(minutesAfterFirst), 0)
+    }
+
     private static TrackedEntry anyEntry()
     {
         new TrackedEntry(EntryId.of("1"), dateTime, 1)
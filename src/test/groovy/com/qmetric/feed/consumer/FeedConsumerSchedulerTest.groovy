@@ -1,9 +1,16 @@
 package com.qmetric.feed.consumer
 
+import com.google.common.base.Optional
 import spock.lang.Specification
 
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.RejectedExecutionException
 import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
 import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
 
 class FeedConsumerSchedulerTest extends Specification {
 
@@ -25,6 +32,186 @@ class FeedConsumerSchedulerTest extends Specification {
         1 * scheduledExecutionService.scheduleAtFixedRate(_ as Runnable, 0, interval.time, interval.unit)
     }
 
+    def "should poll adaptively, rescheduling after each poll"()
+    {
+        given:
+        final adaptiveScheduler = new FeedConsumerScheduler(consumer, tracker, null,
+                                                            Optional.of(new AdaptivePollingInterval(new Interval(1, TimeUnit.SECONDS), new Interval(1, TimeUnit.MINUTES))),
+                                                            Optional.<ExecutorService> absent(), scheduledExecutionService, true, false, "http://localhost/feed")
+        Runnable poll = null
+
+        when:
+        adaptiveScheduler.start()
+
+        then:
+        1 * scheduledExecutionService.schedule(_ as Runnable, 0, TimeUnit.MILLISECONDS) >> { Runnable r, long delay, TimeUnit unit -> poll = r; null }
+
+        when:
+        poll.run()
+
+        then:
+        1 * tracker.trackNewEntries() >> 0
+        1 * consumer.consume() >> []
+        1 * scheduledExecutionService.schedule(poll, 2000, TimeUnit.MILLISECONDS)
+    }
+
+    def "should poll again straight away when new entries were found"()
+    {
+        given:
+        final adaptiveScheduler = new FeedConsumerScheduler(consumer, tracker, null,
+                                                            Optional.of(new AdaptivePollingInterval(new Interval(1, TimeUnit.SECONDS), new Interval(1, TimeUnit.MINUTES))),
+                                                            Optional.<ExecutorService> absent(), scheduledExecutionService, true, false, "http://localhost/feed")
+        Runnable poll = null
+        scheduledExecutionService.schedule(_ as Runnable, 0, TimeUnit.MILLISECONDS) >> { Runnable r, long delay, TimeUnit unit -> poll = r; null }
+        adaptiveScheduler.start()
+
+        when:
+        poll.run()
+
+        then:
+        1 * tracker.trackNewEntries() >> 2
+        1 * consumer.consume() >> [Mock(TrackedEntry), Mock(TrackedEntry)]
+        1 * scheduledExecutionService.schedule(poll, 0, TimeUnit.MILLISECONDS)
+    }
+
+    def "should back off up to maximum interval while an entry keeps failing"()
+    {
+        given:
+        final adaptiveScheduler = new FeedConsumerScheduler(consumer, tracker, null,
+                                                            Optional.of(new AdaptivePollingInterval(new Interval(1, TimeUnit.SECONDS), new Interval(4, TimeUnit.SECONDS))),
+                                                            Optional.<ExecutorService> absent(), scheduledExecutionService, true, false, "http://localhost/feed")
+        final failingEntry = Mock(TrackedEntry)
+        Runnable poll = null
+        scheduledExecutionService.schedule(_ as Runnable, 0, TimeUnit.MILLISECONDS) >> { Runnable r, long delay, TimeUnit unit -> poll = r; null }
+        tracker.trackNewEntries() >> 0
+        consumer.consume() >> [failingEntry]
+        adaptiveScheduler.start()
+
+        when:
+        3.times { poll.run() }
+
+        then:
+        1 * scheduledExecutionService.schedule(poll, 2000, TimeUnit.MILLISECONDS)
+
+        then:
+        2 * scheduledExecutionService.schedule(poll, 4000, TimeUnit.MILLISECONDS)
+    }
+
+    def "should stop rescheduling once executor is shut down"()
+    {
+        given:
+        final adaptiveScheduler = new FeedConsumerScheduler(consumer, tracker, null,
+                                                            Optional.of(new AdaptivePollingInterval(new Interval(1, TimeUnit.SECONDS), new Interval(1, TimeUnit.MINUTES))),
+                                                            Optional.<ExecutorService> absent(), scheduledExecutionService, true, false, "http://localhost/feed")
+        Runnable poll = null
+        scheduledExecutionService.schedule(_ as Runnable, 0, TimeUnit.MILLISECONDS) >> { Runnable r, long delay, TimeUnit unit -> poll = r; null }
+        consumer.consume() >> []
+        adaptiveScheduler.start()
+
+        when:
+        poll.run()
+
+        then:
+        1 * scheduledExecutionService.schedule(poll, _, TimeUnit.MILLISECONDS) >> { throw new RejectedExecutionException() }
+        notThrown(RejectedExecutionException)
+    }
+
+    def "should hand consumption over to consumption stage when pipelined"()
+    {
+        given:
+        final consumptionStage = Mock(ExecutorService)
+        final pipelinedScheduler = new FeedConsumerScheduler(consumer, tracker, interval, Optional.<AdaptivePollingInterval> absent(), Optional.of(consumptionStage),
+                                                             scheduledExecutionService, true, false, "http://localhost/feed")
+        Runnable consumption = null
+
+        when:
+        //noinspection GroovyAccessibility
+        pipelinedScheduler.pollFeed()
+
+        then:
+        1 * tracker.trackNewEntries() >> 1
+        0 * consumer.consume()
+        1 * consumptionStage.execute(_ as Runnable) >> { Runnable r -> consumption = r }
+
+        when:
+        consumption.run()
+
+        then:
+        1 * consumer.consume() >> [Mock(TrackedEntry)]
+        pipelinedScheduler.invocationsCount == 1
+    }
+
+    def "should leave at most one consumption pass pending"()
+    {
+        given:
+        final consumptionStage = FeedConsumerScheduler.newConsumptionStage()
+        final started = new CountDownLatch(1)
+        final release = new CountDownLatch(1)
+        final passes = new AtomicInteger()
+        consumptionStage.execute({ started.countDown(); release.await() } as Runnable)
+        started.await()
+
+        when:
+        3.times { consumptionStage.execute({ passes.incrementAndGet() } as Runnable) }
+        release.countDown()
+        consumptionStage.shutdown()
+        consumptionStage.awaitTermination(1, TimeUnit.SECONDS)
+
+        then:
+        passes.get() == 1
+    }
+
+    def "should only cancel polling of feed when stopping on shared executor"()
+    {
+        given:
+        final polling = Mock(ScheduledFuture)
+        final sharingScheduler = new FeedConsumerScheduler(consumer, tracker, interval, Optional.<AdaptivePollingInterval> absent(), Optional.<ExecutorService> absent(),
+                                                           scheduledExecutionService, false, false, "http://localhost/feed")
+        scheduledExecutionService.scheduleAtFixedRate(_ as Runnable, 0, interval.time, interval.unit) >> polling
+        sharingScheduler.start()
+
+        when:
+        sharingScheduler.stop()
+
+        then:
+        1 * polling.cancel(false)
+        0 * scheduledExecutionService.shutdown()
+    }
+
+    def "should cancel next poll scheduled while stopping on shared executor"()
+    {
+        given:
+        final executor = Executors.newSingleThreadScheduledExecutor()
+        final sharingScheduler = new FeedConsumerScheduler(consumer, tracker, null,
+                                                           Optional.of(new AdaptivePollingInterval(new Interval(1, TimeUnit.SECONDS), new Interval(1, TimeUnit.MINUTES))),
+                                                           Optional.<ExecutorService> absent(), scheduledExecutionService, false, false, "http://localhost/feed")
+        Runnable poll = null
+        Thread stopping = null
+        ScheduledFuture nextPoll = null
+        tracker.trackNewEntries() >> 0
+        consumer.consume() >> []
+        scheduledExecutionService.schedule(_ as Runnable, 0, TimeUnit.MILLISECONDS) >> { Runnable r, long delay, TimeUnit unit ->
+            poll = r
+            executor.schedule({} as Runnable, 1, TimeUnit.HOURS)
+        }
+        sharingScheduler.start()
+
+        when:
+        poll.run()
+        stopping.join()
+
+        then:
+        1 * scheduledExecutionService.schedule(_ as Runnable, 2000, TimeUnit.MILLISECONDS) >> { Runnable r, long delay, TimeUnit unit ->
+            stopping = Thread.start { sharingScheduler.stop() }
+            Thread.sleep(100)
+            nextPoll = executor.schedule({} as Runnable, 1, TimeUnit.HOURS)
+        }
+        nextPoll.isCancelled()
+
+        cleanup:
+        executor.shutdownNow()
+    }
+
     def "should catch any exception when consuming feed"()
     {
         when:
@@ -1,10 +1,13 @@
 package com.qmetric.feed.consumer
 
+import com.google.common.base.Function
+import com.google.common.base.Optional
 import org.apache.http.HttpEntity
 import org.apache.http.HttpResponse
 import org.apache.http.ProtocolVersion
 import org.apache.http.StatusLine
 import org.apache.http.client.HttpClient
+import org.apache.http.client.methods.HttpGet
 import org.apache.http.message.BasicStatusLine
 import spock.lang.Specification
 
@@ -29,6 +32,106 @@ class FeedEndpointTest extends Specification
         expectedString == toString(reader.get())
     }
 
+    def "should stream response to the given reader"()
+    {
+        given:
+        def expectedString = anyNonEmptyString()
+        def httpClient = getMockHttpClient(expectedString)
+        def feedEndpoint = new FeedEndpoint(httpClient, url)
+
+        when:
+        final result = feedEndpoint.get({ Reader reader -> toString(reader) } as Function)
+
+        then:
+        result == Optional.of(expectedString)
+    }
+
+    def "should release connection once response has been read"()
+    {
+        given:
+        def httpClient = Mock(HttpClient)
+        def httpResponse = Mock(HttpResponse)
+        def httpEntity = Mock(HttpEntity)
+        def responseStream = new TrackedInputStream("response")
+        httpClient.execute(_) >> httpResponse
+        httpResponse.getStatusLine() >> getStatus(200, "OK")
+        httpResponse.getEntity() >> httpEntity
+        httpEntity.getContent() >> responseStream
+        httpEntity.isStreaming() >> true
+        def feedEndpoint = new FeedEndpoint(httpClient, url)
+
+        when:
+        feedEndpoint.get({ Reader reader -> reader.read() } as Function)
+
+        then:
+        responseStream.closed
+    }
+
+    def "should release connection when reading response fails"()
+    {
+        given:
+        def httpClient = Mock(HttpClient)
+        def httpResponse = Mock(HttpResponse)
+        def httpEntity = Mock(HttpEntity)
+        def responseStream = new TrackedInputStream("response")
+        httpClient.execute(_) >> httpResponse
+        httpResponse.getStatusLine() >> getStatus(200, "OK")
+        httpResponse.getEntity() >> httpEntity
+        httpEntity.getContent() >> responseStream
+        httpEntity.isStreaming() >> true
+        def feedEndpoint = new FeedEndpoint(httpClient, url)
+
+        when:
+        feedEndpoint.get({ Reader reader -> throw new IllegalArgumentException() } as Function)
+
+        then:
+        thrown(IllegalArgumentException)
+        responseStream.closed
+    }
+
+    def "should request page conditionally and return nothing when not modified"()
+    {
+        given:
+        def conditionalGet = Mock(ConditionalGet)
+        def httpClient = getMockHttpClient(304, "NOT MODIFIED", "")
+        def feedEndpoint = new FeedEndpoint(httpClient, url)
+
+        when:
+        final result = feedEndpoint.getIfModified({ Reader reader -> toString(reader) } as Function, conditionalGet)
+
+        then:
+        1 * conditionalGet.addConditionsTo(_ as HttpGet)
+        1 * conditionalGet.received(_ as HttpGet, _ as HttpResponse)
+        !result.isPresent()
+    }
+
+    def "should stream modified page to the given reader"()
+    {
+        given:
+        def expectedString = anyNonEmptyString()
+        def httpClient = getMockHttpClient(expectedString)
+        def feedEndpoint = new FeedEndpoint(httpClient, url)
+
+        when:
+        final result = feedEndpoint.getIfModified({ Reader reader -> toString(reader) } as Function, new ConditionalGet())
+
+        then:
+        result == Optional.of(expectedString)
+    }
+
+    def "throws exception when conditional request fails"()
+    {
+        given:
+        def httpClient = getMockHttpClient(404, "NOT FOUND", "Feed entry not found")
+        def feedEndpoint = new FeedEndpoint(httpClient, url)
+
+        when:
+        feedEndpoint.getIfModified({ Reader reader -> toString(reader) } as Function, new ConditionalGet())
+
+        then:
+        thrown(IllegalStateException)
+    }
+
     def 'should return nothing when feed entry does not exist'()
     {
         given:
@@ -77,6 +180,21 @@ class FeedEndpointTest extends Specification
         return httpClient
     }
 
+    private static class TrackedInputStream extends ByteArrayInputStream
+    {
+        boolean closed
+
+        TrackedInputStream(final String content)
+        {
+            super(content.getBytes())
+        }
+
+        @Override void close()
+        {
+            closed = true
+        }
+    }
+
     private static StatusLine getStatus(int statusCode, String status)
     {
         new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), statusCode, status)
@@ -0,0 +1,170 @@
+package com.qmetric.feed.consumer
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.google.common.base.Function
+import com.google.common.base.Optional
+import com.google.common.io.Resources
+import com.qmetric.feed.consumer.store.FeedTracker
+import com.qmetric.feed.consumer.store.GapFeedTracker
+import com.qmetric.hal.reader.HalReader
+import org.joda.time.DateTime
+import spock.lang.Specification
+
+import static com.google.common.base.Optional.absent
+import static java.util.concurrent.TimeUnit.MINUTES
+
+class GapResolverTest extends Specification {
+
+    final now = new DateTime(2013, 5, 26, 13, 10, 0)
+
+    final gapTracker = Mock(GapFeedTracker)
+
+    final feedEndpointFactory = Mock(FeedEndpointFactory)
+
+    final latestPageEndpoint = Mock(FeedEndpoint)
+
+    final previousPageEndpoint = Mock(FeedEndpoint)
+
+    final dateTimeSource = Mock(DateTimeSource)
+
+    final gapResolver = new GapResolver(feedEndpointFactory, new HalReader(new ObjectMapper()), gapTracker, new PageOfSeenEntriesFactory(gapTracker, absent()),
+                                        new Interval(15, MINUTES), dateTimeSource)
+
+    def setup()
+    {
+        dateTimeSource.now() >> now
+        latestPageEndpoint.get(_) >> { Function responseReader -> page('/feedWithNextLinkAndEntries_8_7.json', responseReader) }
+        previousPageEndpoint.get(_) >> { Function responseReader -> page('/feedWithPrevLinkAndEntries_4_3_2_1.json', responseReader) }
+    }
+
+    def "should track entries turning up within a gap"()
+    {
+        given:
+        gapTracker.getGaps() >> [gap("2", "4", now.minusMinutes(1))]
+        gapTracker.isTracked(_ as EntryId) >> false
+
+        when:
+        gapResolver.resolveGaps(true)
+
+        then:
+        1 * feedEndpointFactory.create("http://feed") >> latestPageEndpoint
+        1 * feedEndpointFactory.create("http://feed/nextEntries") >> previousPageEndpoint
+        1 * gapTracker.track(new SeenEntry(EntryId.of("2"), new DateTime(2013, 5, 22, 0, 0, 0)))
+        1 * gapTracker.track(new SeenEntry(EntryId.of("3"), new DateTime(2013, 5, 23, 0, 0, 0)))
+        1 * gapTracker.track(new SeenEntry(EntryId.of("4"), new DateTime(2013, 5, 24, 0, 0, 0)))
+        0 * gapTracker.track(_)
+    }
+
+    def "should drop gap once all of its entries are tracked"()
+    {
+        given:
+        final resolvedGap = gap("2", "4", now.minusMinutes(1))
+        gapTracker.getGaps() >> [resolvedGap]
+        feedEndpointFactory.create("http://feed") >> latestPageEndpoint
+        feedEndpointFactory.create("http://feed/nextEntries") >> previousPageEndpoint
+        gapTracker.isTracked(EntryId.of("3")) >> true
+
+        when:
+        gapResolver.resolveGaps(true)
+
+        then:
+        1 * gapTracker.expireGap(resolvedGap)
+    }
+
+    def "should keep gap while some of its entries are still missing"()
+    {
+        given:
+        gapTracker.getGaps() >> [gap("2", "5", now.minusMinutes(1))]
+        feedEndpointFactory.create("http://feed") >> latestPageEndpoint
+        feedEndpointFactory.create("http://feed/nextEntries") >> previousPageEndpoint
+
+        when:
+        gapResolver.resolveGaps(true)
+
+        then:
+        0 * gapTracker.expireGap(_)
+    }
+
+    def "should only expire gaps when feed not modified"()
+    {
+        given:
+        final expiredGap = gap("9", "9", now.minusMinutes(16))
+        gapTracker.getGaps() >> [gap("5", "6", now.minusMinutes(1)), expiredGap]
+
+        when:
+        gapResolver.resolveGaps(false)
+
+        then:
+        1 * gapTracker.expireGap(expiredGap)
+        0 * gapTracker.expireGap(_)
+        0 * feedEndpointFactory._
+    }
+
+    def "should stop reading pages once reaching the start of a gap"()
+    {
+        given:
+        gapTracker.getGaps() >> [gap("7", "7", now.minusMinutes(1))]
+        gapTracker.isTracked(EntryId.of("7")) >> true
+
+        when:
+        gapResolver.resolveGaps(true)
+
+        then:
+        1 * feedEndpointFactory.create("http://feed") >> latestPageEndpoint
+        0 * feedEndpointFactory.create(_)
+        0 * gapTracker.track(_)
+    }
+
+    def "should expire gap as a whole once missing for longer than timeout"()
+    {
+        given:
+        final expiredGap = gap("1", "1000000", now.minusMinutes(16))
+        gapTracker.getGaps() >> [expiredGap]
+
+        when:
+        gapResolver.resolveGaps(true)
+
+        then:
+        1 * gapTracker.expireGap(expiredGap)
+        0 * feedEndpointFactory._
+    }
+
+    def "should carry on with other gaps when failing to read pages of a gap"()
+    {
+        given:
+        gapTracker.getGaps() >> [gap("5", "6", now.minusMinutes(1)), gap("9", "9", now.minusMinutes(16))]
+        feedEndpointFactory.create("http://feed") >> { throw new RuntimeException() }
+
+        when:
+        gapResolver.resolveGaps(true)
+
+        then:
+        notThrown(RuntimeException)
+        1 * gapTracker.expireGap({ it.first == EntryId.of("9") })
+    }
+
+    def "should do nothing when tracker does not support gaps"()
+    {
+        given:
+        final tracker = Mock(FeedTracker)
+        final resolver = new GapResolver(feedEndpointFactory, new HalReader(new ObjectMapper()), tracker, new PageOfSeenEntriesFactory(tracker, absent()),
+                                         new Interval(15, MINUTES), dateTimeSource)
+
+        when:
+        resolver.resolveGaps(true)
+
+        then:
+        0 * tracker._
+        0 * feedEndpointFactory._
+    }
+
+    private static EntryGap gap(final String first, final String last, final DateTime created)
+    {
+        new EntryGap(EntryId.of(first), EntryId.of(last), created, "http://feed")
+    }
+
+    private static page(final String resourcePath, final Function responseReader)
+    {
+        return Optional.of(responseReader.apply(new InputStreamReader(Resources.getResourceAsStream(resourcePath))))
+    }
+}
@@ -0,0 +1,110 @@
+package com.qmetric.feed.consumer
+
+import com.qmetric.feed.consumer.store.LeaseLostException
+import com.qmetric.feed.consumer.store.LeasingFeedTracker
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS
+import static java.util.concurrent.TimeUnit.SECONDS
+
+class LeasesTest extends Specification {
+
+    final feedTracker = Mock(LeasingFeedTracker)
+
+    final renewals = Executors.newSingleThreadScheduledExecutor()
+
+    final duration = new Interval(30, MILLISECONDS)
+
+    final leases = new Leases(feedTracker, "node-1", duration, renewals)
+
+    final id = EntryId.of("1")
+
+    def cleanup()
+    {
+        renewals.shutdownNow()
+    }
+
+    def "should mark entry as consuming under lease of given owner and duration"()
+    {
+        when:
+        leases.claim(id)
+
+        then:
+        1 * feedTracker.markAsConsuming(id, "node-1", duration) >> false
+        leases.reclaimed().count == 0
+    }
+
+    def "should count entries reclaimed after lease of another owner expired"()
+    {
+        given:
+        feedTracker.markAsConsuming(id, "node-1", duration) >> true
+
+        when:
+        leases.claim(id)
+
+        then:
+        leases.reclaimed().count == 1
+    }
+
+    def "should renew lease until renewal cancelled"()
+    {
+        given:
+        final renewed = new CountDownLatch(3)
+        feedTracker.renewLease(id, "node-1", duration) >> { renewed.countDown() }
+
+        when:
+        final renewal = leases.renewWhileConsuming(id)
+        final renewedRepeatedly = renewed.await(5, SECONDS)
+        renewal.cancel(false)
+
+        then:
+        renewedRepeatedly
+        renewal.isCancelled()
+    }
+
+    def "should stop renewing lease once lost"()
+    {
+        given:
+        final attempts = new CountDownLatch(2)
+        feedTracker.renewLease(id, "node-1", duration) >> { attempts.countDown(); throw new LeaseLostException("lost") }
+
+        when:
+        final renewal = leases.renewWhileConsuming(id)
+
+        then:
+        !attempts.await(200, MILLISECONDS)
+        renewal.isDone()
+    }
+
+    def "should keep renewing lease when renewal fails"()
+    {
+        given:
+        final attempts = new CountDownLatch(2)
+        feedTracker.renewLease(id, "node-1", duration) >> { attempts.countDown(); throw new RuntimeException() }
+
+        when:
+        final renewal = leases.renewWhileConsuming(id)
+
+        then:
+        attempts.await(5, SECONDS)
+
+        cleanup:
+        renewal.cancel(false)
+    }
+
+    def "should leave lease to expire when renewals no longer accepted"()
+    {
+        given:
+        renewals.shutdown()
+
+        when:
+        final renewal = leases.renewWhileConsuming(id)
+
+        then:
+        renewal.isDone()
+        0 * feedTracker.renewLease(_, _, _)
+    }
+}
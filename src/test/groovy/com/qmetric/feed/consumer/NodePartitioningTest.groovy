@@ -0,0 +1,183 @@
+package com.qmetric.feed.consumer
+
+import com.google.common.base.Optional
+import com.qmetric.feed.consumer.store.AlreadyConsumingException
+import com.qmetric.feed.consumer.store.referenceimplementation.InMemoryFeedTracker
+import org.joda.time.DateTime
+import spock.lang.Specification
+
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+import static com.google.common.util.concurrent.MoreExecutors.newDirectExecutorService
+import static java.util.concurrent.TimeUnit.MINUTES
+
+class NodePartitioningTest extends Specification {
+
+    static final now = new DateTime(2016, 1, 1, 12, 0)
+
+    final dateTimeSource = Mock(DateTimeSource)
+
+    final feedTracker = new InMemoryFeedTracker(dateTimeSource)
+
+    final entries = (1..300).collect { new TrackedEntry(EntryId.of("$it"), now, 0) }
+
+    def setup()
+    {
+        dateTimeSource.now() >> now
+    }
+
+    def "should split entries between nodes recorded in tracker, each entry belonging to a single node"()
+    {
+        given:
+        final nodes = (1..3).collect { partitioningOf("node-$it") }
+        nodes*.shareOf([])
+
+        when:
+        final shares = nodes.collect { it.shareOf(entries) }
+
+        then:
+        shares.flatten() as Set == entries as Set
+        shares.sum { it.size() } == entries.size()
+        shares.every { it.size() > 50 }
+    }
+
+    def "should keep entries in given order"()
+    {
+        given:
+        final nodes = (1..3).collect { partitioningOf("node-$it") }
+        nodes*.shareOf([])
+
+        when:
+        final share = nodes[0].shareOf(entries)
+
+        then:
+        share == entries.findAll { share.contains(it) }
+    }
+
+    def "should only move entries of node leaving when nodes change"()
+    {
+        given:
+        final fourNodes = NodePartitioning.ringOf(["node-1", "node-2", "node-3", "node-4"] as Set)
+        final threeNodes = NodePartitioning.ringOf(["node-1", "node-2", "node-3"] as Set)
+
+        when:
+        final moved = entries.findAll { NodePartitioning.ownerOf(it.id, fourNodes) != NodePartitioning.ownerOf(it.id, threeNodes) }
+
+        then:
+        !moved.isEmpty()
+        moved.every { NodePartitioning.ownerOf(it.id, fourNodes) == "node-4" }
+    }
+
+    def "should take over share of node no longer recorded within timeout"()
+    {
+        given:
+        final clock = Mock(DateTimeSource)
+        clock.now() >>> [now, now, now.plusMinutes(2), now.plusMinutes(2)]
+        final tracker = new InMemoryFeedTracker(clock)
+        final gone = new NodePartitioning(tracker, "node-1", new Interval(1, MINUTES), clock, 100)
+        final remaining = new NodePartitioning(tracker, "node-2", new Interval(1, MINUTES), clock, 100)
+        gone.shareOf([])
+
+        when:
+        final share = remaining.shareOf(entries)
+
+        then:
+        share == entries
+        remaining.nodes().value == 1
+    }
+
+    def "should take over latest half of entries other nodes leave to their next poll when none of its own are left"()
+    {
+        given:
+        final busy = partitioningOf("node-1")
+        final idle = partitioningOf("node-2")
+        [busy, idle]*.shareOf([])
+        final othersEntries = busy.shareOf(entries)
+        final leftToNextPoll = othersEntries.drop(100)
+
+        when:
+        final share = idle.shareOf(othersEntries)
+
+        then:
+        share as Set == leftToNextPoll.drop(leftToNextPoll.size() - share.size()) as Set
+        share.size() == leftToNextPoll.size().intdiv(2)
+        idle.takenOver().count == share.size()
+    }
+
+    def "should not take over entries other nodes are about to consume in their current poll"()
+    {
+        given:
+        final busy = partitioningOf("node-1")
+        final idle = partitioningOf("node-2")
+        [busy, idle]*.shareOf([])
+        final othersEntries = busy.shareOf(entries).take(100)
+
+        expect:
+        idle.shareOf(othersEntries).isEmpty()
+        idle.takenOver().count == 0
+    }
+
+    def "should collide on claims far less often than consumers not partitioning entries between nodes"()
+    {
+        when:
+        final partitioned = claimCollisionRate(true)
+        final unpartitioned = claimCollisionRate(false)
+
+        then:
+        partitioned < 0.1
+        partitioned < unpartitioned / 4
+    }
+
+    /**
+     * Consumes a feed with consumers on 6 nodes sharing a tracker, each polling up to 50 entries at a time.
+     *
+     * @return Proportion of attempts to claim an entry failing because already claimed by another node.
+     */
+    private static double claimCollisionRate(final boolean partitioned)
+    {
+        final sharedTracker = new InMemoryFeedTracker(new DateTimeSource())
+        sharedTracker.trackAll((1..1200).collect { new SeenEntry(EntryId.of("$it"), now) })
+        final claims = new AtomicInteger()
+        final collisions = new AtomicInteger()
+        final entryConsumer = { TrackedEntry entry ->
+            claims.incrementAndGet()
+            try
+            {
+                sharedTracker.markAsConsuming(entry.id)
+            }
+            catch (AlreadyConsumingException ignored)
+            {
+                collisions.incrementAndGet()
+                return false
+            }
+            Thread.sleep(1)
+            sharedTracker.markAsConsumed(entry.id)
+            true
+        } as EntryConsumer
+        final nodes = (1..6).collect { new NodePartitioning(sharedTracker, "node-$it", new Interval(1, MINUTES), new DateTimeSource(), 50) }
+        nodes*.shareOf([])
+        final consumers = nodes.collect {
+            new FeedConsumerImpl(entryConsumer, sharedTracker, [], [], newDirectExecutorService(), Optional.absent(), partitioned ? Optional.of(it) : Optional.absent(), Optional.of(50))
+        }
+        final threads = Executors.newFixedThreadPool(6)
+
+        try
+        {
+            consumers.collect { final consumer -> threads.submit({ while (!consumer.consume().isEmpty()) {} } as Callable) }*.get()
+            assert !sharedTracker.getEntriesToBeConsumed().iterator().hasNext()
+        }
+        finally
+        {
+            threads.shutdownNow()
+        }
+
+        collisions.get() / claims.get()
+    }
+
+    private NodePartitioning partitioningOf(final String nodeId)
+    {
+        new NodePartitioning(feedTracker, nodeId, new Interval(1, MINUTES), dateTimeSource, 100)
+    }
+}
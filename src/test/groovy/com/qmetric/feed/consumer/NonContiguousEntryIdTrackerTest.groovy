@@ -3,9 +3,11 @@ package com.qmetric.feed.consumer
 import com.fasterxml.jackson.databind.ObjectMapper
 import com.google.common.io.Resources
 import com.qmetric.feed.consumer.store.FeedTracker
+import com.qmetric.feed.consumer.store.GapFeedTracker
 import com.qmetric.hal.reader.HalReader
 import org.joda.time.DateTime
 import spock.lang.Specification
+import com.google.common.base.Function
 import com.google.common.base.Optional
 
 import static com.google.common.base.Optional.absent
@@ -31,7 +33,7 @@ class NonContiguousEntryIdTrackerTest extends Specification {
     def "should track missing entries where entry ids not contiguous (unlikely, but maybe the case under heavy load)"()
     {
         given:
-        feedEndpoint.get() >> reader('/feedWithNonContiguousEntries_6_4_2_1.json')
+        feedEndpoint.getIfModified(_, _) >> { Function responseReader, ConditionalGet conditionalGet -> page('/feedWithNonContiguousEntries_6_4_2_1.json', responseReader) }
         givenTracking(["6": UNTRACKED, "4": UNTRACKED, "2": UNTRACKED, "1": UNTRACKED])
 
         when:
@@ -50,8 +52,9 @@ class NonContiguousEntryIdTrackerTest extends Specification {
     def "should track missing entries where entry ids not contiguous across page boundaries (unlikely, but maybe the case under heavy load)"()
     {
         given:
-        feedEndpoint.get() >>> [reader('/feedWithNextLinkAndEntries_8_7.json'), reader('/feedWithNextLinkAndEntries_8_7.json')]
-        secondPageEndpoint.get() >> reader('/feedWithPrevLinkAndEntries_4_3_2_1.json')
+        feedEndpoint.getIfModified(_, _) >> { Function responseReader, ConditionalGet conditionalGet -> page('/feedWithNextLinkAndEntries_8_7.json', responseReader) }
+        feedEndpoint.get(_) >> { Function responseReader -> page('/feedWithNextLinkAndEntries_8_7.json', responseReader) }
+        secondPageEndpoint.get(_) >> { Function responseReader -> page('/feedWithPrevLinkAndEntries_4_3_2_1.json', responseReader) }
         feedEndpointFactory.create(_ as String) >>> [secondPageEndpoint, feedEndpoint]
         givenTracking(["8": UNTRACKED, "7": UNTRACKED, "4": UNTRACKED, "3": UNTRACKED, "2": TRACKED, "1": TRACKED])
 
@@ -71,8 +74,9 @@ class NonContiguousEntryIdTrackerTest extends Specification {
     def "should track missing entries where entry ids not contiguous where all already tracked on last page (unlikely, but maybe the case under heavy load)"()
     {
         given:
-        feedEndpoint.get() >>> [reader('/feedWithNextLinkAndEntries_8_7.json'), reader('/feedWithNextLinkAndEntries_8_7.json')]
-        secondPageEndpoint.get() >> reader('/feedWithPrevLinkAndEntries_4_3_2_1.json')
+        feedEndpoint.getIfModified(_, _) >> { Function responseReader, ConditionalGet conditionalGet -> page('/feedWithNextLinkAndEntries_8_7.json', responseReader) }
+        feedEndpoint.get(_) >> { Function responseReader -> page('/feedWithNextLinkAndEntries_8_7.json', responseReader) }
+        secondPageEndpoint.get(_) >> { Function responseReader -> page('/feedWithPrevLinkAndEntries_4_3_2_1.json', responseReader) }
         feedEndpointFactory.create(_ as String) >>> [secondPageEndpoint, feedEndpoint]
         givenTracking(["8": UNTRACKED, "7": UNTRACKED, "4": TRACKED, "3": TRACKED, "2": TRACKED, "1": TRACKED])
 
@@ -90,7 +94,7 @@ class NonContiguousEntryIdTrackerTest extends Specification {
     def "should track missing entries where entry ids not contiguous intertwined with already tracked entries (unlikely, but maybe the case under heavy load)"()
     {
         given:
-        feedEndpoint.get() >> reader('/feedWithNonContiguousEntries_6_4_2_1.json')
+        feedEndpoint.getIfModified(_, _) >> { Function responseReader, ConditionalGet conditionalGet -> page('/feedWithNonContiguousEntries_6_4_2_1.json', responseReader) }
         givenTracking(["6": TRACKED, "4": UNTRACKED, "2": TRACKED, "1": UNTRACKED])
 
         when:
@@ -107,7 +111,7 @@ class NonContiguousEntryIdTrackerTest extends Specification {
     def "should not track any missing entries when ids are contiguous"()
     {
         given:
-        feedEndpoint.get() >> reader('/feedWithEntries_2_1.json')
+        feedEndpoint.getIfModified(_, _) >> { Function responseReader, ConditionalGet conditionalGet -> page('/feedWithEntries_2_1.json', responseReader) }
         givenTracking(["2": UNTRACKED, "1": UNTRACKED])
 
         when:
@@ -119,14 +123,51 @@ class NonContiguousEntryIdTrackerTest extends Specification {
         0 * tracker.track(_ as SeenEntry)
     }
 
+    def "should record missing entries as single gaps when tracker supports gaps"()
+    {
+        given:
+        final gapTracker = Mock(GapFeedTracker)
+        final gapTrackingEntriesTracker = new AvailableFeedEntriesTracker(feedEndpoint, feedEndpointFactory, gapTracker, halReader, new NonContiguousEntryIdTracker(gapTracker), new PageOfSeenEntriesFactory(gapTracker, absent()))
+        gapTracker.getGaps() >> []
+        feedEndpoint.getIfModified(_, _) >> { Function responseReader, ConditionalGet conditionalGet -> page('/feedWithNonContiguousEntries_6_4_2_1.json', responseReader) }
+        gapTracker.isTracked(_ as EntryId) >> UNTRACKED
+
+        when:
+        gapTrackingEntriesTracker.trackNewEntries()
+
+        then:
+        1 * gapTracker.trackGap(new EntryGap(EntryId.of("3"), EntryId.of("3"), new DateTime(2013, 5, 24, 0, 0, 0), "http://feed"))
+        1 * gapTracker.trackGap(new EntryGap(EntryId.of("5"), EntryId.of("5"), new DateTime(2013, 5, 25, 0, 0, 0), "http://feed"))
+        4 * gapTracker.track(_ as SeenEntry)
+        0 * gapTracker.track(seenEntry('3', new DateTime(2013, 5, 24, 0, 0, 0)))
+        0 * gapTracker.track(seenEntry('5', new DateTime(2013, 5, 25, 0, 0, 0)))
+    }
+
+    def "should not record gap again between entries already tracked"()
+    {
+        given:
+        final gapTracker = Mock(GapFeedTracker)
+        final gapTrackingEntriesTracker = new AvailableFeedEntriesTracker(feedEndpoint, feedEndpointFactory, gapTracker, halReader, new NonContiguousEntryIdTracker(gapTracker), new PageOfSeenEntriesFactory(gapTracker, absent()))
+        gapTracker.getGaps() >> []
+        feedEndpoint.getIfModified(_, _) >> { Function responseReader, ConditionalGet conditionalGet -> page('/feedWithNonContiguousEntries_6_4_2_1.json', responseReader) }
+        ["6": UNTRACKED, "4": TRACKED, "2": TRACKED, "1": TRACKED].each { id, tracked -> gapTracker.isTracked(EntryId.of(id)) >> tracked }
+
+        when:
+        gapTrackingEntriesTracker.trackNewEntries()
+
+        then:
+        1 * gapTracker.trackGap(new EntryGap(EntryId.of("5"), EntryId.of("5"), new DateTime(2013, 5, 25, 0, 0, 0), "http://feed"))
+        0 * gapTracker.trackGap(_)
+    }
+
     private static seenEntry(final String id, final DateTime dateTime)
     {
         return new SeenEntry(EntryId.of(id), dateTime)
     }
 
-    private static reader(final String resourcePath)
+    private static page(final String resourcePath, final Function responseReader)
     {
-        return Optional.of(new InputStreamReader(Resources.getResourceAsStream(resourcePath)))
+        return Optional.of(responseReader.apply(new InputStreamReader(Resources.getResourceAsStream(resourcePath))))
     }
 
     private givenTracking(final Map<String, Boolean> trackingResults)
@@ -0,0 +1,94 @@
+package com.qmetric.feed.consumer
+
+import com.google.common.base.Function
+import org.joda.time.DateTime
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+
+import static java.util.concurrent.TimeUnit.SECONDS
+
+class OrderedLanesTest extends Specification {
+
+    static final dateTime = DateTime.now()
+
+    final lanes = new OrderedLanes({ TrackedEntry entry -> entry.id.toString()[0] } as Function, 4)
+
+    def cleanup()
+    {
+        lanes.executors()*.shutdownNow()
+    }
+
+    def "should key entries with given function"()
+    {
+        expect:
+        lanes.keyOf(entry("a1", dateTime)) == "a"
+    }
+
+    def "should always put the same key on the same lane"()
+    {
+        expect:
+        lanes.laneOf("policy-1") == lanes.laneOf("policy-1")
+        (0..<100).collect { lanes.laneOf("policy-$it".toString()) }.every { it >= 0 && it < 4 }
+        (0..<100).collect { lanes.laneOf("policy-$it".toString()) }.toSet().size() == 4
+    }
+
+    def "should run tasks of a lane one at a time in the order submitted"()
+    {
+        given:
+        final consumed = [].asSynchronized()
+
+        when:
+        final futures = (1..20).collect { final i -> lanes.submit("policy-1", { consumed << i } as Runnable) }
+        futures*.get()
+
+        then:
+        consumed == (1..20).toList()
+    }
+
+    def "should expose depth of each lane"()
+    {
+        given:
+        final blocked = new CountDownLatch(1)
+        final started = new CountDownLatch(1)
+        final lane = lanes.laneOf("policy-1")
+        lanes.submit("policy-1", { started.countDown(); blocked.await(5, SECONDS) } as Runnable)
+        started.await(5, SECONDS)
+
+        when:
+        2.times { lanes.submit("policy-1", {} as Runnable) }
+
+        then:
+        lanes.depth(lane).value == 2
+        ((0..<4) - lane).every { lanes.depth(it).value == 0 }
+
+        cleanup:
+        blocked.countDown()
+    }
+
+    def "should order entries by publish date, entries with no publish date last"()
+    {
+        given:
+        final undated = entry("u", null)
+        final first = entry("1", dateTime)
+        final second = entry("2", dateTime.plusSeconds(1))
+        final alsoSecond = entry("3", dateTime.plusSeconds(1))
+
+        expect:
+        OrderedLanes.inPublishOrder([undated, second, first, alsoSecond]) == [first, second, alsoSecond, undated]
+    }
+
+    def "should require at least one lane"()
+    {
+        when:
+        new OrderedLanes({ it } as Function, 0)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    private static TrackedEntry entry(final String id, final DateTime created)
+    {
+        new TrackedEntry(EntryId.of(id), created, 0)
+    }
+}
@@ -0,0 +1,130 @@
+package com.qmetric.feed.consumer
+
+import com.google.common.base.Function
+import com.google.common.base.Optional
+import com.qmetric.hal.reader.HalResource
+import org.joda.time.DateTime
+import spock.lang.Specification
+
+class PartitioningResourceResolverTest extends Specification {
+
+    final next = Mock(ResourceResolver)
+
+    final resource = Mock(HalResource)
+
+    final keyExtractor = Mock(Function)
+
+    final resolver = new PartitioningResourceResolver(next, keyExtractor)
+
+    final entry = new TrackedEntry(EntryId.of("1"), new DateTime(), 2)
+
+    def "should extract key from fetched entry"()
+    {
+        when:
+        final key = resolver.apply(entry)
+
+        then:
+        1 * next.resolve(entry.id) >> Optional.of(resource)
+        1 * keyExtractor.apply(new FeedEntry(resource, 2)) >> "policy-1"
+        key == "policy-1"
+    }
+
+    def "should resolve entry fetched for its key without fetching it again"()
+    {
+        given:
+        next.resolve(entry.id) >> Optional.of(resource)
+        keyExtractor.apply(_) >> "policy-1"
+        resolver.apply(entry)
+
+        when:
+        final resolved = resolver.resolve(entry.id)
+
+        then:
+        0 * next.resolve(_)
+        resolved == Optional.of(resource)
+    }
+
+    def "should fetch entry again once resolved or processed"()
+    {
+        given:
+        keyExtractor.apply(_) >> "policy-1"
+
+        when:
+        resolver.apply(entry)
+        resolver.resolve(entry.id)
+        resolver.apply(entry)
+        resolver.processed(entry)
+        resolver.resolve(entry.id)
+
+        then:
+        3 * next.resolve(entry.id) >> Optional.of(resource)
+    }
+
+    def "should forget entries fetched by previous poll"()
+    {
+        given:
+        keyExtractor.apply(_) >> "policy-1"
+
+        when:
+        resolver.apply(entry)
+        resolver.upcoming([entry])
+        resolver.resolve(entry.id)
+
+        then:
+        2 * next.resolve(entry.id) >> Optional.of(resource)
+    }
+
+    def "should key entry by its id when not found in feed"()
+    {
+        when:
+        final key = resolver.apply(entry)
+
+        then:
+        1 * next.resolve(entry.id) >> Optional.absent()
+        0 * keyExtractor.apply(_)
+        key == entry.id
+    }
+
+    def "should key entry by its id when no key extracted"()
+    {
+        given:
+        next.resolve(entry.id) >> Optional.of(resource)
+
+        when:
+        final key = resolver.apply(entry)
+
+        then:
+        1 * keyExtractor.apply(_) >> null
+        key == entry.id
+    }
+
+    def "should have no key for entry and fetch it again when fetching fails"()
+    {
+        when:
+        final key = resolver.apply(entry)
+        final resolved = resolver.resolve(entry.id)
+
+        then:
+        1 * next.resolve(entry.id) >> { throw new RuntimeException() }
+
+        then:
+        1 * next.resolve(entry.id) >> Optional.of(resource)
+        0 * keyExtractor.apply(_)
+        key == null
+        resolved == Optional.of(resource)
+    }
+
+    def "should forget entries fetched once poll completes"()
+    {
+        given:
+        keyExtractor.apply(_) >> "policy-1"
+
+        when:
+        resolver.apply(entry)
+        resolver.consumed([entry])
+        resolver.resolve(entry.id)
+
+        then:
+        2 * next.resolve(entry.id) >> Optional.of(resource)
+    }
+}
@@ -0,0 +1,126 @@
+package com.qmetric.feed.consumer
+
+import com.google.common.base.Optional
+import com.qmetric.hal.reader.HalResource
+import org.joda.time.DateTime
+import spock.lang.Specification
+
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+
+import static com.google.common.util.concurrent.MoreExecutors.newDirectExecutorService
+
+class PrefetchingResourceResolverTest extends Specification {
+
+    final next = Mock(ResourceResolver)
+
+    final resource = Mock(HalResource)
+
+    final resolver = new PrefetchingResourceResolver(next, 2, newDirectExecutorService())
+
+    final entry1 = entry("1")
+
+    final entry2 = entry("2")
+
+    final entry3 = entry("3")
+
+    def "should fetch upcoming entries up to read-ahead"()
+    {
+        when:
+        resolver.upcoming([entry1, entry2, entry3])
+
+        then:
+        1 * next.resolve(entry1.id) >> Optional.of(resource)
+        1 * next.resolve(entry2.id) >> Optional.of(resource)
+        0 * next.resolve(entry3.id)
+    }
+
+    def "should resolve prefetched entry without fetching it again and read further ahead"()
+    {
+        given:
+        next.resolve(entry1.id) >> Optional.of(resource)
+        resolver.upcoming([entry1, entry2, entry3])
+
+        when:
+        final resolved = resolver.resolve(entry1.id)
+
+        then:
+        0 * next.resolve(entry1.id)
+        1 * next.resolve(entry3.id)
+        resolved == Optional.of(resource)
+    }
+
+    def "should fetch entry on demand when not prefetched"()
+    {
+        when:
+        final resolved = resolver.resolve(entry1.id)
+
+        then:
+        1 * next.resolve(entry1.id) >> Optional.of(resource)
+        resolved == Optional.of(resource)
+    }
+
+    def "should drop prefetched entry once processed without being resolved, e.g. when claimed by another consumer"()
+    {
+        given:
+        resolver.upcoming([entry1, entry2, entry3])
+
+        when:
+        resolver.processed(entry1)
+        resolver.resolve(entry1.id)
+
+        then:
+        1 * next.resolve(entry3.id)
+        1 * next.resolve(entry1.id)
+    }
+
+    def "should not prefetch entries already processed"()
+    {
+        given:
+        final blockedFetchers = Mock(ExecutorService)
+        final windowOfOne = new PrefetchingResourceResolver(next, 1, blockedFetchers)
+
+        when:
+        windowOfOne.processed(entry1)
+        windowOfOne.upcoming([entry1, entry2])
+
+        then:
+        1 * blockedFetchers.submit(_)
+    }
+
+    def "should drop everything prefetched at the end of a poll"()
+    {
+        given:
+        resolver.upcoming([entry1, entry2, entry3])
+
+        when:
+        resolver.consumed([])
+        resolver.resolve(entry1.id)
+
+        then:
+        1 * next.resolve(entry1.id)
+    }
+
+    def "should fetch again when prefetching failed"()
+    {
+        given:
+        final fetchers = Executors.newSingleThreadExecutor()
+        final backgroundResolver = new PrefetchingResourceResolver(next, 1, fetchers)
+
+        when:
+        backgroundResolver.upcoming([entry1])
+        final resolved = backgroundResolver.resolve(entry1.id)
+
+        then:
+        2 * next.resolve(entry1.id) >>> [{ throw new RuntimeException() }, Optional.of(resource)]
+        resolved == Optional.of(resource)
+
+        cleanup:
+        fetchers.shutdownNow()
+    }
+
+    private static TrackedEntry entry(final String id)
+    {
+        new TrackedEntry(EntryId.of(id), new DateTime(), 0)
+    }
+}
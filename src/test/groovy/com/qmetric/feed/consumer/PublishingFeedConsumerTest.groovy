@@ -0,0 +1,277 @@
+package com.qmetric.feed.consumer
+
+import com.google.common.base.Function
+import com.google.common.base.Optional
+import com.qmetric.feed.consumer.flow.Subscriber
+import com.qmetric.feed.consumer.flow.Subscription
+import com.qmetric.feed.consumer.store.AlreadyConsumingException
+import com.qmetric.feed.consumer.store.FeedTracker
+import com.qmetric.feed.consumer.store.referenceimplementation.InMemoryFeedTracker
+import com.qmetric.hal.reader.HalResource
+import org.joda.time.DateTime
+import spock.lang.Specification
+
+import java.util.concurrent.Executor
+
+import static java.util.concurrent.TimeUnit.MINUTES
+
+class PublishingFeedConsumerTest extends Specification {
+
+    static final int MAX_RETRIES = 3
+
+    final now = new DateTime(2015, 1, 1, 12, 0, 0, 0)
+
+    final entry1 = new TrackedEntry(EntryId.of("1"), now, 0)
+    final entry2 = new TrackedEntry(EntryId.of("2"), now, 0)
+    final entry3 = new TrackedEntry(EntryId.of("3"), now, 0)
+
+    final feedTracker = Mock(FeedTracker)
+
+    final resourceResolver = Mock(ResourceResolver)
+
+    final dateTimeSource = Mock(DateTimeSource)
+
+    final onCancel = Mock(Runnable)
+
+    final received = []
+
+    Subscription subscription
+
+    final subscriber = new Subscriber<AcknowledgeableFeedEntry>() {
+        @Override void onSubscribe(final Subscription subscription) { PublishingFeedConsumerTest.this.subscription = subscription }
+
+        @Override void onNext(final AcknowledgeableFeedEntry item) { received << item }
+
+        @Override void onError(final Throwable throwable) { received << throwable }
+
+        @Override void onComplete() {}
+    }
+
+    final publishing = publishing(feedTracker, resourceResolver)
+
+    def setup()
+    {
+        dateTimeSource.now() >> now
+        feedTracker.getEntriesToBeConsumed() >> [entry1, entry2, entry3]
+        resourceResolver.resolve(_) >> Optional.of(Mock(HalResource))
+    }
+
+    def "should deliver no entries until requested"()
+    {
+        given:
+        publishing.subscribe(subscriber, onCancel)
+
+        when:
+        final delivered = publishing.consume()
+
+        then:
+        delivered.isEmpty()
+        received.isEmpty()
+        0 * feedTracker.markAsConsuming(_)
+    }
+
+    def "should claim and deliver only as many entries as requested"()
+    {
+        given:
+        publishing.subscribe(subscriber, onCancel)
+
+        when:
+        subscription.request(2)
+
+        then:
+        1 * feedTracker.markAsConsuming(entry1.id)
+        1 * feedTracker.markAsConsuming(entry2.id)
+        0 * feedTracker.markAsConsuming(entry3.id)
+        received*.id() == [entry1.id, entry2.id]
+        publishing.demand().value == 0
+    }
+
+    def "should deliver outstanding demand on next poll"()
+    {
+        given:
+        final trackedLater = Mock(FeedTracker)
+        final laterPublishing = publishing(trackedLater, resourceResolver)
+        laterPublishing.subscribe(subscriber, onCancel)
+        trackedLater.getEntriesToBeConsumed() >>> [[], [entry1]]
+        subscription.request(5)
+
+        when:
+        final delivered = laterPublishing.consume()
+
+        then:
+        delivered == [entry1]
+        received*.id() == [entry1.id]
+        laterPublishing.demand().value == 4
+    }
+
+    def "should skip entries already being consumed"()
+    {
+        given:
+        publishing.subscribe(subscriber, onCancel)
+        feedTracker.markAsConsuming(entry1.id) >> { throw new AlreadyConsumingException() }
+
+        when:
+        subscription.request(1)
+
+        then:
+        received*.id() == [entry2.id]
+    }
+
+    def "should fail entries missing from feed, without delivering them"()
+    {
+        given:
+        final resolving = Mock(ResourceResolver)
+        final missingPublishing = publishing(feedTracker, resolving)
+        missingPublishing.subscribe(subscriber, onCancel)
+        resolving.resolve(entry1.id) >> Optional.absent()
+        resolving.resolve(entry2.id) >> Optional.of(Mock(HalResource))
+
+        when:
+        subscription.request(1)
+
+        then:
+        1 * feedTracker.fail(entry1, true)
+        received*.id() == [entry2.id]
+    }
+
+    def "should fail entries failing fetching, without retrying those retried as often as allowed"()
+    {
+        given:
+        final failing = Mock(ResourceResolver)
+        final retriedEntry = new TrackedEntry(EntryId.of("4"), now, MAX_RETRIES)
+        final failingTracker = Mock(FeedTracker)
+        final failingPublishing = publishing(failingTracker, failing)
+        failingPublishing.subscribe(subscriber, onCancel)
+        failingTracker.getEntriesToBeConsumed() >> [entry1, retriedEntry]
+        failing.resolve(_) >> { throw new RuntimeException() }
+
+        when:
+        subscription.request(1)
+
+        then:
+        1 * failingTracker.fail(entry1, true)
+        1 * failingTracker.fail(retriedEntry, false)
+        received.isEmpty()
+    }
+
+    def "should deliver through given entry consumer, leaving entries it skips"()
+    {
+        given:
+        final skipping = new PublishingFeedConsumer(feedTracker, { EntryConsumerImpl.Delivery delivery ->
+            final delivering = EntryConsumerImpl.delivering(feedTracker, delivery, resourceResolver, [], Optional.of(MAX_RETRIES), new Interval(1, MINUTES), dateTimeSource)
+            ({ TrackedEntry trackedEntry -> trackedEntry != entry1 && delivering.consume(trackedEntry) } as EntryConsumer)
+        } as Function, [], { it.run() } as Executor)
+        skipping.subscribe(subscriber, onCancel)
+
+        when:
+        subscription.request(1)
+
+        then:
+        0 * feedTracker.markAsConsuming(entry1.id)
+        received*.id() == [entry2.id]
+    }
+
+    def "should fail entry and cancel subscription when subscriber fails receiving it"()
+    {
+        given:
+        final failingSubscriber = new Subscriber<AcknowledgeableFeedEntry>() {
+            @Override void onSubscribe(final Subscription subscription) { PublishingFeedConsumerTest.this.subscription = subscription }
+
+            @Override void onNext(final AcknowledgeableFeedEntry item) { throw new IllegalStateException() }
+
+            @Override void onError(final Throwable throwable) {}
+
+            @Override void onComplete() {}
+        }
+        publishing.subscribe(failingSubscriber, onCancel)
+
+        when:
+        subscription.request(2)
+
+        then:
+        1 * feedTracker.fail(entry1, true)
+        1 * onCancel.run()
+        0 * feedTracker.markAsConsuming(entry2.id)
+    }
+
+    def "should deliver entries requested from within onNext one after another"()
+    {
+        given:
+        final depths = []
+        int depth = 0
+        final requestingSubscriber = new Subscriber<AcknowledgeableFeedEntry>() {
+            @Override void onSubscribe(final Subscription subscription) { PublishingFeedConsumerTest.this.subscription = subscription }
+
+            @Override void onNext(final AcknowledgeableFeedEntry item)
+            {
+                depth++
+                depths << depth
+                subscription.request(1)
+                depth--
+            }
+
+            @Override void onError(final Throwable throwable) {}
+
+            @Override void onComplete() {}
+        }
+        final tracker = new InMemoryFeedTracker(dateTimeSource)
+        tracker.trackAll([entry1, entry2, entry3].collect { new SeenEntry(it.id, now) })
+        final trackingPublishing = publishing(tracker, resourceResolver)
+        trackingPublishing.subscribe(requestingSubscriber, onCancel)
+
+        when:
+        subscription.request(1)
+
+        then:
+        depths == [1, 1, 1]
+    }
+
+    def "should signal error when requesting no entries"()
+    {
+        given:
+        publishing.subscribe(subscriber, onCancel)
+
+        when:
+        subscription.request(0)
+
+        then:
+        received.size() == 1
+        received[0] instanceof IllegalArgumentException
+        1 * onCancel.run()
+    }
+
+    def "should stop delivering once cancelled"()
+    {
+        given:
+        publishing.subscribe(subscriber, onCancel)
+        subscription.request(1)
+
+        when:
+        subscription.cancel()
+        subscription.cancel()
+        subscription.request(1)
+
+        then:
+        1 * onCancel.run()
+        received.size() == 1
+    }
+
+    def "should not publish to a second subscriber"()
+    {
+        given:
+        publishing.subscribe(subscriber, onCancel)
+
+        when:
+        publishing.subscribe(subscriber, onCancel)
+
+        then:
+        thrown(IllegalStateException)
+    }
+
+    private PublishingFeedConsumer publishing(final FeedTracker tracker, final ResourceResolver resolver)
+    {
+        new PublishingFeedConsumer(tracker, { EntryConsumerImpl.Delivery delivery ->
+            EntryConsumerImpl.delivering(tracker, delivery, resolver, [], Optional.of(MAX_RETRIES), new Interval(1, MINUTES), dateTimeSource)
+        } as Function, [], { it.run() } as Executor)
+    }
+}
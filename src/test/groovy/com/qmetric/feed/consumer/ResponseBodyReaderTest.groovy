@@ -0,0 +1,91 @@
+package com.qmetric.feed.consumer
+
+import spock.lang.Specification
+
+import java.nio.charset.Charset
+
+import static org.apache.commons.io.IOUtils.toString
+
+class ResponseBodyReaderTest extends Specification {
+
+    static final UTF_8 = Charset.forName("UTF-8")
+
+    final body = ("£€ entry 𝄞 " * 2000)
+
+    def "should decode body received a few bytes at a time, multi-byte characters split across reads and buffers"()
+    {
+        given:
+        final reader = new ResponseBodyReader(trickling(body.getBytes(UTF_8)), UTF_8)
+
+        expect:
+        toString(reader) == body
+    }
+
+    def "should decode body read a character at a time"()
+    {
+        given:
+        final reader = new ResponseBodyReader(new ByteArrayInputStream("£𝄞€".getBytes(UTF_8)), UTF_8)
+        final read = new StringBuilder()
+        final chars = new char[1]
+
+        when:
+        while (reader.read(chars, 0, 1) != -1) { read.append(chars[0]) }
+
+        then:
+        read.toString() == "£𝄞€"
+    }
+
+    def "should decode each body read in turn with reused buffers"()
+    {
+        given:
+        final first = new ResponseBodyReader(new ByteArrayInputStream(body.getBytes(UTF_8)), UTF_8)
+        toString(first)
+        first.close()
+
+        when:
+        final second = new ResponseBodyReader(new ByteArrayInputStream("second".getBytes(UTF_8)), UTF_8)
+
+        then:
+        toString(second) == "second"
+    }
+
+    def "should decode body read while another one is being read"()
+    {
+        given:
+        final outer = new ResponseBodyReader(new ByteArrayInputStream("outer".getBytes(UTF_8)), UTF_8)
+        final inner = new ResponseBodyReader(new ByteArrayInputStream("inner".getBytes(UTF_8)), UTF_8)
+
+        expect:
+        outer.read() == 'o'.codePointAt(0)
+        toString(inner) == "inner"
+        toString(outer) == "uter"
+    }
+
+    def "should close body and refuse reading it once closed"()
+    {
+        given:
+        boolean closed = false
+        final input = new ByteArrayInputStream("body".getBytes(UTF_8)) {
+            @Override void close() { closed = true }
+        }
+        final reader = new ResponseBodyReader(input, UTF_8)
+
+        when:
+        reader.close()
+        reader.read()
+
+        then:
+        closed
+        thrown(IOException)
+    }
+
+    private static InputStream trickling(final byte[] bytes)
+    {
+        return new ByteArrayInputStream(bytes) {
+            @Override synchronized int read(final byte[] b, final int off, final int len)
+            {
+                return super.read(b, off, Math.min(len, 3))
+            }
+        }
+    }
+}
@@ -43,6 +43,9 @@ class ShutdownProcedureTest extends Specification {
         1 * service.shutdown()
         1 * service.awaitTermination(_ as Long, _ as TimeUnit) >> { throw new InterruptedException() }
         1 * service.shutdownNow()
+
+        cleanup:
+        Thread.interrupted()
     }
 
     def 'does not attempt shutdown if executor is already shutdown'()
@@ -65,4 +68,40 @@ class ShutdownProcedureTest extends Specification {
         1 * service.isTerminated() >> true
         0 * service._
     }
+
+    def 'stops executor-services in the given order'()
+    {
+        given:
+        def anotherService = Mock(ExecutorService)
+        def orderedProcedure = new ShutdownProcedure(service, anotherService)
+
+        when:
+        orderedProcedure.run()
+
+        then:
+        1 * service.shutdown()
+        1 * service.awaitTermination(_ as Long, _ as TimeUnit) >> true
+
+        then:
+        1 * anotherService.shutdown()
+        1 * anotherService.awaitTermination(_ as Long, _ as TimeUnit) >> true
+    }
+
+    def 'shares timeout between executor-services rather than allowing it each in turn'()
+    {
+        given:
+        def anotherService = Mock(ExecutorService)
+        def boundedProcedure = new ShutdownProcedure(new Interval(1, TimeUnit.SECONDS), service, anotherService)
+        long remaining = 0
+
+        when:
+        boundedProcedure.run()
+
+        then:
+        1 * service.awaitTermination(_ as Long, _ as TimeUnit) >> { Thread.sleep(300); true }
+
+        then:
+        1 * anotherService.awaitTermination(_ as Long, _ as TimeUnit) >> { long timeout, TimeUnit unit -> remaining = unit.toMillis(timeout); true }
+        remaining <= 700
+    }
 }
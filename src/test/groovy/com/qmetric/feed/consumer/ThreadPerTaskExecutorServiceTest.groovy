@@ -0,0 +1,177 @@
+package com.qmetric.feed.consumer
+
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ThreadFactory
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS
+import static java.util.concurrent.TimeUnit.SECONDS
+
+class ThreadPerTaskExecutorServiceTest extends Specification {
+
+    final release = new CountDownLatch(1)
+
+    def cleanup()
+    {
+        release.countDown()
+    }
+
+    def "should run each task on a new thread from thread factory"()
+    {
+        given:
+        final threadFactory = Mock(ThreadFactory)
+        final executor = new ThreadPerTaskExecutorService(threadFactory, 2)
+        final threads = []
+
+        when:
+        executor.submit({} as Runnable).get(1, SECONDS)
+        executor.submit({} as Runnable).get(1, SECONDS)
+
+        then:
+        2 * threadFactory.newThread(_ as Runnable) >> { Runnable r -> final thread = new Thread(r); threads << thread; thread }
+        threads.size() == 2
+    }
+
+    def "should block submission while maximum number of tasks are in flight"()
+    {
+        given:
+        final executor = new ThreadPerTaskExecutorService(Executors.defaultThreadFactory(), 2)
+        final started = new CountDownLatch(2)
+        2.times { executor.execute({ started.countDown(); release.await() } as Runnable) }
+        started.await()
+        final thirdSubmitted = new CountDownLatch(1)
+
+        when:
+        Thread.start { executor.execute({} as Runnable); thirdSubmitted.countDown() }
+
+        then:
+        !thirdSubmitted.await(200, MILLISECONDS)
+        executor.inFlight().value == 2
+
+        when:
+        release.countDown()
+
+        then:
+        thirdSubmitted.await(1, SECONDS)
+    }
+
+    def "should release task in flight when thread factory fails to create thread"()
+    {
+        given:
+        final threadFactory = Mock(ThreadFactory)
+        final executor = new ThreadPerTaskExecutorService(threadFactory, 1)
+
+        when:
+        executor.execute({} as Runnable)
+
+        then:
+        1 * threadFactory.newThread(_ as Runnable) >> { throw new IllegalStateException() }
+        thrown(IllegalStateException)
+        executor.inFlight().value == 0
+
+        when:
+        executor.execute({} as Runnable)
+
+        then:
+        1 * threadFactory.newThread(_ as Runnable) >> null
+        thrown(RejectedExecutionException)
+        executor.inFlight().value == 0
+
+        when:
+        executor.submit({} as Runnable).get(1, SECONDS)
+        executor.shutdown()
+
+        then:
+        1 * threadFactory.newThread(_ as Runnable) >> { Runnable r -> new Thread(r) }
+        executor.awaitTermination(1, SECONDS)
+    }
+
+    def "should release task in flight when thread fails to start"()
+    {
+        given:
+        final started = new Thread({} as Runnable)
+        started.start()
+        started.join()
+        final executor = new ThreadPerTaskExecutorService({ Runnable r -> started } as ThreadFactory, 1)
+
+        when:
+        executor.execute({} as Runnable)
+
+        then:
+        thrown(IllegalThreadStateException)
+        executor.inFlight().value == 0
+
+        when:
+        executor.shutdown()
+
+        then:
+        executor.isTerminated()
+    }
+
+    def "should reject tasks once shut down"()
+    {
+        given:
+        final executor = new ThreadPerTaskExecutorService(Executors.defaultThreadFactory(), 2)
+        executor.shutdown()
+
+        when:
+        executor.execute({} as Runnable)
+
+        then:
+        thrown(RejectedExecutionException)
+    }
+
+    def "should terminate once tasks in flight complete"()
+    {
+        given:
+        final executor = new ThreadPerTaskExecutorService(Executors.defaultThreadFactory(), 2)
+        final started = new CountDownLatch(1)
+        executor.execute({ started.countDown(); release.await() } as Runnable)
+        started.await()
+
+        when:
+        executor.shutdown()
+
+        then:
+        !executor.awaitTermination(100, MILLISECONDS)
+        !executor.terminated
+
+        when:
+        release.countDown()
+
+        then:
+        executor.awaitTermination(1, SECONDS)
+        executor.terminated
+        executor.inFlight().value == 0
+    }
+
+    def "should interrupt tasks in flight when shut down now"()
+    {
+        given:
+        final executor = new ThreadPerTaskExecutorService(Executors.defaultThreadFactory(), 2)
+        final started = new CountDownLatch(1)
+        final interrupted = new CountDownLatch(1)
+        executor.execute({
+            started.countDown()
+            try
+            {
+                release.await()
+            }
+            catch (InterruptedException e)
+            {
+                interrupted.countDown()
+            }
+        } as Runnable)
+        started.await()
+
+        when:
+        executor.shutdownNow()
+
+        then:
+        interrupted.await(1, SECONDS)
+        executor.awaitTermination(1, SECONDS)
+    }
+}
@@ -0,0 +1,78 @@
+package com.qmetric.feed.consumer
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.google.common.base.Function
+import com.google.common.base.Optional
+import com.google.common.io.Resources
+import com.qmetric.feed.consumer.store.FeedTracker
+import com.qmetric.hal.reader.HalReader
+import spock.lang.Specification
+
+import static com.google.common.base.Optional.absent
+
+class UntrackedPageIteratorTest extends Specification {
+
+    final feedEndpoint = Mock(FeedEndpoint)
+
+    final secondPageEndpoint = Mock(FeedEndpoint)
+
+    final thirdPageEndpoint = Mock(FeedEndpoint)
+
+    final feedEndpointFactory = Mock(FeedEndpointFactory)
+
+    final tracker = Mock(FeedTracker)
+
+    final halReader = new HalReader(new ObjectMapper())
+
+    def setup()
+    {
+        feedEndpoint.getIfModified(_, _) >> { Function responseReader, ConditionalGet conditionalGet -> page('/feedWithNextLinkAndEntries_8_7.json', responseReader) }
+        feedEndpoint.get(_) >> { Function responseReader -> page('/feedWithNextLinkAndEntries_8_7.json', responseReader) }
+        secondPageEndpoint.get(_) >> { Function responseReader -> page('/feedWithPrevNextLinkAndEntries_6_5.json', responseReader) }
+        thirdPageEndpoint.get(_) >> { Function responseReader -> page('/feedWithPrevLinkAndEntries_4_3_2_1.json', responseReader) }
+        ["8", "7", "6", "5", "4", "3"].each { tracker.isTracked(EntryId.of(it)) >> false }
+        ["2", "1"].each { tracker.isTracked(EntryId.of(it)) >> true }
+    }
+
+    def "should return pages from earliest to latest, replaying those read while walking back"()
+    {
+        when:
+        final pages = readAll(iterator(50))
+
+        then:
+        2 * feedEndpointFactory.create(_ as String) >>> [secondPageEndpoint, thirdPageEndpoint]
+        pages == [["1", "2", "3", "4"], ["5", "6"], ["7", "8"]]
+    }
+
+    def "should fetch again pages newer than those retained"()
+    {
+        when:
+        final iterator = iterator(1)
+        final pages = readAll(iterator)
+
+        then:
+        3 * feedEndpointFactory.create(_ as String) >>> [secondPageEndpoint, thirdPageEndpoint, feedEndpoint]
+        pages == [["1", "2", "3", "4"], ["5", "6"], ["7", "8"]]
+        iterator.pagesFetched() == 4
+    }
+
+    private UntrackedPageIterator iterator(final int maxRetainedPages)
+    {
+        new UntrackedPageIterator(halReader, feedEndpoint, feedEndpointFactory, new PageOfSeenEntriesFactory(tracker, absent()), new ConditionalGet(), absent(), Optional.of(maxRetainedPages))
+    }
+
+    private static List<List<String>> readAll(final UntrackedPageIterator iterator)
+    {
+        final pages = []
+        while (iterator.hasNext())
+        {
+            pages << iterator.next().all().collect { it.id.toString() }
+        }
+        pages
+    }
+
+    private static page(String resourcePath, Function responseReader)
+    {
+        return Optional.of(responseReader.apply(new InputStreamReader(Resources.getResourceAsStream(resourcePath))))
+    }
+}
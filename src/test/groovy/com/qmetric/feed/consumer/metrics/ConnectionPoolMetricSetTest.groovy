@@ -0,0 +1,24 @@
+package com.qmetric.feed.consumer.metrics
+
+import org.apache.http.pool.ConnPoolControl
+import org.apache.http.pool.PoolStats
+import spock.lang.Specification
+
+class ConnectionPoolMetricSetTest extends Specification
+{
+    final connectionPool = Mock(ConnPoolControl)
+
+    final metrics = new ConnectionPoolMetricSet("feed", connectionPool).metrics
+
+    def "should publish pool statistics as gauges"()
+    {
+        given:
+        connectionPool.getTotalStats() >> new PoolStats(3, 2, 5, 20)
+
+        expect:
+        metrics["feed: connectionPool.leased"].value == 3
+        metrics["feed: connectionPool.pending"].value == 2
+        metrics["feed: connectionPool.available"].value == 5
+        metrics["feed: connectionPool.max"].value == 20
+    }
+}
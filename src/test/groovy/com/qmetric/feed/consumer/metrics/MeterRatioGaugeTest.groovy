@@ -0,0 +1,33 @@
+package com.qmetric.feed.consumer.metrics
+
+import com.codahale.metrics.Meter
+import spock.lang.Specification
+
+class MeterRatioGaugeTest extends Specification
+{
+    final hits = Mock(Meter)
+
+    final total = Mock(Meter)
+
+    final gauge = new MeterRatioGauge(hits, total)
+
+    def "should return ratio of one minute rates"()
+    {
+        given:
+        hits.getOneMinuteRate() >> 1.5
+        total.getOneMinuteRate() >> 6.0
+
+        expect:
+        gauge.value == 0.25
+    }
+
+    def "should return NaN when nothing recorded"()
+    {
+        given:
+        hits.getOneMinuteRate() >> 0.0
+        total.getOneMinuteRate() >> 0.0
+
+        expect:
+        gauge.value.naN
+    }
+}
@@ -52,11 +52,18 @@ class FibonacciDelayingRetryStrategyTest extends Specification {
         intervalInMinutes = baseIntervalInMinutes
     }
 
+    def "should tell time after which next retry can take place"() {
+        expect:
+        retryStrategy.retryAfter(3, someTime) == someTime.plusMinutes(6)
+        !retryStrategy.canRetry(3, someTime, retryStrategy.retryAfter(3, someTime))
+        retryStrategy.canRetry(3, someTime, retryStrategy.retryAfter(3, someTime).plusMillis(1))
+    }
+
     DateTime someTime = DateTime.now()
     @Shared
     int baseIntervalInMinutes = 3
     Interval baseInterval = new Interval(3, TimeUnit.MINUTES)
-    RetryStrategy retryStrategy = new FibonacciDelayingRetryStrategy(baseInterval)
+    SchedulingRetryStrategy retryStrategy = new FibonacciDelayingRetryStrategy(baseInterval)
 
 
 }
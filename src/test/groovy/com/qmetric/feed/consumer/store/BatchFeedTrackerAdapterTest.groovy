@@ -0,0 +1,61 @@
+package com.qmetric.feed.consumer.store
+
+import com.qmetric.feed.consumer.EntryId
+import com.qmetric.feed.consumer.SeenEntry
+import org.joda.time.DateTime
+import spock.lang.Specification
+
+import static com.qmetric.feed.consumer.store.BatchFeedTrackerAdapter.batching
+
+class BatchFeedTrackerAdapterTest extends Specification {
+
+    final feedTracker = Mock(FeedTracker)
+
+    final batchFeedTracker = batching(feedTracker)
+
+    def "should use tracker as is when already supporting batch operations"()
+    {
+        given:
+        final tracker = Mock(BatchFeedTracker)
+
+        expect:
+        batching(tracker).is(tracker)
+    }
+
+    def "should look up each id when checking which entries are tracked"()
+    {
+        when:
+        final tracked = batchFeedTracker.isTracked([EntryId.of("1"), EntryId.of("2")])
+
+        then:
+        1 * feedTracker.isTracked(EntryId.of("1")) >> true
+        1 * feedTracker.isTracked(EntryId.of("2")) >> false
+        tracked == [EntryId.of("1")] as Set
+    }
+
+    def "should track each entry in order"()
+    {
+        given:
+        final entry1 = new SeenEntry(EntryId.of("1"), new DateTime())
+        final entry2 = new SeenEntry(EntryId.of("2"), new DateTime())
+
+        when:
+        batchFeedTracker.trackAll([entry1, entry2])
+
+        then:
+        1 * feedTracker.track(entry1)
+
+        then:
+        1 * feedTracker.track(entry2)
+    }
+
+    def "should mark each entry as consumed"()
+    {
+        when:
+        batchFeedTracker.markAllAsConsumed([EntryId.of("1"), EntryId.of("2")])
+
+        then:
+        1 * feedTracker.markAsConsumed(EntryId.of("1"))
+        1 * feedTracker.markAsConsumed(EntryId.of("2"))
+    }
+}
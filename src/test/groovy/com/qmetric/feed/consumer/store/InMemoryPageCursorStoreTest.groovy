@@ -0,0 +1,38 @@
+package com.qmetric.feed.consumer.store
+
+import com.qmetric.feed.consumer.EntryId
+import com.qmetric.feed.consumer.PageCursor
+import spock.lang.Specification
+
+import static com.google.common.base.Optional.absent
+import static com.qmetric.feed.consumer.store.InMemoryPageCursorStore.pageCursorStoreFor
+
+class InMemoryPageCursorStoreTest extends Specification {
+
+    def "should use tracker as cursor store when able to keep page cursor"()
+    {
+        given:
+        final FeedTracker tracker = Mock(CursorKeepingFeedTracker)
+
+        expect:
+        pageCursorStoreFor(tracker).is(tracker)
+    }
+
+    def "should keep page cursor in memory for other trackers"()
+    {
+        given:
+        final store = pageCursorStoreFor(Mock(FeedTracker))
+        final cursor = new PageCursor("http://feed?earlierThan=10", EntryId.of("9"))
+
+        expect:
+        store.getPageCursor() == absent()
+
+        when:
+        store.savePageCursor(cursor)
+
+        then:
+        store.getPageCursor().get() == cursor
+    }
+
+    static interface CursorKeepingFeedTracker extends FeedTracker, PageCursorStore {}
+}
@@ -0,0 +1,266 @@
+package com.qmetric.feed.consumer.store.referenceimplementation
+
+import com.google.common.base.Optional
+import com.qmetric.feed.consumer.EntryGap
+import com.qmetric.feed.consumer.EntryId
+import com.qmetric.feed.consumer.PageCursor
+import com.qmetric.feed.consumer.SeenEntry
+import com.qmetric.feed.consumer.TrackedEntry
+import com.qmetric.feed.consumer.store.AlreadyConsumingException
+import com.qmetric.feed.consumer.store.EntryNotTrackedException
+import com.qmetric.feed.consumer.store.FeedTracker
+import com.qmetric.feed.consumer.store.FeedTrackerSpecification
+import org.apache.commons.io.FileUtils
+import org.joda.time.DateTime
+
+class FileFeedTrackerAcceptanceTest extends FeedTrackerSpecification {
+
+    File directory
+
+    def 'be idempotent for initial tracking - keep first tracked entry if the same tracked many times'() {
+        given:
+        DateTime timeOfSeenEntry = someTime.minusMinutes(10)
+        SeenEntry entryToBeTracked = new SeenEntry(EntryId.of("1"), timeOfSeenEntry)
+
+        when:
+        feedTracker.track(entryToBeTracked)
+        feedTracker.track(entryToBeTracked)
+
+        then:
+        takeOne(feedTracker.getEntriesToBeConsumed()).created == timeOfSeenEntry
+    }
+
+    def 'throw exception when tries to track not existing entry'() {
+        when:
+        feedTracker.markAsConsuming(seenEntry1.id)
+
+        then:
+        thrown(EntryNotTrackedException)
+    }
+
+    def 'throw exception when tries to mark not existing entry as consumed'() {
+        when:
+        feedTracker.markAsConsumed(seenEntry1.id)
+
+        then:
+        thrown(EntryNotTrackedException)
+    }
+
+    def 'throw exception when tries to mark not existing entries as consumed in bulk'() {
+        given:
+        feedTracker.trackAll([seenEntry1])
+
+        when:
+        feedTracker.markAllAsConsumed([seenEntry1.id, seenEntry2.id])
+
+        then:
+        thrown(EntryNotTrackedException)
+    }
+
+    def 'look up and track entries in bulk'() {
+        when:
+        feedTracker.trackAll([seenEntry1])
+
+        then:
+        feedTracker.isTracked([seenEntry1.id, seenEntry2.id]) == [seenEntry1.id] as Set
+    }
+
+    def 'mark entries as consumed in bulk'() {
+        given:
+        feedTracker.trackAll([seenEntry1, seenEntry2])
+
+        when:
+        feedTracker.markAllAsConsumed([seenEntry1.id, seenEntry2.id])
+
+        then:
+        !feedTracker.getEntriesToBeConsumed().iterator().hasNext()
+        feedTracker.isTracked([seenEntry1.id, seenEntry2.id]) == [seenEntry1.id, seenEntry2.id] as Set
+    }
+
+    def 'not consume an entry again once consumed'() {
+        given:
+        feedTracker.track(seenEntry1)
+        feedTracker.markAsConsuming(seenEntry1.id)
+        feedTracker.markAsConsumed(seenEntry1.id)
+
+        when:
+        feedTracker.markAsConsuming(seenEntry1.id)
+
+        then:
+        thrown(AlreadyConsumingException)
+    }
+
+    def 'restore tracked entries after restart'() {
+        given:
+        dateTimeSource.now() >> someTime
+        feedTracker.trackAll([seenEntry1, seenEntry2, new SeenEntry(EntryId.of("3"), someTime)])
+        feedTracker.markAsConsuming(seenEntry1.id)
+        feedTracker.markAsConsumed(seenEntry1.id)
+        feedTracker.markAsConsuming(seenEntry2.id)
+
+        when:
+        restart()
+
+        then:
+        feedTracker.isTracked([seenEntry1.id, seenEntry2.id, EntryId.of("3"), EntryId.of("4")]) == [seenEntry1.id, seenEntry2.id, EntryId.of("3")] as Set
+        feedTracker.getEntriesToBeConsumed()*.id == [EntryId.of("3"), seenEntry2.id]
+        feedTracker.getEntriesToBeConsumed()*.created == [someTime, seenEntry2.dateTime]
+    }
+
+    def 'restore failed entries with their retries after restart'() {
+        given:
+        dateTimeSource.now() >> someTime
+        feedTracker.track(seenEntry1)
+        feedTracker.fail(takeOne(feedTracker.getEntriesToBeConsumed()), true)
+
+        when:
+        restart()
+
+        then:
+        takeOne(feedTracker.getEntriesToBeConsumed()).retries == 1
+    }
+
+    def 'keep finished entries tracked once log compacted'() {
+        given:
+        dateTimeSource.now() >> someTime
+        feedTracker = new FileFeedTracker(directory, dateTimeSource, 10)
+        (1..50).each { feedTracker.track(new SeenEntry(EntryId.of("$it"), someTime)) }
+        (1..40).each { feedTracker.markAsConsumed(EntryId.of("$it")) }
+
+        when:
+        restart()
+
+        then:
+        new File(directory, "transitions.log").length() < 50 * 40
+        (1..50).every { feedTracker.isTracked(EntryId.of("$it")) }
+        feedTracker.getEntriesToBeConsumed()*.id == (41..50).collect { EntryId.of("$it") }
+    }
+
+    def 'offer entries updated at the same time in the order their transitions were logged, across restarts'() {
+        given:
+        dateTimeSource.now() >> someTime
+        feedTracker.trackAll((1..5).collect { new SeenEntry(EntryId.of("$it"), someTime) })
+        feedTracker.fail(new TrackedEntry(EntryId.of("2"), someTime, 0), true)
+
+        expect:
+        feedTracker.getEntriesToBeConsumed()*.id == ["1", "3", "4", "5", "2"].collect { EntryId.of(it) }
+
+        when:
+        feedTracker.compact()
+        restart()
+
+        then:
+        feedTracker.getEntriesToBeConsumed()*.id == ["1", "3", "4", "5", "2"].collect { EntryId.of(it) }
+    }
+
+    def 'ignore incomplete transition left at the end of the log by a crash'() {
+        given:
+        feedTracker.track(seenEntry1)
+        feedTracker.close()
+        new File(directory, "transitions.log").append([0, 0, 5, 49] as byte[])
+
+        when:
+        feedTracker = new FileFeedTracker(directory, dateTimeSource)
+
+        then:
+        feedTracker.getEntriesToBeConsumed()*.id == [seenEntry1.id]
+    }
+
+    def 'keep many entries tracked across index growth'() {
+        when:
+        feedTracker.trackAll((1..100000).collect { new SeenEntry(EntryId.of("$it"), someTime) })
+        restart()
+
+        then:
+        (1..100000).every { feedTracker.isTracked(EntryId.of("$it")) }
+        !feedTracker.isTracked(EntryId.of("100001"))
+    }
+
+    def 'record each gap once'() {
+        given:
+        EntryGap gap = new EntryGap(EntryId.of("5"), EntryId.of("1000000"), someTime, "http://feed")
+
+        when:
+        feedTracker.trackGap(gap)
+        feedTracker.trackGap(new EntryGap(EntryId.of("5"), EntryId.of("1000000"), someTime, "http://feed?page=2"))
+
+        then:
+        feedTracker.getGaps() as List == [gap]
+        !feedTracker.isTracked(EntryId.of("6"))
+    }
+
+    def 'forget expired gaps'() {
+        given:
+        EntryGap gap1 = new EntryGap(EntryId.of("5"), EntryId.of("9"), someTime, "http://feed")
+        EntryGap gap2 = new EntryGap(EntryId.of("20"), EntryId.of("29"), someTime, "http://feed")
+        feedTracker.trackGap(gap1)
+        feedTracker.trackGap(gap2)
+
+        when:
+        feedTracker.expireGap(gap1)
+
+        then:
+        feedTracker.getGaps() as List == [gap2]
+    }
+
+    def 'keep gaps across restarts'() {
+        given:
+        EntryGap gap = new EntryGap(EntryId.of("5"), EntryId.of("9"), someTime, "http://feed")
+        feedTracker.trackGap(gap)
+
+        when:
+        restart()
+
+        then:
+        feedTracker.getGaps()*.first == [gap.first]
+        feedTracker.getGaps()*.last == [gap.last]
+        feedTracker.getGaps()*.created*.millis == [gap.created.millis]
+        feedTracker.getGaps()*.pageUrl == [gap.pageUrl]
+    }
+
+    def 'keep page cursor across restarts'() {
+        given:
+        PageCursor cursor = new PageCursor("http://feed?earlierThan=10", EntryId.of("9"))
+
+        when:
+        feedTracker.savePageCursor(cursor)
+        restart()
+
+        then:
+        feedTracker.getPageCursor() == Optional.of(cursor)
+    }
+
+    def 'ignore page cursor that cannot be read'() {
+        given:
+        feedTracker.savePageCursor(new PageCursor("http://feed?earlierThan=10", EntryId.of("9")))
+        new File(directory, "page.cursor").text = ""
+
+        when:
+        restart()
+
+        then:
+        feedTracker.getPageCursor() == Optional.absent()
+    }
+
+    private void restart() {
+        feedTracker.close()
+        feedTracker = new FileFeedTracker(directory, dateTimeSource)
+    }
+
+    @Override
+    protected void beforeEachTest() {
+        directory = File.createTempFile("feed-tracker", "")
+        directory.delete()
+    }
+
+    @Override
+    protected void afterEachTest() {
+        feedTracker.close()
+        FileUtils.deleteDirectory(directory)
+    }
+
+    @Override
+    protected FeedTracker feedTrackedImplementation() {
+        new FileFeedTracker(directory, dateTimeSource)
+    }
+}
@@ -1,12 +1,20 @@
 package com.qmetric.feed.consumer.store.referenceimplementation
 
+import com.qmetric.feed.consumer.EntryGap
 import com.qmetric.feed.consumer.EntryId
+import com.qmetric.feed.consumer.Interval
 import com.qmetric.feed.consumer.SeenEntry
+import com.qmetric.feed.consumer.TrackedEntry
+import com.qmetric.feed.consumer.retry.FibonacciDelayingRetryStrategy
+import com.qmetric.feed.consumer.store.AlreadyConsumingException
 import com.qmetric.feed.consumer.store.EntryNotTrackedException
 import com.qmetric.feed.consumer.store.FeedTracker
 import com.qmetric.feed.consumer.store.FeedTrackerSpecification
+import com.qmetric.feed.consumer.store.LeaseLostException
 import org.joda.time.DateTime
 
+import static java.util.concurrent.TimeUnit.MINUTES
+
 class InMemoryFeedTrackerAcceptanceTest extends FeedTrackerSpecification {
 
     def 'be idempotent for initial tracking - keep first tracked entry if the same tracked many times'() {
@@ -33,6 +41,312 @@ class InMemoryFeedTrackerAcceptanceTest extends FeedTrackerSpecification {
         thrown(EntryNotTrackedException)
     }
 
+    def 'throw exception when tries to mark not existing entry as consumed'() {
+        when:
+        feedTracker.markAsConsumed(seenEntry1.id)
+
+        then:
+        thrown(EntryNotTrackedException)
+    }
+
+    def 'throw exception when tries to mark not existing entries as consumed in bulk'() {
+        given:
+        feedTracker.trackAll([seenEntry1])
+
+        when:
+        feedTracker.markAllAsConsumed([seenEntry1.id, seenEntry2.id])
+
+        then:
+        thrown(EntryNotTrackedException)
+    }
+
+    def 'look up and track entries in bulk'() {
+        when:
+        feedTracker.trackAll([seenEntry1])
+
+        then:
+        feedTracker.isTracked([seenEntry1.id, seenEntry2.id]) == [seenEntry1.id] as Set
+    }
+
+    def 'mark entries as consumed in bulk'() {
+        given:
+        feedTracker.trackAll([seenEntry1, seenEntry2])
+
+        when:
+        feedTracker.markAllAsConsumed([seenEntry1.id, seenEntry2.id])
+
+        then:
+        !feedTracker.getEntriesToBeConsumed().iterator().hasNext()
+        feedTracker.isTracked([seenEntry1.id, seenEntry2.id]) == [seenEntry1.id, seenEntry2.id] as Set
+    }
+
+    def 'record each gap once'() {
+        given:
+        EntryGap gap = new EntryGap(EntryId.of("5"), EntryId.of("1000000"), someTime, "http://feed")
+
+        when:
+        feedTracker.trackGap(gap)
+        feedTracker.trackGap(new EntryGap(EntryId.of("5"), EntryId.of("1000000"), someTime, "http://feed?page=2"))
+
+        then:
+        feedTracker.getGaps() as List == [gap]
+        !feedTracker.isTracked(EntryId.of("6"))
+    }
+
+    def 'forget expired gaps'() {
+        given:
+        EntryGap gap1 = new EntryGap(EntryId.of("5"), EntryId.of("9"), someTime, "http://feed")
+        EntryGap gap2 = new EntryGap(EntryId.of("20"), EntryId.of("29"), someTime, "http://feed")
+        feedTracker.trackGap(gap1)
+        feedTracker.trackGap(gap2)
+
+        when:
+        feedTracker.expireGap(gap1)
+
+        then:
+        feedTracker.getGaps() as List == [gap2]
+    }
+
+    def 'keep finished entries tracked once evicted'() {
+        given:
+        feedTracker.trackAll([seenEntry1, seenEntry2, new SeenEntry(EntryId.of("text-id"), someTime), new SeenEntry(EntryId.of("007"), someTime)])
+
+        when:
+        feedTracker.markAllAsConsumed([seenEntry1.id, EntryId.of("text-id"), EntryId.of("007")])
+        feedTracker.fail(takeOne(feedTracker.getEntriesToBeConsumed()), false)
+
+        then:
+        feedTracker.itemsByNumericId.isEmpty()
+        feedTracker.itemsByTextId.isEmpty()
+        feedTracker.isTracked([seenEntry1.id, seenEntry2.id, EntryId.of("text-id"), EntryId.of("007")]).size() == 4
+        !feedTracker.isTracked(EntryId.of("7"))
+        !feedTracker.isTracked(EntryId.of("3"))
+    }
+
+    def 'compact consecutive finished ids into a single range'() {
+        given:
+        feedTracker.trackAll((1..1000).collect { new SeenEntry(EntryId.of("$it"), someTime) })
+
+        when:
+        (1000..1).each { feedTracker.markAsConsumed(EntryId.of("$it")) }
+
+        then:
+        feedTracker.finishedNumericIds.asRanges().size() == 1
+        (1..1000).every { feedTracker.isTracked(EntryId.of("$it")) }
+        !feedTracker.isTracked(EntryId.of("1001"))
+    }
+
+    def 'not consume an entry again once evicted'() {
+        given:
+        feedTracker.track(seenEntry1)
+        feedTracker.markAsConsumed(seenEntry1.id)
+
+        when:
+        feedTracker.markAsConsuming(seenEntry1.id)
+
+        then:
+        thrown(AlreadyConsumingException)
+    }
+
+    def 'consider evicted entry failed with retry as available to be consumed again'() {
+        given:
+        feedTracker.track(seenEntry1)
+        TrackedEntry trackedEntry = takeOne(feedTracker.getEntriesToBeConsumed())
+        feedTracker.fail(trackedEntry, false)
+
+        when:
+        feedTracker.fail(trackedEntry, true)
+
+        then:
+        takeOne(feedTracker.getEntriesToBeConsumed()).id == seenEntry1.id
+    }
+
+    def 'order entries seen at the same time by tracking order'() {
+        given:
+        dateTimeSource.now() >> someTime
+        final ids = (1..20).collect { EntryId.of("$it") }
+
+        when:
+        feedTracker.trackAll(ids.reverse().collect { new SeenEntry(it, someTime) })
+
+        then:
+        feedTracker.getEntriesToBeConsumed()*.id == ids.reverse()
+    }
+
+    def 'list members recorded since given time'() {
+        given:
+        dateTimeSource.now() >>> [someTime, someTime.plusMinutes(1), someTime.plusMinutes(2)]
+        feedTracker.recordMember("node-1")
+        feedTracker.recordMember("node-2")
+        feedTracker.recordMember("node-1")
+
+        expect:
+        feedTracker.getMembersSince(someTime.plusMinutes(1)) == ["node-1", "node-2"] as Set
+        feedTracker.getMembersSince(someTime.plusMinutes(2)) == ["node-1"] as Set
+        feedTracker.getMembersSince(someTime.plusMinutes(3)) == [] as Set
+    }
+
+    def 'offer entries again once their lease has expired, ahead of entries seen'() {
+        given:
+        DateTime now = someTime
+        dateTimeSource.now() >> { now }
+        feedTracker.track(seenEntry1)
+        feedTracker.track(seenEntry2)
+        feedTracker.markAsConsuming(seenEntry1.id, "node-1", new Interval(2, MINUTES))
+
+        when:
+        now = someTime.plusMinutes(1)
+
+        then:
+        feedTracker.getEntriesToBeConsumed()*.id == [seenEntry2.id]
+
+        when:
+        now = someTime.plusMinutes(2)
+
+        then:
+        feedTracker.getEntriesToBeConsumed()*.id == [seenEntry1.id, seenEntry2.id]
+    }
+
+    def 'reclaim entry only once its lease has expired'() {
+        given:
+        DateTime now = someTime
+        dateTimeSource.now() >> { now }
+        feedTracker.track(seenEntry1)
+        assert !feedTracker.markAsConsuming(seenEntry1.id, "node-1", new Interval(2, MINUTES))
+
+        when:
+        now = someTime.plusMinutes(1)
+        feedTracker.markAsConsuming(seenEntry1.id, "node-2", new Interval(2, MINUTES))
+
+        then:
+        thrown(AlreadyConsumingException)
+
+        when:
+        now = someTime.plusMinutes(2)
+        final reclaimed = feedTracker.markAsConsuming(seenEntry1.id, "node-2", new Interval(2, MINUTES))
+
+        then:
+        reclaimed
+        !feedTracker.getEntriesToBeConsumed().iterator().hasNext()
+    }
+
+    def 'extend lease on renewal by its owner'() {
+        given:
+        DateTime now = someTime
+        dateTimeSource.now() >> { now }
+        feedTracker.track(seenEntry1)
+        feedTracker.markAsConsuming(seenEntry1.id, "node-1", new Interval(2, MINUTES))
+
+        when:
+        now = someTime.plusMinutes(1)
+        feedTracker.renewLease(seenEntry1.id, "node-1", new Interval(2, MINUTES))
+        now = someTime.plusMinutes(2)
+
+        then:
+        !feedTracker.getEntriesToBeConsumed().iterator().hasNext()
+    }
+
+    def 'refuse renewal of lease reclaimed by another owner'() {
+        given:
+        DateTime now = someTime
+        dateTimeSource.now() >> { now }
+        feedTracker.track(seenEntry1)
+        feedTracker.markAsConsuming(seenEntry1.id, "node-1", new Interval(2, MINUTES))
+        now = someTime.plusMinutes(3)
+        feedTracker.markAsConsuming(seenEntry1.id, "node-2", new Interval(2, MINUTES))
+
+        when:
+        feedTracker.renewLease(seenEntry1.id, "node-1", new Interval(2, MINUTES))
+
+        then:
+        thrown(LeaseLostException)
+    }
+
+    def 'refuse renewal of lease on entry consumed'() {
+        given:
+        dateTimeSource.now() >> someTime
+        feedTracker.track(seenEntry1)
+        feedTracker.markAsConsuming(seenEntry1.id, "node-1", new Interval(2, MINUTES))
+        feedTracker.markAsConsumed(seenEntry1.id)
+
+        when:
+        feedTracker.renewLease(seenEntry1.id, "node-1", new Interval(2, MINUTES))
+
+        then:
+        thrown(LeaseLostException)
+    }
+
+    def 'hold entries failed back until they can be retried when scheduling retries'() {
+        given:
+        DateTime now = someTime
+        dateTimeSource.now() >> { now }
+        feedTracker.scheduleRetriesWith(new FibonacciDelayingRetryStrategy(new Interval(2, MINUTES)))
+        feedTracker.track(seenEntry1)
+        feedTracker.track(seenEntry2)
+        final TrackedEntry trackedEntry = feedTracker.getEntriesToBeConsumed().find { it.id == seenEntry1.id }
+        feedTracker.markAsConsuming(seenEntry1.id)
+        feedTracker.fail(trackedEntry, true)
+
+        when:
+        now = someTime.plusMinutes(2)
+
+        then:
+        feedTracker.getEntriesToBeConsumed()*.id == [seenEntry2.id]
+
+        when:
+        now = someTime.plusMinutes(2).plusSeconds(1)
+
+        then:
+        feedTracker.getEntriesToBeConsumed()*.id as Set == [seenEntry1.id, seenEntry2.id] as Set
+        feedTracker.getEntriesToBeConsumed().find { it.id == seenEntry1.id }.retries == 1
+    }
+
+    def 'offer entries failed again straight away when not scheduling retries'() {
+        given:
+        dateTimeSource.now() >> someTime
+        feedTracker.track(seenEntry1)
+        final TrackedEntry trackedEntry = takeOne(feedTracker.getEntriesToBeConsumed())
+        feedTracker.markAsConsuming(seenEntry1.id)
+
+        when:
+        feedTracker.fail(trackedEntry, true)
+
+        then:
+        feedTracker.getEntriesToBeConsumed()*.id == [seenEntry1.id]
+    }
+
+    def 'offer entries as seen when asked while they are claimed, failed and seen meanwhile'() {
+        given:
+        dateTimeSource.now() >> someTime
+        feedTracker.trackAll((1..4).collect { new SeenEntry(EntryId.of(it as String), someTime) })
+        final entries = feedTracker.getEntriesToBeConsumed().iterator()
+        final first = entries.next()
+
+        when:
+        feedTracker.markAsConsuming(first.id)
+        feedTracker.fail(first, true)
+        feedTracker.markAsConsuming(EntryId.of("2"))
+        feedTracker.track(new SeenEntry(EntryId.of("5"), someTime))
+
+        then:
+        entries.collect { it.id } == [EntryId.of("3"), EntryId.of("4")]
+    }
+
+    def 'walk entries to be consumed lazily, leaving out those finished meanwhile'() {
+        given:
+        dateTimeSource.now() >> someTime
+        feedTracker.trackAll((1..1000).collect { new SeenEntry(EntryId.of(it as String), someTime) })
+        final entries = feedTracker.getEntriesToBeConsumed()
+
+        when:
+        final taken = entries.take(2).collect { it.id }
+        feedTracker.markAllAsConsumed((1..1000).collect { EntryId.of(it as String) })
+
+        then:
+        taken == [EntryId.of("1"), EntryId.of("2")]
+        !entries.iterator().hasNext()
+    }
+
     @Override
     protected FeedTracker feedTrackedImplementation() {
         new InMemoryFeedTracker(dateTimeSource)
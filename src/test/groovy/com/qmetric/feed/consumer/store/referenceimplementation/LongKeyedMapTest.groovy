@@ -0,0 +1,75 @@
+package com.qmetric.feed.consumer.store.referenceimplementation
+
+import spock.lang.Specification
+
+class LongKeyedMapTest extends Specification {
+
+    final map = new LongKeyedMap<String>()
+
+    def 'get put values'() {
+        when:
+        map.put(1L, "one")
+        map.put(-1L, "minus one")
+        map.put(0L, "zero")
+
+        then:
+        map.get(1L) == "one"
+        map.get(-1L) == "minus one"
+        map.get(0L) == "zero"
+        map.get(2L) == null
+        map.size() == 3
+    }
+
+    def 'replace value of existing key'() {
+        given:
+        map.put(1L, "one")
+
+        when:
+        final previous = map.put(1L, "uno")
+
+        then:
+        previous == "one"
+        map.get(1L) == "uno"
+        map.size() == 1
+    }
+
+    def 'remove values'() {
+        given:
+        map.put(1L, "one")
+
+        expect:
+        map.remove(1L) == "one"
+        !map.containsKey(1L)
+        map.remove(1L) == null
+        map.isEmpty()
+    }
+
+    def 'keep every other value reachable while adding and removing many keys'() {
+        given:
+        final reference = new HashMap<Long, String>()
+        final random = new Random(42)
+
+        when:
+        10000.times {
+            final key = (long) random.nextInt(2000)
+            if (random.nextBoolean()) {
+                assert map.put(key, "$key") == reference.put(key, "$key")
+            } else {
+                assert map.remove(key) == reference.remove(key)
+            }
+        }
+
+        then:
+        map.size() == reference.size()
+        (0L..<2000L).every { map.get(it) == reference.get(it) }
+        map.values() as Set == reference.values() as Set
+    }
+
+    def 'refuse null values'() {
+        when:
+        map.put(1L, null)
+
+        then:
+        thrown(NullPointerException)
+    }
+}
@@ -0,0 +1,108 @@
+package com.qmetric.feed.consumer.store.referenceimplementation
+
+import com.qmetric.feed.consumer.EntryId
+import spock.lang.Specification
+
+class MappedEntryIdIndexTest extends Specification {
+
+    final file = File.createTempFile("entries", ".index")
+
+    def setup() {
+        file.delete()
+    }
+
+    def cleanup() {
+        file.delete()
+    }
+
+    def 'contain added ids only'() {
+        given:
+        final index = new MappedEntryIdIndex(file, 16)
+
+        when:
+        index.add(EntryId.of("1"))
+        index.add(EntryId.of("seenEntry-abc"))
+
+        then:
+        index.contains(EntryId.of("1"))
+        index.contains(EntryId.of("seenEntry-abc"))
+        !index.contains(EntryId.of("2"))
+
+        cleanup:
+        index.close()
+    }
+
+    def 'tell whether there is room for more ids up to the maximum held'() {
+        given:
+        final index = new MappedEntryIdIndex(file, 16)
+
+        when:
+        index.add(EntryId.of("1"))
+
+        then:
+        index.hasRoomFor(MappedEntryIdIndex.MAX_ENTRIES - 1)
+        !index.hasRoomFor(MappedEntryIdIndex.MAX_ENTRIES)
+
+        cleanup:
+        index.close()
+    }
+
+    def 'not count the same id twice'() {
+        given:
+        final index = new MappedEntryIdIndex(file, 16)
+
+        when:
+        index.add(EntryId.of("1"))
+        index.add(EntryId.of("1"))
+
+        then:
+        index.size() == 1
+
+        cleanup:
+        index.close()
+    }
+
+    def 'grow once half full'() {
+        given:
+        final index = new MappedEntryIdIndex(file, 16)
+
+        when:
+        (1..100).each { index.add(EntryId.of("$it")) }
+
+        then:
+        index.size() == 100
+        (1..100).every { index.contains(EntryId.of("$it")) }
+        file.length() > 16 * 16 * 2
+
+        cleanup:
+        index.close()
+    }
+
+    def 'reopen with previously added ids'() {
+        given:
+        final index = new MappedEntryIdIndex(file, 16)
+        (1..20).each { index.add(EntryId.of("$it")) }
+        index.close()
+
+        when:
+        final reopened = new MappedEntryIdIndex(file, 16)
+
+        then:
+        reopened.size() == 20
+        (1..20).every { reopened.contains(EntryId.of("$it")) }
+
+        cleanup:
+        reopened.close()
+    }
+
+    def 'refuse a file that is not an index'() {
+        given:
+        file.text = "not an index, just some text"
+
+        when:
+        new MappedEntryIdIndex(file, 16)
+
+        then:
+        thrown(IOException)
+    }
+}